@@ -0,0 +1,88 @@
+package edu.tufts.cs.ml.benchmark;
+
+import java.io.File;
+import java.util.Arrays;
+import java.util.concurrent.TimeUnit;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+
+import edu.tufts.cs.ml.text.BagOfWords;
+
+/**
+ * BagOfWords.populateFV (through createUnlabeledFV) and createSparseVector
+ * over synthetic documents.
+ */
+@State( Scope.Benchmark )
+@BenchmarkMode( Mode.AverageTime )
+@OutputTimeUnit( TimeUnit.MILLISECONDS )
+@Warmup( iterations = 3, time = 2 )
+@Measurement( iterations = 5, time = 2 )
+@Fork( 1 )
+public class BagOfWordsBenchmark {
+  /** The English stop words. */
+  protected static final String STOP_WORDS = BenchmarkData.RESOURCES +
+    "stoplists/en.txt";
+  /** The number of documents. */
+  protected static final int NUM_DOCS = 1000;
+  /** The number of words per document. */
+  protected static final int DOC_LENGTH = 200;
+  /** The size of the vocabulary. */
+  @Param( { "1000", "200000" } )
+  public int vocabulary;
+  /** Whether the features are named by integers rather than words. */
+  @Param( { "false", "true" } )
+  public boolean integerFeatureNames;
+  /** The documents. */
+  protected String[] docs;
+  /** The bag of words, with its features created from the documents. */
+  protected BagOfWords<String> bow;
+
+  /**
+   * Make the documents and the features.
+   */
+  @Setup
+  public void setUp() {
+    docs = BenchmarkData.documents( NUM_DOCS, DOC_LENGTH, vocabulary );
+    bow = new BagOfWords<String>( new File( STOP_WORDS ),
+        integerFeatureNames, false, 1, 1 );
+    bow.createFeatures( Arrays.asList( docs ) );
+  }
+
+  /**
+   * Make a map-based vector of each document.
+   * @return
+   */
+  @Benchmark
+  public int populateFV() {
+    int size = 0;
+    for ( int i = 0; i < docs.length; i++ ) {
+      size += bow.createUnlabeledFV( String.valueOf( i ), docs[i] ).size();
+    }
+
+    return size;
+  }
+
+  /**
+   * Make a sparse vector of each document.
+   * @return
+   */
+  @Benchmark
+  public int sparseVector() {
+    int nnz = 0;
+    for ( String doc : docs ) {
+      nnz += bow.createSparseVector( doc ).nnz();
+    }
+
+    return nnz;
+  }
+}
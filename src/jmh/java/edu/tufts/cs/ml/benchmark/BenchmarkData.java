@@ -0,0 +1,310 @@
+package edu.tufts.cs.ml.benchmark;
+
+import java.io.BufferedReader;
+import java.io.BufferedWriter;
+import java.io.File;
+import java.io.FileReader;
+import java.io.FileWriter;
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Random;
+
+import edu.tufts.cs.ml.DoubleFeature;
+import edu.tufts.cs.ml.Feature;
+import edu.tufts.cs.ml.FeatureVector;
+import edu.tufts.cs.ml.LabeledFeatureVector;
+import edu.tufts.cs.ml.Metadata;
+import edu.tufts.cs.ml.TestRelation;
+import edu.tufts.cs.ml.TrainRelation;
+import edu.tufts.cs.ml.UnlabeledFeatureVector;
+import edu.tufts.cs.ml.reader.ArffReader;
+import edu.tufts.cs.ml.reader.Reader;
+
+/**
+ * Loads the bundled data sets for the benchmarks and scales them up
+ * synthetically. Everything is seeded so that runs are comparable.
+ */
+public class BenchmarkData {
+  /** Where the bundled data sets are. */
+  public static final String RESOURCES = "src/main/resources/";
+  /** The seed for the synthetic data. */
+  public static final long SEED = 0;
+  /** How far (in standard deviations of a feature) a copy is jittered. */
+  protected static final double JITTER = .05;
+  /** The name of the synthetic Gaussian data set. */
+  public static final String GAUSSIAN = "gaussian";
+  /** The size of the synthetic Gaussian data set, per unit of scale. */
+  protected static final int GAUSSIAN_SIZE = 1000;
+  /** The number of features in the synthetic Gaussian data set. */
+  protected static final int GAUSSIAN_FEATURES = 10;
+  /** The number of clusters in the synthetic Gaussian data set. */
+  protected static final int GAUSSIAN_CLUSTERS = 8;
+
+  /**
+   * Private constructor for utility class.
+   */
+  private BenchmarkData() {
+    // purposely not instantiable
+  }
+
+  /**
+   * Get the bundled data set file.
+   * @param name The name, without the .arff extension.
+   * @return
+   */
+  public static File file( String name ) {
+    return new File( RESOURCES + name + ".arff" );
+  }
+
+  /**
+   * Read a bundled data set with its labels.
+   * @param name The name, without the .arff extension.
+   * @return
+   * @throws IOException
+   */
+  @SuppressWarnings( "unchecked" )
+  public static TrainRelation<String> train( String name ) throws IOException {
+    return (TrainRelation<String>) new ArffReader<String>().read(
+        file( name ) );
+  }
+
+  /**
+   * Read a bundled data set without its labels.
+   * @param name The name, without the .arff extension.
+   * @return
+   * @throws IOException
+   */
+  @SuppressWarnings( "unchecked" )
+  public static TestRelation<String> test( String name ) throws IOException {
+    return (TestRelation<String>) new ArffReader<String>().read(
+        file( name ), Reader.IGNORE_LABELS );
+  }
+
+  /**
+   * Load a labeled data set by name: a bundled data set scaled up by the
+   * given factor, or "gaussian" for 1000 * scale synthetic vectors.
+   * @param name
+   * @param scale
+   * @return
+   * @throws IOException
+   */
+  public static TrainRelation<String> load( String name, int scale )
+    throws IOException {
+    if ( GAUSSIAN.equals( name ) ) {
+      return gaussian( GAUSSIAN_SIZE * scale, GAUSSIAN_FEATURES,
+          GAUSSIAN_CLUSTERS );
+    }
+
+    return scale( train( name ), scale );
+  }
+
+  /**
+   * Copy the vectors of a labeled data set without their labels.
+   * @param r
+   * @param step Take every step-th vector.
+   * @return
+   */
+  public static TestRelation<String> unlabeled( TrainRelation<String> r,
+      int step ) {
+    TestRelation<String> test = new TestRelation<String>( r.getName(),
+        r.getMetadata() );
+    for ( int i = 0; i < r.size(); i += step ) {
+      UnlabeledFeatureVector<String> fv = new UnlabeledFeatureVector<String>(
+          r.get( i ).getId() );
+      fv.putAll( r.get( i ) );
+      test.add( fv );
+    }
+
+    return test;
+  }
+
+  /**
+   * Scale a labeled data set up: the original vectors followed by
+   * (scale - 1) jittered copies of each.
+   * @param r
+   * @param scale
+   * @return
+   */
+  public static TrainRelation<String> scale( TrainRelation<String> r,
+      int scale ) {
+    TrainRelation<String> scaled = new TrainRelation<String>( r.getName(),
+        r.getMetadata() );
+    Random rand = new Random( SEED );
+    for ( int s = 0; s < scale; s++ ) {
+      for ( LabeledFeatureVector<String> fv : r ) {
+        LabeledFeatureVector<String> copy = new LabeledFeatureVector<String>(
+            fv.getLabel(), fv.getId() + "_" + s );
+        jitter( fv, copy, s == 0 ? 0 : JITTER, rand );
+        scaled.add( copy );
+      }
+    }
+
+    return scaled;
+  }
+
+  /**
+   * Scale an unlabeled data set up: the original vectors followed by
+   * (scale - 1) jittered copies of each.
+   * @param r
+   * @param scale
+   * @return
+   */
+  public static TestRelation<String> scale( TestRelation<String> r,
+      int scale ) {
+    TestRelation<String> scaled = new TestRelation<String>( r.getName(),
+        r.getMetadata() );
+    Random rand = new Random( SEED );
+    for ( int s = 0; s < scale; s++ ) {
+      for ( UnlabeledFeatureVector<String> fv : r ) {
+        UnlabeledFeatureVector<String> copy =
+          new UnlabeledFeatureVector<String>( fv.getId() + "_" + s );
+        jitter( fv, copy, s == 0 ? 0 : JITTER, rand );
+        scaled.add( copy );
+      }
+    }
+
+    return scaled;
+  }
+
+  /**
+   * Copy the features of one vector into another, adding Gaussian noise.
+   * @param from
+   * @param to
+   * @param noise
+   * @param rand
+   */
+  protected static void jitter( FeatureVector<?> from, FeatureVector<?> to,
+      double noise, Random rand ) {
+    for ( Feature<?> f : from.values() ) {
+      if ( f instanceof DoubleFeature ) {
+        double val = f.doubleValue() + noise * rand.nextGaussian();
+        to.put( f.getName(), new DoubleFeature( f.getName(), val ) );
+      } else {
+        to.put( f.getName(), f );
+      }
+    }
+  }
+
+  /**
+   * Write a copy of an ARFF file with its data lines repeated, to a
+   * temporary file. (The text is copied rather than written by ArffWriter
+   * so that the copy parses exactly as the original does.)
+   * @param f
+   * @param times
+   * @return
+   * @throws IOException
+   */
+  public static File repeat( File f, int times ) throws IOException {
+    List<String> header = new ArrayList<String>();
+    List<String> data = new ArrayList<String>();
+    BufferedReader br = new BufferedReader( new FileReader( f ) );
+    String line = br.readLine();
+    boolean inData = false;
+    while ( line != null ) {
+      if ( inData ) {
+        data.add( line );
+      } else {
+        header.add( line );
+        inData = line.toUpperCase().startsWith( "@DATA" );
+      }
+      line = br.readLine();
+    }
+    br.close();
+
+    File copy = File.createTempFile( f.getName(), ".arff" );
+    BufferedWriter bw = new BufferedWriter( new FileWriter( copy ) );
+    for ( String h : header ) {
+      bw.write( h );
+      bw.newLine();
+    }
+    for ( int t = 0; t < times; t++ ) {
+      for ( String d : data ) {
+        bw.write( d );
+        bw.newLine();
+      }
+    }
+    bw.close();
+
+    return copy;
+  }
+
+  /**
+   * Make a synthetic Gaussian data set with the given number of clusters.
+   * @param size
+   * @param numFeatures
+   * @param numClusters
+   * @return
+   */
+  public static TrainRelation<String> gaussian( int size, int numFeatures,
+      int numClusters ) {
+    Metadata m = new Metadata();
+    for ( int j = 0; j < numFeatures; j++ ) {
+      m.put( "x" + j, "numeric" );
+    }
+    Random rand = new Random( SEED );
+    double[][] centers = new double[numClusters][numFeatures];
+    for ( double[] center : centers ) {
+      for ( int j = 0; j < numFeatures; j++ ) {
+        center[j] = 10 * rand.nextGaussian();
+      }
+    }
+
+    TrainRelation<String> r = new TrainRelation<String>( "gaussian", m );
+    for ( int i = 0; i < size; i++ ) {
+      int c = rand.nextInt( numClusters );
+      LabeledFeatureVector<String> fv = new LabeledFeatureVector<String>(
+          String.valueOf( c ), "x" + i );
+      for ( int j = 0; j < numFeatures; j++ ) {
+        String name = "x" + j;
+        fv.put( name, new DoubleFeature( name,
+            centers[c][j] + rand.nextGaussian() ) );
+      }
+      r.add( fv );
+    }
+
+    return r;
+  }
+
+  /**
+   * Make synthetic documents: words drawn from a Zipf-like distribution over
+   * a vocabulary of the given size.
+   * @param numDocs
+   * @param docLength The number of words per document.
+   * @param vocabulary
+   * @return
+   */
+  public static String[] documents( int numDocs, int docLength,
+      int vocabulary ) {
+    Random rand = new Random( SEED );
+    String[] docs = new String[numDocs];
+    StringBuilder sb = new StringBuilder();
+    for ( int d = 0; d < numDocs; d++ ) {
+      sb.setLength( 0 );
+      for ( int w = 0; w < docLength; w++ ) {
+        // rank ~ vocabulary^u is roughly Zipfian
+        int rank = (int) Math.pow( vocabulary, rand.nextDouble() );
+        sb.append( word( rank ) );
+        sb.append( ' ' );
+      }
+      docs[d] = sb.toString();
+    }
+
+    return docs;
+  }
+
+  /**
+   * Spell the number as a lowercase word (so it survives tokenizing).
+   * @param n
+   * @return
+   */
+  protected static String word( int n ) {
+    StringBuilder sb = new StringBuilder( "w" );
+    do {
+      sb.append( (char) ( 'a' + n % 26 ) );
+      n /= 26;
+    } while ( n > 0 );
+
+    return sb.toString();
+  }
+}
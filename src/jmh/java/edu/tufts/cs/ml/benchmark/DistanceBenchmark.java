@@ -0,0 +1,114 @@
+package edu.tufts.cs.ml.benchmark;
+
+import java.io.IOException;
+import java.util.concurrent.TimeUnit;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+
+import edu.tufts.cs.ml.DenseRelation;
+import edu.tufts.cs.ml.LabeledFeatureVector;
+import edu.tufts.cs.ml.SparseRelation;
+import edu.tufts.cs.ml.SparseVector;
+import edu.tufts.cs.ml.TrainRelation;
+import edu.tufts.cs.ml.exception.IncomparableFeatureVectorException;
+import edu.tufts.cs.ml.util.VectorMath;
+
+/**
+ * The distance from one vector to every vector of a data set: through the
+ * map-based FeatureVector, the dense kernels and the sparse kernels.
+ */
+@State( Scope.Benchmark )
+@BenchmarkMode( Mode.AverageTime )
+@OutputTimeUnit( TimeUnit.MICROSECONDS )
+@Warmup( iterations = 5, time = 1 )
+@Measurement( iterations = 5, time = 1 )
+@Fork( 1 )
+public class DistanceBenchmark {
+  /** The data set. */
+  @Param( { "segment-full", "vowel", BenchmarkData.GAUSSIAN } )
+  public String dataset;
+  /** How many times to scale the data set up. */
+  @Param( { "1", "10" } )
+  public int scale;
+  /** The data set. */
+  protected TrainRelation<String> train;
+  /** The data set, dense. */
+  protected DenseRelation<LabeledFeatureVector<String>> dense;
+  /** The data set, sparse. */
+  protected SparseRelation<LabeledFeatureVector<String>> sparse;
+  /** The query. */
+  protected LabeledFeatureVector<String> query;
+  /** The query, dense. */
+  protected double[] denseQuery;
+  /** The query, sparse. */
+  protected SparseVector sparseQuery;
+
+  /**
+   * Load the data.
+   * @throws IOException
+   */
+  @Setup
+  public void setUp() throws IOException {
+    train = BenchmarkData.load( dataset, scale );
+    dense = train.toDense();
+    sparse = train.toSparse();
+    query = train.get( train.size() / 2 );
+    denseQuery = dense.toArray( query );
+    sparseQuery = sparse.toSparse( query );
+  }
+
+  /**
+   * FeatureVector.getEuclideanDistance.
+   * @return
+   * @throws IncomparableFeatureVectorException
+   */
+  @Benchmark
+  public double featureVector() throws IncomparableFeatureVectorException {
+    double sum = 0.0;
+    for ( LabeledFeatureVector<String> fv : train ) {
+      sum += query.getEuclideanDistance( fv );
+    }
+
+    return sum;
+  }
+
+  /**
+   * VectorMath.euclidean over the dense rows.
+   * @return
+   */
+  @Benchmark
+  public double dense() {
+    double sum = 0.0;
+    double[] data = dense.getData();
+    for ( int i = 0; i < dense.size(); i++ ) {
+      sum += VectorMath.euclidean( data, dense.offset( i ), denseQuery, 0,
+          denseQuery.length );
+    }
+
+    return sum;
+  }
+
+  /**
+   * VectorMath.sparseSquaredEuclidean over the CSR rows.
+   * @return
+   */
+  @Benchmark
+  public double sparse() {
+    double sum = 0.0;
+    for ( int i = 0; i < sparse.size(); i++ ) {
+      sum += Math.sqrt( sparse.squaredEuclidean( i, sparseQuery ) );
+    }
+
+    return sum;
+  }
+}
@@ -0,0 +1,71 @@
+package edu.tufts.cs.ml.benchmark;
+
+import java.io.IOException;
+import java.util.concurrent.TimeUnit;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+
+import edu.tufts.cs.ml.TestRelation;
+import edu.tufts.cs.ml.cluster.ClusterSet;
+import edu.tufts.cs.ml.cluster.KMeans;
+import edu.tufts.cs.ml.exception.IncomparableFeatureVectorException;
+
+/**
+ * KMeans.cluster from fixed initial centroids (evenly spaced vectors), so
+ * that every run does the same iterations.
+ */
+@State( Scope.Benchmark )
+@BenchmarkMode( Mode.AverageTime )
+@OutputTimeUnit( TimeUnit.MILLISECONDS )
+@Warmup( iterations = 3, time = 2 )
+@Measurement( iterations = 5, time = 2 )
+@Fork( 1 )
+public class KMeansBenchmark {
+  /** The data set. */
+  @Param( { "segment-full", "vowel", BenchmarkData.GAUSSIAN } )
+  public String dataset;
+  /** How many times to scale the data set up. */
+  @Param( { "1", "10" } )
+  public int scale;
+  /** The number of clusters. */
+  @Param( { "8" } )
+  public int k;
+  /** The data set. */
+  protected TestRelation<String> data;
+  /** The initial centroids (1-based, as KMethod.cluster takes them). */
+  protected int[] indices;
+
+  /**
+   * Load the data.
+   * @throws IOException
+   */
+  @Setup
+  public void setUp() throws IOException {
+    data = BenchmarkData.unlabeled( BenchmarkData.load( dataset, scale ), 1 );
+    indices = new int[k];
+    for ( int i = 0; i < k; i++ ) {
+      indices[i] = i * data.size() / k + 1;
+    }
+  }
+
+  /**
+   * Cluster the data.
+   * @return
+   * @throws IncomparableFeatureVectorException
+   */
+  @Benchmark
+  public ClusterSet<String> cluster()
+    throws IncomparableFeatureVectorException {
+    return new KMeans<String>( data ).cluster( k, indices );
+  }
+}
@@ -0,0 +1,72 @@
+package edu.tufts.cs.ml.benchmark;
+
+import java.io.IOException;
+import java.util.concurrent.TimeUnit;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+
+import edu.tufts.cs.ml.TestRelation;
+import edu.tufts.cs.ml.TrainRelation;
+import edu.tufts.cs.ml.classify.KnnClassifier;
+import edu.tufts.cs.ml.exception.IncomparableFeatureVectorException;
+
+/**
+ * KnnClassifier.classify over a tenth of the data set, with and without the
+ * spatial index.
+ */
+@State( Scope.Benchmark )
+@BenchmarkMode( Mode.AverageTime )
+@OutputTimeUnit( TimeUnit.MILLISECONDS )
+@Warmup( iterations = 3, time = 2 )
+@Measurement( iterations = 5, time = 2 )
+@Fork( 1 )
+public class KnnBenchmark {
+  /** The data set. */
+  @Param( { "segment-full", "vowel", BenchmarkData.GAUSSIAN } )
+  public String dataset;
+  /** How many times to scale the data set up. */
+  @Param( { "1", "10" } )
+  public int scale;
+  /** Whether to use the spatial index. */
+  @Param( { "true", "false" } )
+  public boolean useIndex;
+  /** The trained classifier. */
+  protected KnnClassifier<String> classifier;
+  /** The vectors to classify. */
+  protected TestRelation<String> test;
+
+  /**
+   * Load the data and train the classifier.
+   * @throws IOException
+   */
+  @Setup
+  public void setUp() throws IOException {
+    TrainRelation<String> train = BenchmarkData.load( dataset, scale );
+    test = BenchmarkData.unlabeled( train, 10 );
+    classifier = new KnnClassifier<String>();
+    classifier.setUseIndex( useIndex );
+    classifier.train( train );
+  }
+
+  /**
+   * Classify the test vectors.
+   * @return
+   * @throws IncomparableFeatureVectorException
+   */
+  @Benchmark
+  public TestRelation<String> classify()
+    throws IncomparableFeatureVectorException {
+    classifier.classify( test );
+    return test;
+  }
+}
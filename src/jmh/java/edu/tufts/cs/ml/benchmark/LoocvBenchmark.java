@@ -0,0 +1,62 @@
+package edu.tufts.cs.ml.benchmark;
+
+import java.io.IOException;
+import java.util.concurrent.TimeUnit;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+
+import edu.tufts.cs.ml.TrainRelation;
+import edu.tufts.cs.ml.exception.IncomparableFeatureVectorException;
+import edu.tufts.cs.ml.validate.KnnLOOCValidator;
+
+/**
+ * KnnLOOCValidator.validate over the default k values.
+ */
+@State( Scope.Benchmark )
+@BenchmarkMode( Mode.AverageTime )
+@OutputTimeUnit( TimeUnit.MILLISECONDS )
+@Warmup( iterations = 3, time = 2 )
+@Measurement( iterations = 5, time = 2 )
+@Fork( 1 )
+public class LoocvBenchmark {
+  /** The data set. */
+  @Param( { "segment-full", "vowel", BenchmarkData.GAUSSIAN } )
+  public String dataset;
+  /** How many times to scale the data set up. */
+  @Param( { "1", "4" } )
+  public int scale;
+  /** The number of threads. */
+  @Param( { "1", "4" } )
+  public int threads;
+  /** The data set. */
+  protected TrainRelation<String> train;
+
+  /**
+   * Load the data.
+   * @throws IOException
+   */
+  @Setup
+  public void setUp() throws IOException {
+    train = BenchmarkData.load( dataset, scale );
+  }
+
+  /**
+   * Validate.
+   * @return
+   * @throws IncomparableFeatureVectorException
+   */
+  @Benchmark
+  public double[] validate() throws IncomparableFeatureVectorException {
+    return new KnnLOOCValidator<String>( train, threads ).validate();
+  }
+}
@@ -0,0 +1,91 @@
+package edu.tufts.cs.ml.benchmark;
+
+import java.io.File;
+import java.io.IOException;
+import java.util.concurrent.TimeUnit;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.TearDown;
+import org.openjdk.jmh.annotations.Warmup;
+
+import edu.tufts.cs.ml.Relation;
+import edu.tufts.cs.ml.reader.ArffReader;
+import edu.tufts.cs.ml.reader.BinaryReader;
+import edu.tufts.cs.ml.writer.BinaryWriter;
+
+/**
+ * Reading a data set: ARFF, and the same vectors in the binary format.
+ */
+@State( Scope.Benchmark )
+@BenchmarkMode( Mode.AverageTime )
+@OutputTimeUnit( TimeUnit.MILLISECONDS )
+@Warmup( iterations = 3, time = 2 )
+@Measurement( iterations = 5, time = 2 )
+@Fork( 1 )
+public class ReaderBenchmark {
+  /** The data set. */
+  @Param( { "segment-full", "vowel", "reutersAcqModApteTrain-FullVocab" } )
+  public String dataset;
+  /** How many times to repeat the data lines. */
+  @Param( { "1", "10" } )
+  public int scale;
+  /** The ARFF file. */
+  protected File arff;
+  /** The binary file. */
+  protected File binary;
+
+  /**
+   * Write the (scaled) data set in both formats.
+   * @throws IOException
+   */
+  @Setup
+  public void setUp() throws IOException {
+    arff = BenchmarkData.file( dataset );
+    if ( scale > 1 ) {
+      arff = BenchmarkData.repeat( arff, scale );
+    }
+    Relation<?> r = new ArffReader<String>().read( arff );
+    binary = File.createTempFile( dataset, BinaryWriter.EXTENSION );
+    new BinaryWriter().write( r, binary );
+  }
+
+  /**
+   * Delete the files written.
+   */
+  @TearDown
+  public void tearDown() {
+    if ( !arff.getPath().startsWith( BenchmarkData.RESOURCES ) ) {
+      arff.delete();
+    }
+    binary.delete();
+  }
+
+  /**
+   * ArffReader.read.
+   * @return
+   * @throws IOException
+   */
+  @Benchmark
+  public Relation<?> arff() throws IOException {
+    return new ArffReader<String>().read( arff );
+  }
+
+  /**
+   * BinaryReader.read.
+   * @return
+   * @throws IOException
+   */
+  @Benchmark
+  public Relation<?> binary() throws IOException {
+    return new BinaryReader<String>().read( binary );
+  }
+}
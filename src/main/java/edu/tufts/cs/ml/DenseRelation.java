@@ -0,0 +1,322 @@
+package edu.tufts.cs.ml;
+
+import java.lang.ref.WeakReference;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.LinkedHashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+
+/**
+ * A row-major, primitive-array copy of a Relation. Feature names are resolved
+ * to column indices once (from the Metadata, in attribute order), so numeric
+ * code can walk contiguous memory instead of looking up boxed Features by
+ * name. The original Relation stays available as the map-based view of each
+ * row until release is called; after that, only the dense copy (and each
+ * row's id, label, rank and qid) is held, and the map-based view of a row is
+ * built from its dense values when asked for.
+ *
+ * Absent features are stored as 0 (the sparse convention); missing ("?")
+ * features are stored as NaN.
+ *
+ * @param <F>
+ */
+public class DenseRelation<F extends FeatureVector<?>> {
+  /** The map-based view of the rows, or null once released. */
+  protected Relation<F> relation;
+  /** The rows without their features, or null until released. */
+  protected List<F> rows;
+  /** The views built of the released rows, while still referred to. */
+  protected WeakReference<F>[] views;
+  /** The feature names, by column. */
+  protected final String[] featureNames;
+  /** Mapping from the feature name to its column. */
+  protected final Map<String, Integer> featureIndices;
+  /** The number of rows. */
+  protected final int numRows;
+  /** The number of columns. */
+  protected final int numCols;
+  /** The values, row-major: row i starts at i * numCols. */
+  protected final double[] data;
+
+  /**
+   * Default constructor.
+   * @param relation
+   */
+  public DenseRelation( Relation<F> relation ) {
+    this( relation, resolveFeatureNames( relation ) );
+  }
+
+  /**
+   * Constructor with the columns to use (eg. those of an earlier chunk of the
+   * same data). Features not in the columns are ignored.
+   * @param relation
+   * @param featureNames
+   */
+  public DenseRelation( Relation<F> relation, String[] featureNames ) {
+    this.relation = relation;
+    this.featureNames = featureNames;
+    this.featureIndices = new HashMap<String, Integer>();
+    for ( int j = 0; j < featureNames.length; j++ ) {
+      featureIndices.put( featureNames[j], j );
+    }
+
+    this.numRows = relation.size();
+    this.numCols = featureNames.length;
+    this.data = new double[numRows * numCols];
+
+    for ( int i = 0; i < numRows; i++ ) {
+      fill( relation.get( i ), data, i * numCols );
+    }
+  }
+
+  /**
+   * Constructor over values that are already dense (eg. read from a binary
+   * file), so that no map-based rows are built at all.
+   * @param featureNames The feature names, by column.
+   * @param data The values, row-major.
+   * @param rows Each row's id, label, rank and qid, without features.
+   */
+  public DenseRelation( String[] featureNames, double[] data, List<F> rows ) {
+    if ( data.length != rows.size() * featureNames.length ) {
+      throw new IllegalArgumentException( "Expected " + rows.size() *
+          featureNames.length + " values but found " + data.length );
+    }
+    this.relation = null;
+    this.rows = rows;
+    this.views = newViews( rows.size() );
+    this.featureNames = featureNames;
+    this.featureIndices = new HashMap<String, Integer>();
+    for ( int j = 0; j < featureNames.length; j++ ) {
+      featureIndices.put( featureNames[j], j );
+    }
+
+    this.numRows = rows.size();
+    this.numCols = featureNames.length;
+    this.data = data;
+  }
+
+  /**
+   * Stop holding the map-based rows, so that once nothing else refers to the
+   * Relation only the dense copy takes heap. Each row keeps its id, label,
+   * rank and qid; getFeatureVector then builds the row's map-based view from
+   * its dense values, with every column present (absent features as 0).
+   * @return This.
+   */
+  @SuppressWarnings( "unchecked" )
+  public DenseRelation<F> release() {
+    if ( relation != null ) {
+      List<F> shells = new ArrayList<F>( numRows );
+      for ( F fv : relation ) {
+        F shell = (F) fv.clone();
+        shell.clear();
+        shells.add( shell );
+      }
+      this.rows = shells;
+      this.views = newViews( numRows );
+      this.relation = null;
+    }
+
+    return this;
+  }
+
+  /**
+   * Make the (empty) table of views.
+   * @param n
+   * @return
+   */
+  @SuppressWarnings( "unchecked" )
+  protected static <F> WeakReference<F>[] newViews( int n ) {
+    return (WeakReference<F>[]) new WeakReference<?>[n];
+  }
+
+  /**
+   * Whether the map-based rows have been released.
+   * @return
+   */
+  public boolean isReleased() {
+    return this.relation == null;
+  }
+
+  /**
+   * Resolve the columns of the relation: the features in the metadata, in
+   * attribute order, then any feature the metadata doesn't know about (eg.
+   * relations built by hand), in the order they are first seen.
+   * @param relation
+   * @return
+   */
+  public static String[] resolveFeatureNames( Relation<?> relation ) {
+    Set<String> names = new LinkedHashSet<String>();
+    if ( relation.getMetadata() != null ) {
+      for ( String name : relation.getMetadata().keySet() ) {
+        if ( !isClassAttribute( name ) ) {
+          names.add( name );
+        }
+      }
+    }
+    for ( FeatureVector<?> fv : relation ) {
+      names.addAll( fv.keySet() );
+    }
+
+    return names.toArray( new String[names.size()] );
+  }
+
+  /**
+   * Whether the attribute name marks the class attribute.
+   * @param name
+   * @return
+   */
+  protected static boolean isClassAttribute( String name ) {
+    return name.trim().toUpperCase().startsWith(
+        LabeledFeatureVector.CLASS_MARKER );
+  }
+
+  /**
+   * Copy the feature vector's values into dest, starting at offset, using
+   * this relation's columns. Features this relation doesn't know about are
+   * ignored.
+   * @param fv
+   * @param dest
+   * @param offset
+   */
+  public void fill( FeatureVector<?> fv, double[] dest, int offset ) {
+    fv.fill( featureNames, dest, offset );
+  }
+
+  /**
+   * Convert the feature vector into a dense array using this relation's
+   * columns.
+   * @param fv
+   * @return
+   */
+  public double[] toArray( FeatureVector<?> fv ) {
+    double[] arr = new double[numCols];
+    fill( fv, arr, 0 );
+    return arr;
+  }
+
+  /**
+   * Get the backing array (row-major). This is not a copy.
+   * @return
+   */
+  public double[] getData() {
+    return this.data;
+  }
+
+  /**
+   * Get the offset into the backing array at which the row starts.
+   * @param row
+   * @return
+   */
+  public int offset( int row ) {
+    return row * numCols;
+  }
+
+  /**
+   * Get a single value.
+   * @param row
+   * @param col
+   * @return
+   */
+  public double get( int row, int col ) {
+    return data[row * numCols + col];
+  }
+
+  /**
+   * Get a copy of the row.
+   * @param row
+   * @return
+   */
+  public double[] getRow( int row ) {
+    double[] arr = new double[numCols];
+    System.arraycopy( data, row * numCols, arr, 0, numCols );
+    return arr;
+  }
+
+  /**
+   * Get the map-based view of the row: the Relation's row, or once released
+   * a vector built from the dense values. A built vector is kept weakly, so
+   * the same one is returned while anything still refers to it (eg. as a
+   * cluster member); changes to it don't reach the dense values.
+   * @param row
+   * @return
+   */
+  public F getFeatureVector( int row ) {
+    if ( relation != null ) {
+      return relation.get( row );
+    }
+
+    WeakReference<F> ref = views[row];
+    F fv = ( ref == null ) ? null : ref.get();
+    if ( fv == null ) {
+      fv = buildFeatureVector( row );
+      views[row] = new WeakReference<F>( fv );
+    }
+
+    return fv;
+  }
+
+  /**
+   * Build the map-based view of a released row from its dense values.
+   * @param row
+   * @return
+   */
+  @SuppressWarnings( "unchecked" )
+  protected F buildFeatureVector( int row ) {
+    F fv = (F) rows.get( row ).clone();
+    int offset = row * numCols;
+    for ( int j = 0; j < numCols; j++ ) {
+      double val = data[offset + j];
+      if ( Double.isNaN( val ) ) {
+        fv.put( featureNames[j], new MissingFeature( featureNames[j] ) );
+      } else {
+        fv.put( featureNames[j], new DoubleFeature( featureNames[j], val ) );
+      }
+    }
+
+    return fv;
+  }
+
+  /**
+   * Get the Relation this was built from, or null once released.
+   * @return
+   */
+  public Relation<F> getRelation() {
+    return this.relation;
+  }
+
+  /**
+   * Get the column of the feature, or -1 if it is unknown.
+   * @param featureName
+   * @return
+   */
+  public int indexOf( String featureName ) {
+    Integer idx = featureIndices.get( featureName );
+    return ( idx == null ) ? -1 : idx;
+  }
+
+  /**
+   * Get the feature names, by column.
+   * @return
+   */
+  public String[] getFeatureNames() {
+    return this.featureNames;
+  }
+
+  /**
+   * Get the number of rows.
+   * @return
+   */
+  public int size() {
+    return this.numRows;
+  }
+
+  /**
+   * Get the number of columns.
+   * @return
+   */
+  public int numFeatures() {
+    return this.numCols;
+  }
+}
@@ -3,7 +3,16 @@ package edu.tufts.cs.ml;
 import java.text.DecimalFormat;
 
 public class DoubleFeature extends Feature<Double> {
-  protected DecimalFormat format = new DecimalFormat();
+  /** The format, shared so that each feature doesn't carry its own. */
+  protected static final ThreadLocal<DecimalFormat> FORMAT =
+      new ThreadLocal<DecimalFormat>() {
+        @Override
+        protected DecimalFormat initialValue() {
+          DecimalFormat format = new DecimalFormat();
+          format.setDecimalSeparatorAlwaysShown( false );
+          return format;
+        }
+      };
 
   /**
    * Default constructor.
@@ -12,7 +21,6 @@ public class DoubleFeature extends Feature<Double> {
    */
   public DoubleFeature( String name, Double value ) {
     super( name, value );
-    this.format.setDecimalSeparatorAlwaysShown( false );
   }
 
   @Override
@@ -22,7 +30,16 @@ public class DoubleFeature extends Feature<Double> {
 
   @Override
   public String toString() {
-    return format.format( value );
+    return format( value );
+  }
+
+  /**
+   * Format a value the way a DoubleFeature of it is written.
+   * @param value
+   * @return
+   */
+  public static String format( double value ) {
+    return FORMAT.get().format( value );
   }
 
 }
@@ -24,6 +24,18 @@ public abstract class Feature<E> {
     return this.value;
   }
 
+  /**
+   * Get the value as a primitive double, or NaN if it isn't numeric.
+   * @return
+   */
+  public double doubleValue() {
+    if ( this.value instanceof Number ) {
+      return ( (Number) this.value ).doubleValue();
+    }
+
+    return Double.NaN;
+  }
+
   /**
    * Get the name.
    * @return
@@ -1,6 +1,7 @@
 package edu.tufts.cs.ml;
 
 import java.util.LinkedHashMap;
+import java.util.Map.Entry;
 
 import edu.tufts.cs.ml.exception.IncomparableFeatureVectorException;
 import edu.tufts.cs.ml.util.Util;
@@ -67,12 +68,13 @@ public abstract class FeatureVector<E> extends
   }
 
   /**
-   * Get the Euclidean distance between the two feature vectors.
+   * Get the Euclidean distance between the two feature vectors, rounded to 6
+   * places. Bulk callers should use the kernels in VectorMath over a
+   * DenseRelation instead.
    * @param fv
    * @return
    * @throws IncomparableFeatureVectorException
    */
-  @SuppressWarnings( "unchecked" )
   public double getEuclideanDistance( FeatureVector<?> fv )
     throws IncomparableFeatureVectorException {
     FeatureVector<?> feat1 = fv;
@@ -84,18 +86,17 @@ public abstract class FeatureVector<E> extends
     }
 
     double sum = 0;
-    for ( String featName : feat1.keySet() ) {
-      Feature<?> f1 = feat1.get( featName );
-      Feature<?> f2 = feat2.get( featName );
+    for ( Entry<String, Feature<?>> e : feat1.entrySet() ) {
+      Feature<?> f1 = e.getValue();
+      Feature<?> f2 = feat2.get( e.getKey() );
 
       if ( !f1.getValue().getClass().equals( f2.getValue().getClass() ) ) {
         throw new IncomparableFeatureVectorException( this, fv,
             IncomparableFeatureVectorException.DIFF_TYPE_FEATURES );
       }
 
-      Double diff = f1.getDifference( f1.getClass().cast( f2 ) );
-      Double diffsq = diff*diff;
-      sum += diffsq;
+      double diff = f2.doubleValue() - f1.doubleValue();
+      sum += diff*diff;
     }
 
     double sqrt = Math.sqrt( sum );
@@ -138,7 +139,7 @@ public abstract class FeatureVector<E> extends
 
     for ( Feature<?> f : this.values() ) {
       DoubleFeature feat = (DoubleFeature) f;
-      double unnormalized = Double.parseDouble( f.getValue().toString() );
+      double unnormalized = f.doubleValue();
       Double normalized = unnormalized/this.magnitude;
       feat.setValue( normalized );
     }
@@ -153,7 +154,7 @@ public abstract class FeatureVector<E> extends
     if ( this.magnitude == null ) {
       double total = 0.0;
       for ( Feature<?> f : this.values() ) {
-        double val = Double.parseDouble( f.getValue().toString() );
+        double val = f.doubleValue();
         total += ( val*val );
       }
 
@@ -170,18 +171,40 @@ public abstract class FeatureVector<E> extends
    */
   public double dot( FeatureVector<E> that ) {
     double sum = 0.0;
-    for ( String featureName : this.keySet() ) {
-      double f1 = Double.valueOf(
-          this.get( featureName ).getValue().toString() );
-      double f2 = 0.0;
-      if ( that.containsKey( featureName ) ) {
-        f2 = Double.valueOf( that.get( featureName ).getValue().toString() );
+    for ( Entry<String, Feature<?>> e : this.entrySet() ) {
+      Feature<?> f2 = that.get( e.getKey() );
+      if ( f2 != null ) {
+        sum = sum + ( e.getValue().doubleValue() * f2.doubleValue() );
       }
-      sum = sum + ( f1 * f2 );
     }
     return sum;
   }
 
+  /**
+   * Copy the values of the named features into dest, starting at offset.
+   * Absent features are copied as 0; non-numeric features as NaN.
+   * @param featureNames
+   * @param dest
+   * @param offset
+   */
+  public void fill( String[] featureNames, double[] dest, int offset ) {
+    for ( int j = 0; j < featureNames.length; j++ ) {
+      Feature<?> f = this.get( featureNames[j] );
+      dest[offset + j] = ( f == null ) ? 0.0 : f.doubleValue();
+    }
+  }
+
+  /**
+   * Get the values of the named features as a primitive array.
+   * @param featureNames
+   * @return
+   */
+  public double[] toArray( String[] featureNames ) {
+    double[] arr = new double[featureNames.length];
+    fill( featureNames, arr, 0 );
+    return arr;
+  }
+
   public int compareTo( FeatureVector<E> o ) {
     return ( (Integer) this.size() ).compareTo( o.size() );
   }
@@ -84,6 +84,25 @@ public class Relation<F extends FeatureVector<?>> extends ArrayList<F> {
     }
   }
 
+  /**
+   * Get a dense, primitive-array copy of this Relation. The copy is not
+   * updated if the Relation changes. Call release on the copy (and drop this
+   * Relation) to keep only the dense rows.
+   * @return
+   */
+  public DenseRelation<F> toDense() {
+    return new DenseRelation<F>( this );
+  }
+
+  /**
+   * Get a sparse (CSR) copy of this Relation. The copy is not updated if the
+   * Relation changes.
+   * @return
+   */
+  public SparseRelation<F> toSparse() {
+    return new SparseRelation<F>( this );
+  }
+
   /**
    * Get the FeatureVector with this id.
    * @param fvId
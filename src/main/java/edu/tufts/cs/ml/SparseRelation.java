@@ -0,0 +1,219 @@
+package edu.tufts.cs.ml;
+
+import java.util.Arrays;
+import java.util.Map;
+
+import edu.tufts.cs.ml.util.VectorMath;
+
+/**
+ * A compressed sparse row (CSR) copy of a Relation: row i's non-zeros are
+ * columnIndices[rowPtr[i]..rowPtr[i+1]), ascending, with their values in the
+ * same positions of values. The columns are resolved the same way as a
+ * DenseRelation's, but memory and the kernels scale with the number of
+ * non-zeros instead of rows * columns, which is what bag-of-words and
+ * SVMlight relations need. The original Relation stays available as the
+ * map-based view of each row.
+ *
+ * Features whose value is 0 are left out; missing ("?") features are stored
+ * as NaN.
+ *
+ * @param <F>
+ */
+public class SparseRelation<F extends FeatureVector<?>> {
+  /** The map-based view of the rows. */
+  protected final Relation<F> relation;
+  /** The feature names, by column. */
+  protected final String[] featureNames;
+  /** Mapping from the feature name to its column. */
+  protected final Map<String, Integer> featureIndices;
+  /** Where each row starts in columnIndices and values (plus the end). */
+  protected final int[] rowPtr;
+  /** The column of each non-zero. */
+  protected final int[] columnIndices;
+  /** The value of each non-zero. */
+  protected final double[] values;
+
+  /**
+   * Default constructor.
+   * @param relation
+   */
+  public SparseRelation( Relation<F> relation ) {
+    this.relation = relation;
+    this.featureNames = DenseRelation.resolveFeatureNames( relation );
+    this.featureIndices = SparseVector.indexColumns( featureNames );
+
+    this.rowPtr = new int[relation.size() + 1];
+    SparseVector[] rows = new SparseVector[relation.size()];
+    for ( int i = 0; i < rows.length; i++ ) {
+      rows[i] = SparseVector.of( relation.get( i ), featureIndices );
+      rowPtr[i + 1] = rowPtr[i] + rows[i].nnz();
+    }
+
+    this.columnIndices = new int[rowPtr[rows.length]];
+    this.values = new double[rowPtr[rows.length]];
+    for ( int i = 0; i < rows.length; i++ ) {
+      System.arraycopy( rows[i].getIndices(), 0, columnIndices, rowPtr[i],
+          rows[i].nnz() );
+      System.arraycopy( rows[i].getValues(), 0, values, rowPtr[i],
+          rows[i].nnz() );
+    }
+  }
+
+  /**
+   * Convert the feature vector into a sparse vector using this relation's
+   * columns. Features this relation doesn't know about are ignored.
+   * @param fv
+   * @return
+   */
+  public SparseVector toSparse( FeatureVector<?> fv ) {
+    return SparseVector.of( fv, featureIndices );
+  }
+
+  /**
+   * Get a copy of the row.
+   * @param row
+   * @return
+   */
+  public SparseVector getRow( int row ) {
+    return new SparseVector(
+        Arrays.copyOfRange( columnIndices, rowPtr[row], rowPtr[row + 1] ),
+        Arrays.copyOfRange( values, rowPtr[row], rowPtr[row + 1] ) );
+  }
+
+  /**
+   * Get a single value.
+   * @param row
+   * @param col
+   * @return
+   */
+  public double get( int row, int col ) {
+    int i = Arrays.binarySearch( columnIndices, rowPtr[row],
+        rowPtr[row + 1], col );
+    return ( i < 0 ) ? 0.0 : values[i];
+  }
+
+  /**
+   * Calculate the inner product of the row and a sparse vector.
+   * @param row
+   * @param v
+   * @return
+   */
+  public double dot( int row, SparseVector v ) {
+    return VectorMath.sparseDot( columnIndices, values, rowPtr[row],
+        rowPtr[row + 1], v.getIndices(), v.getValues(), 0, v.nnz() );
+  }
+
+  /**
+   * Calculate the magnitude of the row.
+   * @param row
+   * @return
+   */
+  public double norm( int row ) {
+    return VectorMath.sparseNorm( values, rowPtr[row], rowPtr[row + 1] );
+  }
+
+  /**
+   * Calculate the squared Euclidean distance between the row and a sparse
+   * vector.
+   * @param row
+   * @param v
+   * @return
+   */
+  public double squaredEuclidean( int row, SparseVector v ) {
+    return VectorMath.sparseSquaredEuclidean( columnIndices, values,
+        rowPtr[row], rowPtr[row + 1], v.getIndices(), v.getValues(), 0,
+        v.nnz() );
+  }
+
+  /**
+   * Get the map-based view of the row.
+   * @param row
+   * @return
+   */
+  public F getFeatureVector( int row ) {
+    return relation.get( row );
+  }
+
+  /**
+   * Get the Relation this was built from.
+   * @return
+   */
+  public Relation<F> getRelation() {
+    return this.relation;
+  }
+
+  /**
+   * Get the row pointers. This is not a copy.
+   * @return
+   */
+  public int[] getRowPtr() {
+    return this.rowPtr;
+  }
+
+  /**
+   * Get the column of each non-zero. This is not a copy.
+   * @return
+   */
+  public int[] getColumnIndices() {
+    return this.columnIndices;
+  }
+
+  /**
+   * Get the value of each non-zero. This is not a copy.
+   * @return
+   */
+  public double[] getValues() {
+    return this.values;
+  }
+
+  /**
+   * Get the column of the feature, or -1 if it is unknown.
+   * @param featureName
+   * @return
+   */
+  public int indexOf( String featureName ) {
+    Integer idx = featureIndices.get( featureName );
+    return ( idx == null ) ? -1 : idx;
+  }
+
+  /**
+   * Get the feature names, by column.
+   * @return
+   */
+  public String[] getFeatureNames() {
+    return this.featureNames;
+  }
+
+  /**
+   * Get the number of non-zeros.
+   * @return
+   */
+  public int nnz() {
+    return this.values.length;
+  }
+
+  /**
+   * Get the number of non-zeros in the row.
+   * @param row
+   * @return
+   */
+  public int nnz( int row ) {
+    return rowPtr[row + 1] - rowPtr[row];
+  }
+
+  /**
+   * Get the number of rows.
+   * @return
+   */
+  public int size() {
+    return this.rowPtr.length - 1;
+  }
+
+  /**
+   * Get the number of columns.
+   * @return
+   */
+  public int numFeatures() {
+    return this.featureNames.length;
+  }
+}
@@ -0,0 +1,238 @@
+package edu.tufts.cs.ml;
+
+import java.util.Arrays;
+import java.util.HashMap;
+import java.util.Map;
+
+import edu.tufts.cs.ml.util.VectorMath;
+
+/**
+ * A sparse row: the columns of its non-zero features, in ascending order,
+ * and their values. The columns are those of a SparseRelation (or any other
+ * fixed list of feature names), so bag-of-words and SVMlight vectors cost
+ * memory and time in proportion to their non-zeros rather than to the size
+ * of the vocabulary.
+ *
+ * Missing ("?") features are stored as NaN.
+ */
+public class SparseVector {
+  /** The columns, ascending. */
+  protected final int[] indices;
+  /** The value of each column. */
+  protected final double[] values;
+
+  /**
+   * Default constructor. The arrays are not copied.
+   * @param indices The columns, ascending.
+   * @param values
+   */
+  public SparseVector( int[] indices, double[] values ) {
+    if ( indices.length != values.length ) {
+      throw new IllegalArgumentException( "Mismatched lengths: " +
+          indices.length + " indices, " + values.length + " values" );
+    }
+    for ( int i = 1; i < indices.length; i++ ) {
+      if ( indices[i] <= indices[i - 1] ) {
+        throw new IllegalArgumentException(
+            "Indices must be strictly ascending: " + indices[i - 1] + ", " +
+            indices[i] );
+      }
+    }
+    this.indices = indices;
+    this.values = values;
+  }
+
+  /**
+   * Convert a feature vector using the given columns. Features without a
+   * column, and features whose value is 0, are left out.
+   * @param fv
+   * @param columns Mapping from the feature name to its column.
+   * @return
+   */
+  public static SparseVector of( FeatureVector<?> fv,
+      Map<String, Integer> columns ) {
+    int[] idx = new int[fv.size()];
+    int nnz = 0;
+    for ( String name : fv.keySet() ) {
+      Integer col = columns.get( name );
+      if ( col != null ) {
+        idx[nnz++] = col;
+      }
+    }
+    Arrays.sort( idx, 0, nnz );
+
+    // look the values up by column so they line up with the sorted indices
+    String[] names = new String[nnz];
+    for ( String name : fv.keySet() ) {
+      Integer col = columns.get( name );
+      if ( col != null ) {
+        names[Arrays.binarySearch( idx, 0, nnz, col )] = name;
+      }
+    }
+    double[] val = new double[nnz];
+    int kept = 0;
+    for ( int i = 0; i < nnz; i++ ) {
+      double v = fv.get( names[i] ).doubleValue();
+      if ( v != 0.0 ) {
+        idx[kept] = idx[i];
+        val[kept++] = v;
+      }
+    }
+
+    return new SparseVector( Arrays.copyOf( idx, kept ),
+        Arrays.copyOf( val, kept ) );
+  }
+
+  /**
+   * Map each feature name to its column.
+   * @param featureNames
+   * @return
+   */
+  public static Map<String, Integer> indexColumns( String[] featureNames ) {
+    Map<String, Integer> columns = new HashMap<String, Integer>(
+        featureNames.length * 2 );
+    for ( int j = 0; j < featureNames.length; j++ ) {
+      columns.put( featureNames[j], j );
+    }
+
+    return columns;
+  }
+
+  /**
+   * Get the number of non-zeros.
+   * @return
+   */
+  public int nnz() {
+    return this.indices.length;
+  }
+
+  /**
+   * Get the columns, ascending. This is not a copy.
+   * @return
+   */
+  public int[] getIndices() {
+    return this.indices;
+  }
+
+  /**
+   * Get the values. This is not a copy.
+   * @return
+   */
+  public double[] getValues() {
+    return this.values;
+  }
+
+  /**
+   * Get the value of the column (0 if it is absent).
+   * @param col
+   * @return
+   */
+  public double get( int col ) {
+    int i = Arrays.binarySearch( indices, col );
+    return ( i < 0 ) ? 0.0 : values[i];
+  }
+
+  /**
+   * Calculate the inner product.
+   * @param that
+   * @return
+   */
+  public double dot( SparseVector that ) {
+    return VectorMath.sparseDot( indices, values, 0, indices.length,
+        that.indices, that.values, 0, that.indices.length );
+  }
+
+  /**
+   * Calculate the inner product with a dense row.
+   * @param dense
+   * @param offset Where the dense row starts.
+   * @return
+   */
+  public double dot( double[] dense, int offset ) {
+    return VectorMath.sparseDot( indices, values, 0, indices.length, dense,
+        offset );
+  }
+
+  /**
+   * Calculate the magnitude.
+   * @return
+   */
+  public double norm() {
+    return VectorMath.sparseNorm( values, 0, values.length );
+  }
+
+  /**
+   * Calculate the squared Euclidean distance.
+   * @param that
+   * @return
+   */
+  public double squaredEuclidean( SparseVector that ) {
+    return VectorMath.sparseSquaredEuclidean( indices, values, 0,
+        indices.length, that.indices, that.values, 0, that.indices.length );
+  }
+
+  /**
+   * Calculate the Euclidean distance.
+   * @param that
+   * @return
+   */
+  public double euclidean( SparseVector that ) {
+    return Math.sqrt( squaredEuclidean( that ) );
+  }
+
+  /**
+   * Calculate the cosine similarity. Returns 0 if either vector has no
+   * magnitude.
+   * @param that
+   * @return
+   */
+  public double cosine( SparseVector that ) {
+    double norms = norm() * that.norm();
+    return ( norms == 0.0 ) ? 0.0 : dot( that ) / norms;
+  }
+
+  /**
+   * Convert to a dense array.
+   * @param numCols
+   * @return
+   */
+  public double[] toArray( int numCols ) {
+    double[] arr = new double[numCols];
+    for ( int i = 0; i < indices.length; i++ ) {
+      arr[indices[i]] = values[i];
+    }
+
+    return arr;
+  }
+
+  @Override
+  public int hashCode() {
+    return 31 * Arrays.hashCode( indices ) + Arrays.hashCode( values );
+  }
+
+  @Override
+  public boolean equals( Object obj ) {
+    if ( this == obj )
+      return true;
+    if ( obj == null || getClass() != obj.getClass() )
+      return false;
+    SparseVector other = (SparseVector) obj;
+    return Arrays.equals( indices, other.indices ) &&
+      Arrays.equals( values, other.values );
+  }
+
+  @Override
+  public String toString() {
+    StringBuilder sb = new StringBuilder();
+    for ( int i = 0; i < indices.length; i++ ) {
+      if ( i > 0 ) {
+        sb.append( " " );
+      }
+      sb.append( indices[i] );
+      sb.append( ":" );
+      sb.append( values[i] );
+    }
+
+    return sb.toString();
+  }
+}
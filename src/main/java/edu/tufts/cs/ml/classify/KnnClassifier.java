@@ -10,12 +10,18 @@ import java.util.TreeMap;
 import java.util.logging.Level;
 import java.util.logging.Logger;
 
+import edu.tufts.cs.ml.DenseRelation;
 import edu.tufts.cs.ml.FeatureVector;
 import edu.tufts.cs.ml.LabeledFeatureVector;
 import edu.tufts.cs.ml.TestRelation;
 import edu.tufts.cs.ml.TrainRelation;
 import edu.tufts.cs.ml.UnlabeledFeatureVector;
 import edu.tufts.cs.ml.exception.IncomparableFeatureVectorException;
+import edu.tufts.cs.ml.index.NeighborHeap;
+import edu.tufts.cs.ml.index.NeighborIndex;
+import edu.tufts.cs.ml.index.Neighbors;
+import edu.tufts.cs.ml.util.Util;
+import edu.tufts.cs.ml.util.VectorMath;
 
 public class KnnClassifier<E> implements Classifier<E> {
   /** The Logger. */
@@ -23,10 +29,18 @@ public class KnnClassifier<E> implements Classifier<E> {
       KnnClassifier.class.getName() );
   /** The default k values to use if none are specified. */
   protected static final int[] DEFAULT_K_VALS = { 1, 3, 5, 7, 9, 11, 13, 15 };
+  /** Below this many training vectors, a full scan beats an index. */
+  protected static final int MIN_INDEX_SIZE = 64;
   /** The k-values to use. */
   protected int[] kVals = DEFAULT_K_VALS;
   /** The training data. */
   protected TrainRelation<E> trainingData;
+  /** The training data, as contiguous rows. */
+  protected DenseRelation<LabeledFeatureVector<E>> denseData;
+  /** Whether to build a spatial index over the training data. */
+  protected boolean useIndex = true;
+  /** The spatial index over the training data, or null to scan it. */
+  protected NeighborIndex index;
 
   /**
    * Default constructor.
@@ -67,6 +81,53 @@ public class KnnClassifier<E> implements Classifier<E> {
     return cumulativeDistances.firstEntry().getValue();
   }
 
+  /**
+   * Convert the test vector into a query over the training data's columns.
+   * @param test
+   * @return
+   * @throws IncomparableFeatureVectorException
+   */
+  protected double[] toQuery( FeatureVector<E> test )
+    throws IncomparableFeatureVectorException {
+    for ( String featName : test.keySet() ) {
+      if ( denseData.indexOf( featName ) < 0 ) {
+        throw new IncomparableFeatureVectorException( "the test vector " +
+            "contains the unknown feature " + featName );
+      }
+    }
+
+    return denseData.toArray( test );
+  }
+
+  /**
+   * Calculate the distance between the query and a training vector. It is
+   * rounded so that near-equal distances are treated as ties.
+   * @param query
+   * @param row
+   * @return
+   */
+  protected double distance( double[] query, int row ) {
+    return Util.round( VectorMath.euclidean( denseData.getData(),
+        denseData.offset( row ), query, 0, query.length ), 6 );
+  }
+
+  /**
+   * Add the training vector's label to the distances.
+   * @param distances
+   * @param dist
+   * @param row
+   */
+  protected void addDistance( TreeMap<Double, List<E>> distances, double dist,
+      int row ) {
+    E label = denseData.getFeatureVector( row ).getLabel();
+    List<E> eList = distances.get( dist );
+    if ( eList == null ) {
+      eList = new ArrayList<E>();
+      distances.put( dist, eList );
+    }
+    eList.add( label );
+  }
+
   /**
    * Calculate the distances between the training set and the test vector.
    * @param test
@@ -75,22 +136,184 @@ public class KnnClassifier<E> implements Classifier<E> {
    */
   protected TreeMap<Double, List<E>> calculateDistances( FeatureVector<E> test )
     throws IncomparableFeatureVectorException {
+    double[] query = toQuery( test );
+    TreeMap<Double, List<E>> distances = new TreeMap<Double, List<E>>();
+    for ( int i = 0; i < denseData.size(); i++ ) {
+      addDistance( distances, distance( query, i ), i );
+    }
+
+    return distances;
+  }
+
+  /**
+   * Calculate the distances between the test vector and enough of the
+   * training set to answer getNearestNeighbors for any k up to maxK: the
+   * maxK nearest and everything tied with the farthest of them. Uses the
+   * index if there is one, otherwise selects them in a single scan.
+   * @param test
+   * @param maxK
+   * @return
+   * @throws IncomparableFeatureVectorException
+   */
+  protected TreeMap<Double, List<E>> calculateNearestDistances(
+      FeatureVector<E> test, int maxK )
+    throws IncomparableFeatureVectorException {
+    if ( maxK >= denseData.size() ) {
+      return calculateDistances( test );
+    }
+
+    double[] query = toQuery( test );
+    if ( index == null ) {
+      return selectNearestDistances( query, maxK );
+    }
+
+    Neighbors nearest = index.nearest( query, maxK );
+    if ( nearest.size() == 0 ) {
+      return new TreeMap<Double, List<E>>();
+    }
+    double kthDist = distance( query, nearest.getRow( nearest.size() - 1 ) );
+
+    // anything that rounds to at most the kth distance is within 1e-6 of it
+    TreeMap<Double, List<E>> distances = new TreeMap<Double, List<E>>();
+    Neighbors candidates = index.withinRadius( query,
+        nearest.getDistance( nearest.size() - 1 ) + 1e-6 );
+    for ( int i = 0; i < candidates.size(); i++ ) {
+      int row = candidates.getRow( i );
+      double dist = distance( query, row );
+      if ( dist <= kthDist ) {
+        addDistance( distances, dist, row );
+      }
+    }
+
+    return distances;
+  }
+
+  /**
+   * Scan the training set for the maxK nearest and everything tied with the
+   * farthest of them, keeping only those in a bounded max-heap. The scan
+   * works on primitives; only the selected neighbors are put in the map.
+   * @param query
+   * @param maxK
+   * @return
+   */
+  protected TreeMap<Double, List<E>> selectNearestDistances( double[] query,
+      int maxK ) {
+    NeighborHeap heap = new NeighborHeap( maxK, true );
+    for ( int i = 0; i < denseData.size(); i++ ) {
+      heap.offer( i, distance( query, i ) );
+    }
+
     TreeMap<Double, List<E>> distances = new TreeMap<Double, List<E>>();
-    for ( LabeledFeatureVector<E> v : trainingData ) {
-      Double eucDist = v.getEuclideanDistance( test );
-      if ( distances.containsKey( eucDist ) ) {
-        List<E> eList = distances.get( eucDist );
-        eList.add( v.getLabel() );
-      } else {
-        List<E> eList = new ArrayList<E>();
-        eList.add( v.getLabel() );
-        distances.put( eucDist, eList );
+    heap.sort();
+    for ( int i = 0; i < heap.size(); i++ ) {
+      addDistance( distances, heap.getDistance( i ), heap.getRow( i ) );
+    }
+    if ( heap.size() > 0 ) {
+      double kthDist = heap.getDistance( heap.size() - 1 );
+      for ( int i = 0; i < heap.numTies(); i++ ) {
+        addDistance( distances, kthDist, heap.getTieRow( i ) );
       }
     }
 
     return distances;
   }
 
+  /**
+   * Get the neighbors of a training vector among the rest of the training
+   * data: the maxK nearest and everything tied with the farthest of them,
+   * just as classifying the vector after removing it from the training data
+   * would see. The distances are rounded as in distance.
+   * @param row
+   * @param maxK
+   * @return
+   */
+  public Neighbors leaveOneOutNeighbors( int row, int maxK ) {
+    double[] query = denseData.getRow( row );
+    int n = denseData.size();
+
+    NeighborHeap heap;
+    if ( maxK + 1 >= n ) {
+      heap = new NeighborHeap( Math.max( n - 1, 1 ) );
+      for ( int i = 0; i < n; i++ ) {
+        if ( i != row ) {
+          heap.offer( i, distance( query, i ) );
+        }
+      }
+    } else if ( index != null ) {
+      // without missing values the row is its own nearest neighbor (at 0),
+      // so the (maxK + 1)th nearest of all is the maxK-th nearest of the rest
+      Neighbors nearest = index.nearest( query, maxK + 1 );
+      double kthDist = distance( query, nearest.getRow( nearest.size() - 1 ) );
+      Neighbors candidates = index.withinRadius( query,
+          nearest.getDistance( nearest.size() - 1 ) + 1e-6 );
+      heap = new NeighborHeap( candidates.size() );
+      for ( int i = 0; i < candidates.size(); i++ ) {
+        int r = candidates.getRow( i );
+        double dist = distance( query, r );
+        if ( r != row && dist <= kthDist ) {
+          heap.offer( r, dist );
+        }
+      }
+    } else {
+      NeighborHeap selected = new NeighborHeap( maxK, true );
+      for ( int i = 0; i < n; i++ ) {
+        if ( i != row ) {
+          selected.offer( i, distance( query, i ) );
+        }
+      }
+      selected.sort();
+      double kthDist = selected.getDistance( selected.size() - 1 );
+      heap = new NeighborHeap( selected.size() + selected.numTies() );
+      for ( int i = 0; i < selected.size(); i++ ) {
+        heap.offer( selected.getRow( i ), selected.getDistance( i ) );
+      }
+      for ( int i = 0; i < selected.numTies(); i++ ) {
+        heap.offer( selected.getTieRow( i ), kthDist );
+      }
+    }
+
+    heap.sort();
+    int[] rows = new int[heap.size()];
+    double[] distances = new double[heap.size()];
+    for ( int i = 0; i < rows.length; i++ ) {
+      rows[i] = heap.getRow( i );
+      distances[i] = heap.getDistance( i );
+    }
+
+    return new Neighbors( rows, distances );
+  }
+
+  /**
+   * Classify a vector given its neighbors among the training data (as from
+   * leaveOneOutNeighbors), for each of the k values.
+   * @param neighbors
+   * @param kVals
+   * @return The classification for each k value.
+   */
+  public List<E> classify( Neighbors neighbors, int[] kVals ) {
+    TreeMap<Double, List<E>> distances = new TreeMap<Double, List<E>>();
+    for ( int i = 0; i < neighbors.size(); i++ ) {
+      addDistance( distances, neighbors.getDistance( i ),
+          neighbors.getRow( i ) );
+    }
+
+    List<E> classifications = new ArrayList<E>( kVals.length );
+    for ( int k : kVals ) {
+      classifications.add( classify( getNearestNeighbors( distances, k ) )
+          .getKey() );
+    }
+
+    return classifications;
+  }
+
+  /**
+   * Get the number of training vectors.
+   * @return
+   */
+  public int size() {
+    return denseData.size();
+  }
+
   /**
    * Classify a set of test data.
    */
@@ -176,9 +399,15 @@ public class KnnClassifier<E> implements Classifier<E> {
     LOG.log( Level.CONFIG, "Classifying " + test.getId() );
 
     /*
-     * Calculate the distances between the test vector and all training vectors.
+     * Calculate the distances between the test vector and the training
+     * vectors that could be among the nearest for the largest k.
      */
-    TreeMap<Double, List<E>> distances = calculateDistances( test );
+    int maxK = 0;
+    for ( int k : kVals ) {
+      maxK = Math.max( maxK, k );
+    }
+    TreeMap<Double, List<E>> distances = calculateNearestDistances( test,
+        maxK );
 
     for ( int k : kVals ) {
       /*
@@ -255,9 +484,10 @@ public class KnnClassifier<E> implements Classifier<E> {
     LOG.log( Level.CONFIG, "Classifying " + test.getId() );
 
     /*
-     * Calculate the distances between the test vector and all training vectors.
+     * Calculate the distances between the test vector and the training
+     * vectors that could be among the nearest k.
      */
-    TreeMap<Double, List<E>> distances = calculateDistances( test );
+    TreeMap<Double, List<E>> distances = calculateNearestDistances( test, k );
 
     /*
      * Get the k-nearest feature vectors.
@@ -277,6 +507,35 @@ public class KnnClassifier<E> implements Classifier<E> {
    */
   public void train( TrainRelation<E> trainRelation ) {
     this.trainingData = trainRelation;
+    this.denseData = trainRelation.toDense();
+    this.index = null;
+    if ( useIndex && denseData.size() >= MIN_INDEX_SIZE && !hasMissing() ) {
+      this.index = NeighborIndex.create( denseData );
+    }
+  }
+
+  /**
+   * Whether any training vector has a missing value. The index can't order
+   * NaN distances, so such data is scanned instead.
+   * @return
+   */
+  protected boolean hasMissing() {
+    for ( double val : denseData.getData() ) {
+      if ( Double.isNaN( val ) ) {
+        return true;
+      }
+    }
+
+    return false;
+  }
+
+  /**
+   * Set whether to build a spatial index over the training data. Takes
+   * effect on the next call to train.
+   * @param useIndex
+   */
+  public void setUseIndex( boolean useIndex ) {
+    this.useIndex = useIndex;
   }
 
 }
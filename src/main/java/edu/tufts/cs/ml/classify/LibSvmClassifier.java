@@ -1,13 +1,14 @@
 package edu.tufts.cs.ml.classify;
 
 import java.io.BufferedReader;
+import java.io.BufferedWriter;
 import java.io.File;
 import java.io.FileReader;
+import java.io.FileWriter;
 import java.io.IOException;
-import java.io.InputStream;
-import java.io.OutputStream;
 import java.util.ArrayList;
 import java.util.List;
+import java.util.concurrent.Callable;
 import java.util.logging.Level;
 import java.util.logging.Logger;
 
@@ -40,15 +41,86 @@ public class LibSvmClassifier implements Classifier<Integer> {
   protected static final String MODEL_FILE = "model";
   /** The predictions file. */
   protected static final String PREDICTIONS_FILE = "predictions";
+  /** The c tradeoff parameter (libsvm's default). */
+  protected static final double C = 1.0;
   /** Train relation. */
   protected TrainRelation<Integer> train;
   /** The SVM model. */
   protected File model;
+  /** Whether to train and predict in-process instead of with the binary. */
+  protected boolean inProcess = true;
+  /** The in-process model. */
+  protected LinearSvm svm;
+  /** The A and B of the sigmoid that turns decisions into probabilities. */
+  protected double[] sigmoid;
+  /** The files passed to and from the binaries (created on first use). */
+  protected SvmWorkspace workspace;
+  /** Whether to pipe the binaries' single-pass files. */
+  protected boolean streaming = false;
+
+  /**
+   * Set whether to train and predict in-process with a LinearSvm (the
+   * default), or by writing files for the libsvm binaries.
+   * @param inProcess
+   */
+  public void setInProcess( boolean inProcess ) {
+    this.inProcess = inProcess;
+  }
+
+  /**
+   * Set whether to pipe the files the binaries read or write in a single
+   * pass (see SvmWorkspace) instead of writing them to disk.
+   * @param streaming
+   */
+  public void setStreaming( boolean streaming ) {
+    this.streaming = streaming;
+    if ( workspace != null ) {
+      workspace.setStreaming( streaming );
+    }
+  }
+
+  /**
+   * Get the workspace for the binaries' files, creating it if need be.
+   * @return
+   * @throws IOException
+   */
+  protected SvmWorkspace getWorkspace() throws IOException {
+    if ( workspace == null ) {
+      workspace = new SvmWorkspace( "libsvm" );
+      workspace.setStreaming( streaming );
+    }
+    return workspace;
+  }
+
+  /**
+   * Delete the workspace, and the model in it.
+   */
+  public void close() {
+    if ( workspace != null ) {
+      workspace.delete();
+      workspace = null;
+      model = null;
+    }
+  }
 
   public void train( TrainRelation<Integer> trainRelation ) {
     this.train = trainRelation;
+    if ( inProcess ) {
+      this.svm = LinearSvm.trainClassifier( trainRelation, C );
+      List<Double> decisions = svm.decisions( trainRelation );
+      double[] dec = new double[decisions.size()];
+      boolean[] positive = new boolean[dec.length];
+      for ( int i = 0; i < dec.length; i++ ) {
+        dec[i] = decisions.get( i );
+        positive[i] = trainRelation.get( i ).getLabel() > 0;
+      }
+      this.sigmoid = fitSigmoid( dec, positive );
+      return;
+    }
     try {
       this.model = rankLearn( trainRelation );
+      this.sigmoid = new double[2];
+      this.svm = LinearSvm.readLibSvmModel( model, sigmoid );
     } catch ( Exception e  ) {
       e.printStackTrace();
       LOG.log( Level.SEVERE, "Could not call svm-rank process to train model.",
@@ -58,18 +130,44 @@ public class LibSvmClassifier implements Classifier<Integer> {
 
   public void classify( UnlabeledFeatureVector<Integer> testInstance )
       throws IncomparableFeatureVectorException {
-
+    testInstance.setClassification( probability( testInstance ) >= .5 ? 1 :
+      -1 );
   }
 
   public void classify( TestRelation<Integer> testRelation )
       throws IncomparableFeatureVectorException {
+    for ( UnlabeledFeatureVector<Integer> ufv : testRelation ) {
+      classify( ufv );
+    }
+  }
+
+  /**
+   * Get the decision value of the instance, in-process (from the model file
+   * if it was trained with the binary): above 0 for the positive class.
+   * @param fv
+   * @return
+   */
+  public double score( FeatureVector<?> fv ) {
+    if ( svm == null ) {
+      throw new IllegalStateException( "The classifier hasn't been trained." );
+    }
+    return svm.decision( fv );
+  }
 
+  /**
+   * Get the probability that the instance is of the positive class.
+   * @param fv
+   * @return
+   */
+  public double probability( FeatureVector<?> fv ) {
+    return probability( score( fv ) );
   }
 
   public TreeMultimap<Double, FeatureVector<Integer>> rank( TestRelation<Integer> testRelation )
       throws IncomparableFeatureVectorException {
     try {
-      List<Double> predictions = rankClassify( testRelation, this.model );
+      List<Double> predictions = inProcess ? predict( testRelation ) :
+        rankClassify( testRelation, this.model );
       
       assert testRelation.size() == predictions.size();
 
@@ -97,84 +195,251 @@ public class LibSvmClassifier implements Classifier<Integer> {
     return null;
   }
 
+  /**
+   * Get the margin between the probabilities of the two classes.
+   */
   public double getCertainty( UnlabeledFeatureVector<Integer> testInstance )
       throws IncomparableFeatureVectorException {
-    // TODO implement
-    
-    return 0.0;
+    return Math.abs( 2 * probability( testInstance ) - 1 );
   }
   
 
   protected File rankLearn( TrainRelation<Integer> trainData ) throws IOException, InterruptedException {
+    SvmWorkspace ws = getWorkspace();
     Writer w = new SvmLightWriter();
-    File trainFile = new File( TRAIN_FILE );
+    File trainFile = ws.getFile( TRAIN_FILE );
     w.write( trainData, trainFile );
     
     assert trainFile.exists();
 
-    ProcessBuilder processBuilder = new ProcessBuilder( LIBSVM_TRAIN, "-s", "0",
-        "-t", "0", "-b", "1", TRAIN_FILE, MODEL_FILE );
-    processBuilder.redirectErrorStream( true );
-
-    Process process = processBuilder.start();
-    copy( process.getInputStream(), System.out );
-    process.waitFor();
-
-    File model = new File( MODEL_FILE );
+    File model = ws.getFile( MODEL_FILE );
+    ws.run( System.out, LIBSVM_TRAIN, "-s", "0", "-t", "0", "-b", "1",
+        trainFile.getPath(), model.getPath() );
+    trainFile.delete();
 
     assert model.exists();
     
     return model;
   }
   
-  protected List<Double> rankClassify( Relation<?> testData, File model )
-      throws IOException, InterruptedException {
-    Writer w = new SvmLightWriter();
-    File testFile = new File( TEST_FILE );
-    w.write( testData, testFile );
+  protected List<Double> rankClassify( final Relation<?> testData,
+      File model ) throws IOException, InterruptedException {
+    SvmWorkspace ws = getWorkspace();
+    // svm-predict reads its input and writes its output in one pass, so
+    // both can be piped
+    final File testFile = ws.getPipe( TEST_FILE );
+    final File predictions = ws.getPipe( PREDICTIONS_FILE );
+    Callable<Void> input = new Callable<Void>() {
+      public Void call() throws IOException {
+        writeTestData( testData, testFile );
+        return null;
+      }
+    };
+    Callable<List<Double>> output = new Callable<List<Double>>() {
+      public List<Double> call() throws IOException {
+        return readProbabilities( predictions );
+      }
+    };
+    List<Double> probabilities = ws.run( System.out, input, output,
+        LIBSVM_PREDICT, "-b", "1", testFile.getPath(), model.getPath(),
+        predictions.getPath() );
 
-    ProcessBuilder processBuilder = new ProcessBuilder(
-        LIBSVM_PREDICT, "-b", "1", TEST_FILE, MODEL_FILE, PREDICTIONS_FILE );
-    processBuilder.redirectErrorStream( true );
+    testFile.delete();
+    predictions.delete();
 
-    Process process = processBuilder.start();
-    copy( process.getInputStream(), System.out );
-    process.waitFor();
+    return probabilities;
+  }
 
-    File predictions = new File( PREDICTIONS_FILE );
-    
-    assert predictions.exists();
+  /**
+   * Write the test data in svm_light's (and libsvm's) format. Unlike
+   * SvmLightWriter.write( Relation, File ), this opens the file even for an
+   * empty relation, so that a binary reading it as a pipe gets its end.
+   * @param testData
+   * @param f
+   * @throws IOException
+   */
+  protected static void writeTestData( Relation<?> testData, File f )
+    throws IOException {
+    BufferedWriter bw = new BufferedWriter( new FileWriter( f ), 1 << 16 );
+    try {
+      new SvmLightWriter().write( testData, bw );
+    } finally {
+      bw.close();
+    }
+  }
 
+  /**
+   * Read svm-predict's probability output: the predicted label (1 or -1)
+   * plus (or minus) the probability of that label. The columns of the
+   * probabilities are in the model's label order, which the header gives.
+   * @param predictions
+   * @return
+   * @throws IOException
+   */
+  protected static List<Double> readProbabilities( File predictions )
+    throws IOException {
     List<Double> probabilities = new ArrayList<Double>();
     BufferedReader br = new BufferedReader( new FileReader( predictions ) );
-    String line = br.readLine(); // skip header
-    while ( (line = br.readLine() ) != null ) {
-       String[] parts = line.split( " " );
-       double label = Double.valueOf( parts[0] );
-       double prob = Double.valueOf( parts[1] );
-       double total = label;
-       if ( label > 0 ) {
-         total += prob;
-       } else {
-         total -= prob;
-       }
-       probabilities.add( total );
+    try {
+      String line = br.readLine();
+      if ( line == null ) {
+        return probabilities;
+      }
+      String[] header = line.trim().split( " " ); // labels 1 -1
+      double[] labels = new double[header.length - 1];
+      for ( int i = 0; i < labels.length; i++ ) {
+        labels[i] = Double.valueOf( header[i + 1] );
+      }
+      while ( ( line = br.readLine() ) != null ) {
+        String[] parts = line.trim().split( " " );
+        double label = Double.valueOf( parts[0] );
+        int column = 0;
+        while ( column < labels.length - 1 && labels[column] != label ) {
+          column++;
+        }
+        double prob = Double.valueOf( parts[column + 1] );
+        probabilities.add( ( label > 0 ) ? label + prob : label - prob );
+      }
+    } finally {
+      br.close();
     }
-    br.close();
-
-    new File( TRAIN_FILE ).delete();
-    new File( MODEL_FILE ).delete();
-    testFile.delete();
-    predictions.delete();
 
     return probabilities;
   }
-  
-  private static void copy( InputStream in, OutputStream out ) throws IOException {
-    int c = 0;
-    while ( c != -1 ) {
-        c = in.read();
-        out.write( (char) c );
+
+  /**
+   * Predict in-process, in the same form as rankClassify: the predicted
+   * label (1 or -1) plus (or minus) the probability of that label.
+   * @param testData
+   * @return
+   */
+  protected List<Double> predict( Relation<?> testData ) {
+    List<Double> predictions = svm.decisions( testData );
+    for ( int i = 0; i < predictions.size(); i++ ) {
+      double prob = probability( predictions.get( i ) );
+      predictions.set( i, ( prob >= .5 ) ? 1 + prob : -1 - ( 1 - prob ) );
     }
+
+    return predictions;
+  }
+
+  /**
+   * Turn a decision value into the probability of the positive class with
+   * the sigmoid.
+   * @param dec
+   * @return
+   */
+  protected double probability( double dec ) {
+    double fApB = dec * sigmoid[0] + sigmoid[1];
+    return ( fApB >= 0 ) ? Math.exp( -fApB ) / ( 1 + Math.exp( -fApB ) )
+        : 1 / ( 1 + Math.exp( fApB ) );
   }
+
+  /**
+   * Fit Platt's sigmoid P(positive | d) = 1 / (1 + exp(A d + B)) to the
+   * decision values, by Newton's method with backtracking (Lin, Lin and
+   * Weng, "A note on Platt's probabilistic outputs for support vector
+   * machines", 2007), as libsvm's -b 1 does. libsvm fits it to
+   * cross-validated decisions; these are the training ones.
+   * @param dec The decision values.
+   * @param positive Whether each is of the positive class.
+   * @return A and B.
+   */
+  protected static double[] fitSigmoid( double[] dec, boolean[] positive ) {
+    int prior1 = 0;
+    for ( boolean p : positive ) {
+      if ( p ) {
+        prior1++;
+      }
+    }
+    int prior0 = dec.length - prior1;
+    double hiTarget = ( prior1 + 1.0 ) / ( prior1 + 2.0 );
+    double loTarget = 1 / ( prior0 + 2.0 );
+    double[] t = new double[dec.length];
+    for ( int i = 0; i < dec.length; i++ ) {
+      t[i] = positive[i] ? hiTarget : loTarget;
+    }
+
+    double a = 0.0;
+    double b = Math.log( ( prior0 + 1.0 ) / ( prior1 + 1.0 ) );
+    double fval = sigmoidLoss( dec, t, a, b );
+    for ( int iter = 0; iter < 100; iter++ ) {
+      // the gradient and the Hessian (plus sigma, for stability)
+      double h11 = 1e-12;
+      double h22 = 1e-12;
+      double h21 = 0.0;
+      double g1 = 0.0;
+      double g2 = 0.0;
+      for ( int i = 0; i < dec.length; i++ ) {
+        double fApB = dec[i] * a + b;
+        double p;
+        double q;
+        if ( fApB >= 0 ) {
+          p = Math.exp( -fApB ) / ( 1.0 + Math.exp( -fApB ) );
+          q = 1.0 / ( 1.0 + Math.exp( -fApB ) );
+        } else {
+          p = 1.0 / ( 1.0 + Math.exp( fApB ) );
+          q = Math.exp( fApB ) / ( 1.0 + Math.exp( fApB ) );
+        }
+        double d2 = p * q;
+        h11 += dec[i] * dec[i] * d2;
+        h22 += d2;
+        h21 += dec[i] * d2;
+        double d1 = t[i] - p;
+        g1 += dec[i] * d1;
+        g2 += d1;
+      }
+      if ( Math.abs( g1 ) < 1e-5 && Math.abs( g2 ) < 1e-5 ) {
+        break;
+      }
+
+      double det = h11 * h22 - h21 * h21;
+      double dA = -( h22 * g1 - h21 * g2 ) / det;
+      double dB = -( -h21 * g1 + h11 * g2 ) / det;
+      double gd = g1 * dA + g2 * dB;
+      double step = 1.0;
+      while ( step >= 1e-10 ) {
+        double newA = a + step * dA;
+        double newB = b + step * dB;
+        double newf = sigmoidLoss( dec, t, newA, newB );
+        if ( newf < fval + 0.0001 * step * gd ) {
+          a = newA;
+          b = newB;
+          fval = newf;
+          break;
+        }
+        step /= 2.0;
+      }
+      if ( step < 1e-10 ) {
+        LOG.log( Level.FINE, "Line search fails in fitting the sigmoid" );
+        break;
+      }
+    }
+
+    return new double[] { a, b };
+  }
+
+  /**
+   * Calculate the cross-entropy of the sigmoid against the targets.
+   * @param dec
+   * @param t
+   * @param a
+   * @param b
+   * @return
+   */
+  protected static double sigmoidLoss( double[] dec, double[] t, double a,
+      double b ) {
+    double fval = 0.0;
+    for ( int i = 0; i < dec.length; i++ ) {
+      double fApB = dec[i] * a + b;
+      if ( fApB >= 0 ) {
+        fval += t[i] * fApB + Math.log( 1 + Math.exp( -fApB ) );
+      } else {
+        fval += ( t[i] - 1 ) * fApB + Math.log( 1 + Math.exp( fApB ) );
+      }
+    }
+
+    return fval;
+  }
+
 }
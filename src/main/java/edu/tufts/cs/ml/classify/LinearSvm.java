@@ -0,0 +1,793 @@
+package edu.tufts.cs.ml.classify;
+
+import java.io.BufferedReader;
+import java.io.File;
+import java.io.FileReader;
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.HashMap;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Random;
+import java.util.SortedMap;
+import java.util.TreeMap;
+import java.util.logging.Level;
+import java.util.logging.Logger;
+
+import edu.tufts.cs.ml.Feature;
+import edu.tufts.cs.ml.FeatureVector;
+import edu.tufts.cs.ml.LabeledFeatureVector;
+import edu.tufts.cs.ml.Relation;
+import edu.tufts.cs.ml.SparseRelation;
+import edu.tufts.cs.ml.SparseVector;
+import edu.tufts.cs.ml.TrainRelation;
+import edu.tufts.cs.ml.util.VectorMath;
+
+/**
+ * A linear SVM trained in-process by dual coordinate descent (Hsieh et al.,
+ * "A dual coordinate descent method for large-scale linear SVM", 2008) on
+ * the sparse rows of the training relation, so that training and
+ * predicting don't have to write files and run the svm_light, svm_rank or
+ * libsvm binaries.
+ *
+ * The ranking (and pairwise) SVMs solve the same problem over the
+ * differences of pairs of rows, which are never built: the pairs are only
+ * indices, and their inner products are taken from the two rows.
+ *
+ * Like liblinear, the bias of the classifier is an extra feature of value
+ * 1, so it is regularized along with the weights. Missing values count as
+ * 0.
+ */
+public class LinearSvm {
+  /** The Logger. */
+  private static final Logger LOG =  Logger.getLogger(
+      LinearSvm.class.getName() );
+  /** Stop when the projected gradients are all within this of each other. */
+  public static final double DEFAULT_EPSILON = .1;
+  /** The most passes over the examples. */
+  public static final int DEFAULT_MAX_ITERATIONS = 1000;
+  /**
+   * The most pairs to train on every one of: each keeps a dual variable, so
+   * this is 400 MB of them. Sample more than this with a PairSampler.
+   */
+  public static final long MAX_PAIRS = 50000000;
+  /** The random seed for the order of the examples. */
+  protected static final long SEED = 0;
+  /** The features, by column. */
+  protected final String[] featureNames;
+  /** Mapping from the feature name to its column. */
+  protected final Map<String, Integer> featureIndices;
+  /** The weight of each feature. */
+  protected final double[] weights;
+  /** The bias. */
+  protected final double bias;
+
+  /**
+   * Default constructor.
+   * @param featureNames The features, by column.
+   * @param weights The weight of each feature.
+   * @param bias
+   */
+  public LinearSvm( String[] featureNames, double[] weights, double bias ) {
+    if ( featureNames.length != weights.length ) {
+      throw new IllegalArgumentException( "Mismatched lengths: " +
+          featureNames.length + " features, " + weights.length + " weights" );
+    }
+    this.featureNames = featureNames;
+    this.featureIndices = SparseVector.indexColumns( featureNames );
+    this.weights = weights;
+    this.bias = bias;
+  }
+
+  /**
+   * Read a linear model written by svm_learn or svm_rank_learn. Its weights
+   * are the support vectors times their alpha * y, summed, and its bias is
+   * minus the threshold b. Its features are named by their indices, as
+   * SvmLightWriter writes them.
+   * @param model
+   * @return
+   * @throws IOException If the model isn't linear or can't be read.
+   */
+  public static LinearSvm readSvmLightModel( File model ) throws IOException {
+    Map<String, Double> weights = new LinkedHashMap<String, Double>();
+    double threshold = 0.0;
+    int numSupportVectors = -1;
+    BufferedReader br = new BufferedReader( new FileReader( model ) );
+    try {
+      String line = br.readLine(); // the version
+      while ( numSupportVectors < 0 && ( line = br.readLine() ) != null ) {
+        String value = line.substring( 0, Math.max( line.indexOf( '#' ),
+            0 ) ).trim();
+        if ( line.contains( "# kernel type" ) &&
+            !value.equals( "0" ) ) {
+          throw new IOException( "Not a linear model: kernel type " + value +
+              " in " + model );
+        } else if ( line.contains( "# number of support vectors" ) ) {
+          numSupportVectors = Integer.parseInt( value ) - 1;
+        }
+      }
+      line = br.readLine(); // the threshold
+      if ( line == null || numSupportVectors < 0 ) {
+        throw new IOException( "Not an svm_light model: " + model );
+      }
+      threshold = Double.parseDouble( line.substring( 0, line.indexOf( '#' ) )
+          .trim() );
+
+      while ( ( line = br.readLine() ) != null ) {
+        addSupportVector( line, weights );
+      }
+    } catch ( NumberFormatException e ) {
+      throw new IOException( "Malformed svm_light model: " + model, e );
+    } finally {
+      br.close();
+    }
+
+    return fromWeights( weights, -threshold );
+  }
+
+  /**
+   * Read a two-class linear model written by libsvm's svm-train, oriented
+   * so that the positive class (label 1) scores above 0. Its weights are the
+   * support vectors times their coefficients, summed, and its bias is minus
+   * rho.
+   * @param model
+   * @param sigmoid Where to put the model's probA and probB, for the
+   * positive class (if it has them, and this isn't null).
+   * @return
+   * @throws IOException If the model isn't linear or can't be read.
+   */
+  public static LinearSvm readLibSvmModel( File model, double[] sigmoid )
+    throws IOException {
+    Map<String, Double> weights = new LinkedHashMap<String, Double>();
+    double rho = 0.0;
+    boolean flip = false;
+    double[] prob = null;
+    BufferedReader br = new BufferedReader( new FileReader( model ) );
+    try {
+      String line;
+      while ( ( line = br.readLine() ) != null && !line.trim().equals(
+          "SV" ) ) {
+        String[] parts = line.trim().split( "\\s+" );
+        if ( parts[0].equals( "kernel_type" ) &&
+            !parts[1].equals( "linear" ) ) {
+          throw new IOException( "Not a linear model: " + parts[1] + " in " +
+              model );
+        } else if ( parts[0].equals( "nr_class" ) &&
+            !parts[1].equals( "2" ) ) {
+          throw new IOException( "Not a two-class model: " + model );
+        } else if ( parts[0].equals( "rho" ) ) {
+          rho = Double.parseDouble( parts[1] );
+        } else if ( parts[0].equals( "label" ) ) {
+          // the decision is positive for the first label
+          flip = Integer.parseInt( parts[1] ) <= 0;
+        } else if ( parts[0].equals( "probA" ) ) {
+          prob = ( prob == null ) ? new double[2] : prob;
+          prob[0] = Double.parseDouble( parts[1] );
+        } else if ( parts[0].equals( "probB" ) ) {
+          prob = ( prob == null ) ? new double[2] : prob;
+          prob[1] = Double.parseDouble( parts[1] );
+        }
+      }
+      if ( line == null ) {
+        throw new IOException( "Not a libsvm model: " + model );
+      }
+
+      while ( ( line = br.readLine() ) != null ) {
+        addSupportVector( line, weights );
+      }
+    } catch ( NumberFormatException e ) {
+      throw new IOException( "Malformed libsvm model: " + model, e );
+    } finally {
+      br.close();
+    }
+
+    if ( flip ) {
+      for ( Map.Entry<String, Double> e : weights.entrySet() ) {
+        e.setValue( -e.getValue() );
+      }
+    }
+    if ( prob != null && sigmoid != null ) {
+      // P(first label) = 1 / (1 + exp(A d + B)), so for the other label,
+      // whose decision is -d, it is 1 / (1 + exp(A (-d) - B))
+      sigmoid[0] = prob[0];
+      sigmoid[1] = flip ? -prob[1] : prob[1];
+    }
+    return fromWeights( weights, flip ? rho : -rho );
+  }
+
+  /**
+   * Add a support vector line ("coefficient index:value ... # comment") to
+   * the weights.
+   * @param line
+   * @param weights
+   */
+  protected static void addSupportVector( String line,
+      Map<String, Double> weights ) {
+    int comment = line.indexOf( '#' );
+    String[] tokens = ( comment < 0 ? line : line.substring( 0, comment ) )
+        .trim().split( "\\s+" );
+    if ( tokens[0].length() == 0 ) {
+      return;
+    }
+
+    double coef = Double.parseDouble( tokens[0] );
+    for ( int i = 1; i < tokens.length; i++ ) {
+      int colon = tokens[i].lastIndexOf( ':' );
+      String name = tokens[i].substring( 0, colon );
+      double v = coef * Double.parseDouble( tokens[i].substring( colon + 1 ) );
+      Double w = weights.get( name );
+      weights.put( name, ( w == null ) ? v : w + v );
+    }
+  }
+
+  /**
+   * Make a model from the weights by feature name.
+   * @param weights
+   * @param bias
+   * @return
+   */
+  protected static LinearSvm fromWeights( Map<String, Double> weights,
+      double bias ) {
+    String[] names = weights.keySet().toArray( new String[weights.size()] );
+    double[] w = new double[names.length];
+    for ( int j = 0; j < names.length; j++ ) {
+      w[j] = weights.get( names[j] );
+    }
+
+    return new LinearSvm( names, w, bias );
+  }
+
+  /**
+   * Train a classifier: labels above 0 are the positive class, the rest the
+   * negative one (as in svm_light).
+   * @param train
+   * @param c The tradeoff between the margin and the training error.
+   * @return
+   */
+  public static LinearSvm trainClassifier( TrainRelation<Integer> train,
+      double c ) {
+    SparseRelation<LabeledFeatureVector<Integer>> sparse = train.toSparse();
+    int n = sparse.size();
+    int[] plus = new int[n];
+    int[] minus = new int[n];
+    double[] y = new double[n];
+    for ( int i = 0; i < n; i++ ) {
+      plus[i] = i;
+      minus[i] = -1;
+      y[i] = ( train.get( i ).getLabel() > 0 ) ? 1 : -1;
+    }
+
+    double[] w = solve( sparse, plus, minus, y, c, true );
+    double[] weights = new double[sparse.numFeatures()];
+    System.arraycopy( w, 0, weights, 0, weights.length );
+    return new LinearSvm( sparse.getFeatureNames(), weights, w[w.length - 1] );
+  }
+
+  /**
+   * Train a ranker (as in svm_rank): for every two rows of the same query
+   * (qid) with different labels, the one with the higher label should score
+   * higher. Rows without a qid are one query. As in svm_rank, the tradeoff
+   * is divided by the number of queries.
+   * @param train
+   * @param c
+   * @return
+   */
+  public static LinearSvm trainRanker( TrainRelation<Integer> train,
+      double c ) {
+    Map<Integer, List<Integer>> queries = new HashMap<Integer, List<Integer>>();
+    for ( int i = 0; i < train.size(); i++ ) {
+      Integer qid = train.get( i ).getQid();
+      List<Integer> rows = queries.get( qid );
+      if ( rows == null ) {
+        rows = new ArrayList<Integer>();
+        queries.put( qid, rows );
+      }
+      rows.add( i );
+    }
+
+    // each two labels of a query give a block of pairs, every row with
+    // the higher label and every row with the lower one
+    List<int[]> higher = new ArrayList<int[]>();
+    List<int[]> lower = new ArrayList<int[]>();
+    for ( List<Integer> rows : queries.values() ) {
+      SortedMap<Integer, List<Integer>> byLabel =
+          new TreeMap<Integer, List<Integer>>();
+      for ( int a : rows ) {
+        Integer label = train.get( a ).getLabel();
+        List<Integer> labeled = byLabel.get( label );
+        if ( labeled == null ) {
+          labeled = new ArrayList<Integer>();
+          byLabel.put( label, labeled );
+        }
+        labeled.add( a );
+      }
+
+      List<int[]> levels = new ArrayList<int[]>();
+      for ( List<Integer> labeled : byLabel.values() ) {
+        int[] level = new int[labeled.size()];
+        for ( int k = 0; k < level.length; k++ ) {
+          level[k] = labeled.get( k );
+        }
+        levels.add( level );
+      }
+      for ( int hi = 1; hi < levels.size(); hi++ ) {
+        for ( int lo = 0; lo < hi; lo++ ) {
+          higher.add( levels.get( hi ) );
+          lower.add( levels.get( lo ) );
+        }
+      }
+    }
+
+    SparseRelation<LabeledFeatureVector<Integer>> sparse = train.toSparse();
+    double[] w = solveAll( sparse, higher.toArray( new int[higher.size()][] ),
+        lower.toArray( new int[lower.size()][] ), c / queries.size() );
+    return new LinearSvm( sparse.getFeatureNames(), w, 0.0 );
+  }
+
+  /**
+   * Train a ranker on the pairwise transform: every row with the positive
+   * label should score higher than every row with the negative one (or, past
+   * PairSampler.DEFAULT_MAX_PAIRS pairs, than a stratified sample of them).
+   * Training a bias-free classifier on the differences in both directions
+   * (as SvmLightPairwiseTransformClassifier writes them for svm_light) is
+   * the same as this with twice the tradeoff.
+   * @param train
+   * @param pos The positive label.
+   * @param neg The negative label.
+   * @param c
+   * @return
+   */
+  public static LinearSvm trainPairwise( TrainRelation<Integer> train,
+      Integer pos, Integer neg, double c ) {
+    return trainPairwise( train, pos, neg, c, new PairSampler() );
+  }
+
+  /**
+   * Train a ranker on the pairwise transform, on the pairs the sampler
+   * chooses. To mine hard negatives, a first model is trained on the
+   * sampled pairs and the model is trained again with the mined ones.
+   * @param train
+   * @param pos The positive label.
+   * @param neg The negative label.
+   * @param c
+   * @param sampler
+   * @return
+   */
+  public static LinearSvm trainPairwise( TrainRelation<Integer> train,
+      Integer pos, Integer neg, double c, PairSampler sampler ) {
+    SparseRelation<LabeledFeatureVector<Integer>> sparse = train.toSparse();
+    int[] posRows = rowsLabeled( train, pos );
+    int[] negRows = rowsLabeled( train, neg );
+    if ( sampler.samplesAll( posRows, negRows ) ) {
+      return new LinearSvm( sparse.getFeatureNames(), solveAll( sparse,
+          posRows, negRows, c ), 0.0 );
+    }
+    int[][] pairs = samplePairs( sparse, posRows, negRows, c, sampler );
+    return trainPairs( sparse, pairs[0], pairs[1], c );
+  }
+
+  /**
+   * Choose the (positive, negative) pairs of rows to train on, when the
+   * sampler doesn't take every pair.
+   * @param sparse The rows.
+   * @param posRows The positive rows.
+   * @param negRows The negative rows.
+   * @param c The tradeoff of the model to mine hard negatives with.
+   * @param sampler
+   * @return The higher rows and the lower rows of the pairs.
+   */
+  public static int[][] samplePairs( SparseRelation<?> sparse, int[] posRows,
+      int[] negRows, double c, PairSampler sampler ) {
+    int[][] pairs = sampler.sample( posRows, negRows );
+    if ( sampler.mines( posRows, negRows ) ) {
+      double[] w = solve( sparse, pairs[0], pairs[1], null, c, false );
+      double[] scores = new double[sparse.size()];
+      int[] rowPtr = sparse.getRowPtr();
+      double[] vals = zeroMissing( sparse.getValues() );
+      for ( int i = 0; i < scores.length; i++ ) {
+        scores[i] = VectorMath.sparseDot( sparse.getColumnIndices(), vals,
+            rowPtr[i], rowPtr[i + 1], w, 0 );
+      }
+      int sampled = pairs[0].length;
+      pairs = sampler.mine( posRows, negRows, scores, pairs );
+      LOG.log( Level.FINE, "Mined " + ( pairs[0].length - sampled ) +
+          " hard-negative pairs" );
+    }
+
+    return pairs;
+  }
+
+  /**
+   * Get the rows with the label.
+   * @param train
+   * @param label
+   * @return
+   */
+  protected static int[] rowsLabeled( TrainRelation<Integer> train,
+      Integer label ) {
+    int[] rows = new int[train.size()];
+    int n = 0;
+    for ( int i = 0; i < train.size(); i++ ) {
+      if ( train.get( i ).getLabel().equals( label ) ) {
+        rows[n++] = i;
+      }
+    }
+
+    return Arrays.copyOf( rows, n );
+  }
+
+  /**
+   * Train a bias-free SVM on the differences of the pairs of sparse rows.
+   * @param sparse
+   * @param higher
+   * @param lower
+   * @param c
+   * @return
+   */
+  protected static LinearSvm trainPairs( SparseRelation<?> sparse,
+      int[] higher, int[] lower, double c ) {
+    double[] w = solve( sparse, higher, lower, null, c, false );
+    return new LinearSvm( sparse.getFeatureNames(), w, 0.0 );
+  }
+
+  /**
+   * Solve the dual of the L1-loss (hinge) SVM by coordinate descent. Example
+   * i is row plus[i], minus row minus[i] if that isn't -1, with label y[i].
+   * @param sparse
+   * @param plus
+   * @param minus
+   * @param y The labels, or null if they are all 1.
+   * @param c
+   * @param bias Whether to add a feature of value 1 (the last weight).
+   * @return The weights.
+   */
+  protected static double[] solve( SparseRelation<?> sparse, int[] plus,
+      int[] minus, double[] y, double c, boolean bias ) {
+    int[] rowPtr = sparse.getRowPtr();
+    int[] cols = sparse.getColumnIndices();
+    double[] vals = zeroMissing( sparse.getValues() );
+
+    int n = plus.length;
+    int numFeatures = sparse.numFeatures();
+    double[] w = new double[numFeatures + ( bias ? 1 : 0 )];
+    double[] alpha = new double[n];
+    double[] qd = new double[n];
+    int[] order = new int[n];
+    for ( int i = 0; i < n; i++ ) {
+      int a = plus[i];
+      int b = minus[i];
+      qd[i] = squaredNorm( vals, rowPtr[a], rowPtr[a + 1] ) + ( bias ? 1 : 0 );
+      if ( b >= 0 ) {
+        qd[i] += squaredNorm( vals, rowPtr[b], rowPtr[b + 1] ) -
+            2 * VectorMath.sparseDot( cols, vals, rowPtr[a], rowPtr[a + 1],
+                cols, vals, rowPtr[b], rowPtr[b + 1] );
+      }
+      order[i] = i;
+    }
+
+    Random random = new Random( SEED );
+    int iter = 0;
+    for ( ; iter < DEFAULT_MAX_ITERATIONS; iter++ ) {
+      for ( int i = n - 1; i > 0; i-- ) {
+        int j = random.nextInt( i + 1 );
+        int tmp = order[i];
+        order[i] = order[j];
+        order[j] = tmp;
+      }
+
+      double maxPG = Double.NEGATIVE_INFINITY;
+      double minPG = Double.POSITIVE_INFINITY;
+      for ( int k = 0; k < n; k++ ) {
+        int i = order[k];
+        if ( qd[i] <= 0 ) {
+          continue;
+        }
+        int a = plus[i];
+        int b = minus[i];
+        double wx = VectorMath.sparseDot( cols, vals, rowPtr[a], rowPtr[a + 1],
+            w, 0 );
+        if ( b >= 0 ) {
+          wx -= VectorMath.sparseDot( cols, vals, rowPtr[b], rowPtr[b + 1],
+              w, 0 );
+        }
+        if ( bias ) {
+          wx += w[numFeatures];
+        }
+
+        double yi = ( y == null ) ? 1 : y[i];
+        double g = yi * wx - 1;
+        double pg = g;
+        if ( alpha[i] == 0 ) {
+          pg = Math.min( g, 0 );
+        } else if ( alpha[i] == c ) {
+          pg = Math.max( g, 0 );
+        }
+        maxPG = Math.max( maxPG, pg );
+        minPG = Math.min( minPG, pg );
+
+        if ( Math.abs( pg ) > 1e-12 ) {
+          double old = alpha[i];
+          alpha[i] = Math.min( Math.max( old - g / qd[i], 0 ), c );
+          double delta = ( alpha[i] - old ) * yi;
+          addRow( w, cols, vals, rowPtr[a], rowPtr[a + 1], delta );
+          if ( b >= 0 ) {
+            addRow( w, cols, vals, rowPtr[b], rowPtr[b + 1], -delta );
+          }
+          if ( bias ) {
+            w[numFeatures] += delta;
+          }
+        }
+      }
+
+      if ( maxPG - minPG <= DEFAULT_EPSILON ) {
+        break;
+      }
+    }
+
+    LOG.log( Level.FINE, "Linear SVM: " + n + " examples, " + iter +
+        " iterations" );
+    return w;
+  }
+
+  /**
+   * Solve the same dual, bias-free, on the difference of every (positive,
+   * negative) pair without listing the pairs.
+   * @param sparse
+   * @param pos The positive rows.
+   * @param neg The negative rows.
+   * @param c
+   * @return The weights.
+   * @throws IllegalArgumentException If there are more than MAX_PAIRS pairs.
+   */
+  protected static double[] solveAll( SparseRelation<?> sparse, int[] pos,
+      int[] neg, double c ) {
+    return solveAll( sparse, new int[][] { pos }, new int[][] { neg }, c );
+  }
+
+  /**
+   * Solve the same dual, bias-free, on the difference of every pair of a
+   * higher[k] row and a lower[k] row, for each block k, without listing the
+   * pairs. Only the dual variables are kept per pair, which is why there
+   * can be at most MAX_PAIRS of them; each pair's diagonal entry is
+   * computed when it is visited, and each pass visits the pairs in the
+   * order of a random affine permutation of their indices, i to
+   * (m i + o) mod n with m coprime to the number of pairs n.
+   * @param sparse
+   * @param higher The rows of each block that should score higher.
+   * @param lower The rows of each block that should score lower.
+   * @param c
+   * @return The weights.
+   * @throws IllegalArgumentException If there are more than MAX_PAIRS pairs.
+   */
+  protected static double[] solveAll( SparseRelation<?> sparse,
+      int[][] higher, int[][] lower, double c ) {
+    int[] rowPtr = sparse.getRowPtr();
+    int[] cols = sparse.getColumnIndices();
+    double[] vals = zeroMissing( sparse.getValues() );
+
+    double[] norms = new double[sparse.size()];
+    for ( int i = 0; i < norms.length; i++ ) {
+      norms[i] = squaredNorm( vals, rowPtr[i], rowPtr[i + 1] );
+    }
+    // the index of the first pair of each block
+    long[] start = new long[higher.length + 1];
+    for ( int k = 0; k < higher.length; k++ ) {
+      start[k + 1] = start[k] + (long) higher[k].length * lower[k].length;
+    }
+    long numPairs = start[higher.length];
+    if ( numPairs > MAX_PAIRS ) {
+      throw new IllegalArgumentException( "Too many pairs to train on (" +
+          numPairs + "); sample them instead" );
+    }
+    double[] w = new double[sparse.numFeatures()];
+    double[] alpha = new double[(int) numPairs];
+
+    Random random = new Random( SEED );
+    int iter = 0;
+    for ( ; iter < DEFAULT_MAX_ITERATIONS && numPairs > 0; iter++ ) {
+      long stride = randomCoprime( numPairs, random );
+      long index = (long) ( random.nextDouble() * numPairs );
+
+      double maxPG = Double.NEGATIVE_INFINITY;
+      double minPG = Double.POSITIVE_INFINITY;
+      for ( long k = 0; k < numPairs; k++ ) {
+        index = ( index + stride ) % numPairs;
+        int i = (int) index;
+        int block = blockOf( start, i );
+        int offset = i - (int) start[block];
+        int a = higher[block][offset / lower[block].length];
+        int b = lower[block][offset % lower[block].length];
+        double qd = norms[a] + norms[b] - 2 * VectorMath.sparseDot( cols,
+            vals, rowPtr[a], rowPtr[a + 1], cols, vals, rowPtr[b],
+            rowPtr[b + 1] );
+        if ( qd <= 0 ) {
+          continue;
+        }
+
+        double g = VectorMath.sparseDot( cols, vals, rowPtr[a],
+            rowPtr[a + 1], w, 0 ) - VectorMath.sparseDot( cols, vals,
+            rowPtr[b], rowPtr[b + 1], w, 0 ) - 1;
+        double pg = g;
+        if ( alpha[i] == 0 ) {
+          pg = Math.min( g, 0 );
+        } else if ( alpha[i] == c ) {
+          pg = Math.max( g, 0 );
+        }
+        maxPG = Math.max( maxPG, pg );
+        minPG = Math.min( minPG, pg );
+
+        if ( Math.abs( pg ) > 1e-12 ) {
+          double old = alpha[i];
+          alpha[i] = Math.min( Math.max( old - g / qd, 0 ), c );
+          double delta = alpha[i] - old;
+          addRow( w, cols, vals, rowPtr[a], rowPtr[a + 1], delta );
+          addRow( w, cols, vals, rowPtr[b], rowPtr[b + 1], -delta );
+        }
+      }
+
+      if ( maxPG - minPG <= DEFAULT_EPSILON ) {
+        break;
+      }
+    }
+
+    LOG.log( Level.FINE, "Linear SVM: " + numPairs + " pairs, " + iter +
+        " iterations" );
+    return w;
+  }
+
+  /**
+   * Get the block of a pair: the last one starting at or before it, which
+   * is never empty.
+   * @param start The index of the first pair of each block, and the number
+   *          of pairs.
+   * @param i The index of the pair.
+   * @return
+   */
+  protected static int blockOf( long[] start, int i ) {
+    int lo = 0;
+    int hi = start.length - 2;
+    while ( lo < hi ) {
+      int mid = ( lo + hi + 1 ) >>> 1;
+      if ( start[mid] <= i ) {
+        lo = mid;
+      } else {
+        hi = mid - 1;
+      }
+    }
+    return lo;
+  }
+
+  /**
+   * Get a random number in [1, n) that is coprime to n (1 if n is 1).
+   * @param n
+   * @param random
+   * @return
+   */
+  protected static long randomCoprime( long n, Random random ) {
+    if ( n <= 2 ) {
+      return 1;
+    }
+    while ( true ) {
+      long m = 1 + (long) ( random.nextDouble() * ( n - 1 ) );
+      long a = n;
+      long b = m;
+      while ( b != 0 ) {
+        long t = a % b;
+        a = b;
+        b = t;
+      }
+      if ( a == 1 ) {
+        return m;
+      }
+    }
+  }
+
+  /**
+   * Copy the values with the missing ones (NaN) as 0.
+   * @param values
+   * @return
+   */
+  protected static double[] zeroMissing( double[] values ) {
+    double[] vals = values.clone();
+    for ( int i = 0; i < vals.length; i++ ) {
+      if ( Double.isNaN( vals[i] ) ) {
+        vals[i] = 0.0;
+      }
+    }
+
+    return vals;
+  }
+
+  /**
+   * Calculate the squared magnitude of a sparse row.
+   * @param vals
+   * @param from
+   * @param to
+   * @return
+   */
+  protected static double squaredNorm( double[] vals, int from, int to ) {
+    double sum = 0.0;
+    for ( int i = from; i < to; i++ ) {
+      sum += vals[i] * vals[i];
+    }
+    return sum;
+  }
+
+  /**
+   * Add a multiple of a sparse row to the weights.
+   * @param w
+   * @param cols
+   * @param vals
+   * @param from
+   * @param to
+   * @param scale
+   */
+  protected static void addRow( double[] w, int[] cols, double[] vals,
+      int from, int to, double scale ) {
+    for ( int i = from; i < to; i++ ) {
+      w[cols[i]] += scale * vals[i];
+    }
+  }
+
+  /**
+   * Get the decision value of the feature vector: positive for the positive
+   * class, and higher for a higher rank. Features the model doesn't know are
+   * ignored.
+   * @param fv
+   * @return
+   */
+  public double decision( FeatureVector<?> fv ) {
+    double sum = bias;
+    for ( Map.Entry<String, Feature<?>> e : fv.entrySet() ) {
+      Integer col = featureIndices.get( e.getKey() );
+      if ( col != null && e.getValue() != null ) {
+        double v = e.getValue().doubleValue();
+        if ( !Double.isNaN( v ) ) {
+          sum += weights[col] * v;
+        }
+      }
+    }
+
+    return sum;
+  }
+
+  /**
+   * Get the decision value of each row of the relation.
+   * @param relation
+   * @return
+   */
+  public List<Double> decisions( Relation<?> relation ) {
+    List<Double> decisions = new ArrayList<Double>( relation.size() );
+    for ( FeatureVector<?> fv : relation ) {
+      decisions.add( decision( fv ) );
+    }
+
+    return decisions;
+  }
+
+  /**
+   * Get the features, by column.
+   * @return
+   */
+  public String[] getFeatureNames() {
+    return this.featureNames;
+  }
+
+  /**
+   * Get the weight of each feature. This is not a copy.
+   * @return
+   */
+  public double[] getWeights() {
+    return this.weights;
+  }
+
+  /**
+   * Get the bias.
+   * @return
+   */
+  public double getBias() {
+    return this.bias;
+  }
+}
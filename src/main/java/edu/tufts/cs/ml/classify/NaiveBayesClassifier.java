@@ -1,20 +1,22 @@
 package edu.tufts.cs.ml.classify;
 
+import java.util.ArrayList;
+import java.util.Arrays;
 import java.util.HashMap;
 import java.util.List;
 import java.util.Map;
-import java.util.Map.Entry;
 import java.util.logging.Level;
 import java.util.logging.Logger;
 
+import edu.tufts.cs.ml.DenseRelation;
+import edu.tufts.cs.ml.Feature;
+import edu.tufts.cs.ml.FeatureVector;
 import edu.tufts.cs.ml.LabeledFeatureVector;
-import edu.tufts.cs.ml.Metadata;
 import edu.tufts.cs.ml.TestRelation;
 import edu.tufts.cs.ml.TrainRelation;
 import edu.tufts.cs.ml.UnlabeledFeatureVector;
 import edu.tufts.cs.ml.exception.IncomparableFeatureVectorException;
 import edu.tufts.cs.ml.util.MathUtil;
-import edu.tufts.cs.ml.util.Util;
 
 public class NaiveBayesClassifier<E> implements Classifier<E> {
   /** The Logger. */
@@ -28,6 +30,25 @@ public class NaiveBayesClassifier<E> implements Classifier<E> {
       new HashMap<E, Map<String, Double>>();
   /** The prior probability for each label. */
   protected Map<E, Double> priorProbs = new HashMap<E, Double>();
+  /*
+   * The model compiled into arrays for scoring, by label index then feature
+   * index.
+   */
+  /** The labels, in the order of the arrays. */
+  protected List<E> labels = new ArrayList<E>();
+  /** The features, in the order of the arrays. */
+  protected String[] featureNames = new String[0];
+  /** The index of each feature. */
+  protected Map<String, Integer> featureIndices =
+      new HashMap<String, Integer>();
+  /** The log of each label's prior probability. */
+  protected double[] logPriors = new double[0];
+  /** The mean of each feature, by label. */
+  protected double[][] means = new double[0][];
+  /** The inverse of each feature's variance, by label. */
+  protected double[][] inverseVariances = new double[0][];
+  /** The log of each feature's Gaussian normalizer, by label. */
+  protected double[][] logNormalizers = new double[0][];
 
   /**
    * Default constructor.
@@ -40,65 +61,226 @@ public class NaiveBayesClassifier<E> implements Classifier<E> {
    * Train the classifier.
    */
   public void train( TrainRelation<E> trainRelation ) {
+    DenseRelation<LabeledFeatureVector<E>> dense = trainRelation.toDense();
+
     // separate the training data by class
-    Map<E, Integer> counts = new HashMap<E, Integer>();
-    Map<E, TrainRelation<E>> subrelations = new HashMap<E, TrainRelation<E>>();
-    for ( LabeledFeatureVector<E> fv : trainRelation ) {
-      TrainRelation<E> subrelation = subrelations.get( fv.getLabel() );
-      if ( subrelation == null ) {
-        subrelation = new TrainRelation<E>( fv.getLabel().toString(),
-            (Metadata) trainRelation.getMetadata().clone() );
-        subrelations.put( fv.getLabel(), subrelation );
+    Map<E, List<Integer>> rowsByClass = new HashMap<E, List<Integer>>();
+    for ( int i = 0; i < dense.size(); i++ ) {
+      E label = dense.getFeatureVector( i ).getLabel();
+      List<Integer> rows = rowsByClass.get( label );
+      if ( rows == null ) {
+        rows = new ArrayList<Integer>();
+        rowsByClass.put( label, rows );
       }
-      subrelation.add( fv );
-
-      Integer count = counts.get( fv.getLabel() );
-      if ( count == null ) count = 0;
-      counts.put( fv.getLabel(), ++count );
+      rows.add( i );
     }
 
     // change the counts into the prior probabilities
-    for ( E label : counts.keySet() ) {
-      double priorProb = (double) counts.get( label ) /
+    for ( E label : rowsByClass.keySet() ) {
+      double priorProb = (double) rowsByClass.get( label ).size() /
           (double) trainRelation.size();
       priorProbs.put( label, priorProb );
     }
 
     // now get the means and std devs for each feature, separated by class
-    for ( E label : subrelations.keySet() ) {
-      TrainRelation<E> subrelation = subrelations.get( label );
-      featureMeans.put( label, calculateFeatureMeans( subrelation ) );
-      featureStdDevs.put( label, calculateFeatureStdDevs( subrelation ) );
+    for ( E label : rowsByClass.keySet() ) {
+      List<Integer> rows = rowsByClass.get( label );
+      featureMeans.put( label, calculateFeatureMeans( dense, rows ) );
+      featureStdDevs.put( label, calculateFeatureStdDevs( dense, rows ) );
     }
+
+    compile( dense.getFeatureNames() );
   }
 
   /**
-   * Calculate the Maximum Likelihood Estimation.
+   * Compile the trained model into per-label arrays, so that scoring is a
+   * tight loop in log space instead of map lookups and a product of pdfs
+   * (which underflows to 0 with many features).
+   * @param names The features.
+   */
+  protected void compile( String[] names ) {
+    labels = new ArrayList<E>( featureMeans.keySet() );
+    featureNames = names;
+    featureIndices = new HashMap<String, Integer>();
+    for ( int j = 0; j < names.length; j++ ) {
+      featureIndices.put( names[j], j );
+    }
+
+    int numLabels = labels.size();
+    logPriors = new double[numLabels];
+    means = new double[numLabels][names.length];
+    inverseVariances = new double[numLabels][names.length];
+    logNormalizers = new double[numLabels][names.length];
+    double logSqrt2Pi = .5 * Math.log( 2 * Math.PI );
+    for ( int c = 0; c < numLabels; c++ ) {
+      E label = labels.get( c );
+      logPriors[c] = Math.log( priorProbs.get( label ) );
+      for ( int j = 0; j < names.length; j++ ) {
+        double stdev = featureStdDevs.get( label ).get( names[j] );
+        means[c][j] = featureMeans.get( label ).get( names[j] );
+        inverseVariances[c][j] = 1.0 / ( stdev * stdev );
+        logNormalizers[c][j] = -Math.log( stdev ) - logSqrt2Pi;
+      }
+    }
+  }
+
+  /**
+   * Get the labels, in the order of the columns of the scores.
    * @return
    */
-  protected Map<E, Double> calculateMLE(
-      UnlabeledFeatureVector<E> testInstance ) {
-    Map<E, Double> probs = new HashMap<E, Double>();
+  public List<E> getLabels() {
+    return this.labels;
+  }
 
-    for ( E label : featureMeans.keySet() ) {
-      Map<String, Double> means = featureMeans.get( label );
-      Map<String, Double> stdevs = featureStdDevs.get( label );
+  /**
+   * Fill the feature vector's values into the array, in the model's feature
+   * order. Features the model doesn't know are ignored, and those the vector
+   * doesn't have (or has missing) are NaN.
+   * @param fv
+   * @param dest
+   * @param offset
+   */
+  protected void fill( FeatureVector<?> fv, double[] dest, int offset ) {
+    Arrays.fill( dest, offset, offset + featureNames.length, Double.NaN );
+    for ( Map.Entry<String, Feature<?>> e : fv.entrySet() ) {
+      Integer j = featureIndices.get( e.getKey() );
+      if ( j != null && e.getValue() != null ) {
+        dest[offset + j] = e.getValue().doubleValue();
+      }
+    }
+  }
 
-      // start with the prior probabilities
-      double prob = priorProbs.get( label );
+  /**
+   * Calculate the log of the joint probability of each label and the row at
+   * the offset; NaN values are left out.
+   * @param x
+   * @param offset
+   * @param dest The log probabilities, by label index.
+   */
+  protected void logJoint( double[] x, int offset, double[] dest ) {
+    int numFeatures = featureNames.length;
+    for ( int c = 0; c < dest.length; c++ ) {
+      double[] mu = means[c];
+      double[] inv = inverseVariances[c];
+      double[] norm = logNormalizers[c];
+      double logProb = logPriors[c];
+      for ( int j = 0; j < numFeatures; j++ ) {
+        double v = x[offset + j];
+        if ( v == v ) { // not NaN
+          double diff = v - mu[j];
+          logProb += norm[j] - .5 * diff * diff * inv[j];
+        }
+      }
+      dest[c] = logProb;
+    }
+  }
+
+  /**
+   * Calculate the log of the joint probability of each label and the test
+   * instance.
+   * @param testInstance
+   * @return The log probabilities, by label index.
+   */
+  public double[] score( FeatureVector<?> testInstance ) {
+    double[] x = new double[featureNames.length];
+    fill( testInstance, x, 0 );
+    double[] scores = new double[labels.size()];
+    logJoint( x, 0, scores );
+    return scores;
+  }
+
+  /**
+   * Calculate the log of the joint probability of each label and each test
+   * instance, over the relation as one matrix.
+   * @param testRelation
+   * @return The log probabilities, by row then label index.
+   */
+  public double[][] score( TestRelation<E> testRelation ) {
+    int numFeatures = featureNames.length;
+    double[] x = new double[testRelation.size() * numFeatures];
+    for ( int i = 0; i < testRelation.size(); i++ ) {
+      fill( testRelation.get( i ), x, i * numFeatures );
+    }
+
+    double[][] scores = new double[testRelation.size()][labels.size()];
+    for ( int i = 0; i < scores.length; i++ ) {
+      logJoint( x, i * numFeatures, scores[i] );
+    }
 
-      // then multiply the probability by each feature pdf for the label
-      for ( String feat : testInstance.keySet() ) {
-        // get the probability density function of this value (n)
-        double mean = means.get( feat );
-        double stdev = stdevs.get( feat );
-        double x = (Double) testInstance.get( feat ).getValue();
-        double pdf = MathUtil.calcPdf( x, mean, stdev );
+    return scores;
+  }
 
-        prob = prob * pdf;
+  /**
+   * Turn log joint probabilities into the posterior probabilities, in place.
+   * @param logProbs
+   * @return
+   */
+  protected static double[] toPosteriors( double[] logProbs ) {
+    double max = Double.NEGATIVE_INFINITY;
+    for ( double lp : logProbs ) {
+      max = Math.max( max, lp );
+    }
+    double total = 0.0;
+    for ( int c = 0; c < logProbs.length; c++ ) {
+      logProbs[c] = Math.exp( logProbs[c] - max );
+      total += logProbs[c];
+    }
+    for ( int c = 0; c < logProbs.length; c++ ) {
+      logProbs[c] /= total;
+    }
+
+    return logProbs;
+  }
+
+  /**
+   * Get the index of the largest score (the first, on ties).
+   * @param scores
+   * @return
+   */
+  protected static int argMax( double[] scores ) {
+    int max = 0;
+    for ( int c = 1; c < scores.length; c++ ) {
+      if ( scores[c] > scores[max] ) {
+        max = c;
+      }
+    }
+    return max;
+  }
+
+  /**
+   * Get the difference between the two largest posterior probabilities.
+   * @param logProbs The log joint probabilities (overwritten).
+   * @return
+   */
+  protected static double certainty( double[] logProbs ) {
+    if ( logProbs.length < 2 ) {
+      return 1.0;
+    }
+    double[] posteriors = toPosteriors( logProbs );
+    double max = Double.NEGATIVE_INFINITY;
+    double second = Double.NEGATIVE_INFINITY;
+    for ( double p : posteriors ) {
+      if ( p > max ) {
+        second = max;
+        max = p;
+      } else if ( p > second ) {
+        second = p;
       }
+    }
+
+    return max - second;
+  }
 
-      probs.put( label, prob );
+  /**
+   * Calculate the posterior probability of each label.
+   * @return
+   */
+  protected Map<E, Double> calculateMLE(
+      UnlabeledFeatureVector<E> testInstance ) {
+    double[] posteriors = toPosteriors( score( testInstance ) );
+    Map<E, Double> probs = new HashMap<E, Double>();
+    for ( int c = 0; c < posteriors.length; c++ ) {
+      probs.put( labels.get( c ), posteriors[c] );
     }
 
     return probs;
@@ -109,19 +291,13 @@ public class NaiveBayesClassifier<E> implements Classifier<E> {
    */
   public void classify( UnlabeledFeatureVector<E> testInstance )
     throws IncomparableFeatureVectorException {
-    Map<E, Double> probs = calculateMLE( testInstance );
+    double[] scores = score( testInstance );
 
-    // now get the maximum probability, and that label is the winner
-    Entry<E, Double> max = null;
-    for ( Entry<E, Double> entry : probs.entrySet() ) {
-      if ( max == null || entry.getValue().compareTo( max.getValue() ) > 0 ) {
-        max = entry;
-      }
+    if ( LOG.isLoggable( Level.FINE ) ) {
+      LOG.log( Level.FINE, "Log probabilities for " + testInstance.getId() +
+          ": " + labels + " " + Arrays.toString( scores ) );
     }
-
-    LOG.log( Level.FINE, "Probabilities for " + testInstance.getId() + ": " +
-      probs );
-    testInstance.setClassification( max.getKey() );
+    testInstance.setClassification( labels.get( argMax( scores ) ) );
   }
 
   /**
@@ -129,44 +305,66 @@ public class NaiveBayesClassifier<E> implements Classifier<E> {
    */
   public void classify( TestRelation<E> testRelation )
     throws IncomparableFeatureVectorException {
-    for ( UnlabeledFeatureVector<E> ufv : testRelation ) {
-      classify( ufv );
+    double[][] scores = score( testRelation );
+    for ( int i = 0; i < scores.length; i++ ) {
+      testRelation.get( i ).setClassification(
+          labels.get( argMax( scores[i] ) ) );
     }
   }
 
   /**
-   * Get the classifier's certainty.
+   * Get the classifier's certainty: the difference between the posterior
+   * probabilities of the two likeliest labels.
    */
   public double getCertainty( UnlabeledFeatureVector<E> testInstance ) {
-    Map<E, Double> probs = calculateMLE( testInstance );
+    return certainty( score( testInstance ) );
+  }
 
-    // now get the maximum probability, and that label is the winner
-    Entry<E, Double> max = null;
-    Entry<E, Double> second = null;
-    for ( Entry<E, Double> entry : probs.entrySet() ) {
-      if ( max == null || entry.getValue().compareTo( max.getValue() ) > 0 ) {
-        second = max;
-        max = entry;
-      } else if ( second == null ) {
-        second = entry;
-      }
+  /**
+   * Get the classifier's certainty for each test instance.
+   * @param testRelation
+   * @return The certainties, by row.
+   */
+  public double[] getCertainties( TestRelation<E> testRelation ) {
+    double[][] scores = score( testRelation );
+    double[] certainties = new double[scores.length];
+    for ( int i = 0; i < scores.length; i++ ) {
+      certainties[i] = certainty( scores[i] );
     }
 
-    //LOG.info( "First place: " + max );
-    //LOG.info( "Second place: " + second );
+    return certainties;
+  }
+
+  /**
+   * Get the (non-missing) values of the column for the given rows.
+   * @param dense
+   * @param rows
+   * @param col
+   * @return
+   */
+  protected List<Double> getColumn( DenseRelation<?> dense,
+      List<Integer> rows, int col ) {
+    List<Double> vals = new ArrayList<Double>( rows.size() );
+    for ( int row : rows ) {
+      double val = dense.get( row, col );
+      if ( !Double.isNaN( val ) ) {
+        vals.add( val );
+      }
+    }
 
-    if ( second == null ) return 1.0;
-    else return max.getValue() - second.getValue();
+    return vals;
   }
 
   /**
    * Calculate the mean for each feature.
    */
-  protected Map<String, Double> calculateFeatureMeans( TrainRelation<E> data ) {
+  protected Map<String, Double> calculateFeatureMeans( DenseRelation<?> dense,
+      List<Integer> rows ) {
     Map<String, Double> meanMap = new HashMap<String, Double>();
-    for ( String featureName : data.getMetadata().keySet() ) {
-      List<Double> dVals = Util.featuresToDoubles( featureName, data );
-      meanMap.put( featureName, MathUtil.calcMeanLaplace( dVals,
+    String[] featureNames = dense.getFeatureNames();
+    for ( int j = 0; j < featureNames.length; j++ ) {
+      List<Double> dVals = getColumn( dense, rows, j );
+      meanMap.put( featureNames[j], MathUtil.calcMeanLaplace( dVals,
           priorProbs.keySet().size() ) );
     }
 
@@ -177,11 +375,12 @@ public class NaiveBayesClassifier<E> implements Classifier<E> {
    * Calculate the sample standard deviation for each feature.
    */
   protected Map<String, Double> calculateFeatureStdDevs(
-      TrainRelation<E> data ) {
+      DenseRelation<?> dense, List<Integer> rows ) {
     Map<String, Double> stdDevMap = new HashMap<String, Double>();
-    for ( String featureName : data.getMetadata().keySet() ) {
-      List<Double> dVals = Util.featuresToDoubles( featureName, data );
-      stdDevMap.put( featureName, MathUtil
+    String[] featureNames = dense.getFeatureNames();
+    for ( int j = 0; j < featureNames.length; j++ ) {
+      List<Double> dVals = getColumn( dense, rows, j );
+      stdDevMap.put( featureNames[j], MathUtil
           .calcStandardDeviationLaplace( dVals, priorProbs.keySet().size() ) );
     }
 
@@ -0,0 +1,263 @@
+package edu.tufts.cs.ml.classify;
+
+import java.util.Arrays;
+import java.util.Comparator;
+import java.util.HashSet;
+import java.util.Random;
+import java.util.Set;
+
+/**
+ * Chooses which (positive, negative) pairs of rows to train a pairwise
+ * ranker on. Every pair is P * N of them, which quickly grows past what can
+ * be trained on (or written out); the sampling strategies cap the number of
+ * pairs instead.
+ *
+ * The pairs are returned as two arrays of row indices, the row that should
+ * score higher and the row that should score lower, so that no difference
+ * vectors are built. When every pair is trained on (see samplesAll) there
+ * can be more than fit in an array, so callers loop over the positives and
+ * negatives instead.
+ */
+public class PairSampler {
+  /** The default most pairs to choose: every pair up to this many. */
+  public static final int DEFAULT_MAX_PAIRS = 10000000;
+  /** The default random seed. */
+  public static final long DEFAULT_SEED = 0;
+  /** How to choose the pairs. */
+  public enum Strategy {
+    /** Every pair. */
+    ALL( "Every pair" ),
+    /** The same number of random negatives for each positive. */
+    STRATIFIED( "Stratified by positive" ),
+    /**
+     * Half stratified; half the negatives that a model trained on the
+     * stratified pairs ranks too close to (or above) each positive.
+     */
+    HARD_NEGATIVE( "Hard-negative mining" );
+
+    /** The name to show. */
+    private final String description;
+
+    /**
+     * Default constructor.
+     * @param description
+     */
+    private Strategy( String description ) {
+      this.description = description;
+    }
+
+    /**
+     * Get the name to show.
+     * @return
+     */
+    public String getDescription() {
+      return this.description;
+    }
+  }
+  /** How to choose the pairs. */
+  protected final Strategy strategy;
+  /** The most pairs to choose (ignored for ALL). */
+  protected final int maxPairs;
+  /** The random seed. */
+  protected final long seed;
+
+  /**
+   * Default constructor: every pair, unless there are more than
+   * DEFAULT_MAX_PAIRS, which are then stratified.
+   */
+  public PairSampler() {
+    this( Strategy.STRATIFIED, DEFAULT_MAX_PAIRS, DEFAULT_SEED );
+  }
+
+  /**
+   * Constructor.
+   * @param strategy How to choose the pairs.
+   * @param maxPairs The most pairs to choose (ignored for ALL).
+   * @param seed The random seed.
+   */
+  public PairSampler( Strategy strategy, int maxPairs, long seed ) {
+    if ( maxPairs < 1 ) {
+      throw new IllegalArgumentException( "Max pairs must be at least 1: " +
+          maxPairs );
+    }
+    this.strategy = strategy;
+    this.maxPairs = maxPairs;
+    this.seed = seed;
+  }
+
+  /**
+   * Whether to train on every pair: for ALL, or when there are no more
+   * pairs than the most to choose.
+   * @param pos
+   * @param neg
+   * @return
+   */
+  public boolean samplesAll( int[] pos, int[] neg ) {
+    return strategy == Strategy.ALL ||
+        (long) pos.length * neg.length <= maxPairs;
+  }
+
+  /**
+   * Choose the pairs without a model: the stratified pairs (half of them,
+   * for HARD_NEGATIVE, which then mines the rest).
+   * @param pos The positive rows.
+   * @param neg The negative rows.
+   * @return The higher rows and the lower rows of the pairs.
+   * @throws IllegalStateException If every pair is to be trained on.
+   */
+  public int[][] sample( int[] pos, int[] neg ) {
+    if ( samplesAll( pos, neg ) ) {
+      throw new IllegalStateException( "Every pair is trained on; loop " +
+          "over the positives and negatives instead of sampling" );
+    }
+    int budget = ( strategy == Strategy.HARD_NEGATIVE ) ? maxPairs / 2 :
+      maxPairs;
+    return stratified( pos, neg, Math.max( budget, 1 ) );
+  }
+
+  /**
+   * Whether to mine hard negatives with a model trained on the sample.
+   * @param pos
+   * @param neg
+   * @return
+   */
+  public boolean mines( int[] pos, int[] neg ) {
+    return strategy == Strategy.HARD_NEGATIVE && !samplesAll( pos, neg );
+  }
+
+  /**
+   * Add the hard negatives to the sample: for each positive, the negatives
+   * that score highest under the model, among those within the margin of
+   * the positive (score(neg) > score(pos) - 1) and not already sampled, up
+   * to the most pairs in all.
+   * @param pos
+   * @param neg
+   * @param scores The model's score of each row.
+   * @param sampled The pairs chosen by sample.
+   * @return The sampled and the mined pairs.
+   */
+  public int[][] mine( int[] pos, int[] neg, final double[] scores,
+      int[][] sampled ) {
+    int perPositive = Math.max( ( maxPairs - sampled[0].length ) /
+        pos.length, 1 );
+
+    // for a linear model the hardest negatives are the same for every
+    // positive; only the margin differs. Sort them once, hardest first.
+    Integer[] byScore = new Integer[neg.length];
+    for ( int j = 0; j < neg.length; j++ ) {
+      byScore[j] = neg[j];
+    }
+    Arrays.sort( byScore, new Comparator<Integer>() {
+      public int compare( Integer a, Integer b ) {
+        return Double.compare( scores[b], scores[a] );
+      }
+    } );
+
+    Set<Long> seen = new HashSet<Long>( sampled[0].length * 2 );
+    for ( int p = 0; p < sampled[0].length; p++ ) {
+      seen.add( key( sampled[0][p], sampled[1][p] ) );
+    }
+
+    int[] higher = Arrays.copyOf( sampled[0], sampled[0].length +
+        pos.length * perPositive );
+    int[] lower = Arrays.copyOf( sampled[1], higher.length );
+    int n = sampled[0].length;
+    int limit = Math.min( higher.length, maxPairs );
+    for ( int i = 0; i < pos.length && n < limit; i++ ) {
+      int a = pos[i];
+      int added = 0;
+      for ( int j = 0; j < byScore.length && added < perPositive &&
+          n < limit; j++ ) {
+        int b = byScore[j];
+        if ( scores[b] <= scores[a] - 1 ) {
+          break; // this and the rest are ranked well below the positive
+        }
+        if ( seen.add( key( a, b ) ) ) {
+          higher[n] = a;
+          lower[n++] = b;
+          added++;
+        }
+      }
+    }
+
+    return new int[][] { Arrays.copyOf( higher, n ), Arrays.copyOf( lower,
+        n ) };
+  }
+
+  /**
+   * Pair each positive with the same number of distinct random negatives,
+   * so that the budget is split evenly over the positives. What doesn't
+   * divide evenly goes one pair each to random positives, so that there
+   * are exactly budget pairs (fewer than one per positive if need be).
+   * @param pos
+   * @param neg
+   * @param budget At most the number of pairs.
+   * @return
+   */
+  protected int[][] stratified( int[] pos, int[] neg, int budget ) {
+    int perPositive = budget / pos.length;
+    int[] extra = new int[pos.length];
+    Random random = new Random( seed );
+    int remainder = budget % pos.length;
+    if ( remainder > 0 ) {
+      int[] order = new int[pos.length];
+      for ( int i = 0; i < order.length; i++ ) {
+        order[i] = i;
+      }
+      for ( int i = 0; i < remainder; i++ ) {
+        int k = i + random.nextInt( order.length - i );
+        int tmp = order[i];
+        order[i] = order[k];
+        order[k] = tmp;
+        extra[order[i]] = 1;
+      }
+    }
+
+    int[] higher = new int[budget];
+    int[] lower = new int[higher.length];
+    int[] shuffled = neg.clone();
+    int p = 0;
+    for ( int i = 0; i < pos.length; i++ ) {
+      int a = pos[i];
+      int count = Math.min( perPositive + extra[i], neg.length );
+      // a partial Fisher-Yates shuffle picks count distinct negatives
+      for ( int j = 0; j < count; j++ ) {
+        int k = j + random.nextInt( shuffled.length - j );
+        int tmp = shuffled[j];
+        shuffled[j] = shuffled[k];
+        shuffled[k] = tmp;
+        higher[p] = a;
+        lower[p++] = shuffled[j];
+      }
+    }
+
+    return new int[][] { Arrays.copyOf( higher, p ), Arrays.copyOf( lower,
+        p ) };
+  }
+
+  /**
+   * Get the key of a pair.
+   * @param a
+   * @param b
+   * @return
+   */
+  protected static long key( int a, int b ) {
+    return ( (long) a << 32 ) | ( b & 0xffffffffL );
+  }
+
+  /**
+   * Get how the pairs are chosen.
+   * @return
+   */
+  public Strategy getStrategy() {
+    return this.strategy;
+  }
+
+  /**
+   * Get the most pairs to choose.
+   * @return
+   */
+  public int getMaxPairs() {
+    return this.maxPairs;
+  }
+}
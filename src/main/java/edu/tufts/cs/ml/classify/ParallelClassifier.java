@@ -0,0 +1,155 @@
+package edu.tufts.cs.ml.classify;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.Callable;
+import java.util.concurrent.ExecutorService;
+import java.util.logging.Level;
+import java.util.logging.Logger;
+
+import edu.tufts.cs.ml.TestRelation;
+import edu.tufts.cs.ml.TrainRelation;
+import edu.tufts.cs.ml.UnlabeledFeatureVector;
+import edu.tufts.cs.ml.exception.IncomparableFeatureVectorException;
+import edu.tufts.cs.ml.util.ConcurrencyUtil;
+
+/**
+ * A Classifier that classifies the instances of a test relation in parallel
+ * using another (trained) Classifier. The relation is split into contiguous
+ * chunks, and each instance is classified in place, so the relation's order
+ * and each instance's classifications are the same as classifying it
+ * sequentially.
+ *
+ * The wrapped classifier's classify( UnlabeledFeatureVector ) must be safe to
+ * call from several threads once it is trained, as it is for the kNN and
+ * Naive Bayes classifiers. The SVM classifiers rank a test relation as a
+ * whole and should not be wrapped.
+ *
+ * @param <E>
+ */
+public class ParallelClassifier<E> implements Classifier<E> {
+  /** The Logger. */
+  private static final Logger LOG =  Logger.getLogger(
+      ParallelClassifier.class.getName() );
+  /** The number of chunks per thread, so that slow chunks even out. */
+  protected static final int CHUNKS_PER_THREAD = 4;
+  /** The classifier doing the work. */
+  protected final Classifier<E> classifier;
+  /** The number of threads to use. */
+  protected final int parallelism;
+  /** The executor to run on, or null to start one per batch. */
+  protected final ExecutorService executor;
+
+  /**
+   * Default constructor; uses a thread per available processor.
+   * @param classifier
+   */
+  public ParallelClassifier( Classifier<E> classifier ) {
+    this( classifier, Runtime.getRuntime().availableProcessors() );
+  }
+
+  /**
+   * Constructor with the number of threads to use.
+   * @param classifier
+   * @param parallelism
+   */
+  public ParallelClassifier( Classifier<E> classifier, int parallelism ) {
+    this( classifier, null, parallelism );
+  }
+
+  /**
+   * Constructor with an executor to run on. The executor is not shut down
+   * by this class.
+   * @param classifier
+   * @param executor
+   * @param parallelism The number of chunks to run at once.
+   */
+  public ParallelClassifier( Classifier<E> classifier,
+      ExecutorService executor, int parallelism ) {
+    if ( parallelism < 1 ) {
+      throw new IllegalArgumentException( "Parallelism must be at least 1: " +
+          parallelism );
+    }
+    this.classifier = classifier;
+    this.executor = executor;
+    this.parallelism = parallelism;
+  }
+
+  /**
+   * Train the classifier.
+   */
+  public void train( TrainRelation<E> trainRelation ) {
+    classifier.train( trainRelation );
+  }
+
+  /**
+   * Classify an instance.
+   */
+  public void classify( UnlabeledFeatureVector<E> testInstance )
+    throws IncomparableFeatureVectorException {
+    classifier.classify( testInstance );
+  }
+
+  /**
+   * Classify a set of test data in parallel.
+   */
+  public void classify( final TestRelation<E> testRelation )
+    throws IncomparableFeatureVectorException {
+    if ( parallelism == 1 || testRelation.size() < 2 ) {
+      classifier.classify( testRelation );
+      return;
+    }
+
+    int numChunks = Math.min( testRelation.size(),
+        parallelism * CHUNKS_PER_THREAD );
+    List<Callable<Void>> tasks = new ArrayList<Callable<Void>>( numChunks );
+    for ( int c = 0; c < numChunks; c++ ) {
+      final int from = (int) ( (long) testRelation.size() * c / numChunks );
+      final int to = (int) ( (long) testRelation.size() * ( c + 1 ) /
+          numChunks );
+      tasks.add( new Callable<Void>() {
+        public Void call() throws IncomparableFeatureVectorException {
+          for ( int i = from; i < to; i++ ) {
+            classifier.classify( testRelation.get( i ) );
+          }
+          return null;
+        }
+      } );
+    }
+
+    LOG.log( Level.CONFIG, "Classifying " + testRelation.size() +
+        " instances in " + numChunks + " chunks on " + parallelism +
+        " threads" );
+    if ( executor != null ) {
+      ConcurrencyUtil.invokeAll( executor, tasks,
+          IncomparableFeatureVectorException.class, "classifying" );
+    } else {
+      ConcurrencyUtil.invokeAll( parallelism, tasks,
+          IncomparableFeatureVectorException.class, "classifying" );
+    }
+  }
+
+  /**
+   * Get the classifier's certainty.
+   */
+  public double getCertainty( UnlabeledFeatureVector<E> testInstance )
+    throws IncomparableFeatureVectorException {
+    return classifier.getCertainty( testInstance );
+  }
+
+  /**
+   * Get the classifier doing the work.
+   * @return
+   */
+  public Classifier<E> getClassifier() {
+    return this.classifier;
+  }
+
+  /**
+   * Get the number of threads used.
+   * @return
+   */
+  public int getParallelism() {
+    return this.parallelism;
+  }
+}
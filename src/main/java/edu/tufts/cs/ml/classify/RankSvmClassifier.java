@@ -1,24 +1,26 @@
 package edu.tufts.cs.ml.classify;
 
-import java.io.BufferedReader;
 import java.io.File;
-import java.io.FileReader;
 import java.io.IOException;
-import java.io.InputStream;
-import java.io.OutputStream;
 import java.util.ArrayList;
 import java.util.List;
+import java.util.Map;
+import java.util.SortedMap;
+import java.util.TreeMap;
+import java.util.concurrent.Callable;
 import java.util.logging.Level;
 import java.util.logging.Logger;
 
 import com.google.common.collect.TreeMultimap;
 
 import edu.tufts.cs.ml.FeatureVector;
+import edu.tufts.cs.ml.LabeledFeatureVector;
 import edu.tufts.cs.ml.Relation;
 import edu.tufts.cs.ml.TestRelation;
 import edu.tufts.cs.ml.TrainRelation;
 import edu.tufts.cs.ml.UnlabeledFeatureVector;
 import edu.tufts.cs.ml.exception.IncomparableFeatureVectorException;
+import edu.tufts.cs.ml.util.ConcurrencyUtil;
 import edu.tufts.cs.ml.writer.RankSvmWriter;
 import edu.tufts.cs.ml.writer.SvmLightWriter;
 import edu.tufts.cs.ml.writer.Writer;
@@ -32,6 +34,18 @@ public class RankSvmClassifier implements Classifier<Integer> {
   protected File model;
   /** The c tradeoff parameter. */
   protected double c;
+  /** Whether to train and predict in-process instead of with the binary. */
+  protected boolean inProcess = true;
+  /** The in-process model. */
+  protected LinearSvm svm;
+  /** The training labels, ascending, for classifying. */
+  protected int[] labels;
+  /** The scores between consecutive labels, for classifying. */
+  protected double[] thresholds;
+  /** The files passed to and from the binaries (created on first use). */
+  protected SvmWorkspace workspace;
+  /** Whether to pipe the binaries' single-pass files. */
+  protected boolean streaming = false;
 
   /**
    * Default constructor.
@@ -41,19 +55,172 @@ public class RankSvmClassifier implements Classifier<Integer> {
     this.c = c;
   }
 
+  /**
+   * Set whether to train and predict in-process with a LinearSvm (the
+   * default), or by writing files for the svm_rank binaries.
+   * @param inProcess
+   */
+  public void setInProcess( boolean inProcess ) {
+    this.inProcess = inProcess;
+  }
+
+  /**
+   * Set whether to pipe the files the binaries read or write in a single
+   * pass (see SvmWorkspace) instead of writing them to disk.
+   * @param streaming
+   */
+  public void setStreaming( boolean streaming ) {
+    this.streaming = streaming;
+    if ( workspace != null ) {
+      workspace.setStreaming( streaming );
+    }
+  }
+
+  /**
+   * Get the workspace for the binaries' files, creating it if need be.
+   * @return
+   * @throws IOException
+   */
+  protected SvmWorkspace getWorkspace() throws IOException {
+    if ( workspace == null ) {
+      workspace = new SvmWorkspace( "svm-rank" );
+      workspace.setStreaming( streaming );
+    }
+    return workspace;
+  }
+
+  /**
+   * Delete the workspace, and the model in it.
+   */
+  public void close() {
+    if ( workspace != null ) {
+      workspace.delete();
+      workspace = null;
+      model = null;
+    }
+  }
+
+  /**
+   * Train a classifier for each c at once, eg. for a grid search. With the
+   * binaries, each has its own workspace and the SvmWorkspace pool bounds
+   * how many binaries run at once.
+   * @param trainRelation
+   * @param cs
+   * @param inProcess Whether to train in-process.
+   * @param parallelism The most classifiers to train at once.
+   * @return The classifiers, in the order of the cs.
+   */
+  public static List<RankSvmClassifier> trainEach(
+      final TrainRelation<Integer> trainRelation, double[] cs,
+      boolean inProcess, int parallelism ) {
+    if ( parallelism < 1 ) {
+      throw new IllegalArgumentException( "Parallelism must be at least 1: " +
+          parallelism );
+    }
+    List<Callable<RankSvmClassifier>> tasks =
+        new ArrayList<Callable<RankSvmClassifier>>( cs.length );
+    for ( double c : cs ) {
+      final RankSvmClassifier classifier = new RankSvmClassifier( c );
+      classifier.setInProcess( inProcess );
+      tasks.add( new Callable<RankSvmClassifier>() {
+        public RankSvmClassifier call() {
+          classifier.train( trainRelation );
+          return classifier;
+        }
+      } );
+    }
+
+    if ( tasks.isEmpty() ) {
+      return new ArrayList<RankSvmClassifier>();
+    }
+    return ConcurrencyUtil.invokeAll( Math.min( parallelism, tasks.size() ),
+        tasks, "training" );
+  }
+
+  /**
+   * Get the c tradeoff parameter.
+   * @return
+   */
+  public double getC() {
+    return this.c;
+  }
+
   public void train( TrainRelation<Integer> trainRelation ) {
     this.train = trainRelation;
+    if ( inProcess ) {
+      this.svm = LinearSvm.trainRanker( trainRelation, c );
+      fitThresholds( trainRelation );
+      return;
+    }
     try {
       this.model = rankLearn( trainRelation );
+      this.svm = LinearSvm.readSvmLightModel( model );
+      fitThresholds( trainRelation );
     } catch ( Exception e  ) {
       LOG.log( Level.SEVERE, "Could not call svm-rank process to train model.",
           e.getStackTrace() );
     }
   }
 
+  /**
+   * Put a threshold between each two consecutive training labels, halfway
+   * between the mean scores of their instances, as the pairwise classifier
+   * does for its two classes. The ranker has no bias, so its scores only
+   * separate the labels relative to these.
+   * @param trainRelation
+   */
+  protected void fitThresholds( TrainRelation<Integer> trainRelation ) {
+    SortedMap<Integer, double[]> sums = new TreeMap<Integer, double[]>();
+    for ( LabeledFeatureVector<Integer> lfv : trainRelation ) {
+      double[] sum = sums.get( lfv.getLabel() );
+      if ( sum == null ) {
+        sum = new double[2];
+        sums.put( lfv.getLabel(), sum );
+      }
+      sum[0] += svm.decision( lfv );
+      sum[1]++;
+    }
+
+    this.labels = new int[sums.size()];
+    double[] means = new double[labels.length];
+    int i = 0;
+    for ( Map.Entry<Integer, double[]> e : sums.entrySet() ) {
+      labels[i] = e.getKey();
+      means[i++] = e.getValue()[0] / e.getValue()[1];
+    }
+    this.thresholds = new double[Math.max( labels.length - 1, 0 )];
+    for ( int j = 0; j < thresholds.length; j++ ) {
+      thresholds[j] = ( means[j] + means[j + 1] ) / 2;
+    }
+  }
+
+  /**
+   * Classify the instance as the training label whose thresholds its score
+   * falls between.
+   */
   public void classify( UnlabeledFeatureVector<Integer> testInstance )
       throws IncomparableFeatureVectorException {
-    // TODO implement
+    double score = score( testInstance );
+    int above = 0;
+    for ( double t : thresholds ) {
+      if ( score > t ) {
+        above++;
+      }
+    }
+    testInstance.setClassification( labels[above] );
+  }
+
+  /**
+   * Get the score of the instance, in-process (from the model file if it
+   * was trained with the binary): the higher, the higher it ranks.
+   * @param fv
+   * @return
+   */
+  public double score( FeatureVector<?> fv ) {
+    if ( svm == null ) {
+      throw new IllegalStateException( "The ranker hasn't been trained." );
+    }
+    return svm.decision( fv );
   }
 
   public void classify( TestRelation<Integer> testRelation )
@@ -64,7 +231,8 @@ public class RankSvmClassifier implements Classifier<Integer> {
   public TreeMultimap<Double, FeatureVector<Integer>> rank( TestRelation<Integer> testRelation )
       throws IncomparableFeatureVectorException {
     try {
-      List<Double> predictions = rankClassify( testRelation, this.model );
+      List<Double> predictions = inProcess ? svm.decisions( testRelation ) :
+        rankClassify( testRelation, this.model );
       
       assert testRelation.size() == predictions.size();
 
@@ -91,29 +259,31 @@ public class RankSvmClassifier implements Classifier<Integer> {
     return null;
   }
 
+  /**
+   * Get how far the instance's score is from the nearest threshold between
+   * the labels (infinite with a single label).
+   */
   public double getCertainty( UnlabeledFeatureVector<Integer> testInstance )
       throws IncomparableFeatureVectorException {
-    // TODO implement
-    return 0.0;
+    double score = score( testInstance );
+    double certainty = Double.POSITIVE_INFINITY;
+    for ( double t : thresholds ) {
+      certainty = Math.min( certainty, Math.abs( score - t ) );
+    }
+    return certainty;
   }
   
   protected File rankLearn( TrainRelation<Integer> trainData ) throws IOException, InterruptedException {
+    SvmWorkspace ws = getWorkspace();
     Writer w = new SvmLightWriter();
-    File trainFile =  new File( "train.dat" );
+    File trainFile = ws.getFile( "train.dat" );
     w.write( trainData, trainFile );
     
     assert trainFile.exists();
     
-    ProcessBuilder processBuilder = new ProcessBuilder(
-        "src/main/resources/svm_rank/svm_rank_learn", "-c",
-        String.valueOf( c ), "train.dat", "model" );
-    processBuilder.redirectErrorStream( true );
-
-    Process process = processBuilder.start();
-    copy( process.getInputStream(), System.out );
-    process.waitFor();
-    
-    File model = new File( "model" );
+    File model = ws.getFile( "model" );
+    ws.run( System.out, "src/main/resources/svm_rank/svm_rank_learn", "-c",
+        String.valueOf( c ), trainFile.getPath(), model.getPath() );
 
     assert model.exists();
     
@@ -122,38 +292,16 @@ public class RankSvmClassifier implements Classifier<Integer> {
   
   protected List<Double> rankClassify( Relation<?> testData, File model )
       throws IOException, InterruptedException {
+    SvmWorkspace ws = getWorkspace();
     Writer w = new RankSvmWriter();
-    w.write( testData, new File( "test.dat" ) );
-    
-    ProcessBuilder processBuilder = new ProcessBuilder(
-        "src/main/resources/svm_rank/svm_rank_classify", "test.dat", "model", "predictions" );
-    processBuilder.redirectErrorStream( true );
-
-    Process process = processBuilder.start();
-    copy( process.getInputStream(), System.out );
-    process.waitFor();
-
-    File predictions = new File( "predictions" );
-    
-    assert predictions.exists();
-
-    List<Double> probabilities = new ArrayList<Double>();
-    BufferedReader br = new BufferedReader( new FileReader( predictions ) );
-    String line;
-    while ( (line = br.readLine() ) != null ) {
-       probabilities.add( Double.valueOf( line ) );
-    }
-    br.close();
+    File testFile = ws.getFile( "test.dat" );
+    w.write( testData, testFile );
     
-    return probabilities;
-  }
-  
-  private static void copy( InputStream in, OutputStream out ) throws IOException {
-    int c = 0;
-    while ( c != -1 ) {
-        c = in.read();
-        out.write( (char) c );
-    }
+    // the test file is read twice, so only the predictions can be piped
+    File predictions = ws.getPipe( "predictions" );
+    return ws.run( System.out, null, SvmWorkspace.readPredictions(
+        predictions ), "src/main/resources/svm_rank/svm_rank_classify",
+        testFile.getPath(), model.getPath(), predictions.getPath() );
   }
 
 }
@@ -1,12 +1,7 @@
 package edu.tufts.cs.ml.classify;
 
-import java.io.BufferedReader;
 import java.io.File;
-import java.io.FileReader;
 import java.io.IOException;
-import java.io.InputStream;
-import java.io.OutputStream;
-import java.util.ArrayList;
 import java.util.List;
 import java.util.logging.Level;
 import java.util.logging.Logger;
@@ -31,6 +26,14 @@ public class SvmLightClassifier implements Classifier<Integer> {
   protected File model;
   /** The c tradeoff parameter. */
   protected double c;
+  /** Whether to train and predict in-process instead of with the binary. */
+  protected boolean inProcess = true;
+  /** The in-process model. */
+  protected LinearSvm svm;
+  /** The files passed to and from the binaries (created on first use). */
+  protected SvmWorkspace workspace;
+  /** Whether to pipe the binaries' single-pass files. */
+  protected boolean streaming = false;
 
   /**
    * Default constructor.
@@ -40,10 +43,60 @@ public class SvmLightClassifier implements Classifier<Integer> {
     this.c = c;
   }
 
+  /**
+   * Set whether to train and predict in-process with a LinearSvm (the
+   * default), or by writing files for the svm_light binaries.
+   * @param inProcess
+   */
+  public void setInProcess( boolean inProcess ) {
+    this.inProcess = inProcess;
+  }
+
+  /**
+   * Set whether to pipe the files the binaries read or write in a single
+   * pass (see SvmWorkspace) instead of writing them to disk.
+   * @param streaming
+   */
+  public void setStreaming( boolean streaming ) {
+    this.streaming = streaming;
+    if ( workspace != null ) {
+      workspace.setStreaming( streaming );
+    }
+  }
+
+  /**
+   * Get the workspace for the binaries' files, creating it if need be.
+   * @return
+   * @throws IOException
+   */
+  protected SvmWorkspace getWorkspace() throws IOException {
+    if ( workspace == null ) {
+      workspace = new SvmWorkspace( "svm-light" );
+      workspace.setStreaming( streaming );
+    }
+    return workspace;
+  }
+
+  /**
+   * Delete the workspace, and the model in it.
+   */
+  public void close() {
+    if ( workspace != null ) {
+      workspace.delete();
+      workspace = null;
+      model = null;
+    }
+  }
+
   public void train( TrainRelation<Integer> trainRelation ) {
     this.train = trainRelation;
+    if ( inProcess ) {
+      this.svm = LinearSvm.trainClassifier( trainRelation, c );
+      return;
+    }
     try {
       this.model = rankLearn( trainRelation );
+      this.svm = LinearSvm.readSvmLightModel( model );
     } catch ( Exception e  ) {
       e.printStackTrace();
       LOG.log( Level.SEVERE, "Could not call svm-rank process to train model.",
@@ -53,7 +106,20 @@ public class SvmLightClassifier implements Classifier<Integer> {
 
   public void classify( UnlabeledFeatureVector<Integer> testInstance )
       throws IncomparableFeatureVectorException {
-    // TODO implement
+    testInstance.setClassification( score( testInstance ) > 0 ? 1 : -1 );
+  }
+
+  /**
+   * Get the decision value of the instance, in-process (from the model file
+   * if it was trained with the binary): above 0 for the positive class.
+   * @param fv
+   * @return
+   */
+  public double score( FeatureVector<?> fv ) {
+    if ( svm == null ) {
+      throw new IllegalStateException( "The classifier hasn't been trained." );
+    }
+    return svm.decision( fv );
   }
 
   public void classify( TestRelation<Integer> testRelation )
@@ -64,7 +130,8 @@ public class SvmLightClassifier implements Classifier<Integer> {
   public TreeMultimap<Double, FeatureVector<Integer>> rank( TestRelation<Integer> testRelation )
       throws IncomparableFeatureVectorException {
     try {
-      List<Double> predictions = rankClassify( testRelation, this.model );
+      List<Double> predictions = inProcess ? svm.decisions( testRelation ) :
+        rankClassify( testRelation, this.model );
       
       assert testRelation.size() == predictions.size();
 
@@ -92,29 +159,26 @@ public class SvmLightClassifier implements Classifier<Integer> {
     return null;
   }
 
+  /**
+   * Get the margin of the instance: how far its decision value is from the
+   * boundary, where 1 is the margin of the support vectors.
+   */
   public double getCertainty( UnlabeledFeatureVector<Integer> testInstance )
       throws IncomparableFeatureVectorException {
-    // TODO implement
-    return 0.0;
+    return Math.abs( score( testInstance ) );
   }
   
   protected File rankLearn( TrainRelation<Integer> trainData ) throws IOException, InterruptedException {
+    SvmWorkspace ws = getWorkspace();
     Writer w = new SvmLightWriter();
-    File trainFile =  new File( "train.dat" );
+    File trainFile = ws.getFile( "train.dat" );
     w.write( trainData, trainFile );
     
     assert trainFile.exists();
     
-    ProcessBuilder processBuilder = new ProcessBuilder(
-        "src/main/resources/svm_light/svm_learn", "-c",
-        String.valueOf( c ), "train.dat", "model" );
-    processBuilder.redirectErrorStream( true );
-
-    Process process = processBuilder.start();
-    copy( process.getInputStream(), System.out );
-    process.waitFor();
-    
-    File model = new File( "model" );
+    File model = ws.getFile( "model" );
+    ws.run( System.out, "src/main/resources/svm_light/svm_learn", "-c",
+        String.valueOf( c ), trainFile.getPath(), model.getPath() );
 
     assert model.exists();
     
@@ -123,38 +187,16 @@ public class SvmLightClassifier implements Classifier<Integer> {
   
   protected List<Double> rankClassify( Relation<?> testData, File model )
       throws IOException, InterruptedException {
+    SvmWorkspace ws = getWorkspace();
     Writer w = new SvmLightWriter();
-    w.write( testData, new File( "test.dat" ) );
+    File testFile = ws.getFile( "test.dat" );
+    w.write( testData, testFile );
     
-    ProcessBuilder processBuilder = new ProcessBuilder(
-        "src/main/resources/svm_light/svm_classify", "test.dat", "model", "predictions" );
-    processBuilder.redirectErrorStream( true );
-
-    Process process = processBuilder.start();
-    copy( process.getInputStream(), System.out );
-    process.waitFor();
-
-    File predictions = new File( "predictions" );
-    
-    assert predictions.exists();
-
-    List<Double> probabilities = new ArrayList<Double>();
-    BufferedReader br = new BufferedReader( new FileReader( predictions ) );
-    String line;
-    while ( (line = br.readLine() ) != null ) {
-       probabilities.add( Double.valueOf( line ) );
-    }
-    br.close();
-    
-    return probabilities;
-  }
-  
-  private static void copy( InputStream in, OutputStream out ) throws IOException {
-    int c = 0;
-    while ( c != -1 ) {
-        c = in.read();
-        out.write( (char) c );
-    }
+    // the test file is read twice, so only the predictions can be piped
+    File predictions = ws.getPipe( "predictions" );
+    return ws.run( System.out, null, SvmWorkspace.readPredictions(
+        predictions ), "src/main/resources/svm_light/svm_classify",
+        testFile.getPath(), model.getPath(), predictions.getPath() );
   }
 
 }
@@ -1,14 +1,9 @@
 package edu.tufts.cs.ml.classify;
 
-import java.io.BufferedReader;
 import java.io.BufferedWriter;
 import java.io.File;
-import java.io.FileReader;
 import java.io.FileWriter;
 import java.io.IOException;
-import java.io.InputStream;
-import java.io.OutputStream;
-import java.util.ArrayList;
 import java.util.List;
 import java.util.logging.Level;
 import java.util.logging.Logger;
@@ -19,6 +14,7 @@ import edu.tufts.cs.ml.DoubleFeature;
 import edu.tufts.cs.ml.FeatureVector;
 import edu.tufts.cs.ml.LabeledFeatureVector;
 import edu.tufts.cs.ml.Metadata;
+import edu.tufts.cs.ml.SparseRelation;
 import edu.tufts.cs.ml.TestRelation;
 import edu.tufts.cs.ml.TrainRelation;
 import edu.tufts.cs.ml.UnlabeledFeatureVector;
@@ -46,6 +42,20 @@ public class SvmLightPairwiseTransformClassifier implements Classifier<Integer>
   protected File model;
   /** The c tradeoff parameter. */
   protected double c;
+  /** Whether to train and predict in-process instead of with the binary. */
+  protected boolean inProcess = true;
+  /** The in-process model. */
+  protected LinearSvm svm;
+  /** The score between the classes, for classifying. */
+  protected double threshold;
+  /** The files passed to and from the binaries (created on first use). */
+  protected SvmWorkspace workspace;
+  /** Whether to pipe the binaries' single-pass files. */
+  protected boolean streaming = false;
+  /** The test relation last written to the test file. */
+  protected TestRelation<Integer> written;
+  /** Chooses the pairs to train on. */
+  protected PairSampler sampler = new PairSampler();
 
   /**
    * Default constructor.
@@ -53,20 +63,78 @@ public class SvmLightPairwiseTransformClassifier implements Classifier<Integer>
    */
   public SvmLightPairwiseTransformClassifier( double c ) {
     this.c = c;
+  }
+
+  /**
+   * Set whether to train and predict in-process with a LinearSvm (the
+   * default), or by writing files for the svm_light binaries.
+   * @param inProcess
+   */
+  public void setInProcess( boolean inProcess ) {
+    this.inProcess = inProcess;
+  }
+
+  /**
+   * Set how to choose the (positive, negative) pairs to train on, to cap
+   * the size of the pairwise training set. The default is every pair, up
+   * to PairSampler.DEFAULT_MAX_PAIRS, and a stratified sample beyond.
+   * @param sampler
+   */
+  public void setPairSampler( PairSampler sampler ) {
+    this.sampler = sampler;
+  }
+
+  /**
+   * Set whether to pipe the files the binaries read or write in a single
+   * pass (see SvmWorkspace) instead of writing them to disk.
+   * @param streaming
+   */
+  public void setStreaming( boolean streaming ) {
+    this.streaming = streaming;
+    if ( workspace != null ) {
+      workspace.setStreaming( streaming );
+    }
+  }
 
-    File testFile = new File( TEST_FILE );
+  /**
+   * Get the workspace for the binaries' files, creating it if need be.
+   * @return
+   * @throws IOException
+   */
+  protected SvmWorkspace getWorkspace() throws IOException {
+    if ( workspace == null ) {
+      workspace = new SvmWorkspace( "svm-pairwise" );
+      workspace.setStreaming( streaming );
+    }
+    return workspace;
+  }
 
-    // clean things up
-    if ( testFile.exists() ) {
-      testFile.delete();
+  /**
+   * Delete the workspace, and the model in it.
+   */
+  public void close() {
+    if ( workspace != null ) {
+      workspace.delete();
+      workspace = null;
+      model = null;
+      written = null;
     }
   }
 
   public void train( TrainRelation<Integer> trainRelation ) {
+    if ( inProcess ) {
+      // svm_light sees each pair in both directions: twice the tradeoff
+      this.svm = LinearSvm.trainPairwise( trainRelation, POS, NEG, 2 * c,
+          sampler );
+      this.threshold = fitThreshold( trainRelation );
+      return;
+    }
     try {
       File pairwiseFile = generatePairwiseTrainingSet(
           trainRelation );
       this.model = rankLearn( pairwiseFile );
+      this.svm = LinearSvm.readSvmLightModel( model );
+      this.threshold = fitThreshold( trainRelation );
     } catch ( Exception e  ) {
       e.printStackTrace();
       LOG.log( Level.SEVERE, "Could not call svm-rank process to train model.",
@@ -74,9 +142,49 @@ public class SvmLightPairwiseTransformClassifier implements Classifier<Integer>
     }
   }
 
+  /**
+   * Get the score halfway between the mean scores of the positive and the
+   * negative training instances. The pairwise model has no bias, so this is
+   * where its boundary between the classes goes.
+   * @param trainRelation
+   * @return
+   */
+  protected double fitThreshold( TrainRelation<Integer> trainRelation ) {
+    double pos = 0.0;
+    double neg = 0.0;
+    int numPos = 0;
+    int numNeg = 0;
+    for ( LabeledFeatureVector<Integer> lfv : trainRelation ) {
+      if ( lfv.getLabel() == POS ) {
+        pos += svm.decision( lfv );
+        numPos++;
+      } else if ( lfv.getLabel() == NEG ) {
+        neg += svm.decision( lfv );
+        numNeg++;
+      }
+    }
+
+    return ( pos / Math.max( numPos, 1 ) + neg / Math.max( numNeg, 1 ) ) / 2;
+  }
+
   public void classify( UnlabeledFeatureVector<Integer> testInstance )
       throws IncomparableFeatureVectorException {
-    // TODO implement
+    testInstance.setClassification( score( testInstance ) > threshold ? POS :
+      NEG );
+  }
+
+  /**
+   * Get the score of the instance, in-process (from the model file if it
+   * was trained with the binary): the higher, the more it ranks like a
+   * positive.
+   * @param fv
+   * @return
+   */
+  public double score( FeatureVector<?> fv ) {
+    if ( svm == null ) {
+      throw new IllegalStateException( "The classifier hasn't been trained." );
+    }
+    return svm.decision( fv );
   }
 
   public void classify( TestRelation<Integer> testRelation )
@@ -88,14 +196,20 @@ public class SvmLightPairwiseTransformClassifier implements Classifier<Integer>
       throws IncomparableFeatureVectorException {
 
     try {
-      File test = new File( TEST_FILE );
-      if ( !test.exists() ) {
-        Writer w = new SvmLightWriter();
-        w.write( testRelation, test );
+      List<Double> predictions;
+      if ( inProcess ) {
+        predictions = svm.decisions( testRelation );
+      } else {
+        // only write the test file once per test relation
+        File test = getWorkspace().getFile( TEST_FILE );
+        if ( testRelation != written || !test.exists() ) {
+          Writer w = new SvmLightWriter();
+          w.write( testRelation, test );
+          written = testRelation;
+        }
+        predictions = rankClassify( test, this.model );
       }
 
-      List<Double> predictions = rankClassify( test, this.model );
-
       assert testRelation.size() == predictions.size();
       LOG.info( "Predictions size: " + predictions.size() +
           " (should be " + testRelation.size() + ")" );
@@ -124,25 +238,21 @@ public class SvmLightPairwiseTransformClassifier implements Classifier<Integer>
     return null;
   }
 
+  /**
+   * Get how far the instance's score is from the threshold between the
+   * classes.
+   */
   public double getCertainty( UnlabeledFeatureVector<Integer> testInstance )
       throws IncomparableFeatureVectorException {
-    // TODO implement
-    return 0.0;
+    return Math.abs( score( testInstance ) - threshold );
   }
   
   protected File rankLearn( File trainFile ) throws IOException, InterruptedException {
     assert trainFile.exists();
     
-    ProcessBuilder processBuilder = new ProcessBuilder(
-        "src/main/resources/svm_light/svm_learn", "-c",
-        String.valueOf( c ), TRAIN_FILE, MODEL_FILE );
-    processBuilder.redirectErrorStream( true );
-
-    Process process = processBuilder.start();
-    copy( process.getInputStream(), System.out );
-    process.waitFor();
-    
-    File model = new File( "model" );
+    File model = getWorkspace().getFile( MODEL_FILE );
+    getWorkspace().run( System.out, "src/main/resources/svm_light/svm_learn",
+        "-c", String.valueOf( c ), trainFile.getPath(), model.getPath() );
 
     assert model.exists();
     
@@ -151,36 +261,12 @@ public class SvmLightPairwiseTransformClassifier implements Classifier<Integer>
   
   protected List<Double> rankClassify( File testData, File model )
       throws IOException, InterruptedException {
-    
-    ProcessBuilder processBuilder = new ProcessBuilder(
-        "src/main/resources/svm_light/svm_classify", TEST_FILE, MODEL_FILE, PREDICTIONS_FILE );
-    processBuilder.redirectErrorStream( true );
-
-    Process process = processBuilder.start();
-    copy( process.getInputStream(), System.out );
-    process.waitFor();
-
-    File predictions = new File( PREDICTIONS_FILE );
-    
-    assert predictions.exists();
-
-    List<Double> probabilities = new ArrayList<Double>();
-    BufferedReader br = new BufferedReader( new FileReader( predictions ) );
-    String line;
-    while ( (line = br.readLine() ) != null ) {
-       probabilities.add( Double.valueOf( line ) );
-    }
-    br.close();
-
-    return probabilities;
-  }
-  
-  private static void copy( InputStream in, OutputStream out ) throws IOException {
-    int c = 0;
-    while ( c != -1 ) {
-        c = in.read();
-        out.write( (char) c );
-    }
+    // the test file is read twice, so only the predictions can be piped
+    File predictions = getWorkspace().getPipe( PREDICTIONS_FILE );
+    return getWorkspace().run( System.out, null,
+        SvmWorkspace.readPredictions( predictions ),
+        "src/main/resources/svm_light/svm_classify", testData.getPath(),
+        model.getPath(), predictions.getPath() );
   }
 
   /**
@@ -203,106 +289,190 @@ public class SvmLightPairwiseTransformClassifier implements Classifier<Integer>
   }
 
   /**
-   * 
-   * @param bowTrain
+   * Write the pairwise training set for svm_learn: the difference of each
+   * sampled (positive, negative) pair, in both directions so that not all
+   * labels are from the same class. The differences are merged from the
+   * sparse rows and written straight out, a line at a time.
+   * @param train
    * @return
-   * @throws IOException 
+   * @throws IOException
    */
-  protected File generatePairwiseTrainingSet( TrainRelation<Integer> train ) throws IOException {
-    TrainRelation<Integer> posBowTrain = getTrainingData( train, POS );
-    TrainRelation<Integer> negBowTrain = getTrainingData( train, NEG );
-
-    SvmLightWriter w = new SvmLightWriter();
-    File pairwiseFile = new File( TRAIN_FILE );
-    FileWriter fw = new FileWriter( pairwiseFile );
-    BufferedWriter bw = new BufferedWriter( fw );
-
-    // create pairwise vectors in both directions so that not all labels
-    // are from the same class
-    long numPairs = 0;
-    numPairs += addPairwiseVectors( w, bw, posBowTrain, negBowTrain, POS );
-    numPairs += addPairwiseVectors( w, bw, negBowTrain, posBowTrain, NEG );
-    
-    bw.close();
-    
+  protected File generatePairwiseTrainingSet( TrainRelation<Integer> train )
+    throws IOException {
+    SparseRelation<LabeledFeatureVector<Integer>> sparse = train.toSparse();
+    int[] posRows = LinearSvm.rowsLabeled( train, POS );
+    int[] negRows = LinearSvm.rowsLabeled( train, NEG );
+    boolean all = sampler.samplesAll( posRows, negRows );
+    int[][] pairs = all ? null : LinearSvm.samplePairs( sparse, posRows,
+        negRows, 2 * c, sampler );
+
+    File pairwiseFile = getWorkspace().getFile( TRAIN_FILE );
+    BufferedWriter bw = new BufferedWriter( new FileWriter( pairwiseFile ),
+        1 << 16 );
+    try {
+      if ( all ) {
+        writeAllPairwiseVectors( sparse, train.getMetadata(), posRows,
+            negRows, bw );
+      } else {
+        writePairwiseVectors( sparse, train.getMetadata(), pairs[0],
+            pairs[1], bw );
+      }
+    } finally {
+      bw.close();
+    }
+
+    long numPairs = all ? (long) posRows.length * negRows.length :
+      pairs[0].length;
     LOG.log( Level.INFO, "Standard training set size: " + train.size() );
-    LOG.log( Level.INFO, "Pairwise training set size: " + numPairs +
-        " (should be " + ( posBowTrain.size()*negBowTrain.size()*2 ) + ")" );
+    LOG.log( Level.INFO, "Pairwise training set size: " + ( 2 * numPairs ) +
+        " (" + sampler.getStrategy().getDescription() + ")" );
 
     return pairwiseFile;
   }
 
   /**
-   * 
-   * @param pairwiseTrain
-   * @param set1
-   * @param set2
-   * @param label
-   * @throws IOException 
+   * Write the difference of each pair as a positive line, and its negation
+   * as a negative one, in svm_light's format. Only the attributes of the
+   * metadata are written, in its order, as SvmLightWriter does.
+   * @param sparse
+   * @param m
+   * @param higher
+   * @param lower
+   * @param out
+   * @throws IOException
    */
-  protected long addPairwiseVectors( SvmLightWriter w, BufferedWriter bw,
-      TrainRelation<Integer> set1, TrainRelation<Integer> set2, Integer label )
-      throws IOException {
-
-    long numPairs = 0;
-    for ( LabeledFeatureVector<Integer> outerLfv : set1 ) {
-      for ( LabeledFeatureVector<Integer> innerLfv : set2 ) {
-        LabeledFeatureVector<Integer> pairwiseLfv = new LabeledFeatureVector<Integer>(
-            label, outerLfv.getId() + "_" + innerLfv.getId() );
-        for ( String featName : set1.getMetadata().keySet() ) {
-          DoubleFeature pairwiseFeat = subtractFeatures( featName, outerLfv, innerLfv );
-          if ( pairwiseFeat != null ) { // sparse matrix; don't need 0 features
-            pairwiseLfv.put( featName, pairwiseFeat );
-          }
-        }
-
-        w.write( set1.getMetadata(), pairwiseLfv, bw );
-        numPairs++;
-      }
-    }
+  protected static void writePairwiseVectors( SparseRelation<?> sparse,
+      Metadata m, int[] higher, int[] lower, Appendable out )
+    throws IOException {
+    writePairs( sparse, m, higher, lower, false, out );
+  }
 
-    return numPairs;
+  /**
+   * Write every (positive, negative) pair as writePairwiseVectors does,
+   * looping over the rows rather than listing the pairs.
+   * @param sparse
+   * @param m
+   * @param pos The positive rows.
+   * @param neg The negative rows.
+   * @param out
+   * @throws IOException
+   */
+  protected static void writeAllPairwiseVectors( SparseRelation<?> sparse,
+      Metadata m, int[] pos, int[] neg, Appendable out ) throws IOException {
+    writePairs( sparse, m, pos, neg, true, out );
   }
 
   /**
-   * 
-   * @param featName
-   * @param fv1
-   * @param fv2
-   * @return
+   * Write the pairs: higher[p] with lower[p], or, for all, each higher row
+   * with each lower row.
+   * @param sparse
+   * @param m
+   * @param higher
+   * @param lower
+   * @param all
+   * @param out
+   * @throws IOException
    */
-  protected DoubleFeature subtractFeatures( String featName,
-      FeatureVector<Integer> fv1, FeatureVector<Integer> fv2 ) {
-    Double posLfvValue = 0.0;
-    Double negLfvValue = 0.0;
-    if ( fv1.containsKey( featName ) ) {
-      posLfvValue = (Double) fv1.get( featName ).getValue();
+  private static void writePairs( SparseRelation<?> sparse, Metadata m,
+      int[] higher, int[] lower, boolean all, Appendable out )
+    throws IOException {
+    String[] names = sparse.getFeatureNames();
+    boolean[] written = new boolean[names.length];
+    for ( int j = 0; j < names.length; j++ ) {
+      written[j] = m.containsKey( names[j] );
     }
-    if ( fv2.containsKey( featName ) ) {
-      negLfvValue = (Double) fv2.get( featName ).getValue();
+
+    int[] rowPtr = sparse.getRowPtr();
+    int[] cols = sparse.getColumnIndices();
+    double[] vals = sparse.getValues();
+    int[] diffCols = new int[names.length];
+    double[] diffVals = new double[names.length];
+    StringBuilder sb = new StringBuilder();
+    for ( int p = 0; p < higher.length; p++ ) {
+      int a = higher[p];
+      for ( int q = all ? 0 : p; q < ( all ? lower.length : p + 1 ); q++ ) {
+        int b = lower[q];
+        int n = subtract( cols, vals, rowPtr[a], rowPtr[a + 1], rowPtr[b],
+            rowPtr[b + 1], diffCols, diffVals );
+        appendLine( POS, names, written, diffCols, diffVals, n, 1, sb );
+        appendLine( NEG, names, written, diffCols, diffVals, n, -1, sb );
+        out.append( sb );
+        sb.setLength( 0 );
+      }
     }
-    double diff = posLfvValue - negLfvValue;
-    if ( diff != 0 ) {
-      return new DoubleFeature( featName, diff );
-    } else {
-      return null; // sparse matrix, don't need 0 features
+  }
+
+  /**
+   * Subtract sparse row b from sparse row a by merging their (ascending)
+   * columns, keeping the non-zeros. Missing values count as 0.
+   * @param cols
+   * @param vals
+   * @param aFrom
+   * @param aTo
+   * @param bFrom
+   * @param bTo
+   * @param diffCols Where to put the columns of the difference.
+   * @param diffVals Where to put its values.
+   * @return The number of non-zeros in the difference.
+   */
+  protected static int subtract( int[] cols, double[] vals, int aFrom,
+      int aTo, int bFrom, int bTo, int[] diffCols, double[] diffVals ) {
+    int n = 0;
+    int i = aFrom;
+    int j = bFrom;
+    while ( i < aTo || j < bTo ) {
+      int col;
+      double diff;
+      if ( j >= bTo || ( i < aTo && cols[i] < cols[j] ) ) {
+        col = cols[i];
+        diff = valueOf( vals[i++] );
+      } else if ( i >= aTo || cols[j] < cols[i] ) {
+        col = cols[j];
+        diff = -valueOf( vals[j++] );
+      } else {
+        col = cols[i];
+        diff = valueOf( vals[i++] ) - valueOf( vals[j++] );
+      }
+      if ( diff != 0 ) { // sparse matrix; don't need 0 features
+        diffCols[n] = col;
+        diffVals[n++] = diff;
+      }
     }
+
+    return n;
   }
 
   /**
-   * Get the training data.
+   * Get the value, with a missing one as 0.
+   * @param v
    * @return
    */
-  protected TrainRelation<Integer> getTrainingData( TrainRelation<Integer> train, Integer clazz ) {
-    TrainRelation<Integer> subRelation = new TrainRelation<Integer>( "sub-relation",
-        (Metadata) train.getMetadata().clone() );
-    for ( LabeledFeatureVector<Integer> lfv : train ) {
-      if ( lfv.getLabel().equals( clazz ) ) {
-        subRelation.add( lfv );
+  private static double valueOf( double v ) {
+    return Double.isNaN( v ) ? 0.0 : v;
+  }
+
+  /**
+   * Append a line in svm_light's format.
+   * @param label
+   * @param names The feature names, by column.
+   * @param written Whether to write each column.
+   * @param cols
+   * @param vals
+   * @param n The number of non-zeros.
+   * @param sign What to multiply the values by.
+   * @param sb
+   */
+  protected static void appendLine( int label, String[] names,
+      boolean[] written, int[] cols, double[] vals, int n, int sign,
+      StringBuilder sb ) {
+    sb.append( label ).append( ' ' );
+    for ( int k = 0; k < n; k++ ) {
+      if ( written[cols[k]] ) {
+        sb.append( names[cols[k]] ).append( ':' );
+        sb.append( DoubleFeature.format( sign * vals[k] ) ).append( ' ' );
       }
     }
-
-    return subRelation;
+    sb.append( '\n' );
   }
-  
+
 }
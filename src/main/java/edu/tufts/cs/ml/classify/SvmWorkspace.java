@@ -0,0 +1,408 @@
+package edu.tufts.cs.ml.classify;
+
+import java.io.BufferedReader;
+import java.io.File;
+import java.io.FileReader;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.io.RandomAccessFile;
+import java.util.ArrayList;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Set;
+import java.util.concurrent.Callable;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.Semaphore;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.TimeoutException;
+import java.util.logging.Level;
+import java.util.logging.Logger;
+
+import edu.tufts.cs.ml.util.ConcurrencyUtil;
+
+/**
+ * A private temporary directory for the files one SVM model passes to and
+ * from the svm_light, svm_rank or libsvm binaries, so that several models
+ * can train and predict at once in the same JVM and working directory.
+ *
+ * The binaries themselves run through a pool shared by every workspace,
+ * which bounds how many run at once (by default, one per processor).
+ *
+ * When streaming, the files a binary reads or writes in a single pass are
+ * named pipes instead, which are written (or read) on another thread while
+ * the binary runs, so that the data never lands on disk. svm_learn,
+ * svm_classify, svm_rank_* and svm-train read their data files twice (the
+ * first time to size their buffers), so those stay regular files; what
+ * they write in a single pass, like the predictions, can be piped.
+ */
+public class SvmWorkspace {
+  /** The Logger. */
+  private static final Logger LOG =  Logger.getLogger(
+      SvmWorkspace.class.getName() );
+  /** The default most binaries to run at once. */
+  public static final int DEFAULT_MAX_JOBS =
+      Runtime.getRuntime().availableProcessors();
+  /** The permits to run a binary. */
+  protected static Semaphore jobs = new Semaphore( DEFAULT_MAX_JOBS, true );
+  /** The directory. */
+  protected final File dir;
+  /** Whether to make named pipes for the single-pass files. */
+  protected boolean streaming = false;
+  /** The named pipes made so far. */
+  protected final Set<File> pipes = new HashSet<File>();
+
+  /**
+   * Default constructor: create the directory.
+   * @param prefix The start of the directory's name.
+   * @throws IOException
+   */
+  public SvmWorkspace( String prefix ) throws IOException {
+    File tmp = File.createTempFile( prefix, "" );
+    if ( !tmp.delete() || !tmp.mkdir() ) {
+      throw new IOException( "Could not create the workspace " + tmp );
+    }
+    this.dir = tmp;
+    this.dir.deleteOnExit();
+  }
+
+  /**
+   * Set the most binaries to run at once, for the workspaces of every
+   * model. Binaries already running are not counted against the new limit.
+   * @param maxJobs
+   */
+  public static synchronized void setMaxJobs( int maxJobs ) {
+    if ( maxJobs < 1 ) {
+      throw new IllegalArgumentException( "Max jobs must be at least 1: " +
+          maxJobs );
+    }
+    jobs = new Semaphore( maxJobs, true );
+  }
+
+  /**
+   * Get the permits to run a binary.
+   * @return
+   */
+  protected static synchronized Semaphore getJobs() {
+    return jobs;
+  }
+
+  /**
+   * Get a file in the workspace. It is deleted when the workspace is (or
+   * when the JVM exits).
+   * @param name
+   * @return
+   */
+  public File getFile( String name ) {
+    File f = new File( dir, name );
+    f.deleteOnExit();
+    return f;
+  }
+
+  /**
+   * Get a file the binary reads or writes in a single pass: a named pipe
+   * when streaming (and the system has mkfifo), or else a regular file.
+   * @param name
+   * @return
+   * @throws IOException
+   */
+  public File getPipe( String name ) throws IOException {
+    File f = getFile( name );
+    if ( !streaming || pipes.contains( f ) ) {
+      return f;
+    }
+
+    f.delete();
+    try {
+      Process mkfifo = new ProcessBuilder( "mkfifo", f.getPath() ).start();
+      if ( mkfifo.waitFor() == 0 ) {
+        pipes.add( f );
+        return f;
+      }
+    } catch ( IOException e ) {
+      LOG.log( Level.FINE, "mkfifo failed", e );
+    } catch ( InterruptedException e ) {
+      Thread.currentThread().interrupt();
+      throw new IOException( "Interrupted while making a pipe: " + f );
+    }
+    LOG.warning( "Could not make a named pipe; using a file: " + f );
+    return f;
+  }
+
+  /**
+   * Set whether to make named pipes for the files the binaries read or
+   * write in a single pass, and stream them on other threads.
+   * @param streaming
+   */
+  public void setStreaming( boolean streaming ) {
+    this.streaming = streaming;
+  }
+
+  /**
+   * Whether the files from getPipe are streamed.
+   * @return
+   */
+  public boolean isStreaming() {
+    return this.streaming;
+  }
+
+  /**
+   * Get the directory.
+   * @return
+   */
+  public File getDirectory() {
+    return this.dir;
+  }
+
+  /**
+   * Run a binary once the pool has room, copying its output (and errors) to
+   * the stream.
+   * @param out
+   * @param command The binary and its arguments.
+   * @return The binary's exit code.
+   * @throws IOException
+   * @throws InterruptedException
+   */
+  public int run( OutputStream out, String... command ) throws IOException,
+    InterruptedException {
+    Semaphore permits = getJobs();
+    permits.acquire();
+    ExecutorService executor = Executors.newSingleThreadExecutor();
+    try {
+      Process process = start( command );
+      Future<?> drain = drain( executor, process.getInputStream(), out );
+      int exitCode = process.waitFor();
+      get( drain );
+      return exitCode;
+    } finally {
+      executor.shutdownNow();
+      permits.release();
+    }
+  }
+
+  /**
+   * Run a binary once the pool has room, writing its input first and
+   * reading its output after; or, when streaming, both while it runs, on
+   * their own threads, through the pipes from getPipe. Its console output
+   * (and errors) are copied to the stream on another thread.
+   * @param out
+   * @param input Writes the binary's input (or null).
+   * @param output Reads the binary's output (or null).
+   * @param command The binary and its arguments.
+   * @return What output read.
+   * @throws IOException If the binary fails, or reading or writing does.
+   * @throws InterruptedException
+   */
+  public <T> T run( OutputStream out, Callable<?> input, Callable<T> output,
+      String... command ) throws IOException, InterruptedException {
+    if ( !streaming && input != null ) {
+      call( input );
+    }
+
+    Semaphore permits = getJobs();
+    permits.acquire();
+    ExecutorService executor = Executors.newFixedThreadPool( 3 );
+    Future<?> writing = null;
+    Future<T> reading = null;
+    T result = null;
+    int exitCode;
+    try {
+      Process process = start( command );
+      Future<?> drain = drain( executor, process.getInputStream(), out );
+      if ( streaming && input != null ) {
+        writing = executor.submit( input );
+      }
+      if ( streaming && output != null ) {
+        reading = executor.submit( output );
+      }
+      exitCode = process.waitFor();
+      get( drain );
+      try {
+        if ( writing != null ) {
+          get( release( writing ) );
+        }
+        if ( reading != null ) {
+          result = get( release( reading ) );
+        }
+      } catch ( IOException e ) {
+        if ( exitCode == 0 ) {
+          throw e;
+        }
+      }
+    } finally {
+      executor.shutdownNow();
+      permits.release();
+    }
+
+    if ( exitCode != 0 ) {
+      throw new IOException( command[0] + " exited with " + exitCode );
+    }
+    if ( !streaming && output != null ) {
+      result = call( output );
+    }
+    return result;
+  }
+
+  /**
+   * Wait for a task on a pipe after the binary has exited. If the binary
+   * never opened the pipe, the task would wait forever to open its end, so
+   * open (and close) both ends until the task is done: a writer then fails
+   * and a reader reaches the end.
+   * @param task
+   * @return
+   * @throws IOException
+   * @throws InterruptedException
+   */
+  protected <T> Future<T> release( Future<T> task ) throws IOException,
+    InterruptedException {
+    while ( !task.isDone() ) {
+      for ( File pipe : pipes ) {
+        new RandomAccessFile( pipe, "rw" ).close();
+      }
+      try {
+        task.get( 10, TimeUnit.MILLISECONDS );
+      } catch ( TimeoutException e ) {
+        // still blocked; open the pipes again
+      } catch ( ExecutionException e ) {
+        break; // get() reports it
+      }
+    }
+
+    return task;
+  }
+
+  /**
+   * Start a binary, with its errors in its output.
+   * @param command
+   * @return
+   * @throws IOException
+   */
+  protected Process start( String... command ) throws IOException {
+    ProcessBuilder processBuilder = new ProcessBuilder( command );
+    processBuilder.redirectErrorStream( true );
+    return processBuilder.start();
+  }
+
+  /**
+   * Copy the stream to the other on another thread, so that the binary
+   * never blocks on a full pipe while this one waits on it.
+   * @param executor
+   * @param in
+   * @param out
+   * @return
+   */
+  protected static Future<?> drain( ExecutorService executor,
+      final InputStream in, final OutputStream out ) {
+    return executor.submit( new Callable<Void>() {
+      public Void call() throws IOException {
+        try {
+          copy( in, out );
+        } finally {
+          in.close();
+        }
+        return null;
+      }
+    } );
+  }
+
+  /**
+   * Copy the stream to the other.
+   * @param in
+   * @param out
+   * @throws IOException
+   */
+  private static void copy( InputStream in, OutputStream out )
+    throws IOException {
+    byte[] buf = new byte[8192];
+    int n;
+    while ( ( n = in.read( buf ) ) != -1 ) {
+      out.write( buf, 0, n );
+    }
+    out.flush();
+  }
+
+  /**
+   * Call the task here, as an IOException if it fails.
+   * @param task
+   * @return
+   * @throws IOException
+   */
+  protected static <T> T call( Callable<T> task ) throws IOException {
+    try {
+      return task.call();
+    } catch ( IOException e ) {
+      throw e;
+    } catch ( RuntimeException e ) {
+      throw e;
+    } catch ( Exception e ) {
+      throw new IOException( e );
+    }
+  }
+
+  /**
+   * Wait for the task, rethrowing an IOException it failed with.
+   * @param future
+   * @return
+   * @throws IOException
+   * @throws InterruptedException
+   */
+  protected static <T> T get( Future<T> future ) throws IOException,
+    InterruptedException {
+    return ConcurrencyUtil.get( future, IOException.class );
+  }
+
+  /**
+   * Make a task that reads a predictions file (or pipe) of one value per
+   * line, as svm_classify and svm_rank_classify write.
+   * @param predictions
+   * @return
+   */
+  public static Callable<List<Double>> readPredictions(
+      final File predictions ) {
+    return new Callable<List<Double>>() {
+      public List<Double> call() throws IOException {
+        List<Double> values = new ArrayList<Double>();
+        BufferedReader br = new BufferedReader( new FileReader( predictions ),
+            1 << 16 );
+        try {
+          String line;
+          while ( ( line = br.readLine() ) != null ) {
+            values.add( Double.valueOf( line ) );
+          }
+        } finally {
+          br.close();
+        }
+        return values;
+      }
+    };
+  }
+
+  /**
+   * Delete the files in the workspace, but not the workspace.
+   */
+  public void clear() {
+    File[] files = dir.listFiles();
+    if ( files != null ) {
+      for ( File f : files ) {
+        f.delete();
+      }
+    }
+  }
+
+  /**
+   * Delete the workspace and its files.
+   */
+  public void delete() {
+    clear();
+    pipes.clear();
+    dir.delete();
+  }
+
+  @Override
+  public String toString() {
+    return dir.toString();
+  }
+}
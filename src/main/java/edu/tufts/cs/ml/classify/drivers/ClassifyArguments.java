@@ -26,6 +26,8 @@ public class ClassifyArguments {
   public static final String ARG_OUT_FILE = "output_file";
   /** The argument name for the output file. */
   public static final String OPT_NORMALIZE = "normalize";
+  /** The argument name for the number of threads. */
+  public static final String OPT_THREADS = "threads";
   /** The usage message for the truth data. */
   public static final String USAGE_TRAIN_FILE = "The name of the file for " +
     "the training data.";
@@ -37,12 +39,16 @@ public class ClassifyArguments {
   /** The usage message for the output file. */
   public static final String USAGE_NORMALIZE =
       "(Optional) Whether to normalize the data.";
+  /** The usage message for the number of threads. */
+  public static final String USAGE_THREADS = "(Optional) The number of " +
+    "threads with which to classify the testing data (default 1).";
   /** The usage message. */
   protected static String usage = "classify " + ARG_TRAIN_FILE + " " +
-    ARG_TEST_FILE + " " + ARG_OUT_FILE + " [--normalize]\n\n" +
+    ARG_TEST_FILE + " " + ARG_OUT_FILE + " [--normalize] [--threads n]\n\n" +
     ARG_TRAIN_FILE + ":\t " + USAGE_TRAIN_FILE + "\n" + ARG_TEST_FILE +
     ":\t " + USAGE_TEST_FILE + "\n" + ARG_OUT_FILE + ":\t" + USAGE_OUT_FILE +
-    "\n" + OPT_NORMALIZE + ":\t" + USAGE_NORMALIZE;
+    "\n" + OPT_NORMALIZE + ":\t" + USAGE_NORMALIZE + "\n" + OPT_THREADS +
+    ":\t" + USAGE_THREADS;
 
   /*
    * Argument definitions for command line use.
@@ -55,6 +61,8 @@ public class ClassifyArguments {
   private File outFile;
   /** Whether to normalize the data. */
   private boolean normalize = false;
+  /** The number of threads with which to classify. */
+  private int threads = 1;
 
   /**
    * Options from the command line arguments override default settings
@@ -64,7 +72,7 @@ public class ClassifyArguments {
     throws CommandLineArgumentException {
     if ( args.length >= 1 && args[0].toUpperCase().contains( "USAGE" ) ) {
       printUsage( "Usage:" );
-    } else if ( args.length < 2 ) {
+    } else if ( args.length < 3 ) {
       printUsage( CommandLineArgumentException.DIFF_NUM_ARGS );
     }
 
@@ -72,9 +80,26 @@ public class ClassifyArguments {
     String test = args[1];
     String output = args[2];
 
-    for ( String arg: args ) {
-      if ( arg.trim().equalsIgnoreCase( "--normalize" ) ) {
+    for ( int i = 3; i < args.length; i++ ) {
+      String arg = args[i].trim();
+      if ( arg.equalsIgnoreCase( "--" + OPT_NORMALIZE ) ) {
         normalize = true;
+      } else if ( arg.equalsIgnoreCase( "--" + OPT_THREADS ) ||
+          arg.toLowerCase().startsWith( "--" + OPT_THREADS + "=" ) ) {
+        // --threads=n or --threads n
+        String val = ( arg.length() > OPT_THREADS.length() + 2 ) ?
+          arg.substring( OPT_THREADS.length() + 3 ) :
+          ( i + 1 < args.length ) ? args[++i].trim() : "";
+        try {
+          threads = Integer.parseInt( val );
+        } catch ( NumberFormatException e ) {
+          threads = 0;
+        }
+        if ( threads < 1 ) {
+          printUsage( "Invalid number of threads: " + val );
+        }
+      } else {
+        printUsage( "Unknown option: " + arg );
       }
     }
 
@@ -142,4 +167,12 @@ public class ClassifyArguments {
   public boolean normalize() {
     return this.normalize;
   }
+
+  /**
+   * Get the number of threads with which to classify.
+   * @return
+   */
+  public int getThreads() {
+    return this.threads;
+  }
 }
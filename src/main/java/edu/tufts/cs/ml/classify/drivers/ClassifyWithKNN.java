@@ -7,12 +7,13 @@ import java.util.logging.Logger;
 
 import edu.tufts.cs.ml.TestRelation;
 import edu.tufts.cs.ml.TrainRelation;
+import edu.tufts.cs.ml.classify.Classifier;
 import edu.tufts.cs.ml.classify.KnnClassifier;
+import edu.tufts.cs.ml.classify.ParallelClassifier;
 import edu.tufts.cs.ml.exception.CommandLineArgumentException;
 import edu.tufts.cs.ml.exception.IncomparableFeatureVectorException;
 import edu.tufts.cs.ml.normalize.Normalizer;
 import edu.tufts.cs.ml.normalize.ZScoreNormalizer;
-import edu.tufts.cs.ml.reader.ArffReader;
 import edu.tufts.cs.ml.reader.Reader;
 import edu.tufts.cs.ml.util.PrettyPrinter;
 import edu.tufts.cs.ml.validate.KnnLOOCValidator;
@@ -45,7 +46,8 @@ public class ClassifyWithKNN {
       "\n\tTraining file:\t" + cmd.getTrainingFile() +
       "\n\tTesting file:\t" + cmd.getTestingFile() +
       "\n\tOutput file:\t" + cmd.getOutputFile() +
-      "\n\tNormalize:\t" + cmd.normalize() );
+      "\n\tNormalize:\t" + cmd.normalize() +
+      "\n\tThreads:\t" + cmd.getThreads() );
   }
 
   /**
@@ -65,7 +67,7 @@ public class ClassifyWithKNN {
      */
     LOG.info( "Training the classifier." );
     File trainFile = cmd.getTrainingFile();
-    Reader<String> reader = new ArffReader<String>();
+    Reader<String> reader = Reader.forFile( trainFile );
     TrainRelation<String> train = (TrainRelation<String>) reader.read(
         trainFile );
 
@@ -74,6 +76,7 @@ public class ClassifyWithKNN {
      */
     LOG.info( "Running the classifier." );
     File testFile = cmd.getTestingFile();
+    reader = Reader.forFile( testFile );
     TestRelation<String> test = (TestRelation<String>) reader.read( testFile );
 
     /*
@@ -84,10 +87,13 @@ public class ClassifyWithKNN {
       n.normalize( test );
     }
 
-    KnnClassifier<String> c = new KnnClassifier<String>();
-    c.train( train );
     int[] kVals = {1, 3, 5, 7, 9};
-    c.classify( test, kVals );
+    Classifier<String> c = new KnnClassifier<String>( kVals );
+    if ( cmd.getThreads() > 1 ) {
+      c = new ParallelClassifier<String>( c, cmd.getThreads() );
+    }
+    c.train( train );
+    c.classify( test );
 
     /*
      * Gather performance statistics.
@@ -9,6 +9,7 @@ import edu.tufts.cs.ml.TestRelation;
 import edu.tufts.cs.ml.TrainRelation;
 import edu.tufts.cs.ml.classify.Classifier;
 import edu.tufts.cs.ml.classify.NaiveBayesClassifier;
+import edu.tufts.cs.ml.classify.ParallelClassifier;
 import edu.tufts.cs.ml.exception.CommandLineArgumentException;
 import edu.tufts.cs.ml.exception.IncomparableFeatureVectorException;
 import edu.tufts.cs.ml.normalize.Normalizer;
@@ -45,7 +46,8 @@ public class ClassifyWithNaiveBayes {
       "\n\tTraining file:\t" + cmd.getTrainingFile() +
       "\n\tTesting file:\t" + cmd.getTestingFile() +
       "\n\tOutput file:\t" + cmd.getOutputFile() +
-      "\n\tNormalize:\t" + cmd.normalize() );
+      "\n\tNormalize:\t" + cmd.normalize() +
+      "\n\tThreads:\t" + cmd.getThreads() );
   }
 
   /**
@@ -83,6 +85,9 @@ public class ClassifyWithNaiveBayes {
     }
 
     Classifier<String> c = new NaiveBayesClassifier<String>();
+    if ( cmd.getThreads() > 1 ) {
+      c = new ParallelClassifier<String>( c, cmd.getThreads() );
+    }
     c.train( train );
     c.classify( test );
 
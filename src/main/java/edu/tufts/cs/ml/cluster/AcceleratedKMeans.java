@@ -0,0 +1,122 @@
+package edu.tufts.cs.ml.cluster;
+
+import java.util.Set;
+import java.util.logging.Level;
+import java.util.logging.Logger;
+
+import edu.tufts.cs.ml.DenseRelation;
+import edu.tufts.cs.ml.FeatureVector;
+import edu.tufts.cs.ml.Relation;
+import edu.tufts.cs.ml.exception.IncomparableFeatureVectorException;
+
+/**
+ * k-Means that skips the distances the triangle inequality says can't change
+ * a vector's cluster (see HamerlyAssignment). The clusters are exactly those
+ * of KMeans for the same initial centroids; only the number of distances
+ * computed differs, and that is kept for the last run (the last one started,
+ * when several run at once).
+ *
+ * @param <E>
+ */
+public class AcceleratedKMeans<E> extends KMeans<E> {
+  /** The Logger. */
+  private static final Logger LOG = Logger.getLogger(
+      AcceleratedKMeans.class.getName() );
+  /** The assignment engine of the last run. */
+  protected HamerlyAssignment lastAssignment;
+
+  /**
+   * Default constructor.
+   *
+   * @param dataset
+   */
+  public AcceleratedKMeans( Relation<? extends FeatureVector<E>> dataset ) {
+    super( dataset );
+  }
+
+  /**
+   * Constructor with the number of threads to use.
+   *
+   * @param dataset
+   * @param parallelism
+   */
+  public AcceleratedKMeans( Relation<? extends FeatureVector<E>> dataset,
+      int parallelism ) {
+    super( dataset, parallelism );
+  }
+
+  /**
+   * Constructor over dense rows, with the number of threads to use.
+   *
+   * @param denseData
+   * @param parallelism
+   */
+  public AcceleratedKMeans( DenseRelation<? extends FeatureVector<E>> denseData,
+      int parallelism ) {
+    super( denseData, parallelism );
+  }
+
+  @Override
+  protected ParallelAssignment createAssignment( int k, boolean pooled ) {
+    lastAssignment = new HamerlyAssignment( denseData, k, parallelism,
+        pooled );
+    return lastAssignment;
+  }
+
+  @Override
+  protected ClusterSet<E> cluster( Set<Centroid<E>> centroids,
+      boolean pooled ) throws IncomparableFeatureVectorException {
+    ClusterSet<E> clusters = super.cluster( centroids, pooled );
+    logPruning();
+
+    return clusters;
+  }
+
+  /**
+   * Get the number of distances computed by each iteration of the last run.
+   * @return
+   */
+  public long[] getComputedCounts() {
+    return ( lastAssignment == null ) ? new long[0] :
+      lastAssignment.getComputed();
+  }
+
+  /**
+   * Get the number of distances each iteration of the last run skipped,
+   * compared to computing every vector's distance to every centroid. (The
+   * first iteration computes the distances between the centroids as well,
+   * so it can be negative.)
+   * @return
+   */
+  public long[] getPrunedCounts() {
+    long[] pruned = getComputedCounts();
+    for ( int j = 0; j < pruned.length; j++ ) {
+      pruned[j] = lastAssignment.getUnprunedCount() - pruned[j];
+    }
+
+    return pruned;
+  }
+
+  /**
+   * Get the number of distances each iteration would compute without
+   * pruning.
+   * @return
+   */
+  public long getUnprunedCount() {
+    return ( lastAssignment == null ) ? 0 :
+      lastAssignment.getUnprunedCount();
+  }
+
+  /**
+   * Log the pruning of the last run.
+   */
+  protected void logPruning() {
+    if ( LOG.isLoggable( Level.FINE ) ) {
+      long[] pruned = getPrunedCounts();
+      for ( int j = 0; j < pruned.length; j++ ) {
+        LOG.log( Level.FINE, "Iteration " + j + ": pruned " + pruned[j] +
+            " of " + getUnprunedCount() + " distances" );
+      }
+    }
+  }
+}
@@ -0,0 +1,389 @@
+package edu.tufts.cs.ml.cluster;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.Comparator;
+import java.util.List;
+import java.util.Random;
+
+import edu.tufts.cs.ml.DenseRelation;
+import edu.tufts.cs.ml.util.VectorMath;
+
+/**
+ * Chooses the rows of a DenseRelation to start a k-method from, without
+ * computing every pairwise distance. Every choice is made with the given
+ * Random, so the same seed always gives the same rows.
+ */
+public class CentroidSeeder {
+  /** The default number of rows sampled to estimate the density. */
+  public static final int DEFAULT_SAMPLE_SIZE = 1000;
+  /** The default number of rounds of k-means||. */
+  public static final int DEFAULT_ROUNDS = 5;
+  /** The rows to choose from. */
+  protected final DenseRelation<?> denseData;
+  /** The source of randomness. */
+  protected final Random random;
+
+  /**
+   * Default constructor.
+   * @param denseData
+   * @param random
+   */
+  public CentroidSeeder( DenseRelation<?> denseData, Random random ) {
+    this.denseData = denseData;
+    this.random = random;
+  }
+
+  /**
+   * Choose k rows with k-means++: the first uniformly at random, then each
+   * with probability proportional to its squared distance from the closest
+   * row chosen so far.
+   * @param k
+   * @return The rows, in the order chosen.
+   */
+  public int[] kMeansPlusPlus( int k ) {
+    checkK( k );
+    int n = denseData.size();
+    double[] weights = new double[n];
+    Arrays.fill( weights, 1.0 );
+    int[] all = new int[n];
+    for ( int i = 0; i < n; i++ ) {
+      all[i] = i;
+    }
+
+    return weightedPlusPlus( all, weights, k, 1 );
+  }
+
+  /**
+   * Choose k rows with k-means|| (Bahmani et al., "Scalable K-Means++"):
+   * starting from one row chosen uniformly at random, each round samples
+   * every row independently with probability
+   * oversampling * d^2 / (total d^2), where d is its distance from the
+   * closest candidate so far. The candidates are then weighted by the number
+   * of rows closest to them and reduced to k with greedy weighted
+   * k-means++. This takes a few passes over the data instead of k.
+   * @param k
+   * @param oversampling The expected number of rows sampled per round.
+   * @param rounds
+   * @return The rows.
+   */
+  public int[] kMeansParallel( int k, double oversampling, int rounds ) {
+    checkK( k );
+    int n = denseData.size();
+    List<Integer> candidates = new ArrayList<Integer>();
+    boolean[] chosen = new boolean[n];
+    double[] minDist = new double[n];
+    int[] closest = new int[n];
+    Arrays.fill( minDist, Double.POSITIVE_INFINITY );
+
+    int first = random.nextInt( n );
+    chosen[first] = true;
+    candidates.add( first );
+    double cost = updateDistances( first, 0, minDist, closest );
+
+    for ( int round = 0; round < rounds && cost > 0; round++ ) {
+      List<Integer> sampled = new ArrayList<Integer>();
+      for ( int i = 0; i < n; i++ ) {
+        if ( !chosen[i] &&
+            random.nextDouble() < oversampling * minDist[i] / cost ) {
+          chosen[i] = true;
+          sampled.add( i );
+        }
+      }
+      for ( int row : sampled ) {
+        candidates.add( row );
+        cost = updateDistances( row, candidates.size() - 1, minDist,
+            closest );
+      }
+    }
+
+    // make sure there are at least k candidates
+    for ( int i = 0; candidates.size() < k; i++ ) {
+      if ( !chosen[i] ) {
+        chosen[i] = true;
+        candidates.add( i );
+        updateDistances( i, candidates.size() - 1, minDist, closest );
+      }
+    }
+
+    int[] rows = new int[candidates.size()];
+    double[] weights = new double[rows.length];
+    for ( int c = 0; c < rows.length; c++ ) {
+      rows[c] = candidates.get( c );
+    }
+    for ( int i = 0; i < n; i++ ) {
+      weights[closest[i]]++;
+    }
+
+    return weightedPlusPlus( rows, weights, k,
+        2 + (int) Math.log( k ) );
+  }
+
+  /**
+   * Choose k rows the way the density-based initialization does, estimating
+   * the radius and each row's density from a random sample of rows instead
+   * of from every pair. The radius is the average distance between the
+   * sampled rows; a row's density is the number of sampled rows within that
+   * radius. The densest row is chosen first, then the densest rows at least
+   * the radius away from every row chosen so far, shrinking the radius until
+   * there are k.
+   * @param k
+   * @param sampleSize
+   * @return The rows, in the order chosen.
+   */
+  public int[] sampledDensity( int k, int sampleSize ) {
+    checkK( k );
+    int n = denseData.size();
+    int[] sample = sample( Math.min( n, sampleSize ) );
+    double[] data = denseData.getData();
+    int d = denseData.numFeatures();
+
+    // the average pairwise distance of the sample
+    double total = 0.0;
+    for ( int a = 0; a < sample.length; a++ ) {
+      for ( int b = a + 1; b < sample.length; b++ ) {
+        total += 2 * VectorMath.euclidean( data,
+            denseData.offset( sample[a] ), data,
+            denseData.offset( sample[b] ), d );
+      }
+    }
+    int r = (int) ( total / ( (double) sample.length * sample.length ) );
+
+    // the density of each row
+    final int[] density = new int[n];
+    for ( int i = 0; i < n; i++ ) {
+      for ( int s : sample ) {
+        if ( s != i && VectorMath.euclidean( data, denseData.offset( i ),
+            data, denseData.offset( s ), d ) < r ) {
+          density[i]++;
+        }
+      }
+    }
+
+    List<Integer> byDensity = new ArrayList<Integer>( n );
+    for ( int i = 0; i < n; i++ ) {
+      byDensity.add( i );
+    }
+    Collections.sort( byDensity, new Comparator<Integer>() {
+      public int compare( Integer a, Integer b ) {
+        int res = density[b] - density[a];
+        return ( res != 0 ) ? res : a.compareTo( b );
+      }
+    } );
+
+    int[] rows = new int[k];
+    boolean[] chosen = new boolean[n];
+    rows[0] = byDensity.get( 0 );
+    chosen[rows[0]] = true;
+    int numChosen = 1;
+    int mindist = r;
+    while ( numChosen < k ) {  // may have to loop if mindist too high
+      for ( int i : byDensity ) {
+        if ( numChosen >= k ) break;
+        if ( chosen[i] ) continue;
+        boolean tooClose = false;
+        for ( int c = 0; c < numChosen && !tooClose; c++ ) {
+          tooClose = VectorMath.euclidean( data, denseData.offset( i ), data,
+              denseData.offset( rows[c] ), d ) < mindist;
+        }
+        if ( !tooClose ) {
+          chosen[i] = true;
+          rows[numChosen++] = i;
+        }
+      }
+      mindist = (int) ( (double) mindist * .75 );
+    }
+
+    return rows;
+  }
+
+  /**
+   * Weighted k-means++ over a set of rows. With more than one trial, each
+   * step draws that many rows and keeps the one that most lowers the
+   * weighted sum of the squared distances ("greedy" k-means++).
+   * @param rows The rows to choose from.
+   * @param weights The weight of each of them.
+   * @param k
+   * @param trials The number of rows to draw per step.
+   * @return The chosen rows, in the order chosen.
+   */
+  protected int[] weightedPlusPlus( int[] rows, double[] weights, int k,
+      int trials ) {
+    double[] minDist = new double[rows.length];
+    Arrays.fill( minDist, Double.POSITIVE_INFINITY );
+    double[] trialDist = new double[rows.length];
+    double[] bestDist = new double[rows.length];
+    boolean[] chosen = new boolean[rows.length];
+    int[] seeds = new int[k];
+
+    int next = pick( weights, null, chosen );
+    distances( rows, weights, next, minDist );
+    for ( int s = 0; s < k; s++ ) {
+      chosen[next] = true;
+      seeds[s] = rows[next];
+      if ( s == k - 1 ) {
+        break;
+      }
+
+      next = pick( weights, minDist, chosen );
+      if ( trials > 1 ) {
+        double bestCost = Double.POSITIVE_INFINITY;
+        int best = next;
+        for ( int t = 0; t < trials; t++ ) {
+          int trial = ( t == 0 ) ? next : pick( weights, minDist, chosen );
+          System.arraycopy( minDist, 0, trialDist, 0, rows.length );
+          double cost = distances( rows, weights, trial, trialDist );
+          if ( cost < bestCost ) {
+            bestCost = cost;
+            best = trial;
+            System.arraycopy( trialDist, 0, bestDist, 0, rows.length );
+          }
+        }
+        next = best;
+        System.arraycopy( bestDist, 0, minDist, 0, rows.length );
+      } else {
+        distances( rows, weights, next, minDist );
+      }
+    }
+
+    return seeds;
+  }
+
+  /**
+   * Lower each row's squared distance to its closest chosen row with a new
+   * chosen row.
+   * @param rows
+   * @param weights
+   * @param next The index of the new chosen row.
+   * @param minDist
+   * @return The sum of the squared distances, weighted.
+   */
+  protected double distances( int[] rows, double[] weights, int next,
+      double[] minDist ) {
+    double[] data = denseData.getData();
+    int d = denseData.numFeatures();
+    int offset = denseData.offset( rows[next] );
+    double cost = 0.0;
+    for ( int c = 0; c < rows.length; c++ ) {
+      double dist = VectorMath.squaredEuclidean( data,
+          denseData.offset( rows[c] ), data, offset, d );
+      if ( dist < minDist[c] ) {
+        minDist[c] = dist;
+      }
+      cost += weights[c] * minDist[c];
+    }
+
+    return cost;
+  }
+
+  /**
+   * Pick an unchosen index with probability proportional to its weight times
+   * its distance (or its weight alone if distances is null). If every
+   * unchosen index has no weight (eg. they duplicate chosen rows), pick one
+   * of them uniformly.
+   * @param weights
+   * @param distances
+   * @param chosen
+   * @return
+   */
+  protected int pick( double[] weights, double[] distances,
+      boolean[] chosen ) {
+    double total = 0.0;
+    int unchosen = 0;
+    for ( int c = 0; c < weights.length; c++ ) {
+      if ( !chosen[c] ) {
+        total += weights[c] * ( distances == null ? 1.0 : distances[c] );
+        unchosen++;
+      }
+    }
+
+    if ( total > 0 ) {
+      double target = random.nextDouble() * total;
+      int last = -1;
+      for ( int c = 0; c < weights.length; c++ ) {
+        if ( !chosen[c] ) {
+          double w = weights[c] * ( distances == null ? 1.0 : distances[c] );
+          if ( w > 0 ) {
+            last = c;
+            target -= w;
+            if ( target < 0 ) {
+              return c;
+            }
+          }
+        }
+      }
+      return last;  // rounding
+    }
+
+    int target = random.nextInt( unchosen );
+    for ( int c = 0; c < weights.length; c++ ) {
+      if ( !chosen[c] && target-- == 0 ) {
+        return c;
+      }
+    }
+    throw new IllegalStateException( "Nothing left to choose." );
+  }
+
+  /**
+   * Update each row's squared distance to its closest candidate with a new
+   * candidate.
+   * @param row The new candidate's row.
+   * @param candidate The new candidate's index.
+   * @param minDist
+   * @param closest The index of each row's closest candidate.
+   * @return The total of the squared distances.
+   */
+  protected double updateDistances( int row, int candidate, double[] minDist,
+      int[] closest ) {
+    double[] data = denseData.getData();
+    int d = denseData.numFeatures();
+    int offset = denseData.offset( row );
+    double cost = 0.0;
+    for ( int i = 0; i < minDist.length; i++ ) {
+      double dist = VectorMath.squaredEuclidean( data, denseData.offset( i ),
+          data, offset, d );
+      if ( dist < minDist[i] ) {
+        minDist[i] = dist;
+        closest[i] = candidate;
+      }
+      cost += minDist[i];
+    }
+
+    return cost;
+  }
+
+  /**
+   * Sample rows uniformly without replacement.
+   * @param size
+   * @return The rows, ascending.
+   */
+  protected int[] sample( int size ) {
+    int n = denseData.size();
+    int[] perm = new int[n];
+    for ( int i = 0; i < n; i++ ) {
+      perm[i] = i;
+    }
+    for ( int i = 0; i < size; i++ ) {
+      int j = i + random.nextInt( n - i );
+      int tmp = perm[i];
+      perm[i] = perm[j];
+      perm[j] = tmp;
+    }
+    int[] sample = Arrays.copyOf( perm, size );
+    Arrays.sort( sample );
+
+    return sample;
+  }
+
+  /**
+   * Make sure there are enough rows to choose k of them.
+   * @param k
+   */
+  protected void checkK( int k ) {
+    if ( k < 1 || k > denseData.size() ) {
+      throw new IllegalArgumentException( "Cannot choose " + k +
+          " centroids from " + denseData.size() + " vectors" );
+    }
+  }
+}
@@ -4,6 +4,7 @@ import java.util.ArrayList;
 
 import edu.tufts.cs.ml.FeatureVector;
 import edu.tufts.cs.ml.exception.IncomparableFeatureVectorException;
+import edu.tufts.cs.ml.util.VectorMath;
 
 
 
@@ -35,14 +36,104 @@ public class Cluster<E> extends ArrayList<FeatureVector<E>> {
    * @throws IncomparableFeatureVectorException
    */
   public double calculateSSE() throws IncomparableFeatureVectorException {
-    double err = 0.0;
-    for ( FeatureVector<?> fv : this ) {
-      double dist = fv.getEuclideanDistance( this.getCentroid() );
+    return calculateSSE( null );
+  }
 
-      err += ( dist * dist );
+  /**
+   * Calculate the sum of the squared errors for this Cluster, with the
+   * distances from the cache if it has them.
+   * @param cache The cache; may be null.
+   * @return
+   * @throws IncomparableFeatureVectorException
+   */
+  public double calculateSSE( DistanceCache cache )
+    throws IncomparableFeatureVectorException {
+    double[] squared = ( cache == null ) ? squaredDistancesToCentroid() :
+      cache.squaredDistances( this );
+
+    double err = 0.0;
+    for ( double sq : squared ) {
+      err += sq;
     }
 
     return err;
   }
 
+  /**
+   * Calculate the Euclidean distance from each member of this Cluster to its
+   * Centroid, in member order.
+   * @return
+   * @throws IncomparableFeatureVectorException
+   */
+  public double[] distancesToCentroid()
+    throws IncomparableFeatureVectorException {
+    return distancesToCentroid( null );
+  }
+
+  /**
+   * Calculate the Euclidean distance from each member of this Cluster to its
+   * Centroid, in member order, with the distances from the cache if it has
+   * them.
+   * @param cache The cache; may be null.
+   * @return
+   * @throws IncomparableFeatureVectorException
+   */
+  public double[] distancesToCentroid( DistanceCache cache )
+    throws IncomparableFeatureVectorException {
+    double[] squared = ( cache == null ) ? squaredDistancesToCentroid() :
+      cache.squaredDistances( this );
+
+    double[] dists = new double[squared.length];
+    for ( int i = 0; i < dists.length; i++ ) {
+      dists[i] = Math.sqrt( squared[i] );
+    }
+
+    return dists;
+  }
+
+  /**
+   * Calculate the squared Euclidean distance from each member of this
+   * Cluster to its Centroid, in member order.
+   * @return
+   * @throws IncomparableFeatureVectorException
+   */
+  protected double[] squaredDistancesToCentroid()
+    throws IncomparableFeatureVectorException {
+    String[] names = centroidFeatureNames();
+    double[] c = centroid.toArray( names );
+    double[] buf = new double[names.length];
+
+    double[] squared = new double[this.size()];
+    for ( int i = 0; i < squared.length; i++ ) {
+      fillComparable( this.get( i ), names, buf );
+      squared[i] = VectorMath.squaredEuclidean( buf, c );
+    }
+
+    return squared;
+  }
+
+  /**
+   * Get the Centroid's feature names.
+   * @return
+   */
+  protected String[] centroidFeatureNames() {
+    return centroid.keySet().toArray( new String[centroid.size()] );
+  }
+
+  /**
+   * Copy the member's values into buf, in the Centroid's feature order.
+   * @param fv
+   * @param names
+   * @param buf
+   * @throws IncomparableFeatureVectorException
+   */
+  protected void fillComparable( FeatureVector<?> fv, String[] names,
+      double[] buf ) throws IncomparableFeatureVectorException {
+    if ( fv.size() != names.length ) {
+      throw new IncomparableFeatureVectorException( fv, centroid,
+          IncomparableFeatureVectorException.DIFF_NUM_FEATURES );
+    }
+    fv.fill( names, buf, 0 );
+  }
+
 }
@@ -10,6 +10,31 @@ import edu.tufts.cs.ml.util.Util;
 public class ClusterSet<E> extends HashMap<Centroid<E>, Cluster<E>> {
   /** Default generated serial version UID. */
   private static final long serialVersionUID = 6236305380886206787L;
+  /** The cache of the clusters' distances; may be null. */
+  protected transient DistanceCache distanceCache;
+
+  /**
+   * Default constructor; computes the distances every time.
+   */
+  public ClusterSet() {
+    this( null );
+  }
+
+  /**
+   * Constructor with a cache of the clusters' distances.
+   * @param distanceCache
+   */
+  public ClusterSet( DistanceCache distanceCache ) {
+    this.distanceCache = distanceCache;
+  }
+
+  /**
+   * Get the cache of the clusters' distances.
+   * @return The cache, or null if there is none.
+   */
+  public DistanceCache getDistanceCache() {
+    return this.distanceCache;
+  }
 
   /**
    * Calculate the sum of the squared errors for this set of Clusters.
@@ -20,7 +45,7 @@ public class ClusterSet<E> extends HashMap<Centroid<E>, Cluster<E>> {
     double err = 0.0;
 
     for ( Cluster<E> c : this.values() ) {
-      err += c.calculateSSE();
+      err += c.calculateSSE( distanceCache );
     }
 
     err = Util.round( err, 2 );
@@ -0,0 +1,205 @@
+package edu.tufts.cs.ml.cluster;
+
+import java.util.Iterator;
+import java.util.LinkedHashMap;
+import java.util.Map;
+
+import edu.tufts.cs.ml.FeatureVector;
+import edu.tufts.cs.ml.exception.IncomparableFeatureVectorException;
+
+/**
+ * A cache of the squared distances from each Cluster's members to its
+ * Centroid, so that the SSE and the outlier detectors don't compute them
+ * again every time they look at the same clusters.
+ *
+ * The distances are kept in blocks, one per Centroid (by identity, not by
+ * value), with the members they were computed for. A block is only used if
+ * the cluster still has exactly those members, in that order; otherwise it
+ * is computed again. A Centroid is assumed not to change once it has been
+ * clustered around. The least recently used blocks are dropped once the
+ * cache holds more than its capacity of distances.
+ *
+ * The counts of hits and misses are in distances, not blocks. It is safe to
+ * share between threads.
+ */
+public class DistanceCache {
+  /** The default number of distances to keep (32 MB). */
+  public static final int DEFAULT_CAPACITY = 1 << 22;
+  /** The largest number of distances to keep. */
+  protected final int capacity;
+  /** The blocks, least recently used first. */
+  protected final Map<CentroidKey, Block> blocks =
+      new LinkedHashMap<CentroidKey, Block>( 16, .75f, true );
+  /** The number of distances in the blocks. */
+  protected long size;
+  /** The number of distances found in the cache. */
+  protected long hits;
+  /** The number of distances computed. */
+  protected long misses;
+
+  /**
+   * Default constructor.
+   */
+  public DistanceCache() {
+    this( DEFAULT_CAPACITY );
+  }
+
+  /**
+   * Constructor with the number of distances to keep.
+   * @param capacity
+   */
+  public DistanceCache( int capacity ) {
+    if ( capacity < 0 ) {
+      throw new IllegalArgumentException( "Capacity must not be negative: " +
+          capacity );
+    }
+    this.capacity = capacity;
+  }
+
+  /**
+   * Get the squared distance from each member of the cluster to its
+   * Centroid, in member order. This is a copy, so it can be changed
+   * without changing what the cache holds.
+   * @param cluster
+   * @return
+   * @throws IncomparableFeatureVectorException
+   */
+  public double[] squaredDistances( Cluster<?> cluster )
+    throws IncomparableFeatureVectorException {
+    CentroidKey key = new CentroidKey( cluster.getCentroid() );
+    synchronized ( this ) {
+      Block block = blocks.get( key );
+      if ( block != null && block.matches( cluster ) ) {
+        hits += block.squared.length;
+        return block.squared.clone();
+      }
+    }
+
+    double[] squared = cluster.squaredDistancesToCentroid();
+    synchronized ( this ) {
+      misses += squared.length;
+      Block old = blocks.put( key, new Block( cluster, squared ) );
+      if ( old != null ) {
+        size -= old.squared.length;
+      }
+      size += squared.length;
+      evict();
+    }
+
+    return squared.clone();
+  }
+
+  /**
+   * Drop the least recently used blocks until there are no more distances
+   * than the capacity.
+   */
+  protected void evict() {
+    Iterator<Block> it = blocks.values().iterator();
+    while ( size > capacity && it.hasNext() ) {
+      size -= it.next().squared.length;
+      it.remove();
+    }
+  }
+
+  /**
+   * Drop every block (the counts are kept).
+   */
+  public synchronized void clear() {
+    blocks.clear();
+    size = 0;
+  }
+
+  /**
+   * Get the number of distances found in the cache.
+   * @return
+   */
+  public synchronized long getHits() {
+    return this.hits;
+  }
+
+  /**
+   * Get the number of distances that had to be computed.
+   * @return
+   */
+  public synchronized long getMisses() {
+    return this.misses;
+  }
+
+  /**
+   * Get the number of distances in the cache.
+   * @return
+   */
+  public synchronized long size() {
+    return this.size;
+  }
+
+  @Override
+  public synchronized String toString() {
+    return "Distance cache: " + hits + " hits, " + misses + " misses, " +
+        size + " distances in " + blocks.size() + " blocks";
+  }
+
+  /**
+   * A Centroid, compared by identity.
+   */
+  protected static class CentroidKey {
+    /** The Centroid. */
+    protected final Centroid<?> centroid;
+
+    /**
+     * Default constructor.
+     * @param centroid
+     */
+    public CentroidKey( Centroid<?> centroid ) {
+      this.centroid = centroid;
+    }
+
+    @Override
+    public int hashCode() {
+      return System.identityHashCode( centroid );
+    }
+
+    @Override
+    public boolean equals( Object obj ) {
+      return ( obj instanceof CentroidKey ) &&
+          ( (CentroidKey) obj ).centroid == centroid;
+    }
+  }
+
+  /**
+   * The distances of one cluster, and the members they are of.
+   */
+  protected static class Block {
+    /** The members, in order. */
+    protected final FeatureVector<?>[] members;
+    /** The squared distance of each member to the Centroid. */
+    protected final double[] squared;
+
+    /**
+     * Default constructor.
+     * @param cluster
+     * @param squared
+     */
+    public Block( Cluster<?> cluster, double[] squared ) {
+      this.members = cluster.toArray( new FeatureVector<?>[cluster.size()] );
+      this.squared = squared;
+    }
+
+    /**
+     * Whether the cluster has exactly these members, in this order.
+     * @param cluster
+     * @return
+     */
+    public boolean matches( Cluster<?> cluster ) {
+      if ( cluster.size() != members.length ) {
+        return false;
+      }
+      for ( int i = 0; i < members.length; i++ ) {
+        if ( cluster.get( i ) != members[i] ) {
+          return false;
+        }
+      }
+      return true;
+    }
+  }
+}
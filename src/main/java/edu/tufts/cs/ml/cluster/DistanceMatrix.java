@@ -0,0 +1,163 @@
+package edu.tufts.cs.ml.cluster;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.Callable;
+
+import edu.tufts.cs.ml.DenseRelation;
+import edu.tufts.cs.ml.util.ConcurrencyUtil;
+import edu.tufts.cs.ml.util.VectorMath;
+
+/**
+ * The squared Euclidean distances between every pair of a set of rows of a
+ * DenseRelation, computed once and stored condensed: only the pairs i < j,
+ * one after the other, in n * (n - 1) / 2 values. The values can be packed
+ * into floats to halve the memory, at the cost of their precision.
+ *
+ * The condensed index must fit in an int, so there can be at most 65536
+ * rows; sample larger data sets instead (see KMedoids.Method.CLARA).
+ */
+public class DistanceMatrix {
+  /** The largest number of rows whose pairs fit in one array. */
+  public static final int MAX_SIZE = 65536;
+  /** The number of rows. */
+  protected final int n;
+  /** The distances, if not packed. */
+  protected final double[] values;
+  /** The distances, if packed. */
+  protected final float[] packedValues;
+
+  /**
+   * Constructor over every row of the relation.
+   * @param denseData
+   * @param packed Whether to store the distances as floats.
+   * @param parallelism The number of threads to compute them on.
+   */
+  public DistanceMatrix( DenseRelation<?> denseData, boolean packed,
+      int parallelism ) {
+    this( denseData, allRows( denseData.size() ), packed, parallelism );
+  }
+
+  /**
+   * Constructor over some of the rows of the relation; index i of the
+   * matrix is rows[i].
+   * @param denseData
+   * @param rows
+   * @param packed Whether to store the distances as floats.
+   * @param parallelism The number of threads to compute them on.
+   */
+  public DistanceMatrix( final DenseRelation<?> denseData, final int[] rows,
+      boolean packed, int parallelism ) {
+    if ( parallelism < 1 ) {
+      throw new IllegalArgumentException( "Parallelism must be at least 1: " +
+          parallelism );
+    }
+    if ( rows.length > MAX_SIZE ) {
+      throw new IllegalArgumentException( "Too many rows for a distance " +
+          "matrix: " + rows.length + " (at most " + MAX_SIZE + ")" );
+    }
+    this.n = rows.length;
+    int size = (int) ( (long) n * ( n - 1 ) / 2 );
+    this.values = packed ? null : new double[size];
+    this.packedValues = packed ? new float[size] : null;
+
+    // each thread takes every t-th row, so the triangle is split evenly
+    final int threads = Math.max( 1, Math.min( parallelism, n ) );
+    if ( threads == 1 ) {
+      fillRows( denseData, rows, 0, 1 );
+      return;
+    }
+
+    List<Callable<Void>> tasks = new ArrayList<Callable<Void>>( threads );
+    for ( int t = 0; t < threads; t++ ) {
+      final int first = t;
+      tasks.add( new Callable<Void>() {
+        public Void call() {
+          fillRows( denseData, rows, first, threads );
+          return null;
+        }
+      } );
+    }
+
+    ConcurrencyUtil.invokeAll( threads, tasks, "computing distances" );
+  }
+
+  /**
+   * Compute the distances of every step-th row, starting from the first.
+   * @param denseData
+   * @param rows
+   * @param first
+   * @param step
+   */
+  protected void fillRows( DenseRelation<?> denseData, int[] rows, int first,
+      int step ) {
+    double[] data = denseData.getData();
+    int d = denseData.numFeatures();
+    for ( int i = first; i < n; i += step ) {
+      int offset = denseData.offset( rows[i] );
+      int base = index( i, i + 1 );
+      for ( int j = i + 1; j < n; j++ ) {
+        double dist = VectorMath.squaredEuclidean( data, offset, data,
+            denseData.offset( rows[j] ), d );
+        if ( values != null ) {
+          values[base + j - i - 1] = dist;
+        } else {
+          packedValues[base + j - i - 1] = (float) dist;
+        }
+      }
+    }
+  }
+
+  /**
+   * Get the squared distance between two rows of the matrix.
+   * @param i
+   * @param j
+   * @return
+   */
+  public double get( int i, int j ) {
+    if ( i == j ) {
+      return 0.0;
+    }
+    int idx = ( i < j ) ? index( i, j ) : index( j, i );
+    return ( values != null ) ? values[idx] : packedValues[idx];
+  }
+
+  /**
+   * Get the number of rows.
+   * @return
+   */
+  public int size() {
+    return this.n;
+  }
+
+  /**
+   * Whether the distances are stored as floats.
+   * @return
+   */
+  public boolean isPacked() {
+    return this.values == null;
+  }
+
+  /**
+   * Get the condensed index of the pair i < j.
+   * @param i
+   * @param j
+   * @return
+   */
+  protected int index( int i, int j ) {
+    return (int) ( (long) i * n - (long) i * ( i + 1 ) / 2 + j - i - 1 );
+  }
+
+  /**
+   * Get the rows 0 to n - 1.
+   * @param n
+   * @return
+   */
+  protected static int[] allRows( int n ) {
+    int[] rows = new int[n];
+    for ( int i = 0; i < n; i++ ) {
+      rows[i] = i;
+    }
+    return rows;
+  }
+}
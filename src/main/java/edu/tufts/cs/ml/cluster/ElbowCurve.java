@@ -0,0 +1,102 @@
+package edu.tufts.cs.ml.cluster;
+
+import java.awt.geom.Line2D;
+import java.awt.geom.Point2D;
+import java.util.Collections;
+import java.util.Map.Entry;
+import java.util.SortedMap;
+import java.util.TreeMap;
+
+/**
+ * The SSE of the clusterings for a range of k, and the "elbow" (or "knee")
+ * of that curve: the k whose (k, sse) point is farthest from the line
+ * between the points of the smallest and the largest k. Ties go to the
+ * smaller k.
+ */
+public class ElbowCurve {
+  /** The SSE of each k. */
+  protected final SortedMap<Integer, Double> sse;
+  /** The k at the elbow. */
+  protected final int bestK;
+
+  /**
+   * Default constructor.
+   * @param sse The SSE of each k; must not be empty.
+   */
+  public ElbowCurve( SortedMap<Integer, Double> sse ) {
+    if ( sse.isEmpty() ) {
+      throw new IllegalArgumentException( "No values of k to choose from." );
+    }
+    this.sse = Collections.unmodifiableSortedMap(
+        new TreeMap<Integer, Double>( sse ) );
+    this.bestK = findElbow( this.sse );
+  }
+
+  /**
+   * Find the k at the elbow of the curve.
+   * @param sse
+   * @return
+   */
+  protected static int findElbow( SortedMap<Integer, Double> sse ) {
+    int min = sse.firstKey();
+    int max = sse.lastKey();
+
+    // draw a line
+    // x1, y1, x2, y2 = k1, sse1, k2, sse2
+    Line2D.Double line = new Line2D.Double(
+        min, sse.get( min ), max, sse.get( max ) );
+
+    double maxDist = 0;
+    int maxDistK = min;
+    for ( Entry<Integer, Double> e : sse.entrySet() ) {
+      Point2D.Double kPt = new Point2D.Double( e.getKey(), e.getValue() );
+      double dist = line.ptLineDist( kPt );
+
+      if ( dist > maxDist || ( dist == maxDist && e.getKey() < maxDistK ) ) {
+        maxDist = dist;
+        maxDistK = e.getKey();
+      }
+    }
+
+    return maxDistK;
+  }
+
+  /**
+   * Get the k at the elbow.
+   * @return
+   */
+  public int getBestK() {
+    return this.bestK;
+  }
+
+  /**
+   * Get the SSE of each k, in order of k.
+   * @return
+   */
+  public SortedMap<Integer, Double> getSSE() {
+    return this.sse;
+  }
+
+  /**
+   * Get the SSE of one k.
+   * @param k
+   * @return
+   */
+  public double getSSE( int k ) {
+    Double err = sse.get( k );
+    if ( err == null ) {
+      throw new IllegalArgumentException( "No SSE for k=" + k );
+    }
+    return err;
+  }
+
+  @Override
+  public String toString() {
+    StringBuilder sb = new StringBuilder();
+    for ( Entry<Integer, Double> e : sse.entrySet() ) {
+      sb.append( e.getKey() + "\t" + e.getValue() +
+          ( e.getKey() == bestK ? "\t*" : "" ) + "\n" );
+    }
+    return sb.toString();
+  }
+}
@@ -0,0 +1,228 @@
+package edu.tufts.cs.ml.cluster;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+
+import edu.tufts.cs.ml.DenseRelation;
+import edu.tufts.cs.ml.util.VectorMath;
+
+/**
+ * The assignment step with Hamerly's bounds ("Making k-means even faster",
+ * 2010). Each row keeps an upper bound on the distance to its centroid and a
+ * lower bound on the distance to every other centroid; when the centroids
+ * move, the bounds are loosened by how far they moved. A row whose upper
+ * bound is below both its lower bound and half the distance from its
+ * centroid to the nearest other centroid can't have changed cluster, so its
+ * distances aren't computed at all.
+ *
+ * A row that isn't pruned is scanned the same way ParallelAssignment scans
+ * it, and every row is summed in the same order, so the clusters and the
+ * centroids are exactly those of the plain assignment step. The bounds are
+ * only trusted with a small relative margin, so that rounding can't prune a
+ * row that should have moved.
+ */
+public class HamerlyAssignment extends ParallelAssignment {
+  /** The relative margin by which a bound must hold to prune a row. */
+  protected static final double EPSILON = 1e-9;
+  /** Each row's upper bound on the distance to its centroid. */
+  protected final double[] upper;
+  /** Each row's lower bound on the distance to any other centroid. */
+  protected final double[] lower;
+  /** How far each centroid moved since the last assignment. */
+  protected final double[] drift;
+  /** Half the distance from each centroid to the nearest other one. */
+  protected final double[] halfSeparation;
+  /** The centroids of the last assignment, or null before the first. */
+  protected double[][] previous;
+  /** The centroid that moved the most. */
+  protected int maxDriftCentroid;
+  /** How far the centroid that moved the most moved. */
+  protected double maxDrift;
+  /** How far the centroid that moved the second most moved. */
+  protected double secondMaxDrift;
+  /** Each chunk's number of distances computed. */
+  protected final long[] chunkComputed;
+  /** The number of distances computed by each assignment. */
+  protected final List<Long> computed = new ArrayList<Long>();
+
+  /**
+   * Default constructor.
+   * @param denseData
+   * @param k The number of centroids.
+   * @param parallelism The number of threads to use.
+   */
+  public HamerlyAssignment( DenseRelation<?> denseData, int k,
+      int parallelism ) {
+    this( denseData, k, parallelism, true );
+  }
+
+  /**
+   * Constructor that can run the chunks on the caller's thread.
+   * @param denseData
+   * @param k The number of centroids.
+   * @param parallelism The number of threads the chunks are laid out for.
+   * @param pooled Whether to run the chunks on a thread pool.
+   */
+  public HamerlyAssignment( DenseRelation<?> denseData, int k,
+      int parallelism, boolean pooled ) {
+    super( denseData, k, parallelism, pooled );
+    this.upper = new double[denseData.size()];
+    this.lower = new double[denseData.size()];
+    this.drift = new double[k];
+    this.halfSeparation = new double[k];
+    this.chunkComputed = new long[chunkChanges.length];
+  }
+
+  @Override
+  public int assign( double[][] centroids, int[] assignment ) {
+    long overhead = 0;
+
+    // how far each centroid moved
+    Arrays.fill( drift, 0.0 );
+    maxDriftCentroid = -1;
+    maxDrift = 0.0;
+    secondMaxDrift = 0.0;
+    if ( previous != null ) {
+      for ( int c = 0; c < k; c++ ) {
+        drift[c] = VectorMath.euclidean( previous[c], centroids[c] );
+        if ( drift[c] > maxDrift ) {
+          secondMaxDrift = maxDrift;
+          maxDrift = drift[c];
+          maxDriftCentroid = c;
+        } else if ( drift[c] > secondMaxDrift ) {
+          secondMaxDrift = drift[c];
+        }
+      }
+      overhead += k;
+    }
+
+    // how far apart the centroids are
+    Arrays.fill( halfSeparation, Double.POSITIVE_INFINITY );
+    for ( int c = 0; c < k; c++ ) {
+      for ( int other = c + 1; other < k; other++ ) {
+        double half = VectorMath.euclidean( centroids[c],
+            centroids[other] ) / 2;
+        halfSeparation[c] = Math.min( halfSeparation[c], half );
+        halfSeparation[other] = Math.min( halfSeparation[other], half );
+      }
+    }
+    overhead += (long) k * ( k - 1 ) / 2;
+
+    int changes = super.assign( centroids, assignment );
+
+    if ( previous == null ) {
+      previous = new double[k][];
+    }
+    for ( int c = 0; c < k; c++ ) {
+      previous[c] = Arrays.copyOf( centroids[c], centroids[c].length );
+    }
+    for ( long n : chunkComputed ) {
+      overhead += n;
+    }
+    computed.add( overhead );
+
+    return changes;
+  }
+
+  @Override
+  protected void assignChunk( int chunk, double[][] centroids,
+      int[] assignment ) {
+    double[] data = denseData.getData();
+    int d = denseData.numFeatures();
+    double[] s = chunkSums[chunk];
+    int[] cnt = chunkCounts[chunk];
+    Arrays.fill( s, 0.0 );
+    Arrays.fill( cnt, 0 );
+    int changes = 0;
+    long distances = 0;
+
+    for ( int i = bounds[chunk]; i < bounds[chunk + 1]; i++ ) {
+      int offset = denseData.offset( i );
+      int closest = assignment[i];
+      boolean scan = ( closest < 0 || previous == null );
+
+      if ( !scan ) {
+        upper[i] += drift[closest];
+        lower[i] -= ( closest == maxDriftCentroid ) ? secondMaxDrift :
+          maxDrift;
+        double bound = Math.max( halfSeparation[closest], lower[i] );
+        if ( !prunes( upper[i], bound ) ) {
+          // tighten the upper bound and try again
+          upper[i] = Math.sqrt( VectorMath.squaredEuclidean( data, offset,
+              centroids[closest], 0, d ) );
+          distances++;
+          scan = !prunes( upper[i], bound );
+        }
+      }
+
+      if ( scan ) {
+        closest = -1;
+        double closestDist = 0;
+        double secondDist = Double.POSITIVE_INFINITY;
+        for ( int c = 0; c < centroids.length; c++ ) {
+          double dist = VectorMath.squaredEuclidean( data, offset,
+              centroids[c], 0, d );
+          if ( closest == -1 || dist < closestDist ) {
+            if ( closest != -1 ) {
+              secondDist = closestDist;
+            }
+            closest = c;
+            closestDist = dist;
+          } else if ( dist < secondDist ) {
+            secondDist = dist;
+          }
+        }
+        distances += centroids.length;
+        upper[i] = Math.sqrt( closestDist );
+        lower[i] = Math.sqrt( secondDist );
+      }
+
+      if ( assignment[i] != closest ) {
+        assignment[i] = closest;
+        changes++;
+      }
+      cnt[closest]++;
+      int base = closest * d;
+      for ( int j = 0; j < d; j++ ) {
+        s[base + j] += data[offset + j];
+      }
+    }
+
+    chunkChanges[chunk] = changes;
+    chunkComputed[chunk] = distances;
+  }
+
+  /**
+   * Whether the upper bound is safely below the lower bound.
+   * @param upperBound
+   * @param lowerBound
+   * @return
+   */
+  protected boolean prunes( double upperBound, double lowerBound ) {
+    return upperBound * ( 1 + EPSILON ) < lowerBound;
+  }
+
+  /**
+   * Get the number of distances computed by each assignment so far,
+   * including those between the centroids.
+   * @return
+   */
+  public long[] getComputed() {
+    long[] counts = new long[computed.size()];
+    for ( int j = 0; j < counts.length; j++ ) {
+      counts[j] = computed.get( j );
+    }
+
+    return counts;
+  }
+
+  /**
+   * Get the number of distances the plain assignment step computes each
+   * time (every row to every centroid).
+   * @return
+   */
+  public long getUnprunedCount() {
+    return (long) denseData.size() * k;
+  }
+}
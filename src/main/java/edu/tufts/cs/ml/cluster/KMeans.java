@@ -1,12 +1,9 @@
 package edu.tufts.cs.ml.cluster;
 
-import java.math.BigDecimal;
-import java.math.RoundingMode;
-import java.util.HashMap;
-import java.util.Map;
+import java.util.List;
 
 import edu.tufts.cs.ml.DoubleFeature;
-import edu.tufts.cs.ml.Feature;
+import edu.tufts.cs.ml.DenseRelation;
 import edu.tufts.cs.ml.FeatureVector;
 import edu.tufts.cs.ml.Relation;
 import edu.tufts.cs.ml.exception.IncomparableFeatureVectorException;
@@ -22,6 +19,28 @@ public class KMeans<E> extends KMethod<E> {
     super( dataset );
   }
 
+  /**
+   * Constructor with the number of threads to use.
+   *
+   * @param dataset
+   * @param parallelism
+   */
+  public KMeans( Relation<? extends FeatureVector<E>> dataset,
+      int parallelism ) {
+    super( dataset, parallelism );
+  }
+
+  /**
+   * Constructor over dense rows, with the number of threads to use.
+   *
+   * @param denseData
+   * @param parallelism
+   */
+  public KMeans( DenseRelation<? extends FeatureVector<E>> denseData,
+      int parallelism ) {
+    super( denseData, parallelism );
+  }
+
   /**
    * Compute the mean vector of the cluster.
    *
@@ -31,39 +50,53 @@ public class KMeans<E> extends KMethod<E> {
    */
   protected Centroid<E> computeClusterCentroid( Cluster<E> cluster, int num )
     throws IncomparableFeatureVectorException {
-    Centroid<E> mean = new Centroid<E>( "centroid" + num );
-
-    Map<String, BigDecimal> totals = new HashMap<String, BigDecimal>();
-    // initialize the values
-    for ( String f : dataset.get( 0 ).keySet() ) {
-      totals.put( f, new BigDecimal( 0.0 ) );
+    int d = denseData.numFeatures();
+    double[] sums = new double[d];
+    double[] buf = new double[d];
+    for ( FeatureVector<E> fv : cluster ) {
+      denseData.fill( fv, buf, 0 );
+      for ( int j = 0; j < d; j++ ) {
+        sums[j] += buf[j];
+      }
     }
 
-    for ( FeatureVector<E> fv : cluster ) {
-      for ( String f : fv.keySet() ) {
-        Feature<?> feat = fv.get( f );
-        if ( !( feat instanceof DoubleFeature ) ) {
-          throw new IncomparableFeatureVectorException(
-              "Must be DoubleFeature to compute mean." );
-        }
-        if ( !totals.containsKey( f ) ) {
-          throw new IncomparableFeatureVectorException(
-              "Unknown feature: " + f );
-        }
-        DoubleFeature df = (DoubleFeature) feat;
+    return toCentroid( sums, cluster.size(), num );
+  }
 
-        BigDecimal total = totals.get( f );
-        total = total.add( new BigDecimal( df.getValue() ) );
-        totals.put( f, total );
-      }
+  /**
+   * Update the centroids to the means of the sums accumulated while
+   * assigning, rather than re-reading the clusters.
+   */
+  @Override
+  protected void updateCentroids( List<Centroid<E>> centroids,
+      double[][] centroidVals, int[] assignment, ParallelAssignment engine )
+    throws IncomparableFeatureVectorException {
+    double[][] sums = engine.getSums();
+    int[] counts = engine.getCounts();
+    for ( int c = 0; c < centroids.size(); c++ ) {
+      Centroid<E> mean = toCentroid( sums[c], counts[c], c + 1 );
+      centroids.set( c, mean );
+      centroidVals[c] = denseData.toArray( mean );
     }
+  }
+
+  /**
+   * Make the mean vector from a cluster's sums. An empty cluster's mean is
+   * all zeros.
+   *
+   * @param sums The sums, in the dense relation's columns.
+   * @param count The number of vectors summed.
+   * @param num
+   * @return
+   */
+  protected Centroid<E> toCentroid( double[] sums, int count, int num ) {
+    Centroid<E> mean = new Centroid<E>( "centroid" + num );
 
-    for ( String s : totals.keySet() ) {
-      BigDecimal total = totals.get( s );
-      if ( total.doubleValue() != 0.0 ) {
-        BigDecimal clusterSize = new BigDecimal( cluster.size() );
-        BigDecimal m = total.divide( clusterSize, RoundingMode.HALF_UP );
-        mean.put( s, new DoubleFeature( s, m.doubleValue() ) );
+    for ( String s : denseData.getFeatureVector( 0 ).keySet() ) {
+      int col = denseData.indexOf( s );
+      double total = ( col < 0 ) ? 0.0 : sums[col];
+      if ( total != 0.0 ) {
+        mean.put( s, new DoubleFeature( s, total / count ) );
       } else {
         mean.put( s, new DoubleFeature( s, 0.0 ) );
       }
@@ -1,16 +1,67 @@
 package edu.tufts.cs.ml.cluster;
 
-import java.util.HashMap;
-import java.util.Map;
-import java.util.Map.Entry;
-import java.util.SortedSet;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Random;
+import java.util.logging.Level;
+import java.util.logging.Logger;
 
+import edu.tufts.cs.ml.DenseRelation;
 import edu.tufts.cs.ml.FeatureVector;
 import edu.tufts.cs.ml.Relation;
 import edu.tufts.cs.ml.exception.IncomparableFeatureVectorException;
-import edu.tufts.cs.ml.util.Util;
+import edu.tufts.cs.ml.util.VectorMath;
 
 public class KMedoids<E> extends KMethod<E> {
+  /** The Logger. */
+  private static final Logger LOG = Logger.getLogger(
+      KMedoids.class.getName() );
+  /** The number of samples CLARA clusters. */
+  public static final int CLARA_SAMPLES = 5;
+  /** The size of a CLARA sample, plus twice k. */
+  public static final int CLARA_SAMPLE_SIZE = 40;
+  /** The number of local minima CLARANS looks for. */
+  public static final int CLARANS_NUM_LOCAL = 2;
+  /** The fewest neighbors CLARANS tries before it stops at a minimum. */
+  public static final int CLARANS_MIN_NEIGHBORS = 250;
+  /** The fraction of the k * (n - k) neighbors CLARANS tries. */
+  public static final double CLARANS_NEIGHBOR_FRACTION = .0125;
+  /** How to find the medoids. */
+  public enum Method {
+    /** Alternate between assigning the vectors and moving each medoid. */
+    ALTERNATE( "Alternate" ),
+    /** PAM over the distances between every pair of vectors. */
+    PAM( "PAM" ),
+    /** PAM over samples of the vectors (CLARA). */
+    CLARA( "CLARA" ),
+    /** Randomized search of medoid swaps, without a distance matrix. */
+    CLARANS( "CLARANS" );
+
+    /** The name to show. */
+    private final String description;
+
+    /**
+     * Default constructor.
+     * @param description
+     */
+    private Method( String description ) {
+      this.description = description;
+    }
+
+    /**
+     * Get the name to show.
+     * @return
+     */
+    public String getDescription() {
+      return this.description;
+    }
+  }
+  /** How to find the medoids. */
+  protected final Method method;
+  /** Whether to store the distance matrix as floats. */
+  protected boolean packedDistances = false;
+  /** The distances between every pair of vectors; null until PAM needs it. */
+  protected DistanceMatrix distances;
 
   /**
    * Default constructor.
@@ -19,10 +70,51 @@ public class KMedoids<E> extends KMethod<E> {
    */
   public KMedoids( Relation<? extends FeatureVector<E>> dataset ) {
     super( dataset );
+    this.method = Method.ALTERNATE;
+  }
+
+  /**
+   * Constructor with the number of threads to use.
+   *
+   * @param dataset
+   * @param parallelism
+   */
+  public KMedoids( Relation<? extends FeatureVector<E>> dataset,
+      int parallelism ) {
+    this( dataset, parallelism, Method.ALTERNATE );
+  }
+
+  /**
+   * Constructor with the number of threads to use and how to find the
+   * medoids.
+   *
+   * @param dataset
+   * @param parallelism
+   * @param method
+   */
+  public KMedoids( Relation<? extends FeatureVector<E>> dataset,
+      int parallelism, Method method ) {
+    super( dataset, parallelism );
+    this.method = method;
+  }
+
+  /**
+   * Constructor over dense rows, with the number of threads and the method
+   * to use.
+   *
+   * @param denseData
+   * @param parallelism
+   * @param method
+   */
+  public KMedoids( DenseRelation<? extends FeatureVector<E>> denseData,
+      int parallelism, Method method ) {
+    super( denseData, parallelism );
+    this.method = method;
   }
 
   /**
-   * Compute the median vector of the cluster.
+   * Compute the median vector of the cluster: the member with the smallest
+   * sum of squared distances to the others (the last of them, on ties).
    *
    * @param cluster
    * @return
@@ -30,26 +122,332 @@ public class KMedoids<E> extends KMethod<E> {
    */
   protected Centroid<E> computeClusterCentroid( Cluster<E> cluster, int num )
     throws IncomparableFeatureVectorException {
-    Map<Integer, Double> errMap = new HashMap<Integer, Double>();
-
+    double[][] vals = new double[cluster.size()][];
     for ( int i = 0; i < cluster.size(); i++ ) {
-      FeatureVector<?> fv1 = cluster.get( i );
-      double err = 0.0;
-      for ( FeatureVector<?> fv2 : cluster ) {
+      vals[i] = denseData.toArray( cluster.get( i ) );
+    }
 
-        double dist = fv1.getEuclideanDistance( fv2 );
-        err += ( dist*dist );
+    // each pair once
+    double[] errs = new double[vals.length];
+    for ( int i = 0; i < vals.length; i++ ) {
+      for ( int j = i + 1; j < vals.length; j++ ) {
+        double err = VectorMath.squaredEuclidean( vals[i], vals[j] );
+        errs[i] += err;
+        errs[j] += err;
       }
-      errMap.put( i, err );
     }
 
-    SortedSet<Entry<Integer, Double>> errs = Util.sortByEntries( errMap );
-    Entry<Integer, Double> entry = errs.last(); // should be feature vector with
-                                                // smallest error
+    int best = 0;
+    for ( int i = 1; i < errs.length; i++ ) {
+      if ( errs[i] <= errs[best] ) {
+        best = i;
+      }
+    }
+
+    return new Centroid<E>( cluster.get( best ) );
+  }
+
+  /**
+   * Cluster the dataset into k clusters. The alternating method starts from
+   * the given initialization technique; PAM ignores it, and CLARA and
+   * CLARANS only use the seed.
+   */
+  @Override
+  protected ClusterSet<E> cluster( int k, Seeding seeding, long seed,
+      boolean pooled ) throws IncomparableFeatureVectorException {
+    if ( k < 1 || k > denseData.size() ) {
+      throw new IllegalArgumentException( "Cannot choose " + k +
+          " medoids from " + denseData.size() + " vectors" );
+    }
+
+    int[] medoids;
+    if ( method == Method.PAM ) {
+      Pam pam = new Pam( getDistances() );
+      medoids = pam.build( k );
+      int swaps = pam.swap( medoids, MAX_ITERATIONS );
+      LOG.log( Level.FINE, "PAM made " + swaps + " swaps for k=" + k );
+    } else if ( method == Method.CLARA ) {
+      medoids = clara( k, new Random( seed ) );
+    } else if ( method == Method.CLARANS ) {
+      medoids = clarans( k, new Random( seed ) );
+    } else {
+      return super.cluster( k, seeding, seed, pooled );
+    }
+
+    return toClusterSet( medoids );
+  }
+
+  /**
+   * Compute what every k of a sweep shares: the distance matrix for PAM;
+   * nothing for CLARA and CLARANS.
+   */
+  @Override
+  protected void precompute( Seeding seeding ) {
+    if ( method == Method.PAM ) {
+      getDistances();
+    } else if ( method == Method.ALTERNATE ) {
+      super.precompute( seeding );
+    }
+  }
+
+  /**
+   * Find k medoids with CLARA (Kaufman and Rousseeuw): run PAM on several
+   * random samples of the vectors, each including the best medoids so far,
+   * and keep the medoids with the smallest total over every vector.
+   *
+   * @param k
+   * @param random
+   * @return The medoids' rows.
+   */
+  protected int[] clara( int k, Random random ) {
+    int n = denseData.size();
+    int sampleSize = Math.min( n, CLARA_SAMPLE_SIZE + 2 * k );
+    int[] best = null;
+    double bestCost = Double.POSITIVE_INFINITY;
+
+    for ( int s = 0; s < CLARA_SAMPLES; s++ ) {
+      int[] sample = sample( sampleSize, best, random );
+      Pam pam = new Pam( new DistanceMatrix( denseData, sample,
+          packedDistances, 1 ) );
+      int[] local = pam.build( k );
+      pam.swap( local, MAX_ITERATIONS );
 
-    Centroid<E> c = new Centroid<E>( cluster.get( entry.getKey() ) );
+      int[] medoids = new int[k];
+      for ( int m = 0; m < k; m++ ) {
+        medoids[m] = sample[local[m]];
+      }
+      double cost = cost( medoids );
+      LOG.log( Level.FINE, "CLARA sample " + s + ": " + cost );
+      if ( cost < bestCost ) {
+        bestCost = cost;
+        best = medoids;
+      }
+      if ( sampleSize == n ) {
+        break;  // every sample is the whole data set
+      }
+    }
 
-    return c;
+    return best;
   }
 
+  /**
+   * Find k medoids with CLARANS (Ng and Han): from random medoids, try
+   * swapping a random medoid with a random non-medoid, and make the swap if
+   * it lowers the total, until enough swaps in a row don't. Keep the best
+   * of several such local minima. Each swap is tried in one pass over the
+   * vectors, using each one's distance to its nearest and second-nearest
+   * medoids, so no distance matrix is needed.
+   *
+   * @param k
+   * @param random
+   * @return The medoids' rows.
+   */
+  protected int[] clarans( int k, Random random ) {
+    int n = denseData.size();
+    double[] data = denseData.getData();
+    int d = denseData.numFeatures();
+    int maxNeighbors = Math.max( CLARANS_MIN_NEIGHBORS,
+        (int) ( CLARANS_NEIGHBOR_FRACTION * k * ( n - k ) ) );
+    int[] nearest = new int[n];
+    double[] nearestDist = new double[n];
+    double[] secondDist = new double[n];
+    int[] best = null;
+    double bestCost = Double.POSITIVE_INFINITY;
+
+    for ( int local = 0; local < CLARANS_NUM_LOCAL; local++ ) {
+      int[] medoids = sample( k, null, random );
+      boolean[] isMedoid = new boolean[n];
+      for ( int m : medoids ) {
+        isMedoid[m] = true;
+      }
+      double cost = nearest( medoids, nearest, nearestDist, secondDist );
+
+      if ( k < n ) {
+        int tries = 0;
+        while ( tries < maxNeighbors ) {
+          int m = random.nextInt( k );
+          int x = random.nextInt( n );
+          while ( isMedoid[x] ) {
+            x = random.nextInt( n );
+          }
+
+          int offset = denseData.offset( x );
+          double delta = 0.0;
+          for ( int o = 0; o < n; o++ ) {
+            double dist = VectorMath.squaredEuclidean( data,
+                denseData.offset( o ), data, offset, d );
+            double next = ( nearest[o] == m ) ? secondDist[o] :
+              nearestDist[o];
+            delta += Math.min( dist, next ) - nearestDist[o];
+          }
+
+          if ( -delta > cost * 1e-12 ) {
+            isMedoid[medoids[m]] = false;
+            isMedoid[x] = true;
+            medoids[m] = x;
+            cost = nearest( medoids, nearest, nearestDist, secondDist );
+            tries = 0;
+          } else {
+            tries++;
+          }
+        }
+      }
+
+      LOG.log( Level.FINE, "CLARANS local minimum " + local + ": " + cost );
+      if ( cost < bestCost ) {
+        bestCost = cost;
+        best = medoids;
+      }
+    }
+
+    return best;
+  }
+
+  /**
+   * Get the total squared distance from every vector to its nearest medoid.
+   *
+   * @param medoids The medoids' rows.
+   * @return
+   */
+  protected double cost( int[] medoids ) {
+    int n = denseData.size();
+    return nearest( medoids, new int[n], new double[n], new double[n] );
+  }
+
+  /**
+   * Find each vector's nearest and second-nearest medoids.
+   *
+   * @param medoids The medoids' rows.
+   * @param nearest Each vector's nearest medoid, by position in medoids.
+   * @param nearestDist Each vector's squared distance to it.
+   * @param secondDist Each vector's squared distance to the second-nearest.
+   * @return The total squared distance to the nearest.
+   */
+  protected double nearest( int[] medoids, int[] nearest,
+      double[] nearestDist, double[] secondDist ) {
+    double[] data = denseData.getData();
+    int d = denseData.numFeatures();
+    double total = 0.0;
+    for ( int o = 0; o < nearest.length; o++ ) {
+      int offset = denseData.offset( o );
+      int closest = -1;
+      double closestDist = 0.0;
+      double second = Double.POSITIVE_INFINITY;
+      for ( int m = 0; m < medoids.length; m++ ) {
+        double dist = VectorMath.squaredEuclidean( data, offset, data,
+            denseData.offset( medoids[m] ), d );
+        if ( closest == -1 || dist < closestDist ) {
+          if ( closest != -1 ) {
+            second = closestDist;
+          }
+          closest = m;
+          closestDist = dist;
+        } else if ( dist < second ) {
+          second = dist;
+        }
+      }
+      nearest[o] = closest;
+      nearestDist[o] = closestDist;
+      secondDist[o] = second;
+      total += closestDist;
+    }
+
+    return total;
+  }
+
+  /**
+   * Sample distinct rows uniformly, starting with the given ones.
+   *
+   * @param size
+   * @param include The rows to include; may be null.
+   * @param random
+   * @return The rows; those included first.
+   */
+  protected int[] sample( int size, int[] include, Random random ) {
+    int n = denseData.size();
+    int[] rows = new int[size];
+    boolean[] chosen = new boolean[n];
+    int numChosen = 0;
+    if ( include != null ) {
+      for ( int row : include ) {
+        if ( numChosen < size && !chosen[row] ) {
+          chosen[row] = true;
+          rows[numChosen++] = row;
+        }
+      }
+    }
+    if ( size == n ) {
+      for ( int row = 0; row < n; row++ ) {
+        if ( !chosen[row] ) {
+          rows[numChosen++] = row;
+        }
+      }
+    }
+    while ( numChosen < size ) {
+      int row = random.nextInt( n );
+      if ( !chosen[row] ) {
+        chosen[row] = true;
+        rows[numChosen++] = row;
+      }
+    }
+
+    return rows;
+  }
+
+  /**
+   * Make the clusters of the medoids, each vector in its nearest medoid's
+   * cluster.
+   *
+   * @param medoids The medoids' rows.
+   * @return
+   */
+  protected ClusterSet<E> toClusterSet( int[] medoids ) {
+    int n = denseData.size();
+    int[] assignment = new int[n];
+    nearest( medoids, assignment, new double[n], new double[n] );
+
+    List<Centroid<E>> centroids = new ArrayList<Centroid<E>>(
+        medoids.length );
+    for ( int m : medoids ) {
+      centroids.add( new Centroid<E>( denseData.getFeatureVector( m ) ) );
+    }
+
+    return toClusterSet( centroids, assignment );
+  }
+
+  /**
+   * Get the distances between every pair of vectors, computing them the
+   * first time.
+   *
+   * @return
+   */
+  protected synchronized DistanceMatrix getDistances() {
+    if ( distances == null ) {
+      distances = new DistanceMatrix( denseData, packedDistances,
+          parallelism );
+    }
+    return distances;
+  }
+
+  /**
+   * Whether to store the distance matrix as floats, which halves its memory.
+   * A matrix already computed with the other setting is dropped.
+   *
+   * @param packedDistances
+   */
+  public synchronized void setPackedDistances( boolean packedDistances ) {
+    if ( this.packedDistances != packedDistances ) {
+      this.distances = null;
+    }
+    this.packedDistances = packedDistances;
+  }
+
+  /**
+   * Get how the medoids are found.
+   *
+   * @return
+   */
+  public Method getMethod() {
+    return this.method;
+  }
 }
@@ -1,40 +1,123 @@
 package edu.tufts.cs.ml.cluster;
 
-import java.awt.geom.Line2D;
-import java.awt.geom.Point2D;
 import java.math.BigDecimal;
 import java.math.RoundingMode;
-import java.util.AbstractMap.SimpleEntry;
+import java.util.ArrayList;
+import java.util.Arrays;
 import java.util.HashMap;
 import java.util.HashSet;
+import java.util.LinkedHashSet;
+import java.util.List;
 import java.util.Map;
 import java.util.Map.Entry;
 import java.util.Observable;
+import java.util.Random;
 import java.util.Set;
+import java.util.SortedMap;
 import java.util.SortedSet;
+import java.util.TreeMap;
+import java.util.concurrent.Callable;
 import java.util.logging.Level;
 import java.util.logging.Logger;
 
+import edu.tufts.cs.ml.DenseRelation;
 import edu.tufts.cs.ml.FeatureVector;
 import edu.tufts.cs.ml.Relation;
 import edu.tufts.cs.ml.exception.IncomparableFeatureVectorException;
+import edu.tufts.cs.ml.util.ConcurrencyUtil;
 import edu.tufts.cs.ml.util.Util;
+import edu.tufts.cs.ml.util.VectorMath;
 
 public abstract class KMethod<E> extends Observable {
   /** The Logger. */
   private static final Logger LOG = Logger.getLogger( KMethod.class.getName() );
-  /** The dataset to cluster. */
-  protected Relation<? extends FeatureVector<E>> dataset;
+  /** The dataset to cluster, as contiguous rows. */
+  protected DenseRelation<? extends FeatureVector<E>> denseData;
+  /** The number of threads to assign clusters on. */
+  protected final int parallelism;
+  /** The radius of the density-based initialization, once computed. */
+  protected int densityRadius;
+  /** The vectors by density, densest first; null until computed. */
+  protected SortedSet<Entry<FeatureVector<E>, Integer>> densities;
+  /** The cache of the distances of the clusters made. */
+  protected final DistanceCache distanceCache = new DistanceCache();
   /** The maximum number of iterations to run if k-Means hasn't converged. */
   protected static final int MAX_ITERATIONS = 50;
+  /** How to choose the initial centroids. */
+  public enum Seeding {
+    /** The densest vectors, from every pairwise distance. */
+    DENSITY( "Density" ),
+    /** The densest vectors, estimated from a sample of the vectors. */
+    SAMPLED_DENSITY( "Sampled density" ),
+    /** k-means++. */
+    KMEANS_PLUS_PLUS( "k-means++" ),
+    /** k-means||. */
+    KMEANS_PARALLEL( "k-means||" );
+
+    /** The name to show. */
+    private final String description;
+
+    /**
+     * Default constructor.
+     * @param description
+     */
+    private Seeding( String description ) {
+      this.description = description;
+    }
+
+    /**
+     * Get the name to show.
+     * @return
+     */
+    public String getDescription() {
+      return this.description;
+    }
+  }
 
   /**
-   * Default constructor.
+   * Default constructor; uses a thread per available processor.
    *
    * @param dataset
    */
   public KMethod( Relation<? extends FeatureVector<E>> dataset ) {
-    this.dataset = dataset;
+    this( dataset, Runtime.getRuntime().availableProcessors() );
+  }
+
+  /**
+   * Constructor with the number of threads to use.
+   *
+   * @param dataset
+   * @param parallelism
+   */
+  public KMethod( Relation<? extends FeatureVector<E>> dataset,
+      int parallelism ) {
+    this( dataset.toDense(), parallelism );
+  }
+
+  /**
+   * Constructor over dense rows (eg. released ones, so that the map-based
+   * rows needn't be kept), with the number of threads to use.
+   *
+   * @param denseData
+   * @param parallelism
+   */
+  public KMethod( DenseRelation<? extends FeatureVector<E>> denseData,
+      int parallelism ) {
+    if ( parallelism < 1 ) {
+      throw new IllegalArgumentException( "Parallelism must be at least 1: " +
+          parallelism );
+    }
+    this.denseData = denseData;
+    this.parallelism = parallelism;
+  }
+
+  /**
+   * Get the cache of the distances of the clusters made, which they share.
+   *
+   * @return
+   */
+  public DistanceCache getDistanceCache() {
+    return this.distanceCache;
   }
 
   /**
@@ -59,89 +142,212 @@ public abstract class KMethod<E> extends Observable {
    */
   public int detectK( int min, int max )
     throws IncomparableFeatureVectorException {
+    return detectK( min, max, Seeding.DENSITY, 0 );
+  }
+
+  /**
+   * Detect the best value of k (see detectK), clustering each k with the
+   * given initialization technique.
+   * @param min
+   * @param max
+   * @param seeding
+   * @param seed The random seed (ignored by the density method).
+   * @return
+   * @throws IncomparableFeatureVectorException
+   */
+  public int detectK( int min, int max, Seeding seeding, long seed )
+    throws IncomparableFeatureVectorException {
+    return sweepK( min, max, seeding, seed, false ).getBestK();
+  }
+
+  /**
+   * Cluster the dataset for every k from min to max and find the elbow of
+   * the SSE curve (see detectK).
+   *
+   * Without a warm start, each k is clustered from scratch, exactly as
+   * cluster(k, seeding, seed) would, but the values of k are run at the
+   * same time on the configured number of threads, and the density-based
+   * initialization computes the pairwise distances once for all of them.
+   * With a warm start, each k is clustered in turn starting from the
+   * centroids of k - 1 plus the vector farthest from its centroid; only min
+   * is seeded. That converges in fewer iterations, but may not give the same
+   * clusters (or the same elbow) as clustering each k from scratch.
+   *
+   * @param min
+   * @param max
+   * @param seeding How to choose the initial centroids.
+   * @param seed The random seed (ignored by the density method).
+   * @param warmStart Whether to start each k from the clusters of k - 1.
+   * @return
+   * @throws IncomparableFeatureVectorException
+   */
+  public ElbowCurve sweepK( int min, int max, Seeding seeding, long seed,
+      boolean warmStart ) throws IncomparableFeatureVectorException {
+    if ( min < 1 || max < min ) {
+      throw new IllegalArgumentException( "Invalid range of k: " + min +
+          " to " + max );
+    }
     LOG.log( Level.INFO, "Detecting best k between " + min + " and " + max );
 
-    Map<Integer, Double> sseMap = new HashMap<Integer, Double>();
+    SortedMap<Integer, Double> sseMap = new TreeMap<Integer, Double>();
+    if ( warmStart ) {
+      ClusterSet<E> clusters = cluster( min, seeding, seed );
+      sseMap.put( min, clusters.calculateSSE() );
+      for ( int k = min + 1; k <= max; k++ ) {
+        clusters = cluster( splitFarthest( clusters ) );
+        sseMap.put( k, clusters.calculateSSE() );
+      }
+    } else {
+      sseMap.putAll( clusterEach( min, max, seeding, seed ) );
+    }
+
+    ElbowCurve curve = new ElbowCurve( sseMap );
+    LOG.log( Level.INFO, "Best k: " + curve.getBestK() );
+    return curve;
+  }
+
+  /**
+   * Cluster the dataset from scratch for every k from min to max, running
+   * the values of k at the same time (each with its assignment step on the
+   * calling thread).
+   *
+   * @param min
+   * @param max
+   * @param seeding
+   * @param seed
+   * @return The SSE of each k.
+   * @throws IncomparableFeatureVectorException
+   */
+  protected Map<Integer, Double> clusterEach( int min, int max,
+      final Seeding seeding, final long seed )
+    throws IncomparableFeatureVectorException {
+    precompute( seeding ); // once, before the tasks share it
 
+    List<Callable<Double>> tasks = new ArrayList<Callable<Double>>();
     for ( int k = min; k <= max; k++ ) {
-      double sse = cluster( k ).calculateSSE();
-      sseMap.put( k, sse );
+      final int numClusters = k;
+      tasks.add( new Callable<Double>() {
+        public Double call() throws IncomparableFeatureVectorException {
+          return cluster( numClusters, seeding, seed, false ).calculateSSE();
+        }
+      } );
     }
 
-    // draw a line
-    // x1, y1, x2, y2 = k1, sse1, k2, sse2
-    Line2D.Double line = new Line2D.Double(
-        min, sseMap.get( min ), max, sseMap.get( max ) );
+    Map<Integer, Double> sseMap = new HashMap<Integer, Double>();
+    List<Double> results = ConcurrencyUtil.invokeAll( Math.min( parallelism,
+        tasks.size() ), tasks, IncomparableFeatureVectorException.class,
+        "detecting k" );
+    for ( int i = 0; i < results.size(); i++ ) {
+      sseMap.put( min + i, results.get( i ) );
+    }
 
-    double maxDist = 0;
-    int maxDistK = min;
-    for ( Integer k : sseMap.keySet() ) {
-      Point2D.Double kPt = new Point2D.Double( k, sseMap.get( k ) );
-      double dist = line.ptLineDist( kPt );
+    return sseMap;
+  }
 
-      if ( dist > maxDist || ( dist == maxDist && k < maxDistK ) ) {
-        maxDist = dist;
-        maxDistK = k;
-      }
+  /**
+   * Compute what every k of a sweep shares: the densities, for the
+   * density-based initialization.
+   *
+   * @param seeding
+   */
+  protected void precompute( Seeding seeding ) {
+    if ( seeding == Seeding.DENSITY ) {
+      getDensities();
     }
-
-    LOG.log( Level.INFO, "Best k: " + maxDistK );
-    return maxDistK;
   }
 
   /**
-   * Update the centroids based on the clusters.
+   * Get the centroids of the clusters plus one more: the vector farthest
+   * from its centroid (that isn't a centroid already).
    *
    * @param clusters
    * @return
    * @throws IncomparableFeatureVectorException
    */
-  protected Set<Centroid<E>> updateCentroids(
-      ClusterSet<E> clusters )
+  protected Set<Centroid<E>> splitFarthest( ClusterSet<E> clusters )
     throws IncomparableFeatureVectorException {
-    Set<Centroid<E>> centroids = new HashSet<Centroid<E>>();
-
-    int i = 0;
-    for ( Cluster<E> cluster : clusters.values() ) {
-      Centroid<E> c = computeClusterCentroid( cluster, ++i );
-
-      centroids.add( c );
+    Set<Centroid<E>> centroids = new LinkedHashSet<Centroid<E>>(
+        clusters.keySet() );
+
+    Centroid<E> farthest = null;
+    double farthestDist = -1;
+    for ( Cluster<E> c : clusters.values() ) {
+      double[] dists = c.distancesToCentroid( distanceCache );
+      for ( int i = 0; i < dists.length; i++ ) {
+        if ( dists[i] > farthestDist ) {
+          Centroid<E> candidate = new Centroid<E>( c.get( i ) );
+          if ( !centroids.contains( candidate ) ) {
+            farthest = candidate;
+            farthestDist = dists[i];
+          }
+        }
+      }
     }
 
-    assert centroids.size() == clusters.size();
+    if ( farthest == null ) {
+      throw new IllegalArgumentException( "Cannot choose " +
+          ( centroids.size() + 1 ) + " centroids from " + denseData.size() +
+          " vectors" );
+    }
+    centroids.add( farthest );
 
     return centroids;
   }
 
   /**
-   * Assign each feature vector to its closest centroid.
-   *
-   * @return
+   * Update the centroids based on the last assignment. By default each
+   * centroid is computed from its cluster with computeClusterCentroid.
    *
+   * @param centroids The centroids, replaced in place.
+   * @param centroidVals The centroids' values, replaced in place.
+   * @param assignment Each row's centroid.
+   * @param engine The engine that made the assignment.
    * @throws IncomparableFeatureVectorException
    */
-  protected ClusterSet<E> assignClusters(
-      Set<Centroid<E>> centroids )
+  protected void updateCentroids( List<Centroid<E>> centroids,
+      double[][] centroidVals, int[] assignment, ParallelAssignment engine )
     throws IncomparableFeatureVectorException {
-    ClusterSet<E> clusters = new ClusterSet<E>();
+    ClusterSet<E> clusters = toClusterSet( centroids, assignment );
+    for ( int c = 0; c < centroids.size(); c++ ) {
+      Centroid<E> centroid = computeClusterCentroid(
+          clusters.get( centroids.get( c ) ), c + 1 );
+      centroids.set( c, centroid );
+      centroidVals[c] = denseData.toArray( centroid );
+    }
+  }
+
+  /**
+   * Make the engine that runs the assignment step of one clustering run.
+   *
+   * @param k The number of centroids.
+   * @param pooled Whether to run the assignment step on a thread pool, or on
+   * the calling thread.
+   * @return
+   */
+  protected ParallelAssignment createAssignment( int k, boolean pooled ) {
+    return new ParallelAssignment( denseData, k, parallelism, pooled );
+  }
 
+  /**
+   * Make the clusters of an assignment, each with its members in row order.
+   *
+   * @param centroids
+   * @param assignment Each row's centroid.
+   * @return
+   */
+  protected ClusterSet<E> toClusterSet( List<Centroid<E>> centroids,
+      int[] assignment ) {
+    ClusterSet<E> clusters = new ClusterSet<E>( distanceCache );
+    List<Cluster<E>> clusterList = new ArrayList<Cluster<E>>(
+        centroids.size() );
     for ( Centroid<E> centroid : centroids ) { // initialize the clusters
       Cluster<E> c = new Cluster<E>( centroid );
       clusters.put( centroid, c );
+      clusterList.add( c );
     }
 
-    // find the closest centroid for each feature vector
-    for ( FeatureVector<E> fv : dataset ) {
-      Entry<Centroid<E>, Double> closestCentroid = null;
-      for ( Centroid<E> c : centroids ) {
-        double dist = fv.getEuclideanDistance( c );
-        if ( closestCentroid == null || dist < closestCentroid.getValue() ) {
-          closestCentroid =
-              new SimpleEntry<Centroid<E>, Double>( c, dist );
-        }
-      }
-      Cluster<E> cluster = clusters.get( closestCentroid.getKey() );
-      cluster.add( fv );
+    for ( int i = 0; i < assignment.length; i++ ) {
+      clusterList.get( assignment[i] ).add( denseData.getFeatureVector( i ) );
     }
 
     return clusters;
@@ -157,35 +363,67 @@ public abstract class KMethod<E> extends Observable {
   protected Set<Centroid<E>> getInitialCentroids( int k )
     throws IncomparableFeatureVectorException {
     Set<Centroid<E>> centroids = new HashSet<Centroid<E>>();
+    SortedSet<Entry<FeatureVector<E>, Integer>> densities = getDensities();
 
     // / 1. Choose first centroid: the vector with the highest density (largest
     // / number of points within the average pairwise distance radius (r)
+    Centroid<E> centroid = new Centroid<E>( densities.first().getKey() );
+    centroids.add( centroid ); // add the first centroid
+
+    // / 2. Choose remaining centroids: vectors with the highest density that
+    // / are at LEAST r distance away from other centroids
+    int mindist = densityRadius;
+    while ( centroids.size() < k ) {  // may have to loop if mindist too high
+      addFarthesetDensestCentroids( k, mindist, centroids, densities );
+      mindist = (int) ( (double) mindist * .75 );
+    }
+
+    return centroids;
+  }
+
+  /**
+   * Get the density of each vector: the number of other vectors within the
+   * average pairwise distance (r) of it, densest first. This takes every
+   * pairwise distance, so it is computed once and kept.
+   *
+   * @return
+   */
+  protected synchronized SortedSet<Entry<FeatureVector<E>, Integer>>
+    getDensities() {
+    if ( densities != null ) {
+      return densities;
+    }
 
     // get the r value
+    double[] data = denseData.getData();
+    int n = denseData.size();
+    int numFeatures = denseData.numFeatures();
     BigDecimal total = new BigDecimal( 0.0 );
-    for ( FeatureVector<E> fv1 : dataset ) {
-      for ( FeatureVector<E> fv2 : dataset ) {
-        if ( !fv1.equals( fv2 ) ) {
-          BigDecimal dist = new BigDecimal( fv1.getEuclideanDistance( fv2 ) );
+    for ( int i = 0; i < n; i++ ) {
+      for ( int j = 0; j < n; j++ ) {
+        if ( i != j ) {
+          BigDecimal dist = new BigDecimal( VectorMath.euclidean( data,
+              denseData.offset( i ), data, denseData.offset( j ), numFeatures ) );
           total = total.add( dist );
         }
       }
     }
 
     // average pairwise distance
-    BigDecimal divisor = new BigDecimal( dataset.size() * dataset.size() );
+    BigDecimal divisor = new BigDecimal( n * n );
     int r = total.divide( divisor, RoundingMode.HALF_UP ).intValue();
 
     // get the density for each feature vector
     Map<FeatureVector<E>, Integer> densityMap =
         new HashMap<FeatureVector<E>, Integer>();
-    for ( FeatureVector<E> fv1 : dataset ) {
+    for ( int i = 0; i < n; i++ ) {
 
       int density = 0;
-      for ( FeatureVector<E> fv2 : dataset ) {
+      for ( int j = 0; j < n; j++ ) {
 
-        if ( !fv1.equals( fv2 ) ) {
-          double dist = fv1.getEuclideanDistance( fv2 );
+        if ( i != j ) {
+          double dist = VectorMath.euclidean( data, denseData.offset( i ),
+              data, denseData.offset( j ), numFeatures );
 
           if ( dist < r ) {
             density++;
@@ -193,21 +431,45 @@ public abstract class KMethod<E> extends Observable {
         }
       }
 
-      densityMap.put( fv1, density );
+      densityMap.put( denseData.getFeatureVector( i ), density );
     }
 
-    SortedSet<Entry<FeatureVector<E>, Integer>> densities =
-        Util.sortByEntries( densityMap );
+    densityRadius = r;
+    densities = Util.sortByEntries( densityMap );
+    return densities;
+  }
 
-    Centroid<E> centroid = new Centroid<E>( densities.first().getKey() );
-    centroids.add( centroid ); // add the first centroid
+  /**
+   * Select the initial cluster centers with the given method. The density
+   * method is deterministic; the others draw from a Random with the given
+   * seed, so the same seed gives the same centroids.
+   *
+   * @param k
+   * @param seeding
+   * @param seed
+   * @return
+   * @throws IncomparableFeatureVectorException
+   */
+  protected Set<Centroid<E>> getInitialCentroids( int k, Seeding seeding,
+      long seed ) throws IncomparableFeatureVectorException {
+    if ( seeding == Seeding.DENSITY ) {
+      return getInitialCentroids( k );
+    }
 
-    // / 2. Choose remaining centroids: vectors with the highest density that
-    // / are at LEAST r distance away from other centroids
-    int mindist = r;
-    while ( centroids.size() < k ) {  // may have to loop if mindist too high
-      addFarthesetDensestCentroids( k, mindist, centroids, densities );
-      mindist = (int) ( (double) mindist * .75 );
+    CentroidSeeder seeder = new CentroidSeeder( denseData,
+        new Random( seed ) );
+    int[] rows;
+    if ( seeding == Seeding.SAMPLED_DENSITY ) {
+      rows = seeder.sampledDensity( k, CentroidSeeder.DEFAULT_SAMPLE_SIZE );
+    } else if ( seeding == Seeding.KMEANS_PLUS_PLUS ) {
+      rows = seeder.kMeansPlusPlus( k );
+    } else {
+      rows = seeder.kMeansParallel( k, 2 * k, CentroidSeeder.DEFAULT_ROUNDS );
+    }
+
+    Set<Centroid<E>> centroids = new LinkedHashSet<Centroid<E>>();
+    for ( int row : rows ) {
+      centroids.add( new Centroid<E>( denseData.getFeatureVector( row ) ) );
     }
 
     return centroids;
@@ -225,15 +487,18 @@ public abstract class KMethod<E> extends Observable {
       SortedSet<Entry<FeatureVector<E>, Integer>> densities )
     throws IncomparableFeatureVectorException {
 
+    double[][] centroidVals = new double[centroids.size()][];
+    int c = 0;
+    for ( Centroid<E> centroid : centroids ) {
+      centroidVals[c++] = denseData.toArray( centroid );
+    }
+
     for ( Entry<FeatureVector<E>, Integer> e : densities ) {
       boolean tooClose = false;
       if ( centroids.size() >= k ) return;
-      for ( FeatureVector<E> c : centroids ) {
-        if ( c.equals( e ) ) {  // don't compare to yourself
-          tooClose = true;
-          break;
-        }
-        double dist = c.getEuclideanDistance( e.getKey() );
+      double[] candidate = denseData.toArray( e.getKey() );
+      for ( double[] centroidVal : centroidVals ) {
+        double dist = VectorMath.euclidean( centroidVal, candidate );
 
         if ( dist < r ) {
           tooClose = true;
@@ -241,8 +506,9 @@ public abstract class KMethod<E> extends Observable {
         }
       }
 
-      if ( !tooClose ) {
-        centroids.add( new Centroid<E>( e.getKey() ) );
+      if ( !tooClose && centroids.add( new Centroid<E>( e.getKey() ) ) ) {
+        centroidVals = Arrays.copyOf( centroidVals, centroidVals.length + 1 );
+        centroidVals[centroidVals.length - 1] = candidate;
       }
     }
   }
@@ -258,15 +524,51 @@ public abstract class KMethod<E> extends Observable {
    */
   public ClusterSet<E> cluster( int k )
     throws IncomparableFeatureVectorException {
-    Set<Centroid<E>> centroids = getInitialCentroids( k );
+    return cluster( k, Seeding.DENSITY, 0 );
+  }
+
+  /**
+   * Cluster the dataset into k clusters using k-means with the given
+   * initialization technique.
+   *
+   * @param k
+   *          The number of clusters.
+   * @param seeding
+   * @param seed
+   *          The random seed (ignored by the density method).
+   * @return
+   * @throws IncomparableFeatureVectorException
+   */
+  public ClusterSet<E> cluster( int k, Seeding seeding, long seed )
+    throws IncomparableFeatureVectorException {
+    return cluster( k, seeding, seed, true );
+  }
+
+  /**
+   * Cluster the dataset into k clusters with the given initialization
+   * technique, with the assignment step on a thread pool or on the calling
+   * thread.
+   *
+   * @param k
+   * @param seeding
+   * @param seed
+   * @param pooled
+   * @return
+   * @throws IncomparableFeatureVectorException
+   */
+  protected ClusterSet<E> cluster( int k, Seeding seeding, long seed,
+      boolean pooled ) throws IncomparableFeatureVectorException {
+    Set<Centroid<E>> centroids = getInitialCentroids( k, seeding, seed );
     assert centroids.size() == k : "Initial centroid size != k: "
         + centroids.size() + " vs. " + k;
 
-    return cluster( centroids );
+    return cluster( centroids, pooled );
   }
 
   /**
-   * Cluster the dataset based on the provided initial centroids.
+   * Cluster the dataset based on the provided initial centroids. The
+   * assignment step runs on the configured number of threads; the iterations
+   * stop when no vector changes cluster (or after MAX_ITERATIONS).
    *
    * @param centroids
    * @return
@@ -274,17 +576,46 @@ public abstract class KMethod<E> extends Observable {
    */
   protected ClusterSet<E> cluster( Set<Centroid<E>> centroids )
     throws IncomparableFeatureVectorException {
-    ClusterSet<E> clusters = null;
-    Set<Centroid<E>> prevCentroids = null;
-
-    for ( int j = 0; j < MAX_ITERATIONS
-      && !( centroids.equals( prevCentroids ) ); j++ ) {
-      prevCentroids = centroids;
-      clusters = assignClusters( centroids );
-      centroids = updateCentroids( clusters );
+    return cluster( centroids, true );
+  }
+
+  /**
+   * Cluster the dataset based on the provided initial centroids, with the
+   * assignment step on a thread pool or on the calling thread. The clusters
+   * are the same either way.
+   *
+   * @param centroids
+   * @param pooled
+   * @return
+   * @throws IncomparableFeatureVectorException
+   */
+  protected ClusterSet<E> cluster( Set<Centroid<E>> centroids,
+      boolean pooled ) throws IncomparableFeatureVectorException {
+    List<Centroid<E>> centroidList = new ArrayList<Centroid<E>>( centroids );
+    double[][] centroidVals = new double[centroidList.size()][];
+    for ( int c = 0; c < centroidVals.length; c++ ) {
+      centroidVals[c] = denseData.toArray( centroidList.get( c ) );
+    }
+    int[] assignment = new int[denseData.size()];
+    Arrays.fill( assignment, -1 );
+
+    ParallelAssignment engine = createAssignment( centroidVals.length,
+        pooled );
+    try {
+      for ( int j = 0; j < MAX_ITERATIONS; j++ ) {
+        int changes = engine.assign( centroidVals, assignment );
+        LOG.log( Level.FINE, "Iteration " + j + ": " + changes +
+            " vectors changed cluster" );
+        if ( changes == 0 || j == MAX_ITERATIONS - 1 ) {
+          break;
+        }
+        updateCentroids( centroidList, centroidVals, assignment, engine );
+      }
+    } finally {
+      engine.shutdown();
     }
 
-    return clusters;
+    return toClusterSet( centroidList, assignment );
   }
 
   /**
@@ -303,7 +634,7 @@ public abstract class KMethod<E> extends Observable {
     Set<Centroid<E>> centroids = new HashSet<Centroid<E>>();
 
     for ( int i : indices ) {
-      FeatureVector<E> fv = dataset.get( i - 1 );
+      FeatureVector<E> fv = denseData.getFeatureVector( i - 1 );
       centroids.add( new Centroid<E>( fv ) );
     }
     assert centroids.size() == k : "Initial centroid size != k: "
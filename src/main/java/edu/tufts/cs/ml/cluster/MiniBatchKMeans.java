@@ -0,0 +1,254 @@
+package edu.tufts.cs.ml.cluster;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.Random;
+import java.util.logging.Level;
+import java.util.logging.Logger;
+
+import edu.tufts.cs.ml.DenseRelation;
+import edu.tufts.cs.ml.DoubleFeature;
+import edu.tufts.cs.ml.FeatureVector;
+import edu.tufts.cs.ml.Relation;
+import edu.tufts.cs.ml.reader.ArffIterator;
+import edu.tufts.cs.ml.util.VectorMath;
+
+/**
+ * Mini-batch k-Means (Sculley, "Web-scale k-means clustering", 2010), for
+ * data that is read a chunk at a time instead of held in memory. Each batch
+ * is assigned to the current centroids, then each centroid moves towards the
+ * vectors assigned to it with a learning rate of 1 / (the number of vectors
+ * it has been assigned so far), so a centroid is always the mean of every
+ * vector ever assigned to it. Memory is bounded by the batch size.
+ *
+ * The centroids are chosen with k-means++ from the first batch (which must
+ * have at least k vectors), using the given seed, so the same batches and
+ * seed always give the same centroids. The columns are fixed by the first
+ * batch too.
+ *
+ * @param <E>
+ */
+public class MiniBatchKMeans<E> {
+  /** The Logger. */
+  private static final Logger LOG = Logger.getLogger(
+      MiniBatchKMeans.class.getName() );
+  /** The number of clusters. */
+  protected final int k;
+  /** The source of randomness for the initial centroids. */
+  protected final Random random;
+  /** The number of threads to assign each batch on. */
+  protected final int parallelism;
+  /** The feature names, by column; null before the first batch. */
+  protected String[] featureNames;
+  /** The centroids' values; null before the first batch. */
+  protected double[][] centroids;
+  /** The number of vectors assigned to each centroid so far. */
+  protected long[] counts;
+  /** The number of vectors seen so far. */
+  protected long seen;
+
+  /**
+   * Default constructor; assigns each batch on one thread.
+   * @param k The number of clusters.
+   * @param seed The random seed for the initial centroids.
+   */
+  public MiniBatchKMeans( int k, long seed ) {
+    this( k, seed, 1 );
+  }
+
+  /**
+   * Constructor with the number of threads to use.
+   * @param k The number of clusters.
+   * @param seed The random seed for the initial centroids.
+   * @param parallelism
+   */
+  public MiniBatchKMeans( int k, long seed, int parallelism ) {
+    if ( k < 1 ) {
+      throw new IllegalArgumentException( "k must be at least 1: " + k );
+    }
+    if ( parallelism < 1 ) {
+      throw new IllegalArgumentException( "Parallelism must be at least 1: " +
+          parallelism );
+    }
+    this.k = k;
+    this.random = new Random( seed );
+    this.parallelism = parallelism;
+  }
+
+  /**
+   * Make one pass over the rest of the iterator, a batch at a time.
+   * @param it
+   * @param batchSize
+   */
+  @SuppressWarnings( "unchecked" )
+  public void fit( ArffIterator<E> it, int batchSize ) {
+    Relation<?> batch = it.nextChunk( batchSize );
+    while ( batch != null ) {
+      partialFit( (Relation<? extends FeatureVector<E>>) batch );
+      batch = it.nextChunk( batchSize );
+    }
+  }
+
+  /**
+   * Update the centroids with a batch of vectors.
+   * @param batch
+   */
+  public void partialFit( Relation<? extends FeatureVector<E>> batch ) {
+    if ( batch.isEmpty() ) {
+      return;
+    }
+
+    if ( centroids == null ) {
+      featureNames = DenseRelation.resolveFeatureNames( batch );
+    }
+    DenseRelation<?> dense = toDense( batch );
+    if ( centroids == null ) {
+      int[] rows = new CentroidSeeder( dense, random ).kMeansPlusPlus( k );
+      centroids = new double[k][];
+      for ( int c = 0; c < k; c++ ) {
+        centroids[c] = dense.getRow( rows[c] );
+      }
+      counts = new long[k];
+    }
+
+    int[] assignment = new int[dense.size()];
+    Arrays.fill( assignment, -1 );
+    ParallelAssignment engine = new ParallelAssignment( dense, k,
+        parallelism );
+    try {
+      engine.assign( centroids, assignment );
+    } finally {
+      engine.shutdown();
+    }
+
+    // move each centroid to the mean of everything assigned to it
+    double[][] sums = engine.getSums();
+    int[] batchCounts = engine.getCounts();
+    for ( int c = 0; c < k; c++ ) {
+      if ( batchCounts[c] > 0 ) {
+        counts[c] += batchCounts[c];
+        double[] centroid = centroids[c];
+        for ( int j = 0; j < centroid.length; j++ ) {
+          centroid[j] += ( sums[c][j] - batchCounts[c] * centroid[j] ) /
+              counts[c];
+        }
+      }
+    }
+    seen += dense.size();
+
+    LOG.log( Level.FINE, "Batch of " + dense.size() + " vectors; " + seen +
+        " seen so far" );
+  }
+
+  /**
+   * Get the index of the centroid closest to the feature vector.
+   * @param fv
+   * @return
+   */
+  public int predict( FeatureVector<?> fv ) {
+    checkFitted();
+    double[] x = fv.toArray( featureNames );
+    int closest = -1;
+    double closestDist = 0;
+    for ( int c = 0; c < k; c++ ) {
+      double dist = VectorMath.squaredEuclidean( x, centroids[c] );
+      if ( closest == -1 || dist < closestDist ) {
+        closest = c;
+        closestDist = dist;
+      }
+    }
+
+    return closest;
+  }
+
+  /**
+   * Assign each vector of the relation to its closest centroid.
+   * @param r
+   * @return The clusters, each with its members in the relation's order.
+   */
+  public ClusterSet<E> cluster( Relation<? extends FeatureVector<E>> r ) {
+    checkFitted();
+    List<Centroid<E>> centroidList = getCentroids();
+    ClusterSet<E> clusters = new ClusterSet<E>();
+    List<Cluster<E>> clusterList = new ArrayList<Cluster<E>>( k );
+    for ( Centroid<E> centroid : centroidList ) {
+      Cluster<E> c = new Cluster<E>( centroid );
+      clusters.put( centroid, c );
+      clusterList.add( c );
+    }
+
+    for ( FeatureVector<E> fv : r ) {
+      clusterList.get( predict( fv ) ).add( fv );
+    }
+
+    return clusters;
+  }
+
+  /**
+   * Get the clusters' centroids, with no members.
+   * @return
+   */
+  public ClusterSet<E> getClusters() {
+    ClusterSet<E> clusters = new ClusterSet<E>();
+    for ( Centroid<E> centroid : getCentroids() ) {
+      clusters.put( centroid, new Cluster<E>( centroid ) );
+    }
+
+    return clusters;
+  }
+
+  /**
+   * Get the centroids, in order.
+   * @return
+   */
+  public List<Centroid<E>> getCentroids() {
+    checkFitted();
+    List<Centroid<E>> centroidList = new ArrayList<Centroid<E>>( k );
+    for ( int c = 0; c < k; c++ ) {
+      Centroid<E> centroid = new Centroid<E>( "centroid" + ( c + 1 ) );
+      for ( int j = 0; j < featureNames.length; j++ ) {
+        centroid.put( featureNames[j], new DoubleFeature( featureNames[j],
+            centroids[c][j] ) );
+      }
+      centroidList.add( centroid );
+    }
+
+    return centroidList;
+  }
+
+  /**
+   * Get the number of vectors assigned to each centroid so far.
+   * @return
+   */
+  public long[] getCounts() {
+    return ( counts == null ) ? new long[k] : Arrays.copyOf( counts, k );
+  }
+
+  /**
+   * Get the number of vectors seen so far.
+   * @return
+   */
+  public long getSeen() {
+    return this.seen;
+  }
+
+  /**
+   * Copy the batch into the columns fixed by the first batch.
+   * @param batch
+   * @return
+   */
+  protected <F extends FeatureVector<?>> DenseRelation<F> toDense(
+      Relation<F> batch ) {
+    return new DenseRelation<F>( batch, featureNames );
+  }
+
+  /**
+   * Make sure there are centroids.
+   */
+  protected void checkFitted() {
+    if ( centroids == null ) {
+      throw new IllegalStateException( "No batches have been fit yet." );
+    }
+  }
+}
@@ -0,0 +1,212 @@
+package edu.tufts.cs.ml.cluster;
+
+import java.util.Arrays;
+
+/**
+ * Partitioning Around Medoids (Kaufman and Rousseeuw) over a DistanceMatrix.
+ * BUILD chooses the medoids greedily, each one lowering the total distance
+ * the most; SWAP then makes the best swap of a medoid with a non-medoid
+ * until no swap lowers the total.
+ *
+ * SWAP keeps each row's nearest and second-nearest medoid, so the change in
+ * the total for removing every medoid at once is found in one pass over the
+ * rows per candidate (Schubert and Rousseeuw, "Faster k-Medoids
+ * Clustering", 2019): O(n^2) per iteration instead of O(k n^2). Up to
+ * ties, the swaps made are the same as classic PAM's.
+ *
+ * The distances are whatever the matrix holds (squared Euclidean, for
+ * KMedoids). Indices are those of the matrix; ties go to the lowest.
+ */
+public class Pam {
+  /** The distances. */
+  protected final DistanceMatrix distances;
+  /** Each row's nearest medoid, by position in the medoids. */
+  protected int[] nearest;
+  /** Each row's distance to its nearest medoid. */
+  protected double[] nearestDist;
+  /** Each row's distance to its second-nearest medoid. */
+  protected double[] secondDist;
+
+  /**
+   * Default constructor.
+   * @param distances
+   */
+  public Pam( DistanceMatrix distances ) {
+    this.distances = distances;
+  }
+
+  /**
+   * Choose k medoids with BUILD: first the row with the smallest total
+   * distance to every other, then each time the row that lowers the total
+   * the most.
+   * @param k
+   * @return The medoids, in the order chosen.
+   */
+  public int[] build( int k ) {
+    int n = distances.size();
+    if ( k < 1 || k > n ) {
+      throw new IllegalArgumentException( "Cannot choose " + k +
+          " medoids from " + n + " vectors" );
+    }
+    int[] medoids = new int[k];
+    boolean[] chosen = new boolean[n];
+    double[] best = new double[n];
+
+    double bestTotal = Double.POSITIVE_INFINITY;
+    for ( int j = 0; j < n; j++ ) {
+      double total = 0.0;
+      for ( int o = 0; o < n; o++ ) {
+        total += distances.get( o, j );
+      }
+      if ( total < bestTotal ) {
+        bestTotal = total;
+        medoids[0] = j;
+      }
+    }
+    chosen[medoids[0]] = true;
+    for ( int o = 0; o < n; o++ ) {
+      best[o] = distances.get( o, medoids[0] );
+    }
+
+    for ( int m = 1; m < k; m++ ) {
+      double bestGain = -1;
+      for ( int j = 0; j < n; j++ ) {
+        if ( chosen[j] ) continue;
+        double gain = 0.0;
+        for ( int o = 0; o < n; o++ ) {
+          double dist = distances.get( o, j );
+          if ( dist < best[o] ) {
+            gain += best[o] - dist;
+          }
+        }
+        if ( gain > bestGain ) {
+          bestGain = gain;
+          medoids[m] = j;
+        }
+      }
+      chosen[medoids[m]] = true;
+      for ( int o = 0; o < n; o++ ) {
+        best[o] = Math.min( best[o], distances.get( o, medoids[m] ) );
+      }
+    }
+
+    return medoids;
+  }
+
+  /**
+   * Improve the medoids with SWAP, making the best swap each iteration until
+   * none lowers the total (or after maxIterations).
+   * @param medoids The medoids, updated in place.
+   * @param maxIterations
+   * @return The number of swaps made.
+   */
+  public int swap( int[] medoids, int maxIterations ) {
+    int n = distances.size();
+    int k = medoids.length;
+    boolean[] isMedoid = new boolean[n];
+    for ( int m : medoids ) {
+      isMedoid[m] = true;
+    }
+    double[] delta = new double[k];
+
+    int swaps = 0;
+    while ( swaps < maxIterations ) {
+      double total = updateNearest( medoids );
+      double bestDelta = 0.0;
+      int bestMedoid = -1;
+      int bestRow = -1;
+
+      for ( int x = 0; x < n; x++ ) {
+        if ( isMedoid[x] ) continue;
+
+        // the change for every medoid, then the extra for each row's nearest
+        Arrays.fill( delta, 0.0 );
+        double shared = 0.0;
+        for ( int o = 0; o < n; o++ ) {
+          double dist = distances.get( o, x );
+          double kept = Math.min( dist, nearestDist[o] );
+          shared += kept - nearestDist[o];
+          delta[nearest[o]] += Math.min( dist, secondDist[o] ) - kept;
+        }
+
+        for ( int m = 0; m < k; m++ ) {
+          if ( shared + delta[m] < bestDelta ) {
+            bestDelta = shared + delta[m];
+            bestMedoid = m;
+            bestRow = x;
+          }
+        }
+      }
+
+      // stop when the best swap doesn't lower the total beyond rounding
+      if ( bestMedoid < 0 || -bestDelta <= total * 1e-12 ) {
+        break;
+      }
+      isMedoid[medoids[bestMedoid]] = false;
+      isMedoid[bestRow] = true;
+      medoids[bestMedoid] = bestRow;
+      swaps++;
+    }
+
+    updateNearest( medoids );
+    return swaps;
+  }
+
+  /**
+   * Assign each row to its nearest medoid.
+   * @param medoids
+   * @return The position in medoids of each row's nearest.
+   */
+  public int[] assign( int[] medoids ) {
+    updateNearest( medoids );
+    return Arrays.copyOf( nearest, nearest.length );
+  }
+
+  /**
+   * Get the total distance from each row to its nearest medoid.
+   * @param medoids
+   * @return
+   */
+  public double cost( int[] medoids ) {
+    return updateNearest( medoids );
+  }
+
+  /**
+   * Find each row's nearest and second-nearest medoids.
+   * @param medoids
+   * @return The total distance to the nearest.
+   */
+  protected double updateNearest( int[] medoids ) {
+    int n = distances.size();
+    if ( nearest == null ) {
+      nearest = new int[n];
+      nearestDist = new double[n];
+      secondDist = new double[n];
+    }
+
+    double total = 0.0;
+    for ( int o = 0; o < n; o++ ) {
+      int closest = -1;
+      double closestDist = 0.0;
+      double second = Double.POSITIVE_INFINITY;
+      for ( int m = 0; m < medoids.length; m++ ) {
+        double dist = distances.get( o, medoids[m] );
+        if ( closest == -1 || dist < closestDist ) {
+          if ( closest != -1 ) {
+            second = closestDist;
+          }
+          closest = m;
+          closestDist = dist;
+        } else if ( dist < second ) {
+          second = dist;
+        }
+      }
+      nearest[o] = closest;
+      nearestDist[o] = closestDist;
+      secondDist[o] = second;
+      total += closestDist;
+    }
+
+    return total;
+  }
+}
@@ -0,0 +1,224 @@
+package edu.tufts.cs.ml.cluster;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.concurrent.Callable;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+
+import edu.tufts.cs.ml.DenseRelation;
+import edu.tufts.cs.ml.util.ConcurrencyUtil;
+import edu.tufts.cs.ml.util.VectorMath;
+
+/**
+ * The assignment step of a k-method, run in parallel over the rows of a
+ * DenseRelation. The rows are split into contiguous chunks; each chunk
+ * assigns its rows to their closest centroid and sums them into its own
+ * primitive accumulators (per-centroid sums and counts), and the chunks'
+ * accumulators are added together, in chunk order, once they are all done.
+ * The result is therefore the same from run to run, whatever the threads'
+ * timing.
+ *
+ * An instance is reused across the iterations of one clustering run and
+ * holds a thread pool until shutdown() is called. An instance made without a
+ * pool runs the same chunks one after the other on the caller's thread, so
+ * it gives exactly the same sums as one with a pool; that is for callers
+ * that already run several clusterings at once.
+ */
+public class ParallelAssignment {
+  /** The number of chunks per thread, so that slow chunks even out. */
+  protected static final int CHUNKS_PER_THREAD = 4;
+  /** The rows to assign. */
+  protected final DenseRelation<?> denseData;
+  /** The number of centroids. */
+  protected final int k;
+  /** The first row of each chunk (plus the end). */
+  protected final int[] bounds;
+  /** Each chunk's sums, by centroid then column. */
+  protected final double[][] chunkSums;
+  /** Each chunk's counts, by centroid. */
+  protected final int[][] chunkCounts;
+  /** Each chunk's number of changed assignments. */
+  protected final int[] chunkChanges;
+  /** The sums of the last assignment, by centroid then column. */
+  protected final double[][] sums;
+  /** The counts of the last assignment, by centroid. */
+  protected final int[] counts;
+  /** The thread pool, or null if the chunks are run on the caller. */
+  protected final ExecutorService executor;
+
+  /**
+   * Default constructor.
+   * @param denseData
+   * @param k The number of centroids.
+   * @param parallelism The number of threads to use.
+   */
+  public ParallelAssignment( DenseRelation<?> denseData, int k,
+      int parallelism ) {
+    this( denseData, k, parallelism, true );
+  }
+
+  /**
+   * Constructor that can run the chunks on the caller's thread.
+   * @param denseData
+   * @param k The number of centroids.
+   * @param parallelism The number of threads the chunks are laid out for.
+   * @param pooled Whether to run the chunks on a thread pool.
+   */
+  public ParallelAssignment( DenseRelation<?> denseData, int k,
+      int parallelism, boolean pooled ) {
+    if ( parallelism < 1 ) {
+      throw new IllegalArgumentException( "Parallelism must be at least 1: " +
+          parallelism );
+    }
+    this.denseData = denseData;
+    this.k = k;
+
+    int n = denseData.size();
+    int numChunks = ( parallelism == 1 ) ? 1 :
+      Math.max( 1, Math.min( n, parallelism * CHUNKS_PER_THREAD ) );
+    this.bounds = new int[numChunks + 1];
+    for ( int c = 0; c <= numChunks; c++ ) {
+      bounds[c] = (int) ( (long) n * c / numChunks );
+    }
+
+    int d = denseData.numFeatures();
+    this.chunkSums = new double[numChunks][k * d];
+    this.chunkCounts = new int[numChunks][k];
+    this.chunkChanges = new int[numChunks];
+    this.sums = new double[k][d];
+    this.counts = new int[k];
+    this.executor = ( numChunks == 1 || !pooled ) ? null :
+      Executors.newFixedThreadPool( parallelism );
+  }
+
+  /**
+   * Assign each row to its closest centroid (the first one, on ties), and
+   * sum the rows assigned to each centroid.
+   * @param centroids The centroids' values, in the relation's columns.
+   * @param assignment Each row's centroid, updated in place; -1 if the row
+   * hasn't been assigned yet.
+   * @return The number of rows whose assignment changed.
+   */
+  public int assign( final double[][] centroids, final int[] assignment ) {
+    if ( executor == null ) {
+      for ( int c = 0; c < chunkChanges.length; c++ ) {
+        assignChunk( c, centroids, assignment );
+      }
+    } else {
+      List<Callable<Void>> tasks = new ArrayList<Callable<Void>>(
+          chunkChanges.length );
+      for ( int c = 0; c < chunkChanges.length; c++ ) {
+        final int chunk = c;
+        tasks.add( new Callable<Void>() {
+          public Void call() {
+            assignChunk( chunk, centroids, assignment );
+            return null;
+          }
+        } );
+      }
+
+      ConcurrencyUtil.invokeAll( executor, tasks, RuntimeException.class,
+          "assigning clusters" );
+    }
+
+    return reduce();
+  }
+
+  /**
+   * Assign the rows of one chunk into its accumulators.
+   * @param chunk
+   * @param centroids
+   * @param assignment
+   */
+  protected void assignChunk( int chunk, double[][] centroids,
+      int[] assignment ) {
+    double[] data = denseData.getData();
+    int d = denseData.numFeatures();
+    double[] s = chunkSums[chunk];
+    int[] cnt = chunkCounts[chunk];
+    Arrays.fill( s, 0.0 );
+    Arrays.fill( cnt, 0 );
+    int changes = 0;
+
+    for ( int i = bounds[chunk]; i < bounds[chunk + 1]; i++ ) {
+      int offset = denseData.offset( i );
+      int closest = -1;
+      double closestDist = 0;
+      for ( int c = 0; c < centroids.length; c++ ) {
+        double dist = VectorMath.squaredEuclidean( data, offset,
+            centroids[c], 0, d );
+        if ( closest == -1 || dist < closestDist ) {
+          closest = c;
+          closestDist = dist;
+        }
+      }
+
+      if ( assignment[i] != closest ) {
+        assignment[i] = closest;
+        changes++;
+      }
+      cnt[closest]++;
+      int base = closest * d;
+      for ( int j = 0; j < d; j++ ) {
+        s[base + j] += data[offset + j];
+      }
+    }
+
+    chunkChanges[chunk] = changes;
+  }
+
+  /**
+   * Add the chunks' accumulators together, in chunk order.
+   * @return The total number of changed assignments.
+   */
+  protected int reduce() {
+    int d = denseData.numFeatures();
+    int changes = 0;
+    for ( int c = 0; c < k; c++ ) {
+      Arrays.fill( sums[c], 0.0 );
+      counts[c] = 0;
+    }
+    for ( int chunk = 0; chunk < chunkChanges.length; chunk++ ) {
+      double[] s = chunkSums[chunk];
+      for ( int c = 0; c < k; c++ ) {
+        counts[c] += chunkCounts[chunk][c];
+        int base = c * d;
+        for ( int j = 0; j < d; j++ ) {
+          sums[c][j] += s[base + j];
+        }
+      }
+      changes += chunkChanges[chunk];
+    }
+
+    return changes;
+  }
+
+  /**
+   * Get the sums of the rows assigned to each centroid by the last call to
+   * assign. This is not a copy.
+   * @return
+   */
+  public double[][] getSums() {
+    return this.sums;
+  }
+
+  /**
+   * Get the number of rows assigned to each centroid by the last call to
+   * assign. This is not a copy.
+   * @return
+   */
+  public int[] getCounts() {
+    return this.counts;
+  }
+
+  /**
+   * Stop the thread pool.
+   */
+  public void shutdown() {
+    if ( executor != null ) {
+      executor.shutdown();
+    }
+  }
+}
@@ -5,6 +5,7 @@ package edu.tufts.cs.ml.cluster.drivers;
 
 import java.io.File;
 
+import edu.tufts.cs.ml.cluster.KMethod.Seeding;
 import edu.tufts.cs.ml.exception.CommandLineArgumentException;
 
 
@@ -22,6 +23,12 @@ public class ClusterArguments {
   public static final String ARG_TRAIN_FILE = "data_set";
   /** The argument name for the output file. */
   public static final String OPT_OUT_FILE = "output_file";
+  /** The argument name for the initialization method. */
+  public static final String OPT_SEEDING = "seeding";
+  /** The argument name for the random seed. */
+  public static final String OPT_SEED = "seed";
+  /** The argument name for triangle-inequality pruning. */
+  public static final String OPT_ACCELERATED = "accelerated";
   /** The default output file name. */
   protected static final String DEFAULT_OUT_FILE = "kmeans.out";
   /** The usage message for the data set file. */
@@ -29,10 +36,24 @@ public class ClusterArguments {
     "the data set.";
   /** The usage message for the output file. */
   public static final String USAGE_OUT_FILE = "The name for the output file.";
+  /** The usage message for the initialization method. */
+  public static final String USAGE_SEEDING = "(Optional) How to choose the " +
+    "initial centroids: density (default), sampled-density, kmeans++ or " +
+    "kmeans||.";
+  /** The usage message for the random seed. */
+  public static final String USAGE_SEED = "(Optional) The random seed for " +
+    "the initialization method (default 0).";
+  /** The usage message for triangle-inequality pruning. */
+  public static final String USAGE_ACCELERATED = "(Optional) Whether to " +
+    "skip distances with the triangle inequality and report how many were " +
+    "skipped. The clusters are the same.";
   /** The usage message. */
   protected static String usage = "cluster " + ARG_TRAIN_FILE  + " [" +
-    OPT_OUT_FILE + "]\n\n" + ARG_TRAIN_FILE + ":\t " + USAGE_TRAIN_FILE +
-    "\n" + OPT_OUT_FILE + ":\t" + USAGE_OUT_FILE;
+    OPT_OUT_FILE + "] [--seeding=method] [--seed=n] [--accelerated]\n\n" +
+    ARG_TRAIN_FILE + ":\t " + USAGE_TRAIN_FILE + "\n" + OPT_OUT_FILE + ":\t" +
+    USAGE_OUT_FILE + "\n" + OPT_SEEDING + ":\t" + USAGE_SEEDING + "\n" +
+    OPT_SEED + ":\t" + USAGE_SEED + "\n" + OPT_ACCELERATED + ":\t" +
+    USAGE_ACCELERATED;
 
   /*
    * Argument definitions for command line use.
@@ -41,6 +62,12 @@ public class ClusterArguments {
   private File trainFile;
   /** The output file location. */
   private File outFile;
+  /** How to choose the initial centroids. */
+  private Seeding seeding = Seeding.DENSITY;
+  /** The random seed for the initialization method. */
+  private long seed = 0;
+  /** Whether to skip distances with the triangle inequality. */
+  private boolean accelerated = false;
 
   /**
    * Options from the command line arguments override default settings
@@ -55,11 +82,25 @@ public class ClusterArguments {
     }
 
     String train = args[0];
-    String output;
-    if ( args.length > 1 ) {
-      output = args[1];
-    } else {
-      output = DEFAULT_OUT_FILE;
+    String output = DEFAULT_OUT_FILE;
+    for ( int i = 1; i < args.length; i++ ) {
+      String arg = args[i].trim();
+      if ( arg.toLowerCase().startsWith( "--" + OPT_SEEDING + "=" ) ) {
+        seeding = parseSeeding( arg.substring( OPT_SEEDING.length() + 3 ) );
+      } else if ( arg.toLowerCase().startsWith( "--" + OPT_SEED + "=" ) ) {
+        String val = arg.substring( OPT_SEED.length() + 3 );
+        try {
+          seed = Long.parseLong( val );
+        } catch ( NumberFormatException e ) {
+          printUsage( "Invalid random seed: " + val );
+        }
+      } else if ( arg.equalsIgnoreCase( "--" + OPT_ACCELERATED ) ) {
+        accelerated = true;
+      } else if ( i == 1 && !arg.startsWith( "--" ) ) {
+        output = args[i];
+      } else {
+        printUsage( "Unknown option: " + arg );
+      }
     }
 
     trainFile = new File( train );
@@ -70,6 +111,29 @@ public class ClusterArguments {
     }
   }
 
+  /**
+   * Parse the name of an initialization method.
+   * @param val
+   * @return
+   * @throws CommandLineArgumentException
+   */
+  protected Seeding parseSeeding( String val )
+    throws CommandLineArgumentException {
+    String name = val.trim().toUpperCase().replace( '-', '_' );
+    if ( name.equals( "KMEANS++" ) ) {
+      return Seeding.KMEANS_PLUS_PLUS;
+    } else if ( name.equals( "KMEANS||" ) ) {
+      return Seeding.KMEANS_PARALLEL;
+    }
+    for ( Seeding s : Seeding.values() ) {
+      if ( s.name().equals( name ) ) {
+        return s;
+      }
+    }
+    printUsage( "Invalid initialization method: " + val );
+    return null;
+  }
+
   /**
    * Print the usage and the error message.
    * @param args
@@ -106,4 +170,31 @@ public class ClusterArguments {
   public File getOutputFile() {
     return this.outFile;
   }
+
+  /**
+   * Get how to choose the initial centroids.
+   *
+   * @return
+   */
+  public Seeding getSeeding() {
+    return this.seeding;
+  }
+
+  /**
+   * Get the random seed for the initialization method.
+   *
+   * @return
+   */
+  public long getSeed() {
+    return this.seed;
+  }
+
+  /**
+   * Whether to skip distances with the triangle inequality.
+   *
+   * @return
+   */
+  public boolean accelerated() {
+    return this.accelerated;
+  }
 }
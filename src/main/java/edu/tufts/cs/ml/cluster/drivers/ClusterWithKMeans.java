@@ -11,14 +11,14 @@ import java.util.TreeMap;
 import java.util.logging.Level;
 import java.util.logging.Logger;
 
-import edu.tufts.cs.ml.TestRelation;
+import edu.tufts.cs.ml.DenseRelation;
+import edu.tufts.cs.ml.FeatureVector;
+import edu.tufts.cs.ml.cluster.AcceleratedKMeans;
 import edu.tufts.cs.ml.cluster.ClusterSet;
 import edu.tufts.cs.ml.cluster.KMeans;
 import edu.tufts.cs.ml.exception.CommandLineArgumentException;
 import edu.tufts.cs.ml.exception.IncomparableFeatureVectorException;
-import edu.tufts.cs.ml.normalize.Normalizer;
 import edu.tufts.cs.ml.normalize.ZScoreNormalizer;
-import edu.tufts.cs.ml.reader.ArffReader;
 import edu.tufts.cs.ml.reader.Reader;
 import edu.tufts.cs.ml.util.MathUtil;
 import edu.tufts.cs.ml.util.Util;
@@ -54,7 +54,9 @@ public class ClusterWithKMeans implements Observer {
   protected static void printInfo( ClusterArguments cmd ) {
     LOG.log( Level.INFO, "Running k-Means clustering algorithm with: "
         + "\n\tTraining file:\t" + cmd.getDataSet()
-        + "\n\tOutput file:\t" + cmd.getOutputFile() );
+        + "\n\tOutput file:\t" + cmd.getOutputFile()
+        + "\n\tInitialization:\t" + cmd.getSeeding().getDescription()
+        + "\n\tAccelerated:\t" + cmd.accelerated() );
   }
 
   /**
@@ -103,20 +105,23 @@ public class ClusterWithKMeans implements Observer {
      * Get the input data set.
      */
     File trainFile = cmd.getDataSet();
-    Reader<String> reader = new ArffReader<String>();
-    TestRelation<String> dataset = (TestRelation<String>) reader.read(
-        trainFile, Reader.IGNORE_LABELS );
+    Reader<String> reader = Reader.forFile( trainFile );
+    DenseRelation<FeatureVector<String>> dataset =
+        (DenseRelation<FeatureVector<String>>) reader.readDense( trainFile,
+            Reader.IGNORE_LABELS );
 
     /*
      * Normalize the data.
      */
-    Normalizer<String> n = new ZScoreNormalizer<String>( dataset );
-    n.normalize();
+    ZScoreNormalizer.normalize( dataset );
 
     /*
      * Run k-Means on the data.
      */
-    KMeans<String> kMeans = new KMeans<String>( dataset );
+    int threads = Runtime.getRuntime().availableProcessors();
+    KMeans<String> kMeans = cmd.accelerated() ?
+        new AcceleratedKMeans<String>( dataset, threads ) :
+        new KMeans<String>( dataset, threads );
     kMeans.addObserver( instance );
 
     // run maxI iterations for each k value
@@ -150,14 +155,37 @@ public class ClusterWithKMeans implements Observer {
           confHigh + "\n" );
     }
 
-    // now run 1 iteration per k with density initial centroid selection method
-    output.append( "\nDensity initialization method:\n\n" );
+    // now run 1 iteration per k with the chosen initial centroid selection
+    // method (density by default)
+    output.append( "\n" + cmd.getSeeding().getDescription() +
+        " initialization method:\n\n" );
     output.append( "k, sse\n" );
+    StringBuilder pruning = new StringBuilder();
     for ( int k = 1; k <= maxK; k++ ) {
-      ClusterSet<String> clusters = kMeans.cluster( k );
+      ClusterSet<String> clusters = kMeans.cluster( k, cmd.getSeeding(),
+          cmd.getSeed() );
       double sse = clusters.calculateSSE();
       output.append( k + ", " + sse + "\n" );
       System.out.println( "k=" + k + ": \tsse=" + sse );
+
+      if ( kMeans instanceof AcceleratedKMeans ) {
+        AcceleratedKMeans<String> accelerated =
+            (AcceleratedKMeans<String>) kMeans;
+        long[] pruned = accelerated.getPrunedCounts();
+        pruning.append( k + ", " + accelerated.getUnprunedCount() );
+        for ( long p : pruned ) {
+          pruning.append( ", " + p );
+        }
+        pruning.append( "\n" );
+        System.out.println( "k=" + k + ": \tpruned per iteration (of " +
+            accelerated.getUnprunedCount() + "): " +
+            Arrays.toString( pruned ) );
+      }
+    }
+    if ( pruning.length() > 0 ) {
+      output.append( "\nPruned distance evaluations:\n\n" );
+      output.append( "k, unpruned per iteration, pruned by iteration...\n" );
+      output.append( pruning );
     }
 
     /*
@@ -0,0 +1,256 @@
+package edu.tufts.cs.ml.cluster.outlier;
+
+import java.util.HashSet;
+import java.util.Random;
+import java.util.Set;
+
+import edu.tufts.cs.ml.DenseRelation;
+
+/**
+ * Scores each vector by how easily random splits isolate it (Liu, Ting and
+ * Zhou, "Isolation forest", 2008): each tree splits a small random sample on
+ * random features at random values, and outliers end up in leaves near the
+ * root. The score is 2^(-E[h(x)] / c(psi)), so near 1 for outliers and at
+ * most about .5 for the rest.
+ *
+ * It needs no distances at all, so there is no index. The trees are built
+ * from seeds drawn up front, so the scores don't depend on the parallelism.
+ */
+public class IsolationForest extends OutlierScorer {
+  /** The default number of trees. */
+  public static final int DEFAULT_TREES = 100;
+  /** The default number of vectors to build each tree from. */
+  public static final int DEFAULT_SAMPLE_SIZE = 256;
+  /** The number of trees. */
+  protected final int numTrees;
+  /** The number of vectors to build each tree from. */
+  protected final int sampleSize;
+  /** The random seed. */
+  protected final long seed;
+
+  /**
+   * Default constructor.
+   * @param numTrees
+   * @param sampleSize
+   * @param seed
+   * @param parallelism
+   */
+  public IsolationForest( int numTrees, int sampleSize, long seed,
+      int parallelism ) {
+    super( parallelism );
+    if ( numTrees < 1 || sampleSize < 2 ) {
+      throw new IllegalArgumentException( "Need at least 1 tree and 2 " +
+          "vectors per tree: " + numTrees + ", " + sampleSize );
+    }
+    this.numTrees = numTrees;
+    this.sampleSize = sampleSize;
+    this.seed = seed;
+  }
+
+  @Override
+  public double[] score( final DenseRelation<?> dense ) {
+    final int n = dense.size();
+    final int psi = Math.min( sampleSize, n );
+    final int heightLimit = (int) Math.ceil( Math.log( psi ) / Math.log( 2 ) );
+
+    Random random = new Random( seed );
+    final long[] seeds = new long[numTrees];
+    for ( int t = 0; t < numTrees; t++ ) {
+      seeds[t] = random.nextLong();
+    }
+
+    final Tree[] trees = new Tree[numTrees];
+    forEachChunk( numTrees, new Chunk() {
+      public void run( int from, int to ) {
+        for ( int t = from; t < to; t++ ) {
+          trees[t] = new Tree( dense, psi, heightLimit,
+              new Random( seeds[t] ) );
+        }
+      }
+    } );
+
+    final double norm = averagePathLength( psi );
+    final double[] scores = new double[n];
+    forEachChunk( n, new Chunk() {
+      public void run( int from, int to ) {
+        double[] data = dense.getData();
+        for ( int i = from; i < to; i++ ) {
+          int offset = dense.offset( i );
+          double total = 0.0;
+          for ( Tree tree : trees ) {
+            total += tree.pathLength( data, offset );
+          }
+          scores[i] = Math.pow( 2, -( total / trees.length ) / norm );
+        }
+      }
+    } );
+
+    return scores;
+  }
+
+  /**
+   * Get the average path length of an unsuccessful search in a binary
+   * search tree of n vectors, c(n).
+   * @param n
+   * @return
+   */
+  protected static double averagePathLength( int n ) {
+    if ( n <= 1 ) {
+      return 0.0;
+    } else if ( n == 2 ) {
+      return 1.0;
+    }
+    double harmonic = Math.log( n - 1 ) + 0.5772156649;
+    return 2 * harmonic - 2.0 * ( n - 1 ) / n;
+  }
+
+  /**
+   * An isolation tree, in arrays: node i splits on feature[i] at split[i]
+   * into left[i] and right[i], or, if left[i] is -1, is a leaf of size[i]
+   * vectors.
+   */
+  protected static class Tree {
+    /** The feature each node splits on. */
+    protected final int[] feature;
+    /** The value each node splits at (left is less). */
+    protected final double[] split;
+    /** The left child of each node, or -1 for a leaf. */
+    protected final int[] left;
+    /** The right child of each node. */
+    protected final int[] right;
+    /** The number of vectors in each leaf. */
+    protected final int[] size;
+    /** The depth of each node. */
+    protected final int[] depth;
+    /** The data the tree is built from. */
+    protected final double[] data;
+    /** The number of columns of the data. */
+    protected final int numCols;
+    /** The number of nodes. */
+    protected int numNodes;
+
+    /**
+     * Build a tree from a random sample of the rows.
+     * @param dense
+     * @param psi The sample size.
+     * @param heightLimit
+     * @param random
+     */
+    public Tree( DenseRelation<?> dense, int psi, int heightLimit,
+        Random random ) {
+      int maxNodes = 2 * psi - 1;
+      this.feature = new int[maxNodes];
+      this.split = new double[maxNodes];
+      this.left = new int[maxNodes];
+      this.right = new int[maxNodes];
+      this.size = new int[maxNodes];
+      this.depth = new int[maxNodes];
+      this.data = dense.getData();
+      this.numCols = dense.numFeatures();
+
+      // Floyd's algorithm draws psi distinct rows without touching the
+      // other n - psi
+      int n = dense.size();
+      Set<Integer> drawn = new HashSet<Integer>( psi * 2 );
+      int[] sample = new int[psi];
+      int i = 0;
+      for ( int j = n - psi; j < n; j++ ) {
+        int row = random.nextInt( j + 1 );
+        if ( !drawn.add( row ) ) {
+          row = j;
+          drawn.add( row );
+        }
+        sample[i++] = dense.offset( row );
+      }
+
+      build( sample, 0, psi, 0, heightLimit, random );
+    }
+
+    /**
+     * Build the node for the sample offsets from (inclusive) to (exclusive).
+     * @param offsets The row offsets into the data.
+     * @param from
+     * @param to
+     * @param d The node's depth.
+     * @param heightLimit
+     * @param random
+     * @return The node.
+     */
+    protected int build( int[] offsets, int from, int to, int d,
+        int heightLimit, Random random ) {
+      int node = numNodes++;
+      depth[node] = d;
+      left[node] = -1;
+      size[node] = to - from;
+      if ( d >= heightLimit || to - from <= 1 ) {
+        return node;
+      }
+
+      // a random feature that isn't constant here
+      int start = random.nextInt( numCols );
+      for ( int c = 0; c < numCols; c++ ) {
+        int q = ( start + c ) % numCols;
+        double min = Double.POSITIVE_INFINITY;
+        double max = Double.NEGATIVE_INFINITY;
+        for ( int i = from; i < to; i++ ) {
+          double v = data[offsets[i] + q];
+          min = Math.min( min, v );
+          max = Math.max( max, v );
+        }
+        if ( min < max ) {
+          double p = min + random.nextDouble() * ( max - min );
+          if ( p <= min ) {
+            p = Math.nextUp( min );
+          }
+          int mid = partition( offsets, from, to, q, p );
+          feature[node] = q;
+          split[node] = p;
+          left[node] = build( offsets, from, mid, d + 1, heightLimit, random );
+          right[node] = build( offsets, mid, to, d + 1, heightLimit, random );
+          return node;
+        }
+      }
+
+      return node;
+    }
+
+    /**
+     * Move the offsets whose value of the feature is less than p to the
+     * front.
+     * @param offsets
+     * @param from
+     * @param to
+     * @param q
+     * @param p
+     * @return The index of the first offset not less than p.
+     */
+    protected int partition( int[] offsets, int from, int to, int q,
+        double p ) {
+      int mid = from;
+      for ( int i = from; i < to; i++ ) {
+        if ( data[offsets[i] + q] < p ) {
+          int tmp = offsets[mid];
+          offsets[mid++] = offsets[i];
+          offsets[i] = tmp;
+        }
+      }
+      return mid;
+    }
+
+    /**
+     * Get the path length of the row at the offset: the depth of its leaf,
+     * plus the average path length of the leaf's vectors.
+     * @param values
+     * @param offset
+     * @return
+     */
+    public double pathLength( double[] values, int offset ) {
+      int node = 0;
+      while ( left[node] != -1 ) {
+        node = ( values[offset + feature[node]] < split[node] ) ? left[node] :
+          right[node];
+      }
+      return depth[node] + averagePathLength( size[node] );
+    }
+  }
+}
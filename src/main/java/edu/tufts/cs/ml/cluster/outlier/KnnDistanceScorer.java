@@ -0,0 +1,35 @@
+package edu.tufts.cs.ml.cluster.outlier;
+
+import edu.tufts.cs.ml.DenseRelation;
+import edu.tufts.cs.ml.index.Neighbors;
+
+/**
+ * Scores each vector by the distance to its kth nearest neighbor
+ * (Ramaswamy, Rastogi and Shim, "Efficient algorithms for mining outliers
+ * from large data sets", 2000).
+ */
+public class KnnDistanceScorer extends OutlierScorer {
+  /** The number of neighbors. */
+  protected final int k;
+
+  /**
+   * Default constructor.
+   * @param k The number of neighbors.
+   * @param parallelism
+   */
+  public KnnDistanceScorer( int k, int parallelism ) {
+    super( parallelism );
+    this.k = k;
+  }
+
+  @Override
+  public double[] score( DenseRelation<?> dense ) {
+    Neighbors[] neighbors = nearestNeighbors( dense, k );
+    double[] scores = new double[neighbors.length];
+    for ( int i = 0; i < scores.length; i++ ) {
+      scores[i] = neighbors[i].getDistance( k - 1 );
+    }
+
+    return scores;
+  }
+}
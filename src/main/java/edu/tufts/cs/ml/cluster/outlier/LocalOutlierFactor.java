@@ -0,0 +1,74 @@
+package edu.tufts.cs.ml.cluster.outlier;
+
+import edu.tufts.cs.ml.DenseRelation;
+import edu.tufts.cs.ml.index.Neighbors;
+
+/**
+ * Scores each vector by its Local Outlier Factor (Breunig, Kriegel, Ng and
+ * Sander, "LOF: identifying density-based local outliers", 2000): the
+ * average local reachability density of its k nearest neighbors over its
+ * own. A vector about as dense as its neighbors scores about 1; an outlier
+ * scores well above 1.
+ *
+ * The neighborhood is exactly k neighbors (ties with the kth are not added),
+ * and a tiny constant is added to the reachability distances so that
+ * duplicate vectors don't have an infinite density.
+ */
+public class LocalOutlierFactor extends OutlierScorer {
+  /** Added to the mean reachability distance, for duplicates. */
+  protected static final double EPSILON = 1e-10;
+  /** The number of neighbors. */
+  protected final int k;
+
+  /**
+   * Default constructor.
+   * @param k The number of neighbors.
+   * @param parallelism
+   */
+  public LocalOutlierFactor( int k, int parallelism ) {
+    super( parallelism );
+    this.k = k;
+  }
+
+  @Override
+  public double[] score( DenseRelation<?> dense ) {
+    final Neighbors[] neighbors = nearestNeighbors( dense, k );
+    final int n = neighbors.length;
+
+    // the distance to each row's kth neighbor
+    final double[] kDistance = new double[n];
+    for ( int i = 0; i < n; i++ ) {
+      kDistance[i] = neighbors[i].getDistance( k - 1 );
+    }
+
+    // the local reachability density of each row
+    final double[] lrd = new double[n];
+    forEachChunk( n, new Chunk() {
+      public void run( int from, int to ) {
+        for ( int i = from; i < to; i++ ) {
+          double reach = 0.0;
+          for ( int j = 0; j < k; j++ ) {
+            reach += Math.max( kDistance[neighbors[i].getRow( j )],
+                neighbors[i].getDistance( j ) );
+          }
+          lrd[i] = 1.0 / ( reach / k + EPSILON );
+        }
+      }
+    } );
+
+    final double[] scores = new double[n];
+    forEachChunk( n, new Chunk() {
+      public void run( int from, int to ) {
+        for ( int i = from; i < to; i++ ) {
+          double total = 0.0;
+          for ( int j = 0; j < k; j++ ) {
+            total += lrd[neighbors[i].getRow( j )];
+          }
+          scores[i] = total / k / lrd[i];
+        }
+      }
+    } );
+
+    return scores;
+  }
+}
@@ -1,20 +1,63 @@
 package edu.tufts.cs.ml.cluster.outlier;
 
+import java.util.ArrayList;
+import java.util.Arrays;
 import java.util.HashMap;
 import java.util.HashSet;
+import java.util.List;
 import java.util.Map;
-import java.util.Map.Entry;
 import java.util.Set;
-import java.util.SortedSet;
 
 import edu.tufts.cs.ml.FeatureVector;
 import edu.tufts.cs.ml.cluster.Centroid;
 import edu.tufts.cs.ml.cluster.Cluster;
 import edu.tufts.cs.ml.cluster.ClusterSet;
+import edu.tufts.cs.ml.cluster.DistanceCache;
 import edu.tufts.cs.ml.exception.IncomparableFeatureVectorException;
 import edu.tufts.cs.ml.util.Util;
 
 public class OutlierDetector<E> {
+  /** The smallest proportional cluster-size threshold of the fuzzy method. */
+  public static final double MIN_T_CLUSTER = .025;
+  /** The largest proportional cluster-size threshold of the fuzzy method. */
+  public static final double MAX_T_CLUSTER = .1;
+  /** The step between the fuzzy method's cluster-size thresholds. */
+  public static final double T_CLUSTER_INCR = .025;
+  /** The smallest intra-cluster threshold of the fuzzy method. */
+  public static final double MIN_T_INTRA = 1.1;
+  /** The largest intra-cluster threshold of the fuzzy method. */
+  public static final double MAX_T_INTRA = 2;
+  /** The step between the fuzzy method's intra-cluster thresholds. */
+  public static final double T_INTRA_INCR = .1;
+  /** The cache of the clusters' distances to their centroids. */
+  protected final DistanceCache distanceCache;
+
+  /**
+   * Default constructor; the detector keeps its own cache of distances, for
+   * clusters that don't come with one.
+   */
+  public OutlierDetector() {
+    this( new DistanceCache() );
+  }
+
+  /**
+   * Constructor with a cache of distances to share (eg. the clusterer's);
+   * null to compute them every time.
+   *
+   * @param distanceCache
+   */
+  public OutlierDetector( DistanceCache distanceCache ) {
+    this.distanceCache = distanceCache;
+  }
+
+  /**
+   * Get the cache of the clusters' distances to their centroids.
+   *
+   * @return
+   */
+  public DistanceCache getDistanceCache() {
+    return this.distanceCache;
+  }
 
   /**
    * Detect the outlier clusters from the given Clusters.
@@ -49,7 +92,8 @@ public class OutlierDetector<E> {
    * @return
    */
   public ClusterSet<E> detectSmallClusters( ClusterSet<E> clusters, int t ) {
-    ClusterSet<E> outliers = new ClusterSet<E>();
+    ClusterSet<E> outliers = new ClusterSet<E>(
+        clusters.getDistanceCache() );
 
     for ( Cluster<E> c : clusters.values() ) {
       if ( c.size() < t ) {
@@ -73,28 +117,20 @@ public class OutlierDetector<E> {
       double t ) throws IncomparableFeatureVectorException {
     Set<FeatureVector<?>> outliers = new HashSet<FeatureVector<?>>();
 
+    DistanceCache cache = ( clusters.getDistanceCache() != null ) ?
+        clusters.getDistanceCache() : distanceCache;
     for ( Cluster<E> c : clusters.values() ) {
-      Map<FeatureVector<?>, Double> distMap =
-          new HashMap<FeatureVector<?>, Double>();
-
       double totalDist = 0.0;
-      for ( FeatureVector<E> fv : c ) {
-        double dist = fv.getEuclideanDistance( c.getCentroid() );
-        totalDist += dist;
-        distMap.put( fv, dist );
+      double[] dists = c.distancesToCentroid( cache );
+      for ( int i = 0; i < dists.length; i++ ) {
+        totalDist += dists[i];
       }
       double avgDist = totalDist / c.size();
       double maxDist = t * avgDist;
 
-      SortedSet<Entry<FeatureVector<?>, Double>> sorted = Util
-          .sortByEntries( distMap );
-      for ( Entry<FeatureVector<?>, Double> e : sorted ) {
-        double dist = e.getValue();
-
-        if ( dist > maxDist ) {
-          outliers.add( e.getKey() );
-        } else {
-          break;
+      for ( int i = 0; i < dists.length; i++ ) {
+        if ( dists[i] > maxDist ) {
+          outliers.add( c.get( i ) );
         }
       }
     }
@@ -116,7 +152,8 @@ public class OutlierDetector<E> {
     throws IncomparableFeatureVectorException {
     ClusterSet<E> subset = detectSmallClusters( clusters, pCluster );
 
-    ClusterSet<E> remainder = new ClusterSet<E>();
+    ClusterSet<E> remainder = new ClusterSet<E>(
+        clusters.getDistanceCache() );
     for ( Centroid<E> c : clusters.keySet() ) {
       if ( !subset.containsKey( c ) ) {
         remainder.put( c, clusters.get( c ) );
@@ -145,7 +182,8 @@ public class OutlierDetector<E> {
       double tIntra ) throws IncomparableFeatureVectorException {
     ClusterSet<E> subset = detectSmallClusters( clusters, tCluster );
 
-    ClusterSet<E> remainder = new ClusterSet<E>();
+    ClusterSet<E> remainder = new ClusterSet<E>(
+        clusters.getDistanceCache() );
     for ( Centroid<E> c : clusters.keySet() ) {
       if ( !subset.containsKey( c ) ) {
         remainder.put( c, clusters.get( c ) );
@@ -162,7 +200,9 @@ public class OutlierDetector<E> {
   }
 
   /**
-   * Detect the outliers within the given Clusters with a fuzzy method.
+   * Detect the outliers within the given Clusters with a fuzzy method: the
+   * confidence of a vector is the fraction of the default grid of
+   * thresholds (see detectAllFuzzy with grids) that detectAll flags it at.
    *
    * @param clusters
    *          The clusters.
@@ -172,48 +212,195 @@ public class OutlierDetector<E> {
    */
   public Map<FeatureVector<?>, Double> detectAllFuzzy( ClusterSet<E> clusters,
       double t ) throws IncomparableFeatureVectorException {
+    return detectAllFuzzy( clusters, t,
+        steps( MIN_T_CLUSTER, MAX_T_CLUSTER, T_CLUSTER_INCR ),
+        steps( MAX_T_INTRA, MIN_T_INTRA, -T_INTRA_INCR ) );
+  }
+
+  /**
+   * Detect the outliers within the given Clusters with a fuzzy method, over
+   * an evenly spaced grid of thresholds with the given number of values
+   * along each side, from the default smallest to the default largest.
+   *
+   * @param clusters
+   *          The clusters.
+   * @param t
+   * @param clusterSteps
+   *          The number of cluster-size thresholds.
+   * @param intraSteps
+   *          The number of intra-cluster thresholds.
+   * @return
+   * @throws IncomparableFeatureVectorException
+   */
+  public Map<FeatureVector<?>, Double> detectAllFuzzy( ClusterSet<E> clusters,
+      double t, int clusterSteps, int intraSteps )
+    throws IncomparableFeatureVectorException {
+    return detectAllFuzzy( clusters, t,
+        evenSteps( MIN_T_CLUSTER, MAX_T_CLUSTER, clusterSteps ),
+        evenSteps( MIN_T_INTRA, MAX_T_INTRA, intraSteps ) );
+  }
+
+  /**
+   * Detect the outliers within the given Clusters with a fuzzy method. The
+   * confidence of a vector is the fraction of the grid of thresholds
+   * (tCluster, tIntra) at which detectAll( clusters, tCluster, tIntra )
+   * flags it; the vectors with a confidence of at least t are returned.
+   *
+   * The grid isn't run cell by cell: a vector is flagged at a cell if its
+   * cluster is smaller than the cluster threshold, or if its distance to the
+   * centroid is more than the intra-cluster threshold times its cluster's
+   * average. Each side is a count over its sorted thresholds, so each vector
+   * takes one binary search per side, whatever the grid's resolution.
+   *
+   * @param clusters
+   *          The clusters.
+   * @param t
+   * @param tClusters
+   *          The proportional cluster-size thresholds.
+   * @param tIntras
+   *          The intra-cluster distance thresholds.
+   * @return
+   * @throws IncomparableFeatureVectorException
+   */
+  public Map<FeatureVector<?>, Double> detectAllFuzzy( ClusterSet<E> clusters,
+      double t, double[] tClusters, double[] tIntras )
+    throws IncomparableFeatureVectorException {
     Map<FeatureVector<?>, Double> results =
         new HashMap<FeatureVector<?>, Double>();
-    final double minTcluster = .025;
-    final double maxTcluster = .1;
-    final double minTintra = 1.1;
-    final double maxTintra = 2;
-    final double tClusterIncr = .025;
-    final double tIntraIncr = .1;
-
-    int i = 0;
-    double tCluster = minTcluster;
-    double tIntra = maxTintra;
-    Map<FeatureVector<?>, Integer> partial =
-        new HashMap<FeatureVector<?>, Integer>();
-    while ( tCluster <= maxTcluster ) {
-      while ( tIntra >= minTintra ) {
-        Set<FeatureVector<?>> outliers =
-            detectAll( clusters, tCluster, tIntra );
-
-        for ( FeatureVector<?> fv : outliers ) {
-          int numDetections = 1;
-          if ( partial.containsKey( fv ) ) {
-            numDetections = partial.get( fv ) + 1;
+    if ( tClusters.length == 0 || tIntras.length == 0 ) {
+      return results;
+    }
+
+    int datasetSize = 0;
+    for ( Cluster<E> c : clusters.values() ) {
+      datasetSize += c.size();
+    }
+    int[] sizeThresholds = new int[tClusters.length];
+    for ( int j = 0; j < tClusters.length; j++ ) {
+      sizeThresholds[j] = (int) Math.ceil( tClusters[j] * datasetSize );
+    }
+    Arrays.sort( sizeThresholds );
+    double[] intraThresholds = Arrays.copyOf( tIntras, tIntras.length );
+    Arrays.sort( intraThresholds );
+    double cells = (double) tClusters.length * tIntras.length;
+
+    DistanceCache cache = ( clusters.getDistanceCache() != null ) ?
+        clusters.getDistanceCache() : distanceCache;
+    for ( Cluster<E> c : clusters.values() ) {
+      // the number of cluster thresholds this cluster is smaller than
+      int small = sizeThresholds.length - countAtMost( sizeThresholds,
+          c.size() );
+      int large = sizeThresholds.length - small;
+
+      double[] dists = c.distancesToCentroid( cache );
+      double totalDist = 0.0;
+      for ( int i = 0; i < dists.length; i++ ) {
+        totalDist += dists[i];
+      }
+      double avgDist = totalDist / c.size();
+
+      for ( int i = 0; i < dists.length; i++ ) {
+        int far = countBelow( intraThresholds, avgDist, dists[i] );
+        int flagged = small * intraThresholds.length + large * far;
+
+        if ( flagged > 0 ) {
+          double conf = flagged / cells;
+          if ( conf >= t ) {
+            results.put( c.get( i ), Util.round( conf, 4 ) );
           }
-          partial.put( fv, numDetections );
         }
+      }
+    }
 
-        tIntra -= tIntraIncr;
-        i++;
+    return results;
+  }
+
+  /**
+   * Count the sorted values that are at most the given value.
+   *
+   * @param sorted
+   * @param value
+   * @return
+   */
+  protected static int countAtMost( int[] sorted, int value ) {
+    int lo = 0;
+    int hi = sorted.length;
+    while ( lo < hi ) {
+      int mid = ( lo + hi ) >>> 1;
+      if ( sorted[mid] <= value ) {
+        lo = mid + 1;
+      } else {
+        hi = mid;
       }
-      tIntra = maxTintra;
-      tCluster += tClusterIncr;
     }
+    return lo;
+  }
 
-    for ( FeatureVector<?> fv : partial.keySet() ) {
-      double conf = (double) partial.get( fv )/(double) i;
-      if ( conf >= t ) {
-        double rounded = Util.round( conf, 4 );
-        results.put( fv, rounded );
+  /**
+   * Count the sorted thresholds whose product with scale is below the
+   * value (the product is computed exactly as detectIntraCluster does).
+   *
+   * @param sorted
+   * @param scale
+   * @param value
+   * @return
+   */
+  protected static int countBelow( double[] sorted, double scale,
+      double value ) {
+    int lo = 0;
+    int hi = sorted.length;
+    while ( lo < hi ) {
+      int mid = ( lo + hi ) >>> 1;
+      if ( value > sorted[mid] * scale ) {
+        lo = mid + 1;
+      } else {
+        hi = mid;
       }
     }
+    return lo;
+  }
 
-    return results;
+  /**
+   * Get the values from first to last, adding incr each time (so that they
+   * are exactly those of a loop that does the same).
+   *
+   * @param first
+   * @param last
+   * @param incr
+   *          Negative to count down.
+   * @return
+   */
+  protected static double[] steps( double first, double last, double incr ) {
+    List<Double> values = new ArrayList<Double>();
+    for ( double x = first; ( incr > 0 ) ? x <= last : x >= last;
+        x += incr ) {
+      values.add( x );
+    }
+
+    double[] steps = new double[values.size()];
+    for ( int j = 0; j < steps.length; j++ ) {
+      steps[j] = values.get( j );
+    }
+    return steps;
+  }
+
+  /**
+   * Get n evenly spaced values from min to max.
+   *
+   * @param min
+   * @param max
+   * @param n
+   * @return
+   */
+  protected static double[] evenSteps( double min, double max, int n ) {
+    if ( n < 1 ) {
+      throw new IllegalArgumentException( "There must be at least one step: " +
+          n );
+    }
+    double[] steps = new double[n];
+    for ( int j = 0; j < n; j++ ) {
+      steps[j] = ( n == 1 ) ? min : min + ( max - min ) * j / ( n - 1 );
+    }
+    return steps;
   }
 }
@@ -0,0 +1,267 @@
+package edu.tufts.cs.ml.cluster.outlier;
+
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.Comparator;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.Callable;
+
+import edu.tufts.cs.ml.DenseRelation;
+import edu.tufts.cs.ml.FeatureVector;
+import edu.tufts.cs.ml.Relation;
+import edu.tufts.cs.ml.index.NeighborIndex;
+import edu.tufts.cs.ml.index.Neighbors;
+import edu.tufts.cs.ml.util.ConcurrencyUtil;
+
+/**
+ * Scores every vector of a data set by how much of an outlier it is, without
+ * clustering it first; the higher the score, the more of an outlier. The
+ * neighbor-based scorers find each vector's neighbors with a NeighborIndex
+ * instead of computing every pairwise distance.
+ *
+ * The vectors must not have missing values.
+ */
+public abstract class OutlierScorer {
+  /** The default number of neighbors. */
+  public static final int DEFAULT_NEIGHBORS = 10;
+  /** How to score the vectors. */
+  public enum Method {
+    /** The Local Outlier Factor (Breunig et al.). */
+    LOF( "Local outlier factor" ),
+    /** The distance to the kth nearest neighbor (Ramaswamy et al.). */
+    KNN_DISTANCE( "k-NN distance" ),
+    /** The isolation forest (Liu et al.). */
+    ISOLATION_FOREST( "Isolation forest" );
+
+    /** The name to show. */
+    private final String description;
+
+    /**
+     * Default constructor.
+     * @param description
+     */
+    private Method( String description ) {
+      this.description = description;
+    }
+
+    /**
+     * Get the name to show.
+     * @return
+     */
+    public String getDescription() {
+      return this.description;
+    }
+  }
+  /** The number of threads to score on. */
+  protected final int parallelism;
+
+  /**
+   * Default constructor.
+   * @param parallelism The number of threads to score on.
+   */
+  public OutlierScorer( int parallelism ) {
+    if ( parallelism < 1 ) {
+      throw new IllegalArgumentException( "Parallelism must be at least 1: " +
+          parallelism );
+    }
+    this.parallelism = parallelism;
+  }
+
+  /**
+   * Make a scorer.
+   * @param method
+   * @param neighbors The number of neighbors (for LOF and k-NN distance).
+   * @param seed The random seed (for the isolation forest).
+   * @param parallelism
+   * @return
+   */
+  public static OutlierScorer create( Method method, int neighbors, long seed,
+      int parallelism ) {
+    if ( method == Method.LOF ) {
+      return new LocalOutlierFactor( neighbors, parallelism );
+    } else if ( method == Method.KNN_DISTANCE ) {
+      return new KnnDistanceScorer( neighbors, parallelism );
+    }
+    return new IsolationForest( IsolationForest.DEFAULT_TREES,
+        IsolationForest.DEFAULT_SAMPLE_SIZE, seed, parallelism );
+  }
+
+  /**
+   * Score each row.
+   * @param dense
+   * @return The scores, by row.
+   */
+  public abstract double[] score( DenseRelation<?> dense );
+
+  /**
+   * Get the n vectors with the highest scores.
+   * @param data
+   * @param n
+   * @return The vectors and their scores, highest first (in the data's
+   * order, on ties).
+   */
+  public Map<FeatureVector<?>, Double> top(
+      Relation<? extends FeatureVector<?>> data, int n ) {
+    return top( data.toDense(), n );
+  }
+
+  /**
+   * Get the n rows with the highest scores.
+   * @param dense
+   * @param n
+   * @return The rows' vectors and their scores, highest first (in the
+   * data's order, on ties).
+   */
+  public Map<FeatureVector<?>, Double> top( DenseRelation<?> dense, int n ) {
+    final double[] scores = score( dense );
+
+    List<Integer> rows = new ArrayList<Integer>( scores.length );
+    for ( int i = 0; i < scores.length; i++ ) {
+      rows.add( i );
+    }
+    Collections.sort( rows, new Comparator<Integer>() {
+      public int compare( Integer a, Integer b ) {
+        int res = Double.compare( scores[b], scores[a] );
+        return ( res != 0 ) ? res : a.compareTo( b );
+      }
+    } );
+
+    Map<FeatureVector<?>, Double> top =
+        new LinkedHashMap<FeatureVector<?>, Double>();
+    for ( int i = 0; i < Math.min( n, rows.size() ); i++ ) {
+      int row = rows.get( i );
+      top.put( dense.getFeatureVector( row ), scores[row] );
+    }
+
+    return top;
+  }
+
+  /**
+   * Get the vectors whose score is at least the threshold.
+   * @param data
+   * @param threshold
+   * @return The vectors and their scores, in the data's order.
+   */
+  public Map<FeatureVector<?>, Double> detect(
+      Relation<? extends FeatureVector<?>> data, double threshold ) {
+    return detect( data.toDense(), threshold );
+  }
+
+  /**
+   * Get the rows whose score is at least the threshold.
+   * @param dense
+   * @param threshold
+   * @return The rows' vectors and their scores, in the data's order.
+   */
+  public Map<FeatureVector<?>, Double> detect( DenseRelation<?> dense,
+      double threshold ) {
+    double[] scores = score( dense );
+
+    Map<FeatureVector<?>, Double> outliers =
+        new LinkedHashMap<FeatureVector<?>, Double>();
+    for ( int i = 0; i < scores.length; i++ ) {
+      if ( scores[i] >= threshold ) {
+        outliers.put( dense.getFeatureVector( i ), scores[i] );
+      }
+    }
+
+    return outliers;
+  }
+
+  /**
+   * Find the k nearest neighbors of every row, not counting the row itself,
+   * with a spatial index.
+   * @param dense
+   * @param k
+   * @return The neighbors, by row.
+   */
+  protected Neighbors[] nearestNeighbors( final DenseRelation<?> dense,
+      final int k ) {
+    if ( k < 1 || k >= dense.size() ) {
+      throw new IllegalArgumentException( "Cannot find " + k +
+          " neighbors among " + dense.size() + " vectors" );
+    }
+    final NeighborIndex index = NeighborIndex.create( dense );
+    final Neighbors[] neighbors = new Neighbors[dense.size()];
+
+    forEachChunk( dense.size(), new Chunk() {
+      public void run( int from, int to ) {
+        for ( int i = from; i < to; i++ ) {
+          neighbors[i] = withoutRow( index.nearest( dense.getRow( i ), k + 1 ),
+              i );
+        }
+      }
+    } );
+
+    return neighbors;
+  }
+
+  /**
+   * Drop the row from its own neighbors (or, if a duplicate displaced it,
+   * the farthest neighbor).
+   * @param found
+   * @param row
+   * @return
+   */
+  protected static Neighbors withoutRow( Neighbors found, int row ) {
+    int skip = found.size() - 1;
+    for ( int i = 0; i < found.size(); i++ ) {
+      if ( found.getRow( i ) == row ) {
+        skip = i;
+        break;
+      }
+    }
+
+    int[] rows = new int[found.size() - 1];
+    double[] distances = new double[rows.length];
+    for ( int i = 0, j = 0; i < found.size(); i++ ) {
+      if ( i != skip ) {
+        rows[j] = found.getRow( i );
+        distances[j++] = found.getDistance( i );
+      }
+    }
+
+    return new Neighbors( rows, distances );
+  }
+
+  /**
+   * Run the rows 0 to n in contiguous chunks, one per thread.
+   * @param n
+   * @param chunk
+   */
+  protected void forEachChunk( int n, final Chunk chunk ) {
+    int threads = Math.max( 1, Math.min( parallelism, n ) );
+    if ( threads == 1 ) {
+      chunk.run( 0, n );
+      return;
+    }
+
+    List<Callable<Void>> tasks = new ArrayList<Callable<Void>>( threads );
+    for ( int t = 0; t < threads; t++ ) {
+      final int from = (int) ( (long) n * t / threads );
+      final int to = (int) ( (long) n * ( t + 1 ) / threads );
+      tasks.add( new Callable<Void>() {
+        public Void call() {
+          chunk.run( from, to );
+          return null;
+        }
+      } );
+    }
+
+    ConcurrencyUtil.invokeAll( threads, tasks, "scoring outliers" );
+  }
+
+  /**
+   * Work on a contiguous range of rows.
+   */
+  protected interface Chunk {
+    /**
+     * Do the work for the rows from (inclusive) to (exclusive).
+     * @param from
+     * @param to
+     */
+    void run( int from, int to );
+  }
+}
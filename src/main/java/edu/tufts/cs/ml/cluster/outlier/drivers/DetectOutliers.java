@@ -10,18 +10,17 @@ import java.util.Observer;
 import java.util.logging.Level;
 import java.util.logging.Logger;
 
+import edu.tufts.cs.ml.DenseRelation;
 import edu.tufts.cs.ml.FeatureVector;
-import edu.tufts.cs.ml.TestRelation;
 import edu.tufts.cs.ml.cluster.Cluster;
 import edu.tufts.cs.ml.cluster.ClusterSet;
 import edu.tufts.cs.ml.cluster.KMeans;
 import edu.tufts.cs.ml.cluster.KMedoids;
 import edu.tufts.cs.ml.cluster.outlier.OutlierDetector;
+import edu.tufts.cs.ml.cluster.outlier.OutlierScorer;
 import edu.tufts.cs.ml.exception.CommandLineArgumentException;
 import edu.tufts.cs.ml.exception.IncomparableFeatureVectorException;
-import edu.tufts.cs.ml.normalize.Normalizer;
 import edu.tufts.cs.ml.normalize.ZScoreNormalizer;
-import edu.tufts.cs.ml.reader.ArffReader;
 import edu.tufts.cs.ml.reader.Reader;
 import edu.tufts.cs.ml.writer.ResultWriter;
 
@@ -56,7 +55,11 @@ public class DetectOutliers implements Observer {
     LOG.log( Level.INFO, "Running outlier detection with: "
         + "\n\tDataset 1:\t" + cmd.getDataSet1() + "\n\tDataset 2:\t"
         + cmd.getDataSet2() + "\n\tConfidence threshold:\t"
-        + cmd.getThreshold() );
+        + cmd.getThreshold() + "\n\tk-Medoids method:\t"
+        + cmd.getMedoidMethod().getDescription() + "\n\tSeeding:\t"
+        + cmd.getSeeding().getDescription() + "\n\tDetector:\t"
+        + ( ( cmd.getDetector() == null ) ? "COD" :
+          cmd.getDetector().getDescription() ) );
   }
 
   /**
@@ -88,23 +91,46 @@ public class DetectOutliers implements Observer {
     datasets.add( cmd.getDataSet1() );
     datasets.add( cmd.getDataSet2() );
 
+    int threads = Runtime.getRuntime().availableProcessors();
     Reader<String> reader;
-    TestRelation<String> dataset;
-    Normalizer<String> n;
+    DenseRelation<FeatureVector<String>> dataset;
     int i = 1;
     for ( File f : datasets ) {
       /*
-       * Get the input data set.
+       * Get the input data set, as dense rows only.
        */
-      reader = new ArffReader<String>();
-      dataset = (TestRelation<String>) reader
-          .read( f, Reader.IGNORE_LABELS );
+      reader = Reader.forFile( f );
+      dataset = (DenseRelation<FeatureVector<String>>) reader.readDense( f,
+          Reader.IGNORE_LABELS );
 
       /*
        * Normalize the data.
        */
-      n = new ZScoreNormalizer<String>( dataset );
-      n.normalize();
+      ZScoreNormalizer.normalize( dataset );
+
+      /*
+       * Score the outliers directly, without clustering, if asked to.
+       */
+      if ( cmd.getDetector() != null ) {
+        OutlierScorer scorer = OutlierScorer.create( cmd.getDetector(),
+            cmd.getNeighbors(), cmd.getSeed(), threads );
+        output = new StringBuilder( cmd.getDetector().getDescription() +
+            " method:\n" );
+        Map<FeatureVector<?>, Double> scores = scorer.top( dataset,
+            min_outliers );
+        for ( FeatureVector<?> outlier : scores.keySet() ) {
+          output.append( "\n\t" + outlier.getId() + "\tscore: " +
+              scores.get( outlier ) );
+        }
+        output.append( "\n\n" );
+
+        String filename = cmd.getDetector().name().toLowerCase().replace(
+            '_', '-' ) + "-dataset" + i + ".dat";
+        new ResultWriter().write( output.toString(), new File( filename ) );
+        LOG.log( Level.INFO, "Output written to " + filename );
+        i++;
+        continue;
+      }
 
       /*
        * Create the OutlierDetector.
@@ -115,12 +141,13 @@ public class DetectOutliers implements Observer {
        * Run k-Means on the data.
        */
       int numOutliers = 0;
-      KMeans<String> kMeans = new KMeans<String>( dataset );
+      KMeans<String> kMeans = new KMeans<String>( dataset, threads );
       kMeans.addObserver( instance );
       output = new StringBuilder( "k-Means method:\n" );
       output.append( "\tproportional threshold: " + pSizeCluster + "\n\n" );
       for ( int k = min_k; k < max_k && numOutliers < min_outliers; k++ ) {
-        ClusterSet<String> clusters = kMeans.cluster( k );
+        ClusterSet<String> clusters = kMeans.cluster( k, cmd.getSeeding(),
+            cmd.getSeed() );
         ClusterSet<String> outliers = detector.detectSmallClusters( clusters,
             pSizeCluster );
         numOutliers = outliers.size();
@@ -146,14 +173,19 @@ public class DetectOutliers implements Observer {
       /*
        * Now the original method (k-medoids-based).
        */
-      KMedoids<String> kMedoids = new KMedoids<String>( dataset );
+      KMedoids<String> kMedoids = new KMedoids<String>( dataset, threads,
+          cmd.getMedoidMethod() );
+      kMedoids.setPackedDistances( cmd.packed() );
       kMedoids.addObserver( instance );
-      int k = kMedoids.detectK( min_k, max_k );
+      int k = kMedoids.detectK( min_k, max_k, cmd.getSeeding(),
+          cmd.getSeed() );
       output = new StringBuilder( "COD method:\n" );
-      ClusterSet<String> clusters = kMedoids.cluster( k );
+      ClusterSet<String> clusters = kMedoids.cluster( k, cmd.getSeeding(),
+          cmd.getSeed() );
       Map<FeatureVector<?>, Double> outliers = detector.detectAllFuzzy(
           clusters, tFuzzy );
       numOutliers = outliers.size();
+      LOG.log( Level.INFO, kMedoids.getDistanceCache().toString() );
 
       for ( FeatureVector<?> outlier : outliers.keySet() ) {
         output.append( "\n\t" + outlier.getId() + "\tconfidence: " +
@@ -5,6 +5,9 @@ package edu.tufts.cs.ml.cluster.outlier.drivers;
 
 import java.io.File;
 
+import edu.tufts.cs.ml.cluster.KMethod.Seeding;
+import edu.tufts.cs.ml.cluster.KMedoids.Method;
+import edu.tufts.cs.ml.cluster.outlier.OutlierScorer;
 import edu.tufts.cs.ml.exception.CommandLineArgumentException;
 
 /**
@@ -23,6 +26,18 @@ public class OutlierArguments {
   public static final String ARG_DATASET_2 = "dataset2";
   /** The argument name for the second data set file. */
   public static final String OPT_THRESHOLD = "threshold";
+  /** The argument name for how to find the medoids. */
+  public static final String OPT_MEDOIDS = "medoids";
+  /** The argument name for packing the distance matrix into floats. */
+  public static final String OPT_PACKED = "packed";
+  /** The argument name for the outlier detector. */
+  public static final String OPT_DETECTOR = "detector";
+  /** The argument name for the number of neighbors. */
+  public static final String OPT_NEIGHBORS = "neighbors";
+  /** The argument name for the initialization method. */
+  public static final String OPT_SEEDING = "seeding";
+  /** The argument name for the random seed. */
+  public static final String OPT_SEED = "seed";
   /** The default value for the second data set file. */
   public static final double DEFAULT_THRESHOLD = .85;
   /** The default output file name. */
@@ -36,11 +51,41 @@ public class OutlierArguments {
   /** The usage message for the second data set file. */
   public static final String USAGE_THRESHOLD = "The confidence threshold to "
       + "use for the fuzzy outlier detection method.";
+  /** The usage message for how to find the medoids. */
+  public static final String USAGE_MEDOIDS = "(Optional) How to find the "
+      + "k-medoids: alternate (default), pam, clara (for large data sets) or "
+      + "clarans.";
+  /** The usage message for packing the distance matrix into floats. */
+  public static final String USAGE_PACKED = "(Optional) Whether to store "
+      + "PAM's distance matrix as floats, which halves its memory.";
+  /** The usage message for the outlier detector. */
+  public static final String USAGE_DETECTOR = "(Optional) How to find the "
+      + "outliers: cod (clustering-based, default), lof (local outlier "
+      + "factor), knn (k-NN distance) or iforest (isolation forest). The "
+      + "last three don't cluster the data.";
+  /** The usage message for the number of neighbors. */
+  public static final String USAGE_NEIGHBORS = "(Optional) The number of "
+      + "neighbors for lof and knn (default "
+      + OutlierScorer.DEFAULT_NEIGHBORS + ").";
+  /** The usage message for the initialization method. */
+  public static final String USAGE_SEEDING = "(Optional) How k-means and "
+      + "the alternating k-medoids choose the initial centers: kmeans++ "
+      + "(default), sampled-density, kmeans|| or density (slow on large data "
+      + "sets).";
+  /** The usage message for the random seed. */
+  public static final String USAGE_SEED = "(Optional) The random seed for "
+      + "the initialization method and the isolation forest (default 0).";
   /** The usage message. */
   protected static String usage = "detect-outliers " + ARG_DATASET_1 + " "
-      + ARG_DATASET_2 + " [" + OPT_THRESHOLD + "]\n\n" + ARG_DATASET_1 + ":\t "
-      + USAGE_DATASET_1 + "\n" + ARG_DATASET_2 + ":\t" + USAGE_DATASET_2 + "\n"
-      + OPT_THRESHOLD + ":\t" + USAGE_THRESHOLD;
+      + ARG_DATASET_2 + " [" + OPT_THRESHOLD + "] [--medoids=method] "
+      + "[--packed] [--detector=method] [--neighbors=n] [--seeding=method] "
+      + "[--seed=n]\n\n" + ARG_DATASET_1
+      + ":\t " + USAGE_DATASET_1 + "\n" + ARG_DATASET_2 + ":\t"
+      + USAGE_DATASET_2 + "\n" + OPT_THRESHOLD + ":\t" + USAGE_THRESHOLD
+      + "\n" + OPT_MEDOIDS + ":\t" + USAGE_MEDOIDS + "\n" + OPT_PACKED + ":\t"
+      + USAGE_PACKED + "\n" + OPT_DETECTOR + ":\t" + USAGE_DETECTOR + "\n"
+      + OPT_NEIGHBORS + ":\t" + USAGE_NEIGHBORS + "\n" + OPT_SEEDING + ":\t"
+      + USAGE_SEEDING + "\n" + OPT_SEED + ":\t" + USAGE_SEED;
 
   /*
    * Argument definitions for command line use.
@@ -51,6 +96,18 @@ public class OutlierArguments {
   private File dataset2;
   /** The confidence threshold. */
   private double threshold = DEFAULT_THRESHOLD;
+  /** How to find the medoids. */
+  private Method medoidMethod = Method.ALTERNATE;
+  /** Whether to store the distance matrix as floats. */
+  private boolean packed = false;
+  /** How to score the outliers, or null for the clustering-based method. */
+  private OutlierScorer.Method detector = null;
+  /** The number of neighbors. */
+  private int neighbors = OutlierScorer.DEFAULT_NEIGHBORS;
+  /** How k-means and k-medoids choose the initial centers. */
+  private Seeding seeding = Seeding.KMEANS_PLUS_PLUS;
+  /** The random seed for the initialization method. */
+  private long seed = 0;
 
   /**
    * Options from the command line arguments override default settings defined
@@ -75,11 +132,111 @@ public class OutlierArguments {
       printUsage( CommandLineArgumentException.FILE_NOT_EXIST, filename2 );
     }
 
-    if ( args.length == 3 ) { // optional threshold
-      threshold = Double.parseDouble( args[2] );
+    for ( int i = 2; i < args.length; i++ ) {
+      String arg = args[i].trim();
+      if ( arg.toLowerCase().startsWith( "--" + OPT_MEDOIDS + "=" ) ) {
+        medoidMethod = parseMethod( arg.substring( OPT_MEDOIDS.length() + 3 ) );
+      } else if ( arg.equalsIgnoreCase( "--" + OPT_PACKED ) ) {
+        packed = true;
+      } else if ( arg.toLowerCase().startsWith( "--" + OPT_DETECTOR + "=" ) ) {
+        detector = parseDetector( arg.substring( OPT_DETECTOR.length() + 3 ) );
+      } else if ( arg.toLowerCase().startsWith( "--" + OPT_NEIGHBORS + "=" ) ) {
+        String val = arg.substring( OPT_NEIGHBORS.length() + 3 );
+        try {
+          neighbors = Integer.parseInt( val.trim() );
+        } catch ( NumberFormatException e ) {
+          printUsage( "Invalid number of neighbors: " + val );
+        }
+        if ( neighbors < 1 ) {
+          printUsage( "Invalid number of neighbors: " + neighbors );
+        }
+      } else if ( arg.toLowerCase().startsWith( "--" + OPT_SEEDING + "=" ) ) {
+        seeding = parseSeeding( arg.substring( OPT_SEEDING.length() + 3 ) );
+      } else if ( arg.toLowerCase().startsWith( "--" + OPT_SEED + "=" ) ) {
+        String val = arg.substring( OPT_SEED.length() + 3 );
+        try {
+          seed = Long.parseLong( val );
+        } catch ( NumberFormatException e ) {
+          printUsage( "Invalid random seed: " + val );
+        }
+      } else if ( arg.startsWith( "--" ) ) {
+        printUsage( "Unknown option: " + arg );
+      } else { // optional threshold
+        try {
+          threshold = Double.parseDouble( arg );
+        } catch ( NumberFormatException e ) {
+          printUsage( "Invalid threshold: " + arg );
+        }
+      }
     }
   }
 
+  /**
+   * Parse the name of a k-medoids method.
+   *
+   * @param val
+   * @return
+   * @throws CommandLineArgumentException
+   */
+  protected Method parseMethod( String val )
+    throws CommandLineArgumentException {
+    String name = val.trim().toUpperCase();
+    for ( Method m : Method.values() ) {
+      if ( m.name().equals( name ) ) {
+        return m;
+      }
+    }
+    printUsage( "Invalid k-medoids method: " + val );
+    return null;
+  }
+
+  /**
+   * Parse the name of an outlier detector.
+   *
+   * @param val
+   * @return The scoring method, or null for the clustering-based method.
+   * @throws CommandLineArgumentException
+   */
+  protected OutlierScorer.Method parseDetector( String val )
+    throws CommandLineArgumentException {
+    String name = val.trim().toLowerCase();
+    if ( name.equals( "cod" ) ) {
+      return null;
+    } else if ( name.equals( "lof" ) ) {
+      return OutlierScorer.Method.LOF;
+    } else if ( name.equals( "knn" ) ) {
+      return OutlierScorer.Method.KNN_DISTANCE;
+    } else if ( name.equals( "iforest" ) ) {
+      return OutlierScorer.Method.ISOLATION_FOREST;
+    }
+    printUsage( "Invalid outlier detector: " + val );
+    return null;
+  }
+
+  /**
+   * Parse the name of an initialization method.
+   *
+   * @param val
+   * @return
+   * @throws CommandLineArgumentException
+   */
+  protected Seeding parseSeeding( String val )
+    throws CommandLineArgumentException {
+    String name = val.trim().toUpperCase().replace( '-', '_' );
+    if ( name.equals( "KMEANS++" ) ) {
+      return Seeding.KMEANS_PLUS_PLUS;
+    } else if ( name.equals( "KMEANS||" ) ) {
+      return Seeding.KMEANS_PARALLEL;
+    }
+    for ( Seeding s : Seeding.values() ) {
+      if ( s.name().equals( name ) ) {
+        return s;
+      }
+    }
+    printUsage( "Invalid initialization method: " + val );
+    return null;
+  }
+
   /**
    * Print the usage and the error message.
    *
@@ -124,4 +281,52 @@ public class OutlierArguments {
   public double getThreshold() {
     return this.threshold;
   }
+
+  /**
+   * Get how to find the medoids.
+   * @return
+   */
+  public Method getMedoidMethod() {
+    return this.medoidMethod;
+  }
+
+  /**
+   * Whether to store the distance matrix as floats.
+   * @return
+   */
+  public boolean packed() {
+    return this.packed;
+  }
+
+  /**
+   * Get how to score the outliers.
+   * @return The scoring method, or null for the clustering-based method.
+   */
+  public OutlierScorer.Method getDetector() {
+    return this.detector;
+  }
+
+  /**
+   * Get the number of neighbors.
+   * @return
+   */
+  public int getNeighbors() {
+    return this.neighbors;
+  }
+
+  /**
+   * Get how k-means and k-medoids choose the initial centers.
+   * @return
+   */
+  public Seeding getSeeding() {
+    return this.seeding;
+  }
+
+  /**
+   * Get the random seed for the initialization method.
+   * @return
+   */
+  public long getSeed() {
+    return this.seed;
+  }
 }
@@ -0,0 +1,240 @@
+package edu.tufts.cs.ml.index;
+
+import java.util.Arrays;
+
+import edu.tufts.cs.ml.DenseRelation;
+import edu.tufts.cs.ml.util.VectorMath;
+
+/**
+ * A k-d tree: each node splits its rows at the median of the dimension with
+ * the widest spread, so a query only descends into the far side of a split
+ * when the split is closer than its current kth nearest neighbor. Best suited
+ * to low-dimensional data.
+ */
+public class KdTree extends NeighborIndex {
+  /** The most rows held in a leaf. */
+  public static final int LEAF_SIZE = 8;
+  /** The rows, permuted so that each node covers a contiguous range. */
+  protected final int[] perm;
+  /** The first position in perm covered by each node. */
+  protected int[] lo;
+  /** One past the last position in perm covered by each node. */
+  protected int[] hi;
+  /** The split dimension of each node, or -1 for a leaf. */
+  protected int[] splitDim;
+  /** The split value of each node. */
+  protected double[] splitVal;
+  /** The left (<= split) child of each node. */
+  protected int[] left;
+  /** The right (>= split) child of each node. */
+  protected int[] right;
+  /** The number of nodes. */
+  protected int numNodes;
+
+  /**
+   * Default constructor.
+   * @param dense
+   */
+  public KdTree( DenseRelation<?> dense ) {
+    super( dense );
+    int n = dense.size();
+    this.perm = new int[n];
+    for ( int i = 0; i < n; i++ ) {
+      perm[i] = i;
+    }
+
+    int capacity = 4 * n / LEAF_SIZE + 4;
+    this.lo = new int[capacity];
+    this.hi = new int[capacity];
+    this.splitDim = new int[capacity];
+    this.splitVal = new double[capacity];
+    this.left = new int[capacity];
+    this.right = new int[capacity];
+    if ( n > 0 ) {
+      build( 0, n );
+    }
+  }
+
+  /**
+   * Build the subtree over perm[from, to).
+   * @param from
+   * @param to
+   * @return The node.
+   */
+  protected int build( int from, int to ) {
+    int node = newNode( from, to );
+    if ( to - from <= LEAF_SIZE || numCols == 0 ) {
+      return node;
+    }
+
+    // split on the dimension with the widest spread
+    int dim = 0;
+    double widest = -1.0;
+    for ( int j = 0; j < numCols; j++ ) {
+      double min = Double.POSITIVE_INFINITY;
+      double max = Double.NEGATIVE_INFINITY;
+      for ( int i = from; i < to; i++ ) {
+        double val = data[perm[i] * numCols + j];
+        if ( val < min ) {
+          min = val;
+        }
+        if ( val > max ) {
+          max = val;
+        }
+      }
+      if ( max - min > widest ) {
+        widest = max - min;
+        dim = j;
+      }
+    }
+    if ( widest <= 0.0 ) {
+      // every row is identical
+      return node;
+    }
+
+    int mid = ( from + to ) >>> 1;
+    select( from, to, mid, dim );
+    splitDim[node] = dim;
+    splitVal[node] = data[perm[mid] * numCols + dim];
+    int l = build( from, mid );
+    int r = build( mid, to );
+    left[node] = l;
+    right[node] = r;
+
+    return node;
+  }
+
+  /**
+   * Allocate a leaf node.
+   * @param from
+   * @param to
+   * @return
+   */
+  protected int newNode( int from, int to ) {
+    if ( numNodes == lo.length ) {
+      int capacity = numNodes * 2;
+      lo = Arrays.copyOf( lo, capacity );
+      hi = Arrays.copyOf( hi, capacity );
+      splitDim = Arrays.copyOf( splitDim, capacity );
+      splitVal = Arrays.copyOf( splitVal, capacity );
+      left = Arrays.copyOf( left, capacity );
+      right = Arrays.copyOf( right, capacity );
+    }
+    lo[numNodes] = from;
+    hi[numNodes] = to;
+    splitDim[numNodes] = -1;
+
+    return numNodes++;
+  }
+
+  /**
+   * Partially sort perm[from, to) on the dimension so that position nth holds
+   * the row that would be there if it were fully sorted, with no larger
+   * values before it and no smaller values after it (quickselect).
+   * @param from
+   * @param to
+   * @param nth
+   * @param dim
+   */
+  protected void select( int from, int to, int nth, int dim ) {
+    int l = from;
+    int r = to - 1;
+    while ( l < r ) {
+      double pivot = data[perm[( l + r ) >>> 1] * numCols + dim];
+      int i = l;
+      int j = r;
+      while ( i <= j ) {
+        while ( data[perm[i] * numCols + dim] < pivot ) {
+          i++;
+        }
+        while ( data[perm[j] * numCols + dim] > pivot ) {
+          j--;
+        }
+        if ( i <= j ) {
+          int tmp = perm[i];
+          perm[i] = perm[j];
+          perm[j] = tmp;
+          i++;
+          j--;
+        }
+      }
+      if ( nth <= j ) {
+        r = j;
+      } else if ( nth >= i ) {
+        l = i;
+      } else {
+        break;
+      }
+    }
+  }
+
+  @Override
+  protected void search( double[] query, NeighborHeap heap ) {
+    search( 0, query, heap );
+  }
+
+  /**
+   * Search the subtree, nearer child first.
+   * @param node
+   * @param query
+   * @param heap
+   */
+  protected void search( int node, double[] query, NeighborHeap heap ) {
+    int dim = splitDim[node];
+    if ( dim < 0 ) {
+      for ( int i = lo[node]; i < hi[node]; i++ ) {
+        int row = perm[i];
+        heap.offer( row, VectorMath.squaredEuclidean( data, row * numCols,
+            query, 0, numCols ) );
+      }
+      return;
+    }
+
+    double diff = query[dim] - splitVal[node];
+    int near = ( diff < 0 ) ? left[node] : right[node];
+    int far = ( diff < 0 ) ? right[node] : left[node];
+    search( near, query, heap );
+    if ( diff * diff <= heap.peekDistance() ) {
+      search( far, query, heap );
+    }
+  }
+
+  @Override
+  protected void searchRadius( double[] query, double radius,
+      RowCollector found ) {
+    if ( numNodes > 0 ) {
+      searchRadius( 0, query, radius, found );
+    }
+  }
+
+  /**
+   * Collect the subtree's rows within the radius.
+   * @param node
+   * @param query
+   * @param radius
+   * @param found
+   */
+  protected void searchRadius( int node, double[] query, double radius,
+      RowCollector found ) {
+    int dim = splitDim[node];
+    if ( dim < 0 ) {
+      for ( int i = lo[node]; i < hi[node]; i++ ) {
+        int row = perm[i];
+        double dist = VectorMath.squaredEuclidean( data, row * numCols, query,
+            0, numCols );
+        if ( Math.sqrt( dist ) <= radius ) {
+          found.add( row, dist );
+        }
+      }
+      return;
+    }
+
+    double diff = query[dim] - splitVal[node];
+    if ( diff <= radius ) {
+      searchRadius( left[node], query, radius, found );
+    }
+    if ( -diff <= radius ) {
+      searchRadius( right[node], query, radius, found );
+    }
+  }
+}
@@ -0,0 +1,211 @@
+package edu.tufts.cs.ml.index;
+
+import java.util.Arrays;
+
+/**
+ * A bounded max-heap of (row, distance) pairs that keeps the k smallest
+ * distances offered to it. Rows and distances are held in primitive arrays,
+ * so offering a candidate never allocates (except to grow the list of ties).
+ *
+ * If it keeps ties, rows at exactly the largest kept distance that didn't fit
+ * are held aside, so that the heap plus its ties is every row whose distance
+ * is no more than the kth smallest.
+ */
+public class NeighborHeap {
+  /** The rows, in heap order. */
+  protected final int[] rows;
+  /** The distances, in heap order; the largest is at the root. */
+  protected final double[] distances;
+  /** The number of entries. */
+  protected int size;
+  /** Whether to keep rows tied with the largest distance. */
+  protected final boolean keepTies;
+  /** The rows tied with the largest distance that didn't fit. */
+  protected int[] tieRows;
+  /** The number of ties. */
+  protected int numTies;
+
+  /**
+   * Default constructor.
+   * @param capacity
+   */
+  public NeighborHeap( int capacity ) {
+    this( capacity, false );
+  }
+
+  /**
+   * Constructor that may keep ties.
+   * @param capacity
+   * @param keepTies
+   */
+  public NeighborHeap( int capacity, boolean keepTies ) {
+    this.rows = new int[capacity];
+    this.distances = new double[capacity];
+    this.keepTies = keepTies;
+    this.tieRows = keepTies ? new int[8] : null;
+  }
+
+  /**
+   * Offer a candidate. It is kept if the heap isn't full or if it is
+   * strictly closer than the farthest entry (or, if keeping ties, as far).
+   * @param row
+   * @param distance
+   * @return Whether the candidate was kept.
+   */
+  public boolean offer( int row, double distance ) {
+    if ( size < rows.length ) {
+      int i = size++;
+      // sift up
+      while ( i > 0 ) {
+        int parent = ( i - 1 ) >>> 1;
+        if ( distances[parent] >= distance ) {
+          break;
+        }
+        rows[i] = rows[parent];
+        distances[i] = distances[parent];
+        i = parent;
+      }
+      rows[i] = row;
+      distances[i] = distance;
+      return true;
+    } else if ( size > 0 && distance < distances[0] ) {
+      int evicted = rows[0];
+      double evictedDistance = distances[0];
+      siftDown( 0, row, distance, size );
+      if ( keepTies ) {
+        if ( distances[0] == evictedDistance ) {
+          addTie( evicted );
+        } else {
+          // the old ties are now farther than the kth smallest
+          numTies = 0;
+        }
+      }
+      return true;
+    } else if ( keepTies && size > 0 && distance == distances[0] ) {
+      addTie( row );
+      return true;
+    }
+
+    return false;
+  }
+
+  /**
+   * Hold a row tied with the largest distance.
+   * @param row
+   */
+  protected void addTie( int row ) {
+    if ( numTies == tieRows.length ) {
+      tieRows = Arrays.copyOf( tieRows, numTies * 2 );
+    }
+    tieRows[numTies++] = row;
+  }
+
+  /**
+   * Place the entry at i and move it down until the heap is valid.
+   * @param i
+   * @param row
+   * @param distance
+   * @param n
+   */
+  protected void siftDown( int i, int row, double distance, int n ) {
+    while ( true ) {
+      int child = 2 * i + 1;
+      if ( child >= n ) {
+        break;
+      }
+      if ( child + 1 < n && distances[child + 1] > distances[child] ) {
+        child++;
+      }
+      if ( distances[child] <= distance ) {
+        break;
+      }
+      rows[i] = rows[child];
+      distances[i] = distances[child];
+      i = child;
+    }
+    rows[i] = row;
+    distances[i] = distance;
+  }
+
+  /**
+   * Whether the heap holds as many entries as its capacity.
+   * @return
+   */
+  public boolean isFull() {
+    return size == rows.length;
+  }
+
+  /**
+   * Get the largest distance held, or positive infinity if the heap is not
+   * yet full (so that nothing is pruned).
+   * @return
+   */
+  public double peekDistance() {
+    return isFull() && size > 0 ? distances[0] : Double.POSITIVE_INFINITY;
+  }
+
+  /**
+   * Get the number of entries.
+   * @return
+   */
+  public int size() {
+    return this.size;
+  }
+
+  /**
+   * Empty the heap so it can be reused.
+   */
+  public void clear() {
+    this.size = 0;
+    this.numTies = 0;
+  }
+
+  /**
+   * Sort the entries in place by ascending distance (heap sort). The heap
+   * must be cleared before it is offered anything else.
+   */
+  public void sort() {
+    for ( int n = size - 1; n > 0; n-- ) {
+      int row = rows[n];
+      double distance = distances[n];
+      rows[n] = rows[0];
+      distances[n] = distances[0];
+      siftDown( 0, row, distance, n );
+    }
+  }
+
+  /**
+   * Get the row of the ith entry.
+   * @param i
+   * @return
+   */
+  public int getRow( int i ) {
+    return rows[i];
+  }
+
+  /**
+   * Get the number of rows tied with the largest distance that didn't fit.
+   * @return
+   */
+  public int numTies() {
+    return this.numTies;
+  }
+
+  /**
+   * Get the ith row tied with the largest distance.
+   * @param i
+   * @return
+   */
+  public int getTieRow( int i ) {
+    return tieRows[i];
+  }
+
+  /**
+   * Get the distance of the ith entry.
+   * @param i
+   * @return
+   */
+  public double getDistance( int i ) {
+    return distances[i];
+  }
+}
@@ -0,0 +1,151 @@
+package edu.tufts.cs.ml.index;
+
+import java.util.Arrays;
+
+import edu.tufts.cs.ml.DenseRelation;
+
+/**
+ * A spatial index over the rows of a DenseRelation that answers exact
+ * Euclidean nearest-neighbor and radius queries without scanning every row.
+ * The index is built once and is read-only afterwards, so it may be queried
+ * from several threads at a time.
+ */
+public abstract class NeighborIndex {
+  /** Above this many dimensions a k-d tree rarely prunes anything. */
+  public static final int KD_TREE_MAX_DIMENSIONS = 16;
+  /** The rows being indexed. */
+  protected final DenseRelation<?> dense;
+  /** The backing array of the rows. */
+  protected final double[] data;
+  /** The number of dimensions. */
+  protected final int numCols;
+
+  /**
+   * Default constructor.
+   * @param dense
+   */
+  public NeighborIndex( DenseRelation<?> dense ) {
+    this.dense = dense;
+    this.data = dense.getData();
+    this.numCols = dense.numFeatures();
+  }
+
+  /**
+   * Choose an index suited to the relation: a k-d tree when it has few
+   * enough dimensions for axis-aligned splits to prune (roughly, when there
+   * are more rows than 2^dimensions), otherwise a vantage-point tree.
+   * @param dense
+   * @return
+   */
+  public static NeighborIndex create( DenseRelation<?> dense ) {
+    int d = dense.numFeatures();
+    if ( d <= KD_TREE_MAX_DIMENSIONS && ( 1 << d ) <= dense.size() ) {
+      return new KdTree( dense );
+    }
+    return new VpTree( dense );
+  }
+
+  /**
+   * Find the k rows nearest to the query (fewer if there aren't k rows).
+   * Rows tied with the kth nearest may or may not be included; use
+   * withinRadius to get all of them.
+   * @param query
+   * @param k
+   * @return
+   */
+  public Neighbors nearest( double[] query, int k ) {
+    NeighborHeap heap = new NeighborHeap( Math.min( k, dense.size() ) );
+    if ( heap.rows.length > 0 ) {
+      search( query, heap );
+    }
+    return toNeighbors( heap );
+  }
+
+  /**
+   * Find every row within the given distance of the query (inclusive).
+   * @param query
+   * @param radius
+   * @return
+   */
+  public Neighbors withinRadius( double[] query, double radius ) {
+    RowCollector found = new RowCollector();
+    searchRadius( query, radius, found );
+
+    // order by distance
+    NeighborHeap heap = new NeighborHeap( found.size );
+    for ( int i = 0; i < found.size; i++ ) {
+      heap.offer( found.rows[i], found.distances[i] );
+    }
+
+    return toNeighbors( heap );
+  }
+
+  /**
+   * Sort the heap's entries (squared distances) into Neighbors.
+   * @param heap
+   * @return
+   */
+  protected static Neighbors toNeighbors( NeighborHeap heap ) {
+    heap.sort();
+
+    int[] rows = new int[heap.size()];
+    double[] distances = new double[heap.size()];
+    for ( int i = 0; i < rows.length; i++ ) {
+      rows[i] = heap.getRow( i );
+      distances[i] = Math.sqrt( heap.getDistance( i ) );
+    }
+
+    return new Neighbors( rows, distances );
+  }
+
+  /**
+   * Offer the heap every row that could be among its nearest, by squared
+   * distance.
+   * @param query
+   * @param heap
+   */
+  protected abstract void search( double[] query, NeighborHeap heap );
+
+  /**
+   * Collect every row within the radius, by squared distance.
+   * @param query
+   * @param radius
+   * @param found
+   */
+  protected abstract void searchRadius( double[] query, double radius,
+      RowCollector found );
+
+  /**
+   * Get the indexed rows.
+   * @return
+   */
+  public DenseRelation<?> getDenseRelation() {
+    return this.dense;
+  }
+
+  /**
+   * A growable list of (row, squared distance) pairs.
+   */
+  protected static class RowCollector {
+    /** The rows. */
+    protected int[] rows = new int[16];
+    /** The squared distances. */
+    protected double[] distances = new double[16];
+    /** The number collected. */
+    protected int size;
+
+    /**
+     * Add a row.
+     * @param row
+     * @param distance
+     */
+    protected void add( int row, double distance ) {
+      if ( size == rows.length ) {
+        rows = Arrays.copyOf( rows, size * 2 );
+        distances = Arrays.copyOf( distances, size * 2 );
+      }
+      rows[size] = row;
+      distances[size++] = distance;
+    }
+  }
+}
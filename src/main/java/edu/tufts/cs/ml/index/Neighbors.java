@@ -0,0 +1,48 @@
+package edu.tufts.cs.ml.index;
+
+/**
+ * The result of a neighbor query: rows of the indexed DenseRelation and their
+ * Euclidean distances from the query, in ascending order of distance.
+ */
+public class Neighbors {
+  /** The rows. */
+  protected final int[] rows;
+  /** The distances. */
+  protected final double[] distances;
+
+  /**
+   * Default constructor.
+   * @param rows
+   * @param distances
+   */
+  public Neighbors( int[] rows, double[] distances ) {
+    this.rows = rows;
+    this.distances = distances;
+  }
+
+  /**
+   * Get the number of neighbors.
+   * @return
+   */
+  public int size() {
+    return rows.length;
+  }
+
+  /**
+   * Get the row of the ith nearest neighbor.
+   * @param i
+   * @return
+   */
+  public int getRow( int i ) {
+    return rows[i];
+  }
+
+  /**
+   * Get the distance to the ith nearest neighbor.
+   * @param i
+   * @return
+   */
+  public double getDistance( int i ) {
+    return distances[i];
+  }
+}
@@ -0,0 +1,275 @@
+package edu.tufts.cs.ml.index;
+
+import java.util.Arrays;
+import java.util.Random;
+
+import edu.tufts.cs.ml.DenseRelation;
+import edu.tufts.cs.ml.util.VectorMath;
+
+/**
+ * A vantage-point tree: each node picks a row as its vantage point and splits
+ * the remaining rows at the median distance from it. The triangle inequality
+ * then bounds how close a query can get to either side, independent of the
+ * number of dimensions, so it keeps pruning where a k-d tree stops.
+ */
+public class VpTree extends NeighborIndex {
+  /** The most rows held in a leaf. */
+  public static final int LEAF_SIZE = 8;
+  /** Slack for rounding error in the triangle inequality bounds. */
+  protected static final double EPSILON = 1e-9;
+  /** The rows, permuted so that each node covers a contiguous range. */
+  protected final int[] perm;
+  /** The first position in perm covered by each node. */
+  protected int[] lo;
+  /** One past the last position in perm covered by each node. */
+  protected int[] hi;
+  /** The median distance from the vantage point (at lo), or -1 for a leaf. */
+  protected double[] radius;
+  /** The child holding the rows nearer than the median. */
+  protected int[] inside;
+  /** The child holding the rows farther than the median. */
+  protected int[] outside;
+  /** The number of nodes. */
+  protected int numNodes;
+
+  /**
+   * Default constructor.
+   * @param dense
+   */
+  public VpTree( DenseRelation<?> dense ) {
+    this( dense, new Random( 0 ) );
+  }
+
+  /**
+   * Constructor with the source of randomness for choosing vantage points.
+   * @param dense
+   * @param rnd
+   */
+  public VpTree( DenseRelation<?> dense, Random rnd ) {
+    super( dense );
+    int n = dense.size();
+    this.perm = new int[n];
+    for ( int i = 0; i < n; i++ ) {
+      perm[i] = i;
+    }
+
+    int capacity = 4 * n / LEAF_SIZE + 4;
+    this.lo = new int[capacity];
+    this.hi = new int[capacity];
+    this.radius = new double[capacity];
+    this.inside = new int[capacity];
+    this.outside = new int[capacity];
+    if ( n > 0 ) {
+      build( 0, n, new double[n], rnd );
+    }
+  }
+
+  /**
+   * Build the subtree over perm[from, to).
+   * @param from
+   * @param to
+   * @param dists Scratch space for the distances from the vantage point.
+   * @param rnd
+   * @return The node.
+   */
+  protected int build( int from, int to, double[] dists, Random rnd ) {
+    int node = newNode( from, to );
+    if ( to - from <= LEAF_SIZE ) {
+      return node;
+    }
+
+    // move a random vantage point to the front
+    swap( from, from + rnd.nextInt( to - from ), dists );
+    int vantage = perm[from];
+    for ( int i = from + 1; i < to; i++ ) {
+      dists[i] = VectorMath.euclidean( data, vantage * numCols, data,
+          perm[i] * numCols, numCols );
+    }
+
+    int mid = ( from + 1 + to ) >>> 1;
+    select( from + 1, to, mid, dists );
+    radius[node] = dists[mid];
+    int in = build( from + 1, mid, dists, rnd );
+    int out = build( mid, to, dists, rnd );
+    inside[node] = in;
+    outside[node] = out;
+
+    return node;
+  }
+
+  /**
+   * Allocate a leaf node.
+   * @param from
+   * @param to
+   * @return
+   */
+  protected int newNode( int from, int to ) {
+    if ( numNodes == lo.length ) {
+      int capacity = numNodes * 2;
+      lo = Arrays.copyOf( lo, capacity );
+      hi = Arrays.copyOf( hi, capacity );
+      radius = Arrays.copyOf( radius, capacity );
+      inside = Arrays.copyOf( inside, capacity );
+      outside = Arrays.copyOf( outside, capacity );
+    }
+    lo[numNodes] = from;
+    hi[numNodes] = to;
+    radius[numNodes] = -1.0;
+
+    return numNodes++;
+  }
+
+  /**
+   * Swap two positions of perm (and of the distances alongside it).
+   * @param i
+   * @param j
+   * @param dists
+   */
+  protected void swap( int i, int j, double[] dists ) {
+    int tmp = perm[i];
+    perm[i] = perm[j];
+    perm[j] = tmp;
+    double d = dists[i];
+    dists[i] = dists[j];
+    dists[j] = d;
+  }
+
+  /**
+   * Partially sort perm[from, to) by distance so that position nth holds the
+   * row that would be there if it were fully sorted (quickselect).
+   * @param from
+   * @param to
+   * @param nth
+   * @param dists
+   */
+  protected void select( int from, int to, int nth, double[] dists ) {
+    int l = from;
+    int r = to - 1;
+    while ( l < r ) {
+      double pivot = dists[( l + r ) >>> 1];
+      int i = l;
+      int j = r;
+      while ( i <= j ) {
+        while ( dists[i] < pivot ) {
+          i++;
+        }
+        while ( dists[j] > pivot ) {
+          j--;
+        }
+        if ( i <= j ) {
+          swap( i, j, dists );
+          i++;
+          j--;
+        }
+      }
+      if ( nth <= j ) {
+        r = j;
+      } else if ( nth >= i ) {
+        l = i;
+      } else {
+        break;
+      }
+    }
+  }
+
+  @Override
+  protected void search( double[] query, NeighborHeap heap ) {
+    search( 0, query, heap );
+  }
+
+  /**
+   * Search the subtree, likelier side first.
+   * @param node
+   * @param query
+   * @param heap
+   */
+  protected void search( int node, double[] query, NeighborHeap heap ) {
+    double mu = radius[node];
+    if ( mu < 0 ) {
+      for ( int i = lo[node]; i < hi[node]; i++ ) {
+        int row = perm[i];
+        heap.offer( row, VectorMath.squaredEuclidean( data, row * numCols,
+            query, 0, numCols ) );
+      }
+      return;
+    }
+
+    int vantage = perm[lo[node]];
+    double dist2 = VectorMath.squaredEuclidean( data, vantage * numCols,
+        query, 0, numCols );
+    heap.offer( vantage, dist2 );
+    double dist = Math.sqrt( dist2 );
+
+    if ( dist <= mu ) {
+      if ( dist - mu <= tau( heap ) ) {
+        search( inside[node], query, heap );
+      }
+      if ( mu - dist <= tau( heap ) ) {
+        search( outside[node], query, heap );
+      }
+    } else {
+      if ( mu - dist <= tau( heap ) ) {
+        search( outside[node], query, heap );
+      }
+      if ( dist - mu <= tau( heap ) ) {
+        search( inside[node], query, heap );
+      }
+    }
+  }
+
+  /**
+   * Get the distance within which a row must lie to enter the heap, widened
+   * slightly for rounding error.
+   * @param heap
+   * @return
+   */
+  protected static double tau( NeighborHeap heap ) {
+    return Math.sqrt( heap.peekDistance() ) + EPSILON;
+  }
+
+  @Override
+  protected void searchRadius( double[] query, double r,
+      RowCollector found ) {
+    if ( numNodes > 0 ) {
+      searchRadius( 0, query, r, found );
+    }
+  }
+
+  /**
+   * Collect the subtree's rows within the radius.
+   * @param node
+   * @param query
+   * @param r
+   * @param found
+   */
+  protected void searchRadius( int node, double[] query, double r,
+      RowCollector found ) {
+    double mu = radius[node];
+    if ( mu < 0 ) {
+      for ( int i = lo[node]; i < hi[node]; i++ ) {
+        int row = perm[i];
+        double dist2 = VectorMath.squaredEuclidean( data, row * numCols,
+            query, 0, numCols );
+        if ( Math.sqrt( dist2 ) <= r ) {
+          found.add( row, dist2 );
+        }
+      }
+      return;
+    }
+
+    int vantage = perm[lo[node]];
+    double dist2 = VectorMath.squaredEuclidean( data, vantage * numCols,
+        query, 0, numCols );
+    double dist = Math.sqrt( dist2 );
+    if ( dist <= r ) {
+      found.add( vantage, dist2 );
+    }
+
+    if ( dist - mu <= r + EPSILON ) {
+      searchRadius( inside[node], query, r, found );
+    }
+    if ( mu - dist <= r + EPSILON ) {
+      searchRadius( outside[node], query, r, found );
+    }
+  }
+}
@@ -7,19 +7,35 @@ import java.util.TreeMap;
 import edu.tufts.cs.ml.TestRelation;
 import edu.tufts.cs.ml.TrainRelation;
 import edu.tufts.cs.ml.UnlabeledFeatureVector;
+import edu.tufts.cs.ml.classify.Classifier;
 import edu.tufts.cs.ml.classify.WeightedKnnClassifier;
 import edu.tufts.cs.ml.exception.IncomparableFeatureVectorException;
 
 public class UncertaintySampler<E> extends Sampler<E> {
+  /** The classifier to measure certainty with (null for weighted k-NN). */
+  protected Classifier<E> classifier;
 
   /**
-   * Default constructor.
+   * Default constructor: measure certainty with a weighted k-NN classifier.
    * @param train
    */
   public UncertaintySampler( TrainRelation<E> train ) {
     super( train );
   }
 
+  /**
+   * Constructor with the classifier to measure certainty with, eg. an SVM,
+   * whose certainty is its margin. It is retrained on the labeled set each
+   * round, and k is not used.
+   * @param train
+   * @param classifier
+   */
+  public UncertaintySampler( TrainRelation<E> train,
+      Classifier<E> classifier ) {
+    super( train );
+    this.classifier = classifier;
+  }
+
   /**
    * Get the m most uncertain (least certain) points for learning.
    */
@@ -29,14 +45,20 @@ public class UncertaintySampler<E> extends Sampler<E> {
     throws IncomparableFeatureVectorException {
     Set<UnlabeledFeatureVector<E>> learningSet =
         new HashSet<UnlabeledFeatureVector<E>>();
-    WeightedKnnClassifier<E> knn = new WeightedKnnClassifier<E>();
-    knn.train( labeled );
+    WeightedKnnClassifier<E> knn = null;
+    if ( classifier == null ) {
+      knn = new WeightedKnnClassifier<E>();
+      knn.train( labeled );
+    } else {
+      classifier.train( labeled );
+    }
 
     // get the uncertainty values for all unlabeled instances
     TreeMap<Double, Set<UnlabeledFeatureVector<E>>> map =
         new TreeMap<Double, Set<UnlabeledFeatureVector<E>>>();
     for ( UnlabeledFeatureVector<E> fv : unlabeled ) {
-      Double certainty = knn.getCertainty( fv, k );
+      Double certainty = ( knn != null ) ? knn.getCertainty( fv, k ) :
+        classifier.getCertainty( fv );
       if ( map.containsKey( certainty ) ) {
         map.get( certainty ).add( fv );
       } else {
@@ -4,6 +4,7 @@ import java.util.HashMap;
 import java.util.List;
 import java.util.Map;
 
+import edu.tufts.cs.ml.DenseRelation;
 import edu.tufts.cs.ml.DoubleFeature;
 import edu.tufts.cs.ml.Feature;
 import edu.tufts.cs.ml.FeatureVector;
@@ -65,6 +66,46 @@ public class ZScoreNormalizer<E> extends Normalizer<E> {
     }
   }
 
+  /**
+   * Normalize the dense rows in place, by the mean and sample standard
+   * deviation of each column, as the constructor does a Relation's. Missing
+   * (NaN) values are skipped and left missing.
+   * @param dense
+   */
+  public static void normalize( DenseRelation<?> dense ) {
+    double[] data = dense.getData();
+    int n = dense.size();
+    int d = dense.numFeatures();
+    for ( int j = 0; j < d; j++ ) {
+      double total = 0;
+      long count = 0;
+      for ( int i = 0; i < n; i++ ) {
+        double val = data[dense.offset( i ) + j];
+        if ( !Double.isNaN( val ) ) {
+          total += val;
+          count++;
+        }
+      }
+      double mean = total / count;
+
+      double sqTotal = 0;
+      for ( int i = 0; i < n; i++ ) {
+        double val = data[dense.offset( i ) + j];
+        if ( !Double.isNaN( val ) ) {
+          sqTotal += ( val - mean ) * ( val - mean );
+        }
+      }
+      double sd = Math.sqrt( sqTotal / ( count - 1 ) );
+
+      for ( int i = 0; i < n; i++ ) {
+        int idx = dense.offset( i ) + j;
+        if ( !Double.isNaN( data[idx] ) ) {
+          data[idx] = Util.round( ( data[idx] - mean ) / sd, 2 );
+        }
+      }
+    }
+  }
+
   @Override
   public void normalize( Relation<? extends FeatureVector<E>> test ) {
     for ( FeatureVector<E> fv : test ) {
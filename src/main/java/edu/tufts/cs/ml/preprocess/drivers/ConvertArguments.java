@@ -0,0 +1,122 @@
+/**
+ * CommandLineOptions.java
+ */
+package edu.tufts.cs.ml.preprocess.drivers;
+
+import java.io.File;
+
+import edu.tufts.cs.ml.exception.CommandLineArgumentException;
+
+/**
+ * A class containing the various command-line options for the data set
+ * conversion program.
+ *
+ * These options can also be set in a properties.xml file.
+ */
+public class ConvertArguments {
+  /*
+   * Usage statements for command-line use.
+   */
+  /** The argument name for the input file. */
+  public static final String ARG_IN_FILE = "in_file";
+  /** The argument name for the output file. */
+  public static final String ARG_OUT_FILE = "out_file";
+  /** The option to ignore the labels. */
+  public static final String OPT_IGNORE_LABELS = "--ignore-labels";
+  /** The usage message for the input file. */
+  public static final String USAGE_IN_FILE = "The data set to convert: ARFF, "
+      + "SVMlight (.dat) or binary (.mlb).";
+  /** The usage message for the output file. */
+  public static final String USAGE_OUT_FILE = "The file to write the data "
+      + "set to; its format is chosen by its extension, as for the input.";
+  /** The usage message for ignoring the labels. */
+  public static final String USAGE_IGNORE_LABELS = "Read the data set as "
+      + "unlabeled.";
+  /** The usage message. */
+  protected static String usage = "convert " + ARG_IN_FILE + " "
+      + ARG_OUT_FILE + " [" + OPT_IGNORE_LABELS + "]\n\n" + ARG_IN_FILE
+      + ":\t " + USAGE_IN_FILE + "\n" + ARG_OUT_FILE + ":\t" + USAGE_OUT_FILE
+      + "\n" + OPT_IGNORE_LABELS + ":\t" + USAGE_IGNORE_LABELS;
+
+  /*
+   * Argument definitions for command line use.
+   */
+  /** The input file. */
+  private File inFile;
+  /** The output file. */
+  private File outFile;
+  /** Whether to ignore the labels. */
+  private boolean ignoreLabels = false;
+
+  /**
+   * Options from the command line arguments override default settings defined
+   * in this class.
+   */
+  public ConvertArguments( String[] args ) throws CommandLineArgumentException {
+    if ( args.length >= 1 && args[0].toUpperCase().contains( "USAGE" ) ) {
+      printUsage( "Usage:" );
+    } else if ( args.length < 2 ) {
+      printUsage( CommandLineArgumentException.DIFF_NUM_ARGS );
+    }
+
+    inFile = new File( args[0] );
+    outFile = new File( args[1] );
+
+    if ( !inFile.exists() || !inFile.isFile() ) {
+      printUsage( CommandLineArgumentException.FILE_NOT_EXIST, args[0] );
+    }
+
+    if ( args.length == 3 ) { // optional flag
+      if ( args[2].equals( OPT_IGNORE_LABELS ) ) {
+        ignoreLabels = true;
+      } else {
+        printUsage( CommandLineArgumentException.DIFF_NUM_ARGS );
+      }
+    }
+  }
+
+  /**
+   * Print the usage and the error message.
+   *
+   * @param args
+   * @throws CommandLineArgumentException
+   */
+  public void printUsage( String... args ) throws CommandLineArgumentException {
+    System.err.println( usage );
+
+    if ( args.length > 0 && args[0].toUpperCase().contains( "USAGE" ) ) {
+      System.exit( 0 );
+    }
+    if ( args.length == 1 ) {
+      throw new CommandLineArgumentException( args[0] );
+    } else {
+      throw new CommandLineArgumentException( args[0], args[1] );
+    }
+  }
+
+  /**
+   * Get the input file.
+   *
+   * @return
+   */
+  public File getInFile() {
+    return this.inFile;
+  }
+
+  /**
+   * Get the output file.
+   *
+   * @return
+   */
+  public File getOutFile() {
+    return this.outFile;
+  }
+
+  /**
+   * Whether to ignore the labels.
+   * @return
+   */
+  public boolean ignoreLabels() {
+    return this.ignoreLabels;
+  }
+}
@@ -0,0 +1,60 @@
+package edu.tufts.cs.ml.preprocess.drivers;
+
+import java.io.IOException;
+import java.util.logging.Level;
+import java.util.logging.Logger;
+
+import edu.tufts.cs.ml.Relation;
+import edu.tufts.cs.ml.exception.CommandLineArgumentException;
+import edu.tufts.cs.ml.reader.Reader;
+import edu.tufts.cs.ml.writer.Writer;
+
+/**
+ * Convert a data set between the ARFF, SVMlight and binary formats, e.g. to
+ * write a large ARFF file once in the binary format so that later runs can
+ * map it rather than parse it.
+ * @author Kelly Moran
+ *
+ */
+public class ConvertDataset {
+  /** The Logger. */
+  private static final Logger LOG =  Logger.getLogger(
+      ConvertDataset.class.getName() );
+
+  /**
+   * Private constructor for utility class.
+   */
+  private ConvertDataset() {
+    // purposely not instantiable
+  }
+
+  /**
+   * Print the configuration to the console.
+   * @param cmd
+   */
+  protected static void printInfo( ConvertArguments cmd ) {
+    LOG.log( Level.INFO, "Running data set conversion with: " +
+      "\n\tInput file:\t" + cmd.getInFile() +
+      "\n\tOutput file:\t" + cmd.getOutFile() +
+      "\n\tIgnore labels:\t" + cmd.ignoreLabels() );
+  }
+
+  /**
+   * @param args
+   * @throws CommandLineArgumentException
+   * @throws IOException
+   */
+  public static void main( String[] args ) throws CommandLineArgumentException,
+    IOException {
+    ConvertArguments cmd = new ConvertArguments( args );
+    printInfo( cmd );
+
+    Reader<String> reader = Reader.forFile( cmd.getInFile() );
+    Relation<?> r = reader.read( cmd.getInFile(), cmd.ignoreLabels() );
+
+    Writer writer = Writer.forFile( cmd.getOutFile() );
+    writer.write( r, cmd.getOutFile() );
+    LOG.log( Level.INFO, "Converted " + r.size() + " feature vectors." );
+  }
+
+}
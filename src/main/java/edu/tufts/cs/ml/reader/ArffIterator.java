@@ -0,0 +1,331 @@
+package edu.tufts.cs.ml.reader;
+
+import java.io.BufferedReader;
+import java.io.Closeable;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.InputStreamReader;
+import java.util.ArrayList;
+import java.util.Iterator;
+import java.util.List;
+import java.util.NoSuchElementException;
+
+import edu.tufts.cs.ml.DoubleFeature;
+import edu.tufts.cs.ml.Feature;
+import edu.tufts.cs.ml.FeatureVector;
+import edu.tufts.cs.ml.LabeledFeatureVector;
+import edu.tufts.cs.ml.Metadata;
+import edu.tufts.cs.ml.MissingFeature;
+import edu.tufts.cs.ml.Relation;
+import edu.tufts.cs.ml.TestRelation;
+import edu.tufts.cs.ml.TrainRelation;
+import edu.tufts.cs.ml.UnlabeledFeatureVector;
+
+/**
+ * Reads the feature vectors of an ARFF file one at a time (or a chunk at a
+ * time), so that files larger than memory can be processed. The header is
+ * parsed once, when the iterator is created, and the feature name for each
+ * column is resolved then rather than per value.
+ *
+ * The vectors are the same as ArffReader.read would put in its Relation; that
+ * method is built on this class.
+ *
+ * @param <E>
+ */
+public class ArffIterator<E> implements Iterator<FeatureVector<E>>, Closeable {
+  /** The reader over the file. */
+  protected final BufferedReader br;
+  /** The empty relation described by the header. */
+  protected final Relation<?> relation;
+  /** The feature name for each column, or null if it isn't a feature. */
+  protected final String[] featureLabels;
+  /** Whether the vectors are labeled. */
+  protected final boolean labeled;
+  /** Whether the last column is an id (not currently detected). */
+  protected boolean usingIds = false;
+  /** The next id to generate. */
+  protected int id = 1;
+  /** The next vector, or null if it hasn't been read yet. */
+  protected FeatureVector<E> next;
+  /** Whether the end of the file has been reached. */
+  protected boolean done;
+  /** Scratch space for cleaning a line. */
+  protected final StringBuilder cleaned = new StringBuilder();
+  /** Scratch space for splitting a line. */
+  protected final List<String> content = new ArrayList<String>();
+
+  /**
+   * Default constructor. Reads the header.
+   * @param s
+   * @param ignoreLabels
+   * @throws IOException
+   */
+  public ArffIterator( InputStream s, boolean ignoreLabels )
+    throws IOException {
+    this.br = new BufferedReader( new InputStreamReader( s ) );
+    this.relation = readHeader( ignoreLabels );
+    this.labeled = relation instanceof TrainRelation;
+
+    Metadata m = ( relation == null ) ? new Metadata() : relation.getMetadata();
+    this.featureLabels = new String[m.size()];
+    int i = 0;
+    for ( String key : m.keySet() ) {
+      String featureLabel = key.trim();
+      if ( !featureLabel.equalsIgnoreCase( LabeledFeatureVector.CLASS_MARKER ) ) {
+        featureLabels[i] = featureLabel;
+      }
+      i++;
+    }
+  }
+
+  /**
+   * Read up to and including the data marker.
+   * @param ignoreLabels
+   * @return The empty relation described by the header.
+   * @throws IOException
+   */
+  protected Relation<?> readHeader( boolean ignoreLabels ) throws IOException {
+    boolean inRelation = false;
+    Metadata m = new Metadata();
+    Relation<?> r = null;
+    String rName = null;
+    String line = br.readLine();
+    while ( line != null ) {
+      if ( line.toUpperCase().startsWith( Relation.RELATION_MARKER ) ) {
+        inRelation = true;
+        String[] content = line.split( " " );
+        if ( content.length > 1 ) {
+          rName = content[1].trim();
+        }
+      } else if ( line.toUpperCase().startsWith( ArffReader.DATA_MARKER ) ) {
+        break;
+      } else if ( inRelation ) {
+        if ( line.toUpperCase().startsWith( Metadata.ATTRIBUTE_MARKER )
+            || line.startsWith( "%" ) || line.startsWith( "#" ) ) {
+          String[] content = line.split( " " );
+          if ( content.length > 2 ) {
+            if ( content[1].trim().toUpperCase().startsWith( "CLASS" ) ) {
+              if ( ignoreLabels ) {
+                r = new TestRelation<E>( rName, m );
+              } else {
+                r = new TrainRelation<E>( rName, m );
+                m.put( content[1].trim(), content[2].trim() );
+              }
+            } else if ( r == null ) {
+              r = new TestRelation<E>( rName, m );
+              m.put( content[1].trim(), content[2].trim() );
+            } else {
+              m.put( content[1].trim(), content[2].trim() );
+            }
+          }
+        }
+      }
+
+      line = br.readLine();
+    }
+
+    return r;
+  }
+
+  /**
+   * Get the (empty) relation described by the header: a TrainRelation if
+   * the vectors are labeled, otherwise a TestRelation.
+   * @return
+   */
+  public Relation<?> getRelation() {
+    return this.relation;
+  }
+
+  /**
+   * Whether there is another feature vector.
+   */
+  public boolean hasNext() {
+    if ( next == null && !done ) {
+      try {
+        next = readNext();
+      } catch ( IOException e ) {
+        throw new RuntimeException( "Could not read the next feature vector.",
+            e );
+      }
+      done = ( next == null );
+    }
+
+    return next != null;
+  }
+
+  /**
+   * Get the next feature vector.
+   */
+  public FeatureVector<E> next() {
+    if ( !hasNext() ) {
+      throw new NoSuchElementException();
+    }
+    FeatureVector<E> fv = next;
+    next = null;
+
+    return fv;
+  }
+
+  /**
+   * Not supported.
+   */
+  public void remove() {
+    throw new UnsupportedOperationException();
+  }
+
+  /**
+   * Read the next chunk of feature vectors into a relation like the one
+   * described by the header (sharing its Metadata).
+   * @param size The most vectors to read.
+   * @return The chunk, or null if there are no more vectors.
+   */
+  @SuppressWarnings( "unchecked" )
+  public Relation<?> nextChunk( int size ) {
+    if ( !hasNext() ) {
+      return null;
+    }
+
+    Relation<?> chunk;
+    if ( labeled ) {
+      TrainRelation<E> train = new TrainRelation<E>( relation.getName(),
+          relation.getMetadata() );
+      while ( train.size() < size && hasNext() ) {
+        train.add( (LabeledFeatureVector<E>) next() );
+      }
+      chunk = train;
+    } else {
+      TestRelation<E> test = new TestRelation<E>( relation.getName(),
+          relation.getMetadata() );
+      while ( test.size() < size && hasNext() ) {
+        test.add( (UnlabeledFeatureVector<E>) next() );
+      }
+      chunk = test;
+    }
+
+    return chunk;
+  }
+
+  /**
+   * Read lines until one makes a non-empty feature vector.
+   * @return The vector, or null at the end of the file.
+   * @throws IOException
+   */
+  protected FeatureVector<E> readNext() throws IOException {
+    String line = br.readLine();
+    while ( line != null ) {
+      FeatureVector<E> fv = parse( line );
+      if ( fv != null && !fv.isEmpty() ) {
+        return fv;
+      }
+      line = br.readLine();
+    }
+
+    return null;
+  }
+
+  /**
+   * Parse a data line into a feature vector. Characters other than letters,
+   * digits, spaces, periods and commas are dropped first.
+   * @param line
+   * @return The vector, or null if the line has no values.
+   */
+  @SuppressWarnings( "unchecked" )
+  protected FeatureVector<E> parse( String line ) {
+    clean( line );
+    split();
+    if ( content.isEmpty() ) {
+      return null;
+    }
+
+    // figure out which kind of feature vector it is and initialize it
+    FeatureVector<E> fv;
+    int last = content.size() - 1;
+    String name;
+    if ( usingIds ) {
+      name = content.get( last ).trim();
+    } else {
+      name = "x" + String.valueOf( id++ );
+    }
+    if ( labeled ) {
+      String label;
+      if ( usingIds ) {
+        label = content.get( last - 1 ).trim();
+      } else {
+        label = content.get( last ).trim();
+      }
+      fv = new LabeledFeatureVector<E>( (E) label, name );
+    } else {
+      fv = new UnlabeledFeatureVector<E>( name );
+    }
+
+    // add the features
+    for ( int i = 0; i < last; i++ ) {
+      String featureLabel = featureLabels[i];
+      if ( featureLabel != null ) {
+        String val = content.get( i ).trim();
+        try {
+          Double featureVal = Double.parseDouble( val );
+          Feature<?> ft = new DoubleFeature( featureLabel, featureVal );
+          fv.put( featureLabel, ft );
+        } catch ( NumberFormatException e ) {
+          if ( val.equals( "?" ) ) {
+            Feature<?> ft = new MissingFeature( featureLabel );
+            fv.put( featureLabel, ft );
+          }
+          // swallow this
+        }
+      }
+    }
+
+    return fv;
+  }
+
+  /**
+   * Copy the letters, digits, spaces, periods and commas of the line into
+   * the cleaned buffer.
+   * @param line
+   */
+  protected void clean( String line ) {
+    cleaned.setLength( 0 );
+    for ( int i = 0; i < line.length(); i++ ) {
+      char c = line.charAt( i );
+      if ( ( c >= 'A' && c <= 'Z' ) || ( c >= 'a' && c <= 'z' )
+          || ( c >= '0' && c <= '9' ) || c == ' ' || c == '.' || c == ',' ) {
+        cleaned.append( c );
+      }
+    }
+  }
+
+  /**
+   * Split the cleaned buffer on commas into content, the way String.split
+   * does: a line without commas is a single value, and trailing empty values
+   * are dropped.
+   */
+  protected void split() {
+    content.clear();
+    int start = 0;
+    for ( int i = 0; i < cleaned.length(); i++ ) {
+      if ( cleaned.charAt( i ) == ',' ) {
+        content.add( cleaned.substring( start, i ) );
+        start = i + 1;
+      }
+    }
+    if ( content.isEmpty() ) {
+      content.add( cleaned.toString() );
+      return;
+    }
+    content.add( cleaned.substring( start ) );
+
+    int size = content.size();
+    while ( size > 0 && content.get( size - 1 ).length() == 0 ) {
+      content.remove( --size );
+    }
+  }
+
+  /**
+   * Close the underlying stream.
+   */
+  public void close() throws IOException {
+    br.close();
+  }
+}
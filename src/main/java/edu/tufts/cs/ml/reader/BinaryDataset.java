@@ -0,0 +1,536 @@
+package edu.tufts.cs.ml.reader;
+
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.DoubleBuffer;
+import java.nio.IntBuffer;
+import java.nio.LongBuffer;
+import java.nio.channels.FileChannel;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+
+import edu.tufts.cs.ml.DenseRelation;
+import edu.tufts.cs.ml.DoubleFeature;
+import edu.tufts.cs.ml.FeatureVector;
+import edu.tufts.cs.ml.LabeledFeatureVector;
+import edu.tufts.cs.ml.Metadata;
+import edu.tufts.cs.ml.MissingFeature;
+import edu.tufts.cs.ml.Relation;
+import edu.tufts.cs.ml.TestRelation;
+import edu.tufts.cs.ml.TrainRelation;
+import edu.tufts.cs.ml.UnlabeledFeatureVector;
+import edu.tufts.cs.ml.writer.BinaryWriter;
+
+/**
+ * A read-only view of a file in the format written by BinaryWriter. The
+ * labels, ids and values are read straight out of the (memory-mapped)
+ * buffers when asked for, so opening even a very large file only costs
+ * reading its header. Feature vectors are only built by getFeatureVector and
+ * toRelation; toDense gives the values as a DenseRelation without building
+ * any.
+ *
+ * Each section of a mapped file must be under 2GB (eg. 268 million values).
+ */
+public class BinaryDataset {
+  /** The name of the relation. */
+  protected String name;
+  /** The sigma of the relation, or null. */
+  protected Double sigma;
+  /** The metadata. */
+  protected final Metadata metadata = new Metadata();
+  /** The feature names, by column. */
+  protected String[] featureNames;
+  /** The distinct labels. */
+  protected Object[] labelValues;
+  /** The flags. */
+  protected final int flags;
+  /** The number of rows. */
+  protected final int numRows;
+  /** The number of columns. */
+  protected final int numCols;
+  /** The label of each row, as an index into labelValues. */
+  protected final IntBuffer labels;
+  /** The offset of each row's id in ids. */
+  protected final IntBuffer idOffsets;
+  /** The ids. */
+  protected final ByteBuffer ids;
+  /** The rank of each row. */
+  protected final IntBuffer ranks;
+  /** The query id of each row. */
+  protected final IntBuffer qids;
+  /** Where each row starts in colIdx and values (sparse only). */
+  protected final LongBuffer rowPtr;
+  /** The column of each value (sparse only). */
+  protected final IntBuffer colIdx;
+  /** The values. */
+  protected final DoubleBuffer values;
+
+  /**
+   * Map the file.
+   * @param channel
+   * @throws IOException
+   */
+  public BinaryDataset( FileChannel channel ) throws IOException {
+    this( new Sections( channel, null ) );
+  }
+
+  /**
+   * Read the format from an in-memory copy of the file.
+   * @param bytes
+   * @throws IOException
+   */
+  public BinaryDataset( byte[] bytes ) throws IOException {
+    this( new Sections( null, bytes ) );
+  }
+
+  /**
+   * Default constructor.
+   * @param sections
+   * @throws IOException
+   */
+  protected BinaryDataset( Sections sections ) throws IOException {
+    this.flags = sections.flags;
+    this.numRows = sections.numRows;
+    this.numCols = sections.numCols;
+
+    readMeta( sections.get( BinaryWriter.META ) );
+    this.labels = sections.get( BinaryWriter.LABELS ).asIntBuffer();
+    this.idOffsets = sections.get( BinaryWriter.ID_OFFSETS ).asIntBuffer();
+    this.ids = sections.get( BinaryWriter.ID_BYTES );
+    this.ranks = sections.get( BinaryWriter.RANKS ).asIntBuffer();
+    this.qids = sections.get( BinaryWriter.QIDS ).asIntBuffer();
+    this.rowPtr = sections.get( BinaryWriter.ROW_PTR ).asLongBuffer();
+    this.colIdx = sections.get( BinaryWriter.COL_IDX ).asIntBuffer();
+    this.values = sections.get( BinaryWriter.VALUES ).asDoubleBuffer();
+
+    if ( !isSparse() && values.limit() != (long) numRows * numCols ) {
+      throw new IOException( "Expected " + (long) numRows * numCols +
+          " values but found " + values.limit() );
+    }
+  }
+
+  /**
+   * Read the META section.
+   * @param meta
+   */
+  protected void readMeta( ByteBuffer meta ) {
+    this.name = readString( meta );
+    double s = meta.getDouble();
+    this.sigma = Double.isNaN( s ) ? null : s;
+
+    int numAttributes = meta.getInt();
+    for ( int i = 0; i < numAttributes; i++ ) {
+      String key = readString( meta );
+      metadata.put( key, readString( meta ) );
+    }
+
+    this.featureNames = new String[meta.getInt()];
+    for ( int j = 0; j < featureNames.length; j++ ) {
+      featureNames[j] = readString( meta );
+    }
+
+    this.labelValues = new Object[meta.getInt()];
+    for ( int i = 0; i < labelValues.length; i++ ) {
+      String label = readString( meta );
+      if ( ( flags & BinaryWriter.FLAG_INTEGER_LABELS ) != 0 ) {
+        labelValues[i] = Integer.valueOf( label );
+      } else {
+        labelValues[i] = label;
+      }
+    }
+  }
+
+  /**
+   * Read a string written by BinaryWriter.writeString.
+   * @param buf
+   * @return
+   */
+  protected static String readString( ByteBuffer buf ) {
+    int len = buf.getInt();
+    if ( len < 0 ) {
+      return null;
+    }
+    byte[] bytes = new byte[len];
+    buf.get( bytes );
+
+    return new String( bytes, BinaryWriter.UTF8 );
+  }
+
+  /**
+   * Get the name of the relation.
+   * @return
+   */
+  public String getName() {
+    return this.name;
+  }
+
+  /**
+   * Get the metadata.
+   * @return
+   */
+  public Metadata getMetadata() {
+    return this.metadata;
+  }
+
+  /**
+   * Get the feature names, by column.
+   * @return
+   */
+  public String[] getFeatureNames() {
+    return this.featureNames;
+  }
+
+  /**
+   * Get the number of rows.
+   * @return
+   */
+  public int size() {
+    return this.numRows;
+  }
+
+  /**
+   * Get the number of columns.
+   * @return
+   */
+  public int numFeatures() {
+    return this.numCols;
+  }
+
+  /**
+   * Whether the rows are labeled.
+   * @return
+   */
+  public boolean isLabeled() {
+    return ( flags & BinaryWriter.FLAG_LABELED ) != 0;
+  }
+
+  /**
+   * Whether the values are stored sparsely (only the features each row has).
+   * @return
+   */
+  public boolean isSparse() {
+    return ( flags & BinaryWriter.FLAG_SPARSE ) != 0;
+  }
+
+  /**
+   * Get the label of the row (a String, or an Integer for SVMlight data), or
+   * null.
+   * @param row
+   * @return
+   */
+  public Object getLabel( int row ) {
+    if ( !isLabeled() ) {
+      return null;
+    }
+    int idx = labels.get( row );
+    return ( idx < 0 ) ? null : labelValues[idx];
+  }
+
+  /**
+   * Get the id of the row.
+   * @param row
+   * @return
+   */
+  public String getId( int row ) {
+    int from = idOffsets.get( row );
+    int to = idOffsets.get( row + 1 );
+    byte[] bytes = new byte[to - from];
+    for ( int i = 0; i < bytes.length; i++ ) {
+      bytes[i] = ids.get( from + i );
+    }
+
+    return new String( bytes, BinaryWriter.UTF8 );
+  }
+
+  /**
+   * Get the rank of the row, or null.
+   * @param row
+   * @return
+   */
+  public Integer getRank( int row ) {
+    int rank = ranks.get( row );
+    return ( rank == BinaryWriter.NULL_INT ) ? null : rank;
+  }
+
+  /**
+   * Get the query id of the row, or null.
+   * @param row
+   * @return
+   */
+  public Integer getQid( int row ) {
+    int qid = qids.get( row );
+    return ( qid == BinaryWriter.NULL_INT ) ? null : qid;
+  }
+
+  /**
+   * Get a single value; 0 if the row doesn't have the feature, NaN if it is
+   * missing.
+   * @param row
+   * @param col
+   * @return
+   */
+  public double get( int row, int col ) {
+    if ( !isSparse() ) {
+      return values.get( row * numCols + col );
+    }
+
+    // binary search the row's sorted columns
+    int lo = (int) rowPtr.get( row );
+    int hi = (int) rowPtr.get( row + 1 ) - 1;
+    while ( lo <= hi ) {
+      int mid = ( lo + hi ) >>> 1;
+      int c = colIdx.get( mid );
+      if ( c < col ) {
+        lo = mid + 1;
+      } else if ( c > col ) {
+        hi = mid - 1;
+      } else {
+        return values.get( mid );
+      }
+    }
+
+    return 0.0;
+  }
+
+  /**
+   * Copy the row's values into dest, starting at offset; absent features
+   * are copied as 0.
+   * @param row
+   * @param dest
+   * @param offset
+   */
+  public void fill( int row, double[] dest, int offset ) {
+    if ( !isSparse() ) {
+      DoubleBuffer buf = values.duplicate();
+      buf.position( row * numCols );
+      buf.get( dest, offset, numCols );
+    } else {
+      Arrays.fill( dest, offset, offset + numCols, 0.0 );
+      int to = (int) rowPtr.get( row + 1 );
+      for ( int i = (int) rowPtr.get( row ); i < to; i++ ) {
+        dest[offset + colIdx.get( i )] = values.get( i );
+      }
+    }
+  }
+
+  /**
+   * Copy every row's values into a row-major array (absent features as 0),
+   * eg. the layout of DenseRelation.getData.
+   * @return
+   */
+  public double[] toArray() {
+    double[] data = new double[numRows * numCols];
+    if ( !isSparse() ) {
+      values.duplicate().get( data );
+    } else {
+      for ( int i = 0; i < numRows; i++ ) {
+        fill( i, data, i * numCols );
+      }
+    }
+
+    return data;
+  }
+
+  /**
+   * Build the feature vector for the row.
+   * @param row
+   * @param ignoreLabels Whether to build an UnlabeledFeatureVector even if
+   *          the row is labeled.
+   * @return
+   */
+  public <E> FeatureVector<E> getFeatureVector( int row,
+      boolean ignoreLabels ) {
+    FeatureVector<E> fv = newFeatureVector( row, ignoreLabels );
+    if ( !isSparse() ) {
+      int offset = row * numCols;
+      for ( int j = 0; j < numCols; j++ ) {
+        put( fv, featureNames[j], values.get( offset + j ) );
+      }
+    } else {
+      int to = (int) rowPtr.get( row + 1 );
+      for ( int i = (int) rowPtr.get( row ); i < to; i++ ) {
+        put( fv, featureNames[colIdx.get( i )], values.get( i ) );
+      }
+    }
+
+    return fv;
+  }
+
+  /**
+   * Build the feature vector for the row without its features: its id,
+   * label, rank and qid.
+   * @param row
+   * @param ignoreLabels
+   * @return
+   */
+  @SuppressWarnings( "unchecked" )
+  protected <E> FeatureVector<E> newFeatureVector( int row,
+      boolean ignoreLabels ) {
+    FeatureVector<E> fv;
+    if ( isLabeled() && !ignoreLabels ) {
+      fv = new LabeledFeatureVector<E>( (E) getLabel( row ), getId( row ) );
+    } else {
+      fv = new UnlabeledFeatureVector<E>( getId( row ) );
+    }
+    fv.setRank( getRank( row ) );
+    fv.setQid( getQid( row ) );
+
+    return fv;
+  }
+
+  /**
+   * Add the feature to the vector.
+   * @param fv
+   * @param feature
+   * @param val
+   */
+  protected void put( FeatureVector<?> fv, String feature, double val ) {
+    if ( Double.isNaN( val ) ) {
+      fv.put( feature, new MissingFeature( feature ) );
+    } else {
+      fv.put( feature, new DoubleFeature( feature, val ) );
+    }
+  }
+
+  /**
+   * Build the whole Relation: a TrainRelation if the rows are labeled and
+   * the labels aren't ignored, otherwise a TestRelation.
+   * @param ignoreLabels
+   * @return
+   */
+  @SuppressWarnings( "unchecked" )
+  public <E> Relation<?> toRelation( boolean ignoreLabels ) {
+    Metadata m = new Metadata();
+    m.putAll( metadata );
+    Relation<?> r;
+    if ( isLabeled() && !ignoreLabels ) {
+      TrainRelation<E> train = new TrainRelation<E>( name, m );
+      train.ensureCapacity( numRows );
+      for ( int i = 0; i < numRows; i++ ) {
+        train.add( (LabeledFeatureVector<E>) this.<E>getFeatureVector( i,
+            ignoreLabels ) );
+      }
+      r = train;
+    } else {
+      TestRelation<E> test = new TestRelation<E>( name, m );
+      test.ensureCapacity( numRows );
+      for ( int i = 0; i < numRows; i++ ) {
+        test.add( (UnlabeledFeatureVector<E>) this.<E>getFeatureVector( i,
+            true ) );
+      }
+      r = test;
+    }
+    r.setSigma( sigma );
+
+    return r;
+  }
+
+  /**
+   * Get the values as a DenseRelation (absent features as 0) without
+   * building any feature vector's features; the map-based view of a row is
+   * built from the dense values only when asked for. Dense files are copied
+   * out of the buffer in one bulk read.
+   * @param ignoreLabels Whether to build UnlabeledFeatureVectors even if the
+   *          rows are labeled.
+   * @return
+   */
+  public <E> DenseRelation<FeatureVector<E>> toDense( boolean ignoreLabels ) {
+    List<FeatureVector<E>> rows = new ArrayList<FeatureVector<E>>( numRows );
+    for ( int i = 0; i < numRows; i++ ) {
+      rows.add( this.<E>newFeatureVector( i, ignoreLabels ) );
+    }
+
+    return new DenseRelation<FeatureVector<E>>( featureNames, toArray(),
+        rows );
+  }
+
+  /**
+   * Locates the sections of the file from its footer and maps (or wraps)
+   * each of them.
+   */
+  protected static class Sections {
+    /** The channel of the mapped file, or null. */
+    protected final FileChannel channel;
+    /** The bytes of the file, or null. */
+    protected final byte[] bytes;
+    /** The offset of each section. */
+    protected final long[] offsets = new long[BinaryWriter.NUM_SECTIONS];
+    /** The length of each section. */
+    protected final long[] lengths = new long[BinaryWriter.NUM_SECTIONS];
+    /** The flags. */
+    protected final int flags;
+    /** The number of rows. */
+    protected final int numRows;
+    /** The number of columns. */
+    protected final int numCols;
+
+    /**
+     * Default constructor.
+     * @param channel
+     * @param bytes
+     * @throws IOException
+     */
+    public Sections( FileChannel channel, byte[] bytes ) throws IOException {
+      this.channel = channel;
+      this.bytes = bytes;
+      long size = ( channel != null ) ? channel.size() : bytes.length;
+      if ( size < 8 + BinaryWriter.FOOTER_SIZE ) {
+        throw new IOException( "Not a binary dataset: too short" );
+      }
+
+      ByteBuffer start = map( 0, 8 );
+      if ( start.getInt() != BinaryWriter.MAGIC ) {
+        throw new IOException( "Not a binary dataset: bad magic number" );
+      }
+      int version = start.getInt();
+      if ( version != BinaryWriter.VERSION ) {
+        throw new IOException( "Unsupported binary dataset version: " +
+            version );
+      }
+
+      ByteBuffer footer = map( size - BinaryWriter.FOOTER_SIZE,
+          BinaryWriter.FOOTER_SIZE );
+      for ( int s = 0; s < BinaryWriter.NUM_SECTIONS; s++ ) {
+        offsets[s] = footer.getLong();
+        lengths[s] = footer.getLong();
+      }
+      this.flags = footer.getInt();
+      this.numRows = footer.getInt();
+      this.numCols = footer.getInt();
+      footer.getInt(); // version
+      if ( footer.getInt() != BinaryWriter.MAGIC ) {
+        throw new IOException( "Not a binary dataset: truncated" );
+      }
+    }
+
+    /**
+     * Get the section.
+     * @param section
+     * @return
+     * @throws IOException
+     */
+    public ByteBuffer get( int section ) throws IOException {
+      return map( offsets[section], lengths[section] );
+    }
+
+    /**
+     * Map (or wrap) the given range of the file.
+     * @param offset
+     * @param length
+     * @return
+     * @throws IOException
+     */
+    protected ByteBuffer map( long offset, long length ) throws IOException {
+      if ( length > Integer.MAX_VALUE ) {
+        throw new IOException( "Section of " + length + " bytes is too " +
+            "large to map" );
+      }
+      if ( channel != null ) {
+        return channel.map( FileChannel.MapMode.READ_ONLY, offset, length );
+      }
+
+      return ByteBuffer.wrap( bytes, (int) offset, (int) length ).slice();
+    }
+  }
+}
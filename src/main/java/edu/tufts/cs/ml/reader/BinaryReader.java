@@ -0,0 +1,77 @@
+package edu.tufts.cs.ml.reader;
+
+import java.io.ByteArrayOutputStream;
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.nio.channels.FileChannel;
+
+import edu.tufts.cs.ml.DenseRelation;
+import edu.tufts.cs.ml.Relation;
+
+/**
+ * Reads files in the format written by BinaryWriter. Files are memory-mapped
+ * rather than parsed; use map to get at the rows, or readDense to get their
+ * values, without building a Relation at all.
+ *
+ * @param <E>
+ */
+public class BinaryReader<E> extends Reader<E> {
+
+  @Override
+  public Relation<?> read( File f ) throws IOException {
+    return read( f, !IGNORE_LABELS );
+  }
+
+  @Override
+  public Relation<?> read( File f, boolean ignoreLabels ) throws IOException {
+    return map( f ).<E>toRelation( ignoreLabels );
+  }
+
+  @Override
+  public Relation<?> read( InputStream s ) throws IOException {
+    return read( s, !IGNORE_LABELS );
+  }
+
+  @Override
+  public Relation<?> read( InputStream s, boolean ignoreLabels )
+      throws IOException {
+    // a stream can't be mapped, so read it into memory
+    ByteArrayOutputStream bytes = new ByteArrayOutputStream();
+    byte[] buf = new byte[1 << 16];
+    int read = s.read( buf );
+    while ( read >= 0 ) {
+      bytes.write( buf, 0, read );
+      read = s.read( buf );
+    }
+    s.close();
+
+    return new BinaryDataset( bytes.toByteArray() ).<E>toRelation(
+        ignoreLabels );
+  }
+
+  @Override
+  public DenseRelation<?> readDense( File f, boolean ignoreLabels )
+      throws IOException {
+    return map( f ).<E>toDense( ignoreLabels );
+  }
+
+  /**
+   * Map the file. The mapping stays valid after this returns (the channel
+   * itself is closed).
+   * @param f
+   * @return
+   * @throws IOException
+   */
+  public BinaryDataset map( File f ) throws IOException {
+    FileInputStream fis = new FileInputStream( f );
+    FileChannel channel = fis.getChannel();
+    try {
+      return new BinaryDataset( channel );
+    } finally {
+      channel.close();
+      fis.close();
+    }
+  }
+}
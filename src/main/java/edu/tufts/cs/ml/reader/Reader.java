@@ -4,11 +4,32 @@ import java.io.File;
 import java.io.IOException;
 import java.io.InputStream;
 
+import edu.tufts.cs.ml.DenseRelation;
 import edu.tufts.cs.ml.Relation;
+import edu.tufts.cs.ml.writer.BinaryWriter;
 
 public abstract class Reader<E> {
   /** The cue to ignore the labels. */
   public static final boolean IGNORE_LABELS = true;
+  /** The file extension for SVMlight files. */
+  public static final String SVM_LIGHT_EXTENSION = ".dat";
+
+  /**
+   * Get a reader for the file by its extension: BinaryReader for the binary
+   * format, SvmLightReader for SVMlight files, and ArffReader otherwise.
+   * @param f
+   * @return
+   */
+  public static <E> Reader<E> forFile( File f ) {
+    String name = f.getName().toLowerCase();
+    if ( name.endsWith( BinaryWriter.EXTENSION ) ) {
+      return new BinaryReader<E>();
+    } else if ( name.endsWith( SVM_LIGHT_EXTENSION ) ) {
+      return new SvmLightReader<E>();
+    }
+
+    return new ArffReader<E>();
+  }
 
   /**
    * Read the file into a Relation of FeatureVectors.
@@ -42,4 +63,17 @@ public abstract class Reader<E> {
    */
   public abstract Relation<?> read( InputStream s, boolean ignoreLabels )
     throws IOException;
+
+  /**
+   * Read the file into a DenseRelation, without keeping the map-based rows
+   * (or, for formats that can, without building them at all).
+   * @param f
+   * @param ignoreLabels
+   * @return
+   * @throws IOException
+   */
+  public DenseRelation<?> readDense( File f, boolean ignoreLabels )
+    throws IOException {
+    return read( f, ignoreLabels ).toDense().release();
+  }
 }
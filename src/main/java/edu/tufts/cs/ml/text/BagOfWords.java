@@ -1,6 +1,7 @@
 package edu.tufts.cs.ml.text;
 
 import java.io.File;
+import java.util.Arrays;
 import java.util.Collection;
 import java.util.HashMap;
 import java.util.HashSet;
@@ -15,6 +16,7 @@ import edu.tufts.cs.ml.DoubleFeature;
 import edu.tufts.cs.ml.FeatureVector;
 import edu.tufts.cs.ml.LabeledFeatureVector;
 import edu.tufts.cs.ml.Metadata;
+import edu.tufts.cs.ml.SparseVector;
 import edu.tufts.cs.ml.TrainRelation;
 import edu.tufts.cs.ml.UnlabeledFeatureVector;
 import edu.tufts.cs.ml.util.Util;
@@ -40,6 +42,10 @@ public class BagOfWords<E> {
   protected int minOccurs = DEFAULT_MIN_OCCURS;
   /** The minimum length a word must be to be included in the bag of words. */
   protected int minLength = DEFAULT_MIN_LENGTH;
+  /** The feature names, by column (resolved when first needed). */
+  protected String[] featureNames;
+  /** Mapping from the feature name to its column. */
+  protected Map<String, Integer> columns;
 
   /**
    * Default constructor.
@@ -229,15 +235,87 @@ public class BagOfWords<E> {
     // sparse representation... no need to put in 0's
     for ( String term : terms.elementSet() ) {
       // rare words don't get included, so check first
-      if ( !integerFeatureNames && train.getMetadata().containsKey( term ) ) {
-          DoubleFeature bagFeat = new DoubleFeature( term, (double) terms.count( term ) );
-          fv.put( term, bagFeat );
-      } else if ( integerFeatureNames &&
-          train.getMetadata().containsKey( String.valueOf( wordIndexMap.get( term ) ) ) ) {
-          String featureName = String.valueOf( wordIndexMap.get( term ) );
+      String featureName = featureName( term );
+      if ( featureName != null ) {
           DoubleFeature bagFeat = new DoubleFeature( featureName, (double) terms.count( term ) );
           fv.put( featureName, bagFeat );
       }
     }
   }
+
+  /**
+   * Create a sparse vector of the term counts in the text, using the
+   * columns of the bag of words (its features, in order). Unlike
+   * createUnlabeledFV, no map or Feature is made per term.
+   * @param text
+   * @return
+   */
+  public SparseVector createSparseVector( String text ) {
+    Multiset<String> terms = HashMultiset.create();
+    for ( String token : tokenizer.tokenize( text ) ) {
+      String norm = Util.normalize( token );
+      if ( !norm.isEmpty() ) {
+        terms.add( norm );
+      }
+    }
+
+    Map<String, Integer> columns = getColumns();
+    int[] idx = new int[terms.elementSet().size()];
+    int nnz = 0;
+    for ( String term : terms.elementSet() ) {
+      String featureName = featureName( term );
+      if ( featureName != null ) {
+        idx[nnz++] = columns.get( featureName );
+      }
+    }
+    Arrays.sort( idx, 0, nnz );
+
+    String[] names = getFeatureNames();
+    double[] val = new double[nnz];
+    for ( String term : terms.elementSet() ) {
+      String featureName = featureName( term );
+      if ( featureName != null ) {
+        int i = Arrays.binarySearch( idx, 0, nnz, columns.get( featureName ) );
+        val[i] = terms.count( term );
+      }
+    }
+
+    return new SparseVector( Arrays.copyOf( idx, nnz ), val );
+  }
+
+  /**
+   * Get the feature names, by column: the features of the bag of words, in
+   * the order they were created.
+   * @return
+   */
+  public String[] getFeatureNames() {
+    Metadata m = train.getMetadata();
+    if ( featureNames == null || featureNames.length != m.size() ) {
+      featureNames = m.keySet().toArray( new String[m.size()] );
+      columns = SparseVector.indexColumns( featureNames );
+    }
+
+    return featureNames;
+  }
+
+  /**
+   * Get the mapping from the feature name to its column.
+   * @return
+   */
+  protected Map<String, Integer> getColumns() {
+    getFeatureNames();
+    return columns;
+  }
+
+  /**
+   * Get the name of the feature for the (normalized) term.
+   * @param term
+   * @return The name, or null if the term isn't a feature.
+   */
+  protected String featureName( String term ) {
+    String featureName = integerFeatureNames ?
+      String.valueOf( wordIndexMap.get( term ) ) : term;
+
+    return train.getMetadata().containsKey( featureName ) ? featureName : null;
+  }
 }
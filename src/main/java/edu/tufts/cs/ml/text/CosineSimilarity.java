@@ -1,26 +1,40 @@
 package edu.tufts.cs.ml.text;
 
+import edu.tufts.cs.ml.DenseRelation;
+import edu.tufts.cs.ml.Feature;
 import edu.tufts.cs.ml.FeatureVector;
 import edu.tufts.cs.ml.LabeledFeatureVector;
 import edu.tufts.cs.ml.TrainRelation;
+import edu.tufts.cs.ml.util.VectorMath;
 
 public class CosineSimilarity<E> {
   /** The second citation. */
   protected TrainRelation<E> compareTo;
+  /** The comparators, as contiguous rows. */
+  protected DenseRelation<LabeledFeatureVector<E>> denseCompareTo;
+  /** The magnitude of each comparator. */
+  protected double[] norms;
 
   /**
    * Default constructor.
    */
   public CosineSimilarity( TrainRelation<E> compareTo ) {
-    this.compareTo = compareTo;
+    setCompareTo( compareTo );
   }
 
   /**
-   * Set the comparators.
+   * Set the comparators. Later changes to the relation are not seen until
+   * this is called again.
    * @param compareTo
    */
   public void setCompareTo( TrainRelation<E> compareTo ) {
     this.compareTo = compareTo;
+    this.denseCompareTo = compareTo.toDense();
+    this.norms = new double[denseCompareTo.size()];
+    for ( int i = 0; i < norms.length; i++ ) {
+      norms[i] = VectorMath.norm( denseCompareTo.getData(),
+          denseCompareTo.offset( i ), denseCompareTo.numFeatures() );
+    }
   }
 
   /**
@@ -34,11 +48,22 @@ public class CosineSimilarity<E> {
       return 0.0;
     }
 
+    // the magnitude includes words the comparators don't have
+    double total = 0.0;
+    for ( Feature<?> f : ufv.values() ) {
+      double val = f.doubleValue();
+      total += val * val;
+    }
+    double ufvNorm = Math.sqrt( total );
+
+    double[] query = denseCompareTo.toArray( ufv );
     double sum = 0.0;
-    for ( LabeledFeatureVector<E> lfv : compareTo ) {
-      double sim = ( ufv.dot( lfv ) /
-                ufv.magnitude() * lfv.magnitude() );
-      sum += sim;
+    for ( int i = 0; i < norms.length; i++ ) {
+      if ( ufvNorm > 0 && norms[i] > 0 ) {
+        double dot = VectorMath.dot( denseCompareTo.getData(),
+            denseCompareTo.offset( i ), query, 0, query.length );
+        sum += dot / ( ufvNorm * norms[i] );
+      }
     }
     double avg = sum / (double) compareTo.size();
 
@@ -0,0 +1,109 @@
+package edu.tufts.cs.ml.util;
+
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.List;
+import java.util.concurrent.Callable;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+
+/**
+ * Runs tasks on a thread pool and waits for them, rethrowing what a task
+ * threw rather than an ExecutionException: the given checked exception as
+ * itself, RuntimeExceptions and Errors as themselves, and anything else
+ * wrapped in a RuntimeException.
+ */
+public class ConcurrencyUtil {
+
+  /**
+   * Private constructor for utility class.
+   */
+  private ConcurrencyUtil() {
+    // purposely not instantiable
+  }
+
+  /**
+   * Run the tasks on a new pool of the given number of threads, and shut it
+   * down once they are done.
+   * @param threads
+   * @param tasks
+   * @param activity What the tasks do, for the message if interrupted.
+   * @return The results, in the order of the tasks.
+   */
+  public static <T> List<T> invokeAll( int threads,
+      Collection<? extends Callable<T>> tasks, String activity ) {
+    return invokeAll( threads, tasks, RuntimeException.class, activity );
+  }
+
+  /**
+   * Run the tasks on a new pool of the given number of threads, and shut it
+   * down once they are done.
+   * @param threads
+   * @param tasks
+   * @param checked The checked exception the tasks may throw.
+   * @param activity What the tasks do, for the message if interrupted.
+   * @return The results, in the order of the tasks.
+   * @throws X
+   */
+  public static <T, X extends Exception> List<T> invokeAll( int threads,
+      Collection<? extends Callable<T>> tasks, Class<X> checked,
+      String activity ) throws X {
+    ExecutorService executor = Executors.newFixedThreadPool( threads );
+    try {
+      return invokeAll( executor, tasks, checked, activity );
+    } finally {
+      executor.shutdown();
+    }
+  }
+
+  /**
+   * Run the tasks on the executor, which is left running.
+   * @param executor
+   * @param tasks
+   * @param checked The checked exception the tasks may throw.
+   * @param activity What the tasks do, for the message if interrupted.
+   * @return The results, in the order of the tasks.
+   * @throws X
+   */
+  public static <T, X extends Exception> List<T> invokeAll(
+      ExecutorService executor, Collection<? extends Callable<T>> tasks,
+      Class<X> checked, String activity ) throws X {
+    try {
+      List<T> results = new ArrayList<T>( tasks.size() );
+      for ( Future<T> f : executor.invokeAll( tasks ) ) {
+        results.add( get( f, checked ) );
+      }
+      return results;
+    } catch ( InterruptedException e ) {
+      Thread.currentThread().interrupt();
+      throw new RuntimeException( "Interrupted while " + activity + ".", e );
+    }
+  }
+
+  /**
+   * Wait for the task.
+   * @param future
+   * @param checked The checked exception the task may throw.
+   * @return
+   * @throws X
+   * @throws InterruptedException
+   */
+  public static <T, X extends Exception> T get( Future<T> future,
+      Class<X> checked ) throws X, InterruptedException {
+    try {
+      return future.get();
+    } catch ( ExecutionException e ) {
+      Throwable cause = e.getCause();
+      if ( checked.isInstance( cause ) ) {
+        throw checked.cast( cause );
+      } else if ( cause instanceof RuntimeException ) {
+        throw (RuntimeException) cause;
+      } else if ( cause instanceof Error ) {
+        throw (Error) cause;
+      }
+      throw new RuntimeException( cause );
+    }
+  }
+}
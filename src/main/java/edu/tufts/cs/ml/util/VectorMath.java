@@ -0,0 +1,314 @@
+package edu.tufts.cs.ml.util;
+
+/**
+ * Distance and similarity kernels over primitive arrays. Each kernel reads
+ * len values from a (starting at aOffset) and b (starting at bOffset), so it
+ * can be run directly against the rows of a DenseRelation's backing array.
+ * The sparse kernels read the (column, value) pairs from..to of a row stored
+ * as sorted column indices and values, as in a SparseRelation or
+ * SparseVector, and only touch the non-zeros. None of them allocate or round.
+ */
+public class VectorMath {
+
+  /**
+   * Private constructor for utility class.
+   */
+  private VectorMath() {
+    // purposely not instantiable
+  }
+
+  /**
+   * Calculate the squared Euclidean distance.
+   * @param a
+   * @param aOffset
+   * @param b
+   * @param bOffset
+   * @param len
+   * @return
+   */
+  public static double squaredEuclidean( double[] a, int aOffset, double[] b,
+      int bOffset, int len ) {
+    double sum = 0.0;
+    for ( int j = 0; j < len; j++ ) {
+      double diff = a[aOffset + j] - b[bOffset + j];
+      sum += diff * diff;
+    }
+
+    return sum;
+  }
+
+  /**
+   * Calculate the squared Euclidean distance.
+   * @param a
+   * @param b
+   * @return
+   */
+  public static double squaredEuclidean( double[] a, double[] b ) {
+    return squaredEuclidean( a, 0, b, 0, a.length );
+  }
+
+  /**
+   * Calculate the Euclidean distance.
+   * @param a
+   * @param aOffset
+   * @param b
+   * @param bOffset
+   * @param len
+   * @return
+   */
+  public static double euclidean( double[] a, int aOffset, double[] b,
+      int bOffset, int len ) {
+    return Math.sqrt( squaredEuclidean( a, aOffset, b, bOffset, len ) );
+  }
+
+  /**
+   * Calculate the Euclidean distance.
+   * @param a
+   * @param b
+   * @return
+   */
+  public static double euclidean( double[] a, double[] b ) {
+    return euclidean( a, 0, b, 0, a.length );
+  }
+
+  /**
+   * Calculate the Manhattan (L1) distance.
+   * @param a
+   * @param aOffset
+   * @param b
+   * @param bOffset
+   * @param len
+   * @return
+   */
+  public static double manhattan( double[] a, int aOffset, double[] b,
+      int bOffset, int len ) {
+    double sum = 0.0;
+    for ( int j = 0; j < len; j++ ) {
+      sum += Math.abs( a[aOffset + j] - b[bOffset + j] );
+    }
+
+    return sum;
+  }
+
+  /**
+   * Calculate the Manhattan (L1) distance.
+   * @param a
+   * @param b
+   * @return
+   */
+  public static double manhattan( double[] a, double[] b ) {
+    return manhattan( a, 0, b, 0, a.length );
+  }
+
+  /**
+   * Calculate the inner product.
+   * @param a
+   * @param aOffset
+   * @param b
+   * @param bOffset
+   * @param len
+   * @return
+   */
+  public static double dot( double[] a, int aOffset, double[] b, int bOffset,
+      int len ) {
+    double sum = 0.0;
+    for ( int j = 0; j < len; j++ ) {
+      sum += a[aOffset + j] * b[bOffset + j];
+    }
+
+    return sum;
+  }
+
+  /**
+   * Calculate the inner product.
+   * @param a
+   * @param b
+   * @return
+   */
+  public static double dot( double[] a, double[] b ) {
+    return dot( a, 0, b, 0, a.length );
+  }
+
+  /**
+   * Calculate the magnitude: |a| = sqrt(a . a).
+   * @param a
+   * @param aOffset
+   * @param len
+   * @return
+   */
+  public static double norm( double[] a, int aOffset, int len ) {
+    return Math.sqrt( dot( a, aOffset, a, aOffset, len ) );
+  }
+
+  /**
+   * Calculate the magnitude: |a| = sqrt(a . a).
+   * @param a
+   * @return
+   */
+  public static double norm( double[] a ) {
+    return norm( a, 0, a.length );
+  }
+
+  /**
+   * Calculate the cosine similarity: (a . b) / (|a| |b|). Returns 0 if either
+   * vector has no magnitude.
+   * @param a
+   * @param aOffset
+   * @param b
+   * @param bOffset
+   * @param len
+   * @return
+   */
+  public static double cosine( double[] a, int aOffset, double[] b,
+      int bOffset, int len ) {
+    double dot = 0.0;
+    double aa = 0.0;
+    double bb = 0.0;
+    for ( int j = 0; j < len; j++ ) {
+      double x = a[aOffset + j];
+      double y = b[bOffset + j];
+      dot += x * y;
+      aa += x * x;
+      bb += y * y;
+    }
+
+    if ( aa == 0.0 || bb == 0.0 ) {
+      return 0.0;
+    }
+    return dot / Math.sqrt( aa * bb );
+  }
+
+  /**
+   * Calculate the cosine similarity: (a . b) / (|a| |b|).
+   * @param a
+   * @param b
+   * @return
+   */
+  public static double cosine( double[] a, double[] b ) {
+    return cosine( a, 0, b, 0, a.length );
+  }
+
+  /**
+   * Calculate the inner product of two sparse rows, merging their sorted
+   * columns.
+   * @param aIdx
+   * @param aVal
+   * @param aFrom
+   * @param aTo
+   * @param bIdx
+   * @param bVal
+   * @param bFrom
+   * @param bTo
+   * @return
+   */
+  public static double sparseDot( int[] aIdx, double[] aVal, int aFrom,
+      int aTo, int[] bIdx, double[] bVal, int bFrom, int bTo ) {
+    double sum = 0.0;
+    int i = aFrom;
+    int j = bFrom;
+    while ( i < aTo && j < bTo ) {
+      if ( aIdx[i] == bIdx[j] ) {
+        sum += aVal[i++] * bVal[j++];
+      } else if ( aIdx[i] < bIdx[j] ) {
+        i++;
+      } else {
+        j++;
+      }
+    }
+
+    return sum;
+  }
+
+  /**
+   * Calculate the inner product of a sparse row and a dense one.
+   * @param idx
+   * @param val
+   * @param from
+   * @param to
+   * @param dense
+   * @param offset Where the dense row starts.
+   * @return
+   */
+  public static double sparseDot( int[] idx, double[] val, int from, int to,
+      double[] dense, int offset ) {
+    double sum = 0.0;
+    for ( int i = from; i < to; i++ ) {
+      sum += val[i] * dense[offset + idx[i]];
+    }
+
+    return sum;
+  }
+
+  /**
+   * Calculate the magnitude of a sparse row.
+   * @param val
+   * @param from
+   * @param to
+   * @return
+   */
+  public static double sparseNorm( double[] val, int from, int to ) {
+    double sum = 0.0;
+    for ( int i = from; i < to; i++ ) {
+      sum += val[i] * val[i];
+    }
+
+    return Math.sqrt( sum );
+  }
+
+  /**
+   * Calculate the squared Euclidean distance between two sparse rows,
+   * merging their sorted columns.
+   * @param aIdx
+   * @param aVal
+   * @param aFrom
+   * @param aTo
+   * @param bIdx
+   * @param bVal
+   * @param bFrom
+   * @param bTo
+   * @return
+   */
+  public static double sparseSquaredEuclidean( int[] aIdx, double[] aVal,
+      int aFrom, int aTo, int[] bIdx, double[] bVal, int bFrom, int bTo ) {
+    double sum = 0.0;
+    int i = aFrom;
+    int j = bFrom;
+    while ( i < aTo || j < bTo ) {
+      double diff;
+      if ( j >= bTo || ( i < aTo && aIdx[i] < bIdx[j] ) ) {
+        diff = aVal[i++];
+      } else if ( i >= aTo || bIdx[j] < aIdx[i] ) {
+        diff = bVal[j++];
+      } else {
+        diff = aVal[i++] - bVal[j++];
+      }
+      sum += diff * diff;
+    }
+
+    return sum;
+  }
+
+  /**
+   * Calculate the squared Euclidean distance between a sparse row and a
+   * dense one, as |a|^2 - 2 a . b + |b|^2, given |b|^2.
+   * @param idx
+   * @param val
+   * @param from
+   * @param to
+   * @param dense
+   * @param offset Where the dense row starts.
+   * @param denseSquaredNorm The squared magnitude of the dense row.
+   * @return
+   */
+  public static double sparseSquaredEuclidean( int[] idx, double[] val,
+      int from, int to, double[] dense, int offset,
+      double denseSquaredNorm ) {
+    double sum = denseSquaredNorm;
+    for ( int i = from; i < to; i++ ) {
+      double b = dense[offset + idx[i]];
+      sum += val[i] * ( val[i] - 2 * b );
+    }
+
+    return Math.max( sum, 0.0 );
+  }
+}
@@ -1,6 +1,9 @@
 package edu.tufts.cs.ml.validate;
 
+import java.util.ArrayList;
+import java.util.List;
 import java.util.Map.Entry;
+import java.util.concurrent.Callable;
 
 import edu.tufts.cs.ml.Feature;
 import edu.tufts.cs.ml.LabeledFeatureVector;
@@ -8,6 +11,8 @@ import edu.tufts.cs.ml.TrainRelation;
 import edu.tufts.cs.ml.UnlabeledFeatureVector;
 import edu.tufts.cs.ml.classify.KnnClassifier;
 import edu.tufts.cs.ml.exception.IncomparableFeatureVectorException;
+import edu.tufts.cs.ml.index.Neighbors;
+import edu.tufts.cs.ml.util.ConcurrencyUtil;
 import edu.tufts.cs.ml.util.Util;
 
 public class KnnLOOCValidator<E> {
@@ -15,14 +20,32 @@ public class KnnLOOCValidator<E> {
   protected TrainRelation<E> trainingData;
   /** The default k values to use if none are specified. */
   protected static final int[] DEFAULT_K_VALS = { 1, 3, 5, 7, 9, 11, 13, 15 };
+  /** The number of chunks per thread, so that slow chunks even out. */
+  protected static final int CHUNKS_PER_THREAD = 4;
+  /** The number of threads to use. */
+  protected final int parallelism;
 
   /**
-   * Default constructor.
+   * Default constructor; uses a thread per available processor.
    * @param train
    * @param test
    */
   public KnnLOOCValidator( TrainRelation<E> trainingData ) {
+    this( trainingData, Runtime.getRuntime().availableProcessors() );
+  }
+
+  /**
+   * Constructor with the number of threads to use.
+   * @param trainingData
+   * @param parallelism
+   */
+  public KnnLOOCValidator( TrainRelation<E> trainingData, int parallelism ) {
+    if ( parallelism < 1 ) {
+      throw new IllegalArgumentException( "Parallelism must be at least 1: " +
+          parallelism );
+    }
     this.trainingData = trainingData;
+    this.parallelism = parallelism;
   }
 
   /**
@@ -65,33 +88,39 @@ public class KnnLOOCValidator<E> {
   }
 
   /**
-   * Validate the data given the provided k values.
+   * Validate the data given the provided k values. Rather than retraining
+   * without each instance, the neighbors of every instance among the rest
+   * are found once (in parallel) for the largest k, and each k's
+   * leave-one-out classification is taken from that table. The
+   * classifications are the same as computeAccuracy gives with the instance
+   * removed.
    * @param validationData
    * @param kVals
    * @return
    * @throws IncomparableFeatureVectorException
    */
-  @SuppressWarnings( "unchecked" )
   public double[] validate( int[] kVals )
     throws IncomparableFeatureVectorException {
-    TrainRelation<E> trainingDataIterable =
-        (TrainRelation<E>) trainingData.clone();
+    int maxK = 0;
+    for ( int k : kVals ) {
+      maxK = Math.max( maxK, k );
+    }
 
-    double[] compositeAccuracies = new double[ kVals.length ];
-    for ( LabeledFeatureVector<E> v : trainingDataIterable ) {
-      // remove this training feature from the set to use it as validation
-      trainingData.remove( v );
+    KnnClassifier<E> c = new KnnClassifier<E>();
+    c.train( trainingData );
+    Neighbors[] table = neighborTable( c, maxK );
 
-      // now test the classified by seeing how accurately it is classified
-      double[] accuracies = computeAccuracy( v, kVals );
+    double[] compositeAccuracies = new double[ kVals.length ];
+    for ( int row = 0; row < table.length; row++ ) {
+      E label = trainingData.get( row ).getLabel();
+      List<E> classifications = c.classify( table[row], kVals );
 
       // add the accuracies for the various k-values to the composites
-      for ( int i = 0; i < accuracies.length; i++ ) {
-        compositeAccuracies[i] += accuracies[i];
+      for ( int i = 0; i < kVals.length; i++ ) {
+        if ( classifications.get( i ).equals( label ) ) {
+          compositeAccuracies[i]++;
+        }
       }
-
-      // now put it back in so it forms part of the training corpus
-      trainingData.add( v );
     }
 
     // get the average accuracy for each k-value
@@ -103,6 +132,43 @@ public class KnnLOOCValidator<E> {
     return compositeAccuracies;
   }
 
+  /**
+   * Find the leave-one-out neighbors of every training instance, splitting
+   * the rows across the threads.
+   * @param c The classifier, trained on the training data.
+   * @param maxK
+   * @return
+   */
+  protected Neighbors[] neighborTable( final KnnClassifier<E> c,
+      final int maxK ) {
+    final Neighbors[] table = new Neighbors[c.size()];
+    if ( parallelism == 1 || table.length < 2 ) {
+      for ( int row = 0; row < table.length; row++ ) {
+        table[row] = c.leaveOneOutNeighbors( row, maxK );
+      }
+      return table;
+    }
+
+    int numChunks = Math.min( table.length, parallelism * CHUNKS_PER_THREAD );
+    List<Callable<Void>> tasks = new ArrayList<Callable<Void>>( numChunks );
+    for ( int t = 0; t < numChunks; t++ ) {
+      final int from = (int) ( (long) table.length * t / numChunks );
+      final int to = (int) ( (long) table.length * ( t + 1 ) / numChunks );
+      tasks.add( new Callable<Void>() {
+        public Void call() {
+          for ( int row = from; row < to; row++ ) {
+            table[row] = c.leaveOneOutNeighbors( row, maxK );
+          }
+          return null;
+        }
+      } );
+    }
+
+    ConcurrencyUtil.invokeAll( parallelism, tasks, "finding neighbors" );
+
+    return table;
+  }
+
   /**
    * Validate the data given default settings.
    * @param validationData
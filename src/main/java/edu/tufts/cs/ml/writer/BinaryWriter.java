@@ -0,0 +1,354 @@
+package edu.tufts.cs.ml.writer;
+
+import java.io.BufferedOutputStream;
+import java.io.DataOutputStream;
+import java.io.File;
+import java.io.FileOutputStream;
+import java.io.FilterOutputStream;
+import java.io.IOException;
+import java.io.OutputStream;
+import java.nio.charset.Charset;
+import java.util.Arrays;
+import java.util.HashMap;
+import java.util.LinkedHashMap;
+import java.util.Map;
+import java.util.Map.Entry;
+
+import edu.tufts.cs.ml.DenseRelation;
+import edu.tufts.cs.ml.FeatureVector;
+import edu.tufts.cs.ml.LabeledFeatureVector;
+import edu.tufts.cs.ml.Relation;
+import edu.tufts.cs.ml.TrainRelation;
+
+/**
+ * Writes a Relation in a compact binary format that BinaryReader can map into
+ * memory instead of parsing. All values are big-endian. The file is:
+ *
+ * <pre>
+ *   int MAGIC, int VERSION
+ *   sections, each starting on an 8 byte boundary:
+ *     META       name, sigma, the Metadata, the column names, the labels
+ *     LABELS     int per row: index into the labels in META (or -1)
+ *     ID_OFFSETS int per row + 1: offset of each id in ID_BYTES
+ *     ID_BYTES   the ids, UTF-8
+ *     RANKS      int per row (NULL_INT if none)
+ *     QIDS       int per row (NULL_INT if none)
+ *     ROW_PTR    long per row + 1: offset of each row in COL_IDX/VALUES
+ *                (sparse only)
+ *     COL_IDX    int per value: its column (sparse only)
+ *     VALUES     double per value; NaN for missing values
+ *   footer: long offset and long length per section, int flags,
+ *     int rows, int columns, int VERSION, int MAGIC
+ * </pre>
+ *
+ * A relation in which every vector has every feature is written densely (a
+ * row-major block of values); otherwise each row holds only the features it
+ * has, sorted by column (CSR), so that reading it back gives the same
+ * vectors.
+ */
+public class BinaryWriter extends Writer {
+  /** The file extension for the binary format. */
+  public static final String EXTENSION = ".mlb";
+  /** Marks the start and end of the file. */
+  public static final int MAGIC = 0x4D4C4244;
+  /** The version of the format. */
+  public static final int VERSION = 1;
+  /** Flag: the vectors are labeled. */
+  public static final int FLAG_LABELED = 1;
+  /** Flag: the values are stored by row as (column, value) pairs. */
+  public static final int FLAG_SPARSE = 2;
+  /** Flag: the labels are integers rather than strings. */
+  public static final int FLAG_INTEGER_LABELS = 4;
+  /** Stands in for a null Integer. */
+  public static final int NULL_INT = Integer.MIN_VALUE;
+  /** The META section. */
+  public static final int META = 0;
+  /** The LABELS section. */
+  public static final int LABELS = 1;
+  /** The ID_OFFSETS section. */
+  public static final int ID_OFFSETS = 2;
+  /** The ID_BYTES section. */
+  public static final int ID_BYTES = 3;
+  /** The RANKS section. */
+  public static final int RANKS = 4;
+  /** The QIDS section. */
+  public static final int QIDS = 5;
+  /** The ROW_PTR section. */
+  public static final int ROW_PTR = 6;
+  /** The COL_IDX section. */
+  public static final int COL_IDX = 7;
+  /** The VALUES section. */
+  public static final int VALUES = 8;
+  /** The number of sections. */
+  public static final int NUM_SECTIONS = 9;
+  /** The size of the footer. */
+  public static final int FOOTER_SIZE = NUM_SECTIONS * 16 + 20;
+  /** The encoding of strings. */
+  public static final Charset UTF8 = Charset.forName( "UTF-8" );
+
+  @Override
+  public void write( Relation<?> r, File f ) throws IOException {
+    if ( f != null ) {
+      FileOutputStream fos = new FileOutputStream( f );
+      SectionOutput out = new SectionOutput( fos );
+      try {
+        write( r, out );
+      } finally {
+        out.close();
+      }
+    }
+  }
+
+  /**
+   * Write the relation.
+   * @param r
+   * @param out
+   * @throws IOException
+   */
+  protected void write( Relation<?> r, SectionOutput out ) throws IOException {
+    String[] featureNames = DenseRelation.resolveFeatureNames( r );
+    Map<String, Integer> columns = new HashMap<String, Integer>();
+    for ( int j = 0; j < featureNames.length; j++ ) {
+      columns.put( featureNames[j], j );
+    }
+
+    // the labels, and whether every vector has every feature
+    boolean labeled = r instanceof TrainRelation;
+    boolean integerLabels = true;
+    boolean dense = true;
+    Map<String, Integer> labels = new LinkedHashMap<String, Integer>();
+    for ( FeatureVector<?> fv : r ) {
+      if ( fv instanceof LabeledFeatureVector<?> ) {
+        Object label = ( (LabeledFeatureVector<?>) fv ).getLabel();
+        if ( label != null ) {
+          integerLabels &= label instanceof Integer;
+          if ( !labels.containsKey( label.toString() ) ) {
+            labels.put( label.toString(), labels.size() );
+          }
+        }
+      }
+      dense &= fv.size() == featureNames.length;
+    }
+    int flags = ( labeled ? FLAG_LABELED : 0 ) | ( dense ? 0 : FLAG_SPARSE ) |
+      ( labeled && integerLabels ? FLAG_INTEGER_LABELS : 0 );
+
+    out.writeInt( MAGIC );
+    out.writeInt( VERSION );
+
+    long[] offsets = new long[NUM_SECTIONS];
+    long[] lengths = new long[NUM_SECTIONS];
+
+    // META
+    offsets[META] = out.align();
+    writeString( out, r.getName() );
+    out.writeDouble( r.getSigma() == null ? Double.NaN : r.getSigma() );
+    int numAttributes = ( r.getMetadata() == null ) ? 0 :
+      r.getMetadata().size();
+    out.writeInt( numAttributes );
+    if ( numAttributes > 0 ) {
+      for ( Entry<String, Object> e : r.getMetadata().entrySet() ) {
+        writeString( out, e.getKey() );
+        writeString( out, e.getValue() == null ? null :
+          e.getValue().toString() );
+      }
+    }
+    out.writeInt( featureNames.length );
+    for ( String name : featureNames ) {
+      writeString( out, name );
+    }
+    out.writeInt( labels.size() );
+    for ( String label : labels.keySet() ) {
+      writeString( out, label );
+    }
+    lengths[META] = out.position() - offsets[META];
+
+    // LABELS
+    offsets[LABELS] = out.align();
+    if ( labeled ) {
+      for ( FeatureVector<?> fv : r ) {
+        Object label = ( (LabeledFeatureVector<?>) fv ).getLabel();
+        out.writeInt( label == null ? -1 : labels.get( label.toString() ) );
+      }
+    }
+    lengths[LABELS] = out.position() - offsets[LABELS];
+
+    // ID_OFFSETS and ID_BYTES
+    byte[][] ids = new byte[r.size()][];
+    offsets[ID_OFFSETS] = out.align();
+    int idOffset = 0;
+    for ( int i = 0; i < r.size(); i++ ) {
+      String id = r.get( i ).getId();
+      ids[i] = ( id == null ) ? new byte[0] : id.getBytes( UTF8 );
+      out.writeInt( idOffset );
+      idOffset += ids[i].length;
+    }
+    out.writeInt( idOffset );
+    lengths[ID_OFFSETS] = out.position() - offsets[ID_OFFSETS];
+    offsets[ID_BYTES] = out.align();
+    for ( byte[] id : ids ) {
+      out.write( id );
+    }
+    lengths[ID_BYTES] = out.position() - offsets[ID_BYTES];
+
+    // RANKS and QIDS
+    offsets[RANKS] = out.align();
+    for ( FeatureVector<?> fv : r ) {
+      out.writeInt( fv.getRank() == null ? NULL_INT : fv.getRank() );
+    }
+    lengths[RANKS] = out.position() - offsets[RANKS];
+    offsets[QIDS] = out.align();
+    for ( FeatureVector<?> fv : r ) {
+      out.writeInt( fv.getQid() == null ? NULL_INT : fv.getQid() );
+    }
+    lengths[QIDS] = out.position() - offsets[QIDS];
+
+    // the values
+    if ( dense ) {
+      offsets[ROW_PTR] = out.align();
+      offsets[COL_IDX] = out.align();
+      offsets[VALUES] = out.align();
+      for ( FeatureVector<?> fv : r ) {
+        for ( String name : featureNames ) {
+          out.writeDouble( fv.get( name ).doubleValue() );
+        }
+      }
+    } else {
+      offsets[ROW_PTR] = out.align();
+      long ptr = 0;
+      for ( FeatureVector<?> fv : r ) {
+        out.writeLong( ptr );
+        ptr += fv.size();
+      }
+      out.writeLong( ptr );
+      lengths[ROW_PTR] = out.position() - offsets[ROW_PTR];
+
+      offsets[COL_IDX] = out.align();
+      for ( FeatureVector<?> fv : r ) {
+        for ( int col : sortedColumns( fv, columns ) ) {
+          out.writeInt( col );
+        }
+      }
+      lengths[COL_IDX] = out.position() - offsets[COL_IDX];
+
+      offsets[VALUES] = out.align();
+      for ( FeatureVector<?> fv : r ) {
+        for ( int col : sortedColumns( fv, columns ) ) {
+          out.writeDouble( fv.get( featureNames[col] ).doubleValue() );
+        }
+      }
+    }
+    lengths[VALUES] = out.position() - offsets[VALUES];
+
+    // footer
+    out.align();
+    for ( int s = 0; s < NUM_SECTIONS; s++ ) {
+      out.writeLong( offsets[s] );
+      out.writeLong( lengths[s] );
+    }
+    out.writeInt( flags );
+    out.writeInt( r.size() );
+    out.writeInt( featureNames.length );
+    out.writeInt( VERSION );
+    out.writeInt( MAGIC );
+  }
+
+  /**
+   * Get the columns of the vector's features, in ascending order.
+   * @param fv
+   * @param columns
+   * @return
+   */
+  protected int[] sortedColumns( FeatureVector<?> fv,
+      Map<String, Integer> columns ) {
+    int[] cols = new int[fv.size()];
+    int i = 0;
+    for ( String name : fv.keySet() ) {
+      cols[i++] = columns.get( name );
+    }
+    Arrays.sort( cols );
+
+    return cols;
+  }
+
+  /**
+   * Write a string as its length in bytes (-1 for null) then its UTF-8
+   * bytes.
+   * @param out
+   * @param s
+   * @throws IOException
+   */
+  protected void writeString( DataOutputStream out, String s )
+    throws IOException {
+    if ( s == null ) {
+      out.writeInt( -1 );
+    } else {
+      byte[] bytes = s.getBytes( UTF8 );
+      out.writeInt( bytes.length );
+      out.write( bytes );
+    }
+  }
+
+  /**
+   * A buffered data stream that knows its position in the file.
+   */
+  protected static class SectionOutput extends DataOutputStream {
+
+    /**
+     * Default constructor.
+     * @param fos
+     */
+    public SectionOutput( FileOutputStream fos ) {
+      super( new CountingOutputStream( new BufferedOutputStream( fos,
+          1 << 16 ) ) );
+    }
+
+    /**
+     * Get the number of bytes written.
+     * @return
+     */
+    public long position() {
+      return ( (CountingOutputStream) out ).count;
+    }
+
+    /**
+     * Pad with zeros to a multiple of 8 bytes.
+     * @return The new position.
+     * @throws IOException
+     */
+    public long align() throws IOException {
+      while ( position() % 8 != 0 ) {
+        write( 0 );
+      }
+      return position();
+    }
+  }
+
+  /**
+   * Counts the bytes passed through it (as a long, since the files may be
+   * larger than DataOutputStream.size() can count).
+   */
+  protected static class CountingOutputStream extends FilterOutputStream {
+    /** The number of bytes written. */
+    protected long count;
+
+    /**
+     * Default constructor.
+     * @param out
+     */
+    public CountingOutputStream( OutputStream out ) {
+      super( out );
+    }
+
+    @Override
+    public void write( int b ) throws IOException {
+      out.write( b );
+      count++;
+    }
+
+    @Override
+    public void write( byte[] b, int off, int len ) throws IOException {
+      out.write( b, off, len );
+      count += len;
+    }
+  }
+}
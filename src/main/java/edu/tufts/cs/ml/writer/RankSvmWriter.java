@@ -4,11 +4,12 @@ import java.io.BufferedWriter;
 import java.io.File;
 import java.io.FileWriter;
 import java.io.IOException;
+import java.util.Map;
 
-import edu.tufts.cs.ml.Feature;
 import edu.tufts.cs.ml.FeatureVector;
 import edu.tufts.cs.ml.LabeledFeatureVector;
 import edu.tufts.cs.ml.Relation;
+import edu.tufts.cs.ml.SparseVector;
 
 public class RankSvmWriter extends Writer {
 
@@ -18,6 +19,8 @@ public class RankSvmWriter extends Writer {
       FileWriter fw = new FileWriter( f );
       BufferedWriter writer = new BufferedWriter( fw );
 
+      String[] names = SvmLightWriter.attributeNames( r.getMetadata() );
+      Map<String, Integer> columns = SparseVector.indexColumns( names );
       for ( FeatureVector<?> fv : r ) {
         StringBuilder sb = new StringBuilder();
         if ( (fv.getRank() != null || fv.getQid() != null ) ) {
@@ -29,12 +32,7 @@ public class RankSvmWriter extends Writer {
         } else { // no rank and no label -- test instance; set dummy label
           sb.append( "0 " );
         }
-        for ( String feature : r.getMetadata().keySet() ) {
-          Feature<?> value = fv.get( feature );
-          if ( value != null ) {
-            sb.append( feature + ":" + value.toString() + " " );
-          }
-        }
+        SvmLightWriter.appendFeatures( names, columns, fv, sb );
         //sb.append( " # " + fv.getId() + "\n" );
         sb.append( "\n" );
         writer.append( sb );
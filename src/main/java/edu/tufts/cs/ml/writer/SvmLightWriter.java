@@ -4,12 +4,14 @@ import java.io.BufferedWriter;
 import java.io.File;
 import java.io.FileWriter;
 import java.io.IOException;
+import java.util.Arrays;
+import java.util.Map;
 
-import edu.tufts.cs.ml.Feature;
 import edu.tufts.cs.ml.FeatureVector;
 import edu.tufts.cs.ml.LabeledFeatureVector;
 import edu.tufts.cs.ml.Metadata;
 import edu.tufts.cs.ml.Relation;
+import edu.tufts.cs.ml.SparseVector;
 
 public class SvmLightWriter extends Writer {
 
@@ -18,24 +20,7 @@ public class SvmLightWriter extends Writer {
     if ( f != null & r.size() > 0 ) {
       FileWriter fw = new FileWriter( f );
       BufferedWriter writer = new BufferedWriter( fw );
-
-      for ( FeatureVector<?> fv : r ) {
-        StringBuilder sb = new StringBuilder();
-        if ( fv instanceof LabeledFeatureVector<?> ) {
-          sb.append( ( (LabeledFeatureVector<?>) fv ).getLabel().toString() + " " );
-        } else { // no rank and no label -- test instance; set dummy label
-          sb.append( "0 " );
-        }
-        for ( String feature : r.getMetadata().keySet() ) {
-          Feature<?> value = fv.get( feature );
-          if ( value != null ) {
-            sb.append( feature + ":" + value.toString() + " " );
-          }
-        }
-        //sb.append( " # " + fv.getId() + "\n" );
-        sb.append( "\n" );
-        writer.append( sb.toString() );
-      }
+      write( r, writer );
 
       // close the streams
       writer.close();
@@ -44,29 +29,97 @@ public class SvmLightWriter extends Writer {
   }
 
   /**
-   * Write one feature vector to an appendable form.
+   * Write every feature vector of the relation to an appendable form. The
+   * columns are resolved from the Metadata once for the whole relation.
+   * @param r
+   * @param a
+   * @throws IOException
+   */
+  public void write( Relation<?> r, Appendable a ) throws IOException {
+    String[] names = attributeNames( r.getMetadata() );
+    Map<String, Integer> columns = SparseVector.indexColumns( names );
+    StringBuilder sb = new StringBuilder();
+    for ( FeatureVector<?> fv : r ) {
+      sb.setLength( 0 );
+      appendLine( names, columns, fv, sb );
+      a.append( sb );
+    }
+  }
+
+  /**
+   * Write one feature vector to an appendable form. This resolves the
+   * columns from the Metadata on each call; to write many vectors, use
+   * write( Relation, Appendable ).
    * @param m
    * @param fv
    * @param a
    * @throws IOException
    */
   public void write( Metadata m, FeatureVector<?> fv, Appendable a ) throws IOException {
+    String[] names = attributeNames( m );
     StringBuilder sb = new StringBuilder();
+    appendLine( names, SparseVector.indexColumns( names ), fv, sb );
+    a.append( sb );
+  }
+
+  /**
+   * Append the vector's line: its label (0 for a test instance) and its
+   * features.
+   * @param names The attribute names, in order.
+   * @param columns Mapping from the attribute name to its position.
+   * @param fv
+   * @param sb
+   */
+  protected static void appendLine( String[] names,
+      Map<String, Integer> columns, FeatureVector<?> fv, StringBuilder sb ) {
     if ( fv instanceof LabeledFeatureVector<?> ) {
       sb.append( ( (LabeledFeatureVector<?>) fv ).getLabel().toString() + " " );
     } else { // no rank and no label -- test instance; set dummy label
       sb.append( "0 " );
     }
-    for ( String feature : m.keySet() ) {
-      Feature<?> value = fv.get( feature );
-      if ( value != null ) {
-        sb.append( feature + ":" + value.toString() + " " );
-      }
-    }
+    appendFeatures( names, columns, fv, sb );
     //sb.append( " # " + fv.getId() + "\n" );
     sb.append( "\n" );
-    
-    a.append( sb.toString() );
+  }
+
+  /**
+   * Get the attribute names, in order.
+   * @param m
+   * @return
+   */
+  protected static String[] attributeNames( Metadata m ) {
+    return m.keySet().toArray( new String[m.size()] );
+  }
+
+  /**
+   * Append the vector's features that are attributes, in attribute order,
+   * as "name:value " pairs. Only the vector's own features are visited, so
+   * this costs time in proportion to its non-zeros rather than to the number
+   * of attributes.
+   * @param names The attribute names, in order.
+   * @param columns Mapping from the attribute name to its position.
+   * @param fv
+   * @param sb
+   */
+  protected static void appendFeatures( String[] names,
+      Map<String, Integer> columns, FeatureVector<?> fv, StringBuilder sb ) {
+    int[] cols = new int[fv.size()];
+    int n = 0;
+    for ( String feature : fv.keySet() ) {
+      Integer col = columns.get( feature );
+      if ( col != null ) {
+        cols[n++] = col;
+      }
+    }
+    Arrays.sort( cols, 0, n );
+
+    for ( int i = 0; i < n; i++ ) {
+      String feature = names[cols[i]];
+      sb.append( feature );
+      sb.append( ":" );
+      sb.append( fv.get( feature ).toString() );
+      sb.append( " " );
+    }
   }
 
 }
@@ -4,9 +4,27 @@ import java.io.File;
 import java.io.IOException;
 
 import edu.tufts.cs.ml.Relation;
+import edu.tufts.cs.ml.reader.Reader;
 
 public abstract class Writer {
 
+  /**
+   * Get a writer for the file by its extension: BinaryWriter for the binary
+   * format, SvmLightWriter for SVMlight files, and ArffWriter otherwise.
+   * @param f
+   * @return
+   */
+  public static Writer forFile( File f ) {
+    String name = f.getName().toLowerCase();
+    if ( name.endsWith( BinaryWriter.EXTENSION ) ) {
+      return new BinaryWriter();
+    } else if ( name.endsWith( Reader.SVM_LIGHT_EXTENSION ) ) {
+      return new SvmLightWriter();
+    }
+
+    return new ArffWriter();
+  }
+
   /**
    * Write the output to the provided File.
    * @param results
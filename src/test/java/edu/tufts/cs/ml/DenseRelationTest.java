@@ -0,0 +1,88 @@
+package edu.tufts.cs.ml;
+
+import java.io.File;
+import java.io.IOException;
+
+import junit.framework.TestCase;
+
+import org.junit.Test;
+
+import edu.tufts.cs.ml.reader.ArffReader;
+
+public class DenseRelationTest extends TestCase {
+
+  /**
+   * Test that the dense rows match the map-based feature vectors.
+   * @throws IOException
+   */
+  @SuppressWarnings( "unchecked" )
+  @Test
+  public void testDenseRelation() throws IOException {
+    File trainFile = new File( "src/test/resources/train.arff" );
+    ArffReader<String> reader = new ArffReader<String>();
+    TrainRelation<String> train = (TrainRelation<String>) reader.read(
+        trainFile );
+
+    DenseRelation<LabeledFeatureVector<String>> dense = train.toDense();
+    assertEquals( train.size(), dense.size() );
+    assertEquals( 4, dense.numFeatures() );
+    assertEquals( 0, dense.indexOf( "sepal_length" ) );
+    assertEquals( -1, dense.indexOf( "CLASS_LABEL" ) );
+
+    for ( int i = 0; i < dense.size(); i++ ) {
+      LabeledFeatureVector<String> fv = dense.getFeatureVector( i );
+      assertSame( train.get( i ), fv );
+      for ( String feat : fv.keySet() ) {
+        double expected = (Double) fv.get( feat ).getValue();
+        assertEquals( expected, dense.get( i, dense.indexOf( feat ) ) );
+      }
+    }
+  }
+
+  /**
+   * Test that once released, the rows are rebuilt from the dense values with
+   * the same id, label and features.
+   * @throws IOException
+   */
+  @SuppressWarnings( "unchecked" )
+  @Test
+  public void testRelease() throws IOException {
+    File trainFile = new File( "src/test/resources/train.arff" );
+    ArffReader<String> reader = new ArffReader<String>();
+    TrainRelation<String> train = (TrainRelation<String>) reader.read(
+        trainFile );
+
+    DenseRelation<LabeledFeatureVector<String>> dense =
+        train.toDense().release();
+    assertTrue( dense.isReleased() );
+    assertNull( dense.getRelation() );
+    assertEquals( train.size(), dense.size() );
+    for ( int i = 0; i < dense.size(); i++ ) {
+      LabeledFeatureVector<String> fv = dense.getFeatureVector( i );
+      assertNotSame( train.get( i ), fv );
+      assertEquals( train.get( i ), fv );
+      assertEquals( train.get( i ).getLabel(), fv.getLabel() );
+    }
+    // the Relation's own rows are untouched
+    assertEquals( 4, train.get( 0 ).size() );
+  }
+
+  /**
+   * Test the conversion of absent and missing features.
+   */
+  @Test
+  public void testAbsentAndMissing() {
+    Metadata m = new Metadata();
+    m.put( "one", "numeric" );
+    m.put( "two", "numeric" );
+    TestRelation<String> test = new TestRelation<String>( "test", m );
+    UnlabeledFeatureVector<String> fv =
+        new UnlabeledFeatureVector<String>( "t1" );
+    fv.put( "two", new MissingFeature( "two" ) );
+    test.add( fv );
+
+    double[] row = test.toDense().getRow( 0 );
+    assertEquals( 0.0, row[0] );
+    assertTrue( Double.isNaN( row[1] ) );
+  }
+}
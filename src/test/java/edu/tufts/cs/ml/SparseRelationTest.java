@@ -0,0 +1,80 @@
+package edu.tufts.cs.ml;
+
+import java.io.File;
+import java.io.IOException;
+
+import junit.framework.TestCase;
+
+import org.junit.Test;
+
+import edu.tufts.cs.ml.reader.ArffReader;
+import edu.tufts.cs.ml.util.VectorMath;
+
+public class SparseRelationTest extends TestCase {
+
+  /**
+   * Test that the sparse rows match the dense ones.
+   * @throws IOException
+   */
+  @SuppressWarnings( "unchecked" )
+  @Test
+  public void testSparseRelation() throws IOException {
+    File trainFile = new File( "src/test/resources/train.arff" );
+    ArffReader<String> reader = new ArffReader<String>();
+    TrainRelation<String> train = (TrainRelation<String>) reader.read(
+        trainFile );
+
+    SparseRelation<LabeledFeatureVector<String>> sparse = train.toSparse();
+    DenseRelation<LabeledFeatureVector<String>> dense = train.toDense();
+    assertEquals( dense.size(), sparse.size() );
+    assertEquals( dense.numFeatures(), sparse.numFeatures() );
+    assertEquals( -1, sparse.indexOf( "CLASS_LABEL" ) );
+
+    for ( int i = 0; i < sparse.size(); i++ ) {
+      assertSame( train.get( i ), sparse.getFeatureVector( i ) );
+      for ( int j = 0; j < sparse.numFeatures(); j++ ) {
+        assertEquals( dense.get( i, j ), sparse.get( i, j ) );
+      }
+      SparseVector row = sparse.getRow( i );
+      assertEquals( sparse.toSparse( train.get( i ) ), row );
+      assertEquals( VectorMath.norm( dense.getData(), dense.offset( i ),
+          dense.numFeatures() ), sparse.norm( i ), 1e-12 );
+      for ( int k = 0; k < sparse.size(); k++ ) {
+        assertEquals( VectorMath.dot( dense.getData(), dense.offset( i ),
+            dense.getData(), dense.offset( k ), dense.numFeatures() ),
+            row.dot( sparse.getRow( k ) ), 1e-12 );
+        assertEquals( VectorMath.squaredEuclidean( dense.getData(),
+            dense.offset( i ), dense.getData(), dense.offset( k ),
+            dense.numFeatures() ), sparse.squaredEuclidean( k, row ), 1e-12 );
+      }
+    }
+  }
+
+  /**
+   * Test that only the non-zeros are stored.
+   */
+  @Test
+  public void testNonZeros() {
+    Metadata m = new Metadata();
+    m.put( "one", "numeric" );
+    m.put( "two", "numeric" );
+    m.put( "three", "numeric" );
+    TestRelation<String> test = new TestRelation<String>( "test", m );
+    UnlabeledFeatureVector<String> fv =
+        new UnlabeledFeatureVector<String>( "t1" );
+    fv.put( "three", new DoubleFeature( "three", 2.0 ) );
+    fv.put( "one", new DoubleFeature( "one", 0.0 ) );
+    fv.put( "two", new MissingFeature( "two" ) );
+    test.add( fv );
+    test.add( new UnlabeledFeatureVector<String>( "t2" ) );
+
+    SparseRelation<UnlabeledFeatureVector<String>> sparse = test.toSparse();
+    assertEquals( 2, sparse.nnz() );
+    assertEquals( 2, sparse.nnz( 0 ) );
+    assertEquals( 0, sparse.nnz( 1 ) );
+    assertEquals( 1, sparse.getColumnIndices()[0] );
+    assertTrue( Double.isNaN( sparse.get( 0, 1 ) ) );
+    assertEquals( 2.0, sparse.get( 0, 2 ) );
+    assertEquals( 0.0, sparse.get( 1, 2 ) );
+  }
+}
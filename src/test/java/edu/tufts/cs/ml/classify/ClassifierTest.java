@@ -1,6 +1,7 @@
 package edu.tufts.cs.ml.classify;
 import java.io.File;
 import java.io.IOException;
+import java.util.Collections;
 import java.util.HashSet;
 import java.util.List;
 import java.util.Set;
@@ -172,6 +173,46 @@ public class ClassifierTest extends TestCase {
     assertEquals( winner, "versicolor" );
   }
 
+  /**
+   * Test that selecting the nearest distances with a bounded heap gives the
+   * same neighbors, ties included, as sorting every distance.
+   * @throws IOException
+   * @throws IncomparableFeatureVectorException
+   */
+  @SuppressWarnings( "unchecked" )
+  @Test
+  public void testSelectNearestDistances() throws IOException,
+    IncomparableFeatureVectorException {
+
+    File trainFile = new File( "src/test/resources/train.arff" );
+    ArffReader<String> reader = new ArffReader<String>();
+    TrainRelation<String> train = (TrainRelation<String>) reader.read(
+        trainFile );
+
+    File testFile = new File( "src/test/resources/test.arff" );
+    TestRelation<String> test = (TestRelation<String>) reader.read( testFile );
+
+    KnnClassifier<String> c = new KnnClassifier<String>();
+    c.train( train );
+    TreeMap<Double, List<String>> dists = c.calculateDistances( test.get( 0 ) );
+    double[] query = c.toQuery( test.get( 0 ) );
+
+    for ( int k = 1; k < train.size(); k++ ) {
+      TreeMap<Double, List<String>> expected = c.getNearestNeighbors( dists,
+          k );
+      TreeMap<Double, List<String>> actual = c.getNearestNeighbors(
+          c.selectNearestDistances( query, k ), k );
+      assertEquals( expected.keySet(), actual.keySet() );
+      for ( Double dist : expected.keySet() ) {
+        List<String> e = expected.get( dist );
+        List<String> a = actual.get( dist );
+        Collections.sort( e );
+        Collections.sort( a );
+        assertEquals( e, a );
+      }
+    }
+  }
+
   /**
    * Test the function that classifies the test vector.
    * @throws IOException
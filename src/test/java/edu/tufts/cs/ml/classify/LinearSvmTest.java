@@ -0,0 +1,289 @@
+package edu.tufts.cs.ml.classify;
+
+import java.io.ByteArrayInputStream;
+import java.io.File;
+import java.io.FileWriter;
+import java.io.IOException;
+import java.util.List;
+
+import junit.framework.TestCase;
+
+import org.junit.Test;
+
+import com.google.common.collect.TreeMultimap;
+
+import edu.tufts.cs.ml.DoubleFeature;
+import edu.tufts.cs.ml.FeatureVector;
+import edu.tufts.cs.ml.LabeledFeatureVector;
+import edu.tufts.cs.ml.TestRelation;
+import edu.tufts.cs.ml.TrainRelation;
+import edu.tufts.cs.ml.UnlabeledFeatureVector;
+import edu.tufts.cs.ml.exception.IncomparableFeatureVectorException;
+import edu.tufts.cs.ml.reader.Reader;
+import edu.tufts.cs.ml.reader.SvmLightReader;
+
+
+public class LinearSvmTest extends TestCase {
+  /** Two classes, separable on features 1 and 2. */
+  protected static final String CLASSES =
+      "a 1 1:2 2:0.5 3:1\n" +
+      "b 1 1:1.5 2:1 3:-1\n" +
+      "c 1 1:3 2:0.1\n" +
+      "d 1 1:2.5 2:0.7 3:0.5\n" +
+      "e -1 1:-1 2:1.2 3:1\n" +
+      "f -1 1:-2 2:0.3\n" +
+      "g -1 1:-1.5 2:0.9 3:-0.5\n" +
+      "h -1 1:-2.5 2:0.4 3:0.2";
+
+  /**
+   * Read a relation in svm_light's format.
+   * @param input
+   * @param test
+   * @return
+   * @throws IOException
+   */
+  protected Object read( String input, boolean test ) throws IOException {
+    Reader<String> reader = new SvmLightReader<String>();
+    return reader.read( new ByteArrayInputStream( input.getBytes( "UTF-8" ) ),
+        test );
+  }
+
+  /**
+   * Test that the classifier separates separable classes with a margin,
+   * in-process, and that the SvmLightClassifier ranks by its decisions.
+   * @throws IOException
+   * @throws IncomparableFeatureVectorException
+   */
+  @SuppressWarnings( "unchecked" )
+  @Test
+  public void testClassifier() throws IOException,
+    IncomparableFeatureVectorException {
+    TrainRelation<Integer> train = (TrainRelation<Integer>) read( CLASSES,
+        false );
+    LinearSvm svm = LinearSvm.trainClassifier( train, 10.0 );
+    List<Double> decisions = svm.decisions( train );
+    for ( int i = 0; i < train.size(); i++ ) {
+      // the support vectors are at about 1
+      assertEquals( train.get( i ).getLabel() > 0, decisions.get( i ) > 0 );
+      assertTrue( Math.abs( decisions.get( i ) ) > .9 );
+    }
+    assertTrue( svm.getWeights()[0] > 0 );
+
+    TestRelation<Integer> test = (TestRelation<Integer>) read( CLASSES, true );
+    SvmLightClassifier c = new SvmLightClassifier( 10.0 );
+    c.train( train );
+    TreeMultimap<Double, FeatureVector<Integer>> ranks = c.rank( test );
+    assertEquals( test.size(), ranks.size() );
+    for ( FeatureVector<Integer> fv : test ) {
+      // the negatives score lowest, so rank first
+      assertEquals( fv.getId().compareTo( "e" ) >= 0, fv.getRank() <= 4 );
+    }
+
+    LibSvmClassifier lib = new LibSvmClassifier();
+    lib.train( train );
+    for ( double p : lib.rank( test ).keySet() ) {
+      assertTrue( ( p > 1 && p <= 2 ) || ( p < -1 && p >= -2 ) );
+    }
+  }
+
+  /**
+   * Test that the ranker orders each query by its labels and classifies by
+   * them, and that the pairwise ranker puts the positives above the
+   * negatives.
+   * @throws IOException
+   * @throws IncomparableFeatureVectorException
+   */
+  @SuppressWarnings( "unchecked" )
+  @Test
+  public void testRanker() throws IOException,
+    IncomparableFeatureVectorException {
+    String input =
+        "3 qid:1 1:1 2:1 3:0 4:0.2\n" +
+        "2 qid:1 1:0 2:0 3:1 4:0.1\n" +
+        "1 qid:1 1:0 2:1 3:0 4:0.4\n" +
+        "2 qid:2 1:1 2:0 3:1 4:0.4\n" +
+        "1 qid:2 1:0 2:0 3:1 4:0.1\n" +
+        "3 qid:3 1:1 2:1 3:0 4:0.3\n" +
+        "1 qid:3 1:0 2:1 3:1 4:0.5\n";
+    TrainRelation<Integer> train = (TrainRelation<Integer>) read( input,
+        false );
+    LinearSvm svm = LinearSvm.trainRanker( train, 100.0 );
+    int numPairs = 0;
+    for ( LabeledFeatureVector<Integer> a : train ) {
+      for ( LabeledFeatureVector<Integer> b : train ) {
+        if ( a.getQid().equals( b.getQid() ) &&
+            a.getLabel() > b.getLabel() ) {
+          assertTrue( svm.decision( a ) > svm.decision( b ) );
+          numPairs++;
+        }
+      }
+    }
+    assertEquals( 5, numPairs );
+    // the pairs are indexed by block; an empty block has none
+    assertEquals( 0, LinearSvm.blockOf( new long[] { 0, 3, 3, 5 }, 2 ) );
+    assertEquals( 2, LinearSvm.blockOf( new long[] { 0, 3, 3, 5 }, 3 ) );
+
+    RankSvmClassifier ranker = new RankSvmClassifier( 100.0 );
+    ranker.train( train );
+    TestRelation<Integer> test = (TestRelation<Integer>) read( input, true );
+    for ( int i = 0; i < test.size(); i++ ) {
+      UnlabeledFeatureVector<Integer> ufv = test.get( i );
+      ranker.classify( ufv );
+      // scores are only compared within a query, so the middle label can
+      // fall on either side of its thresholds
+      int label = train.get( i ).getLabel();
+      if ( label != 2 ) {
+        assertEquals( label, (int) ufv.getClassification() );
+      }
+    }
+    // certainty is the distance to the nearest threshold
+    assertEquals( 2, ranker.thresholds.length );
+    UnlabeledFeatureVector<Integer> near = test.get( 0 );
+    double score = ranker.score( near );
+    assertEquals( Math.min( Math.abs( score - ranker.thresholds[0] ),
+        Math.abs( score - ranker.thresholds[1] ) ), ranker.getCertainty(
+            near ), 1e-12 );
+    // the first instance scores just above the top threshold, the fourth
+    // well above it
+    assertTrue( ranker.getCertainty( near ) < ranker.getCertainty(
+        test.get( 3 ) ) );
+
+    TrainRelation<Integer> classes = (TrainRelation<Integer>) read( CLASSES,
+        false );
+    LinearSvm pairwise = LinearSvm.trainPairwise( classes,
+        SvmLightPairwiseTransformClassifier.POS,
+        SvmLightPairwiseTransformClassifier.NEG, 10.0 );
+    assertEquals( 0.0, pairwise.getBias() );
+    for ( int i = 0; i < 4; i++ ) {
+      for ( int j = 4; j < 8; j++ ) {
+        assertTrue( pairwise.decision( classes.get( i ) ) >
+          pairwise.decision( classes.get( j ) ) );
+      }
+    }
+  }
+
+  /**
+   * Write the text to a temporary file.
+   * @param text
+   * @return
+   * @throws IOException
+   */
+  protected File write( String text ) throws IOException {
+    File f = File.createTempFile( "model", "" );
+    f.deleteOnExit();
+    FileWriter fw = new FileWriter( f );
+    fw.write( text );
+    fw.close();
+    return f;
+  }
+
+  /**
+   * Test that linear models are read from svm_light's and libsvm's model
+   * files into weights that score as the binaries would, and that the
+   * classifiers classify and measure certainty with them; and that
+   * svm-predict's probabilities are read for the predicted label.
+   * @throws IOException
+   * @throws IncomparableFeatureVectorException
+   */
+  @Test
+  public void testModelFiles() throws IOException,
+    IncomparableFeatureVectorException {
+    UnlabeledFeatureVector<Integer> x = new UnlabeledFeatureVector<Integer>(
+        "x" );
+    x.put( "1", new DoubleFeature( "1", 1.0 ) );
+    x.put( "2", new DoubleFeature( "2", 1.0 ) );
+    x.put( "3", new DoubleFeature( "3", 4.0 ) );
+
+    LinearSvm light = LinearSvm.readSvmLightModel( write(
+        "SVM-light Version V6.02\n" +
+        "0 # kernel type\n" +
+        "3 # kernel parameter -d \n" +
+        "1 # kernel parameter -g \n" +
+        "1 # kernel parameter -s \n" +
+        "1 # kernel parameter -r \n" +
+        "empty# kernel parameter -u \n" +
+        "3 # highest feature index \n" +
+        "4 # number of training documents \n" +
+        "3 # number of support vectors plus 1 \n" +
+        "0.5 # threshold b, each following line is a SV (starting with " +
+        "alpha*y)\n" +
+        "0.25 1:2 3:1 #\n" +
+        "-0.5 2:1 3:0.5 #\n" ) );
+    // w = (0.5, -0.5, 0), b = 0.5
+    assertEquals( -0.5, light.getBias() );
+    assertEquals( -0.5, light.decision( x ), 1e-12 );
+
+    SvmLightClassifier classifier = new SvmLightClassifier( 1.0 );
+    classifier.svm = light;
+    classifier.classify( x );
+    assertEquals( -1, (int) x.getClassification() );
+    assertEquals( 0.5, classifier.getCertainty( x ), 1e-12 );
+
+    try {
+      LinearSvm.readSvmLightModel( write( "SVM-light Version V6.02\n" +
+          "2 # kernel type\n" ) );
+      fail();
+    } catch ( IOException e ) {
+      // expected: not linear
+    }
+
+    // the first label is -1, so the weights, rho and probB flip
+    double[] sigmoid = new double[2];
+    LinearSvm lib = LinearSvm.readLibSvmModel( write(
+        "svm_type c_svc\n" +
+        "kernel_type linear\n" +
+        "nr_class 2\n" +
+        "total_sv 2\n" +
+        "rho 0.3\n" +
+        "label -1 1\n" +
+        "probA -2\n" +
+        "probB 0.1\n" +
+        "nr_sv 1 1\n" +
+        "SV\n" +
+        "0.5 1:2 2:1 \n" +
+        "-0.5 1:1 3:1 \n" ), sigmoid );
+    assertEquals( 1.3, lib.decision( x ), 1e-12 );
+
+    LibSvmClassifier libClassifier = new LibSvmClassifier();
+    libClassifier.svm = lib;
+    libClassifier.sigmoid = sigmoid;
+    libClassifier.classify( x );
+    assertEquals( 1, (int) x.getClassification() );
+    // P(-1) = 1 / (1 + exp(-2 * -1.3 + 0.1)), as svm-predict gives it
+    double p = 1 - 1 / ( 1 + Math.exp( 2.7 ) );
+    assertEquals( p, libClassifier.probability( x ), 1e-12 );
+    assertEquals( 2 * p - 1, libClassifier.getCertainty( x ), 1e-12 );
+
+    // svm-predict's columns are in the model's label order
+    List<Double> probabilities = LibSvmClassifier.readProbabilities( write(
+        "labels -1 1\n" +
+        "-1 0.8 0.2\n" +
+        "1 0.3 0.7\n" ) );
+    assertEquals( -1.8, probabilities.get( 0 ), 1e-12 );
+    assertEquals( 1.7, probabilities.get( 1 ), 1e-12 );
+  }
+
+  /**
+   * Test that the pairwise classifier classifies its training instances by
+   * the threshold between the classes.
+   * @throws IOException
+   * @throws IncomparableFeatureVectorException
+   */
+  @SuppressWarnings( "unchecked" )
+  @Test
+  public void testPairwiseClassify() throws IOException,
+    IncomparableFeatureVectorException {
+    TrainRelation<Integer> train = (TrainRelation<Integer>) read( CLASSES,
+        false );
+    TestRelation<Integer> test = (TestRelation<Integer>) read( CLASSES, true );
+    SvmLightPairwiseTransformClassifier pairwise =
+        new SvmLightPairwiseTransformClassifier( 10.0 );
+    pairwise.train( train );
+    for ( int i = 0; i < test.size(); i++ ) {
+      UnlabeledFeatureVector<Integer> ufv = test.get( i );
+      pairwise.classify( ufv );
+      assertEquals( train.get( i ).getLabel(), ufv.getClassification() );
+      assertTrue( pairwise.getCertainty( ufv ) > 0 );
+    }
+  }
+}
@@ -0,0 +1,108 @@
+package edu.tufts.cs.ml.classify;
+
+import java.io.File;
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Map;
+
+import junit.framework.TestCase;
+
+import org.junit.Test;
+
+import edu.tufts.cs.ml.DoubleFeature;
+import edu.tufts.cs.ml.TestRelation;
+import edu.tufts.cs.ml.TrainRelation;
+import edu.tufts.cs.ml.UnlabeledFeatureVector;
+import edu.tufts.cs.ml.exception.IncomparableFeatureVectorException;
+import edu.tufts.cs.ml.reader.ArffReader;
+
+
+public class NaiveBayesClassifierTest extends TestCase {
+  /** The data set. */
+  protected static final File WINE = new File(
+      "src/main/resources/wine-prime.arff" );
+
+  /**
+   * Test that classifying the relation as a batch gives the same labels as
+   * one at a time, and that the posteriors are probabilities.
+   * @throws IOException
+   * @throws IncomparableFeatureVectorException
+   */
+  @SuppressWarnings( "unchecked" )
+  @Test
+  public void testBatch() throws IOException,
+    IncomparableFeatureVectorException {
+    ArffReader<String> reader = new ArffReader<String>();
+    TrainRelation<String> train = (TrainRelation<String>) reader.read( WINE );
+    TestRelation<String> batch = (TestRelation<String>) reader.read( WINE,
+        true );
+    TestRelation<String> single = (TestRelation<String>) reader.read( WINE,
+        true );
+
+    NaiveBayesClassifier<String> nb = new NaiveBayesClassifier<String>();
+    nb.train( train );
+    nb.classify( batch );
+    double[] certainties = nb.getCertainties( batch );
+    double[][] scores = nb.score( batch );
+    assertEquals( 3, nb.getLabels().size() );
+
+    int correct = 0;
+    for ( int i = 0; i < single.size(); i++ ) {
+      UnlabeledFeatureVector<String> ufv = single.get( i );
+      nb.classify( ufv );
+      assertEquals( ufv.getClassification(), batch.get( i )
+          .getClassification() );
+      assertEquals( nb.getCertainty( ufv ), certainties[i], 1e-12 );
+      assertEquals( nb.getLabels().get( NaiveBayesClassifier.argMax(
+          scores[i] ) ), ufv.getClassification() );
+      if ( ufv.getClassification().equals( train.get( i ).getLabel() ) ) {
+        correct++;
+      }
+
+      double total = 0.0;
+      for ( double p : nb.calculateMLE( ufv ).values() ) {
+        total += p;
+      }
+      assertEquals( 1.0, total, 1e-9 );
+      assertTrue( certainties[i] >= 0 && certainties[i] <= 1 );
+    }
+    assertTrue( correct > .9 * single.size() );
+  }
+
+  /**
+   * Test that an instance far from every class, whose pdfs multiply to 0,
+   * still has a label and a certainty.
+   * @throws IOException
+   * @throws IncomparableFeatureVectorException
+   */
+  @SuppressWarnings( "unchecked" )
+  @Test
+  public void testUnderflow() throws IOException,
+    IncomparableFeatureVectorException {
+    ArffReader<String> reader = new ArffReader<String>();
+    TrainRelation<String> train = (TrainRelation<String>) reader.read( WINE );
+    TestRelation<String> test = (TestRelation<String>) reader.read( WINE,
+        true );
+    NaiveBayesClassifier<String> nb = new NaiveBayesClassifier<String>();
+    nb.train( train );
+
+    UnlabeledFeatureVector<String> far = test.get( 0 );
+    List<String> names = new ArrayList<String>( far.keySet() );
+    for ( String name : names ) {
+      far.put( name, new DoubleFeature( name, far.get( name ).doubleValue() *
+          40 ) );
+    }
+
+    Map<String, Double> posteriors = nb.calculateMLE( far );
+    for ( double p : posteriors.values() ) {
+      assertFalse( Double.isNaN( p ) );
+    }
+    for ( double logProb : nb.score( far ) ) {
+      assertTrue( logProb < Math.log( Double.MIN_VALUE ) );
+    }
+    nb.classify( far );
+    assertNotNull( far.getClassification() );
+    assertTrue( nb.getCertainty( far ) > 0 );
+  }
+}
@@ -0,0 +1,152 @@
+package edu.tufts.cs.ml.classify;
+
+import java.io.ByteArrayInputStream;
+import java.io.IOException;
+import java.util.HashSet;
+import java.util.Set;
+
+import junit.framework.TestCase;
+
+import org.junit.Test;
+
+import edu.tufts.cs.ml.LabeledFeatureVector;
+import edu.tufts.cs.ml.SparseRelation;
+import edu.tufts.cs.ml.TrainRelation;
+import edu.tufts.cs.ml.reader.SvmLightReader;
+
+
+public class PairSamplerTest extends TestCase {
+
+  /**
+   * Test that the stratified pairs give each positive the same number of
+   * distinct negatives within the budget, never more than the budget, and
+   * that the hard negatives are added on top of half the budget.
+   */
+  @Test
+  public void testSample() {
+    int[] pos = { 0, 1, 2, 3 };
+    int[] neg = new int[50];
+    for ( int j = 0; j < neg.length; j++ ) {
+      neg[j] = j + 4;
+    }
+
+    assertTrue( new PairSampler().samplesAll( pos, neg ) );
+    // past the default most pairs, the default samples them
+    assertFalse( new PairSampler().samplesAll( new int[4000],
+        new int[4000] ) );
+    assertTrue( new PairSampler( PairSampler.Strategy.STRATIFIED, 200, 1 )
+        .samplesAll( pos, neg ) );
+    PairSampler stratified = new PairSampler(
+        PairSampler.Strategy.STRATIFIED, 40, 1 );
+    assertFalse( stratified.mines( pos, neg ) );
+    int[][] pairs = stratified.sample( pos, neg );
+    assertEquals( 40, pairs[0].length );
+    Set<Long> seen = new HashSet<Long>();
+    for ( int p = 0; p < pairs[0].length; p++ ) {
+      assertEquals( pos[p / 10], pairs[0][p] );
+      assertTrue( pairs[1][p] >= 4 );
+      assertTrue( seen.add( PairSampler.key( pairs[0][p], pairs[1][p] ) ) );
+    }
+    // the remainder goes to some of the positives, one pair each
+    assertEquals( 42, new PairSampler( PairSampler.Strategy.STRATIFIED, 42,
+        1 ).sample( pos, neg )[0].length );
+    pairs = new PairSampler( PairSampler.Strategy.STRATIFIED, 3, 1 ).sample(
+        pos, neg );
+    assertEquals( 3, pairs[0].length );
+    seen.clear();
+    for ( int p = 0; p < pairs[0].length; p++ ) {
+      assertTrue( seen.add( (long) pairs[0][p] ) );
+    }
+
+    PairSampler hard = new PairSampler( PairSampler.Strategy.HARD_NEGATIVE,
+        40, 1 );
+    assertTrue( hard.mines( pos, neg ) );
+    pairs = hard.sample( pos, neg );
+    assertEquals( 20, pairs[0].length );
+    // the negatives score 0..49; positive 0 scores 49, the rest below 0
+    double[] scores = new double[54];
+    for ( int j = 0; j < neg.length; j++ ) {
+      scores[neg[j]] = j;
+    }
+    scores[0] = 49;
+    scores[1] = scores[2] = scores[3] = -10;
+    seen.clear();
+    for ( int p = 0; p < pairs[0].length; p++ ) {
+      seen.add( PairSampler.key( pairs[0][p], pairs[1][p] ) );
+    }
+    int[][] mined = hard.mine( pos, neg, scores, pairs );
+    assertTrue( mined[0].length <= 40 );
+    assertTrue( mined[0].length > pairs[0].length );
+    for ( int p = pairs[0].length; p < mined[0].length; p++ ) {
+      assertTrue( scores[mined[1][p]] > scores[mined[0][p]] - 1 );
+      assertTrue( seen.add( PairSampler.key( mined[0][p], mined[1][p] ) ) );
+    }
+  }
+
+  /**
+   * Test that the pairwise training set is the difference of each pair, in
+   * both directions, listed or every pair, that too many pairs to solve are
+   * refused, and that a ranker trained on sampled pairs still puts the
+   * positives above the negatives.
+   * @throws IOException
+   */
+  @SuppressWarnings( "unchecked" )
+  @Test
+  public void testPairwise() throws IOException {
+    TrainRelation<Integer> train = (TrainRelation<Integer>)
+        new SvmLightReader<Integer>().read( new ByteArrayInputStream(
+            LinearSvmTest.CLASSES.getBytes( "UTF-8" ) ), false );
+    SparseRelation<LabeledFeatureVector<Integer>> sparse = train.toSparse();
+
+    StringBuilder sb = new StringBuilder();
+    SvmLightPairwiseTransformClassifier.writePairwiseVectors( sparse,
+        train.getMetadata(), new int[] { 0 }, new int[] { 5 }, sb );
+    // a - f: f has no feature 3
+    assertEquals( "1 1:4 2:0.2 3:1 \n-1 1:-4 2:-0.2 3:-1 \n", sb.toString() );
+
+    sb.setLength( 0 );
+    SvmLightPairwiseTransformClassifier.writePairwiseVectors( sparse,
+        train.getMetadata(), new int[] { 1 }, new int[] { 6 }, sb );
+    assertEquals( "1 1:3 2:0.1 3:-0.5 \n-1 1:-3 2:-0.1 3:0.5 \n",
+        sb.toString() );
+
+    // every pair is each positive with each negative, in order
+    StringBuilder pairs = new StringBuilder();
+    for ( int a : new int[] { 0, 1 } ) {
+      for ( int b : new int[] { 5, 6 } ) {
+        SvmLightPairwiseTransformClassifier.writePairwiseVectors( sparse,
+            train.getMetadata(), new int[] { a }, new int[] { b }, pairs );
+      }
+    }
+    sb.setLength( 0 );
+    SvmLightPairwiseTransformClassifier.writeAllPairwiseVectors( sparse,
+        train.getMetadata(), new int[] { 0, 1 }, new int[] { 5, 6 }, sb );
+    assertEquals( pairs.toString(), sb.toString() );
+
+    // every pair in-process keeps a dual variable for each
+    try {
+      LinearSvm.solveAll( sparse, new int[10000], new int[10000], 1.0 );
+      fail();
+    } catch ( IllegalArgumentException e ) {
+      // expected
+    }
+
+    for ( PairSampler.Strategy s : PairSampler.Strategy.values() ) {
+      LinearSvm svm = LinearSvm.trainPairwise( train,
+          SvmLightPairwiseTransformClassifier.POS,
+          SvmLightPairwiseTransformClassifier.NEG, 10.0, new PairSampler( s,
+              8, 2 ) );
+      double lowestPositive = Double.POSITIVE_INFINITY;
+      double highestNegative = Double.NEGATIVE_INFINITY;
+      for ( int i = 0; i < train.size(); i++ ) {
+        double d = svm.decision( train.get( i ) );
+        if ( i < 4 ) {
+          lowestPositive = Math.min( lowestPositive, d );
+        } else {
+          highestNegative = Math.max( highestNegative, d );
+        }
+      }
+      assertTrue( s.getDescription(), lowestPositive > highestNegative );
+    }
+  }
+}
@@ -0,0 +1,73 @@
+package edu.tufts.cs.ml.classify;
+
+import java.io.File;
+import java.io.IOException;
+
+import junit.framework.TestCase;
+
+import org.junit.Test;
+
+import edu.tufts.cs.ml.LabeledFeatureVector;
+import edu.tufts.cs.ml.TestRelation;
+import edu.tufts.cs.ml.TrainRelation;
+import edu.tufts.cs.ml.UnlabeledFeatureVector;
+import edu.tufts.cs.ml.exception.IncomparableFeatureVectorException;
+import edu.tufts.cs.ml.reader.ArffReader;
+
+public class ParallelClassifierTest extends TestCase {
+
+  /**
+   * Copy the training data into an unlabeled test relation.
+   * @param train
+   * @return
+   */
+  protected TestRelation<String> toTestRelation( TrainRelation<String> train ) {
+    TestRelation<String> test = new TestRelation<String>( "test",
+        train.getMetadata() );
+    for ( LabeledFeatureVector<String> fv : train ) {
+      UnlabeledFeatureVector<String> ufv =
+          new UnlabeledFeatureVector<String>( fv.getId() );
+      ufv.putAll( fv );
+      test.add( ufv );
+    }
+
+    return test;
+  }
+
+  /**
+   * Test that classifying in parallel gives the same classifications, in the
+   * same order, as classifying sequentially.
+   * @throws IOException
+   * @throws IncomparableFeatureVectorException
+   */
+  @SuppressWarnings( "unchecked" )
+  @Test
+  public void testParallelClassify() throws IOException,
+    IncomparableFeatureVectorException {
+    File trainFile = new File( "src/test/resources/train.arff" );
+    ArffReader<String> reader = new ArffReader<String>();
+    TrainRelation<String> train = (TrainRelation<String>) reader.read(
+        trainFile );
+
+    int[] kVals = { 1, 3, 5 };
+    KnnClassifier<String> c = new KnnClassifier<String>( kVals );
+    c.train( train );
+    TestRelation<String> expected = toTestRelation( train );
+    c.classify( expected );
+
+    ParallelClassifier<String> pc = new ParallelClassifier<String>(
+        new KnnClassifier<String>( kVals ), 3 );
+    pc.train( train );
+    TestRelation<String> actual = toTestRelation( train );
+    pc.classify( actual );
+
+    assertEquals( expected.size(), actual.size() );
+    for ( int i = 0; i < expected.size(); i++ ) {
+      assertEquals( expected.get( i ).getId(), actual.get( i ).getId() );
+      for ( int k : kVals ) {
+        assertEquals( expected.get( i ).getClassification( k ),
+            actual.get( i ).getClassification( k ) );
+      }
+    }
+  }
+}
@@ -0,0 +1,129 @@
+package edu.tufts.cs.ml.classify;
+
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.File;
+import java.io.FileWriter;
+import java.io.IOException;
+import java.util.List;
+import java.util.concurrent.Callable;
+
+import junit.framework.TestCase;
+
+import org.junit.Test;
+
+import edu.tufts.cs.ml.TrainRelation;
+import edu.tufts.cs.ml.reader.SvmLightReader;
+
+
+public class SvmWorkspaceTest extends TestCase {
+
+  /**
+   * Test that each workspace has its own directory, that a binary's output
+   * is copied whole, and that deleting the workspace removes its files.
+   * @throws IOException
+   * @throws InterruptedException
+   */
+  @Test
+  public void testWorkspace() throws IOException, InterruptedException {
+    SvmWorkspace a = new SvmWorkspace( "test" );
+    SvmWorkspace b = new SvmWorkspace( "test" );
+    assertFalse( a.getDirectory().equals( b.getDirectory() ) );
+    assertFalse( a.getFile( "model" ).equals( b.getFile( "model" ) ) );
+
+    File model = a.getFile( "model" );
+    assertTrue( model.createNewFile() );
+    ByteArrayOutputStream out = new ByteArrayOutputStream();
+    assertEquals( 0, a.run( out, "ls", a.getDirectory().getPath() ) );
+    assertEquals( "model\n", out.toString( "UTF-8" ) );
+
+    a.delete();
+    b.delete();
+    assertFalse( model.exists() );
+    assertFalse( a.getDirectory().exists() );
+    assertFalse( b.getDirectory().exists() );
+
+    try {
+      SvmWorkspace.setMaxJobs( 0 );
+      fail();
+    } catch ( IllegalArgumentException e ) {
+      // expected
+    }
+  }
+
+  /**
+   * Test that a binary gets the same input and gives the same output through
+   * files and through pipes, and that a binary that fails without opening
+   * its pipes doesn't hang.
+   * @throws IOException
+   * @throws InterruptedException
+   */
+  @Test
+  public void testStreaming() throws IOException, InterruptedException {
+    for ( boolean streaming : new boolean[] { false, true } ) {
+      SvmWorkspace ws = new SvmWorkspace( "test" );
+      ws.setStreaming( streaming );
+      final File in = ws.getPipe( "in" );
+      File out = ws.getPipe( "out" );
+      Callable<Void> input = new Callable<Void>() {
+        public Void call() throws IOException {
+          FileWriter fw = new FileWriter( in );
+          for ( int i = 0; i < 100000; i++ ) {
+            fw.write( i + "\n" );
+          }
+          fw.close();
+          return null;
+        }
+      };
+
+      ByteArrayOutputStream console = new ByteArrayOutputStream();
+      List<Double> values = ws.run( console, input,
+          SvmWorkspace.readPredictions( out ), "sh", "-c",
+          "echo started; sed 's/$/.5/' \"$0\" > \"$1\"", in.getPath(),
+          out.getPath() );
+      assertEquals( "started\n", console.toString( "UTF-8" ) );
+      assertEquals( 100000, values.size() );
+      assertEquals( 99999.5, values.get( 99999 ) );
+      // a named pipe exists but isn't a regular file
+      assertTrue( in.exists() );
+      assertEquals( !streaming, in.isFile() );
+
+      try {
+        ws.run( console, input, SvmWorkspace.readPredictions( out ), "sh",
+            "-c", "exit 3" );
+        fail();
+      } catch ( IOException e ) {
+        // expected
+      }
+      ws.delete();
+    }
+  }
+
+  /**
+   * Test that training a grid of cs at once gives a classifier for each c,
+   * in order.
+   * @throws IOException
+   */
+  @SuppressWarnings( "unchecked" )
+  @Test
+  public void testTrainEach() throws IOException {
+    String input =
+        "3 qid:1 1:1 2:1 3:0 4:0.2\n" +
+        "2 qid:1 1:0 2:0 3:1 4:0.1\n" +
+        "1 qid:1 1:0 2:1 3:0 4:0.4\n" +
+        "2 qid:2 1:1 2:0 3:1 4:0.4\n" +
+        "1 qid:2 1:0 2:0 3:1 4:0.1\n";
+    TrainRelation<Integer> train = (TrainRelation<Integer>)
+        new SvmLightReader<Integer>().read( new ByteArrayInputStream(
+            input.getBytes( "UTF-8" ) ), false );
+
+    double[] cs = { 0.01, 1.0, 100.0 };
+    List<RankSvmClassifier> classifiers = RankSvmClassifier.trainEach( train,
+        cs, true, 2 );
+    assertEquals( cs.length, classifiers.size() );
+    for ( int i = 0; i < cs.length; i++ ) {
+      assertEquals( cs[i], classifiers.get( i ).getC() );
+      assertNotNull( classifiers.get( i ).svm );
+    }
+  }
+}
@@ -0,0 +1,227 @@
+package edu.tufts.cs.ml.cluster;
+
+import java.io.File;
+import java.io.IOException;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.Map;
+import java.util.Set;
+
+import junit.framework.TestCase;
+
+import org.junit.Test;
+
+import edu.tufts.cs.ml.FeatureVector;
+import edu.tufts.cs.ml.Relation;
+import edu.tufts.cs.ml.TestRelation;
+import edu.tufts.cs.ml.exception.IncomparableFeatureVectorException;
+import edu.tufts.cs.ml.normalize.ZScoreNormalizer;
+import edu.tufts.cs.ml.reader.ArffIterator;
+import edu.tufts.cs.ml.reader.ArffReader;
+import edu.tufts.cs.ml.reader.Reader;
+
+
+public class KMeansTest extends TestCase {
+
+  /**
+   * Test that the parallel assignment gives the same clusters as a single
+   * thread, and that the clusters have converged on their means.
+   * @throws IOException
+   * @throws IncomparableFeatureVectorException
+   */
+  @SuppressWarnings( "unchecked" )
+  @Test
+  public void testParallelAssignment() throws IOException,
+    IncomparableFeatureVectorException {
+    File dataFile = new File( "src/main/resources/segment-full.arff" );
+    TestRelation<String> data = (TestRelation<String>)
+        new ArffReader<String>().read( dataFile, Reader.IGNORE_LABELS );
+    new ZScoreNormalizer<String>( data ).normalize();
+    int[] indices = { 775, 1020, 200, 127, 329, 1626, 1515, 651 };
+
+    KMeans<String> sequential = new KMeans<String>( data, 1 );
+    KMeans<String> parallel = new KMeans<String>( data, 4 );
+    ClusterSet<String> expected = sequential.cluster( indices.length,
+        indices );
+    ClusterSet<String> actual = parallel.cluster( indices.length, indices );
+
+    assertEquals( expected.calculateSSE(), actual.calculateSSE() );
+    assertEquals( membership( expected ), membership( actual ) );
+
+    for ( Cluster<String> c : actual.values() ) {
+      Centroid<String> mean = sequential.computeClusterCentroid( c, 0 );
+      for ( String f : mean.keySet() ) {
+        assertEquals( mean.get( f ).doubleValue(),
+            c.getCentroid().get( f ).doubleValue(), 1e-9 );
+      }
+    }
+  }
+
+  /**
+   * Test that each initialization method gives k centroids, and the same
+   * ones for the same seed.
+   * @throws IOException
+   * @throws IncomparableFeatureVectorException
+   */
+  @SuppressWarnings( "unchecked" )
+  @Test
+  public void testSeeding() throws IOException,
+    IncomparableFeatureVectorException {
+    File dataFile = new File( "src/main/resources/segment-full.arff" );
+    TestRelation<String> data = (TestRelation<String>)
+        new ArffReader<String>().read( dataFile, Reader.IGNORE_LABELS );
+    new ZScoreNormalizer<String>( data ).normalize();
+    KMeans<String> kMeans = new KMeans<String>( data, 2 );
+
+    for ( KMethod.Seeding seeding : new KMethod.Seeding[] {
+        KMethod.Seeding.SAMPLED_DENSITY, KMethod.Seeding.KMEANS_PLUS_PLUS,
+        KMethod.Seeding.KMEANS_PARALLEL } ) {
+      Set<Centroid<String>> first = kMeans.getInitialCentroids( 7, seeding,
+          42 );
+      Set<Centroid<String>> second = kMeans.getInitialCentroids( 7, seeding,
+          42 );
+      assertEquals( seeding.name(), 7, first.size() );
+      assertEquals( seeding.name(), first, second );
+
+      ClusterSet<String> clusters = kMeans.cluster( 7, seeding, 42 );
+      assertEquals( seeding.name(), 7, clusters.size() );
+      assertEquals( seeding.name(), clusters.calculateSSE(),
+          kMeans.cluster( 7, seeding, 42 ).calculateSSE() );
+    }
+  }
+
+  /**
+   * Test that pruning with the triangle inequality gives exactly the same
+   * clusters as plain k-means, and that it skips distances.
+   * @throws IOException
+   * @throws IncomparableFeatureVectorException
+   */
+  @SuppressWarnings( "unchecked" )
+  @Test
+  public void testAccelerated() throws IOException,
+    IncomparableFeatureVectorException {
+    File dataFile = new File( "src/main/resources/segment-full.arff" );
+    TestRelation<String> data = (TestRelation<String>)
+        new ArffReader<String>().read( dataFile, Reader.IGNORE_LABELS );
+    new ZScoreNormalizer<String>( data ).normalize();
+
+    for ( int parallelism : new int[] { 1, 3 } ) {
+      KMeans<String> plain = new KMeans<String>( data, parallelism );
+      AcceleratedKMeans<String> accelerated = new AcceleratedKMeans<String>(
+          data, parallelism );
+      for ( int k : new int[] { 2, 9, 30 } ) {
+        ClusterSet<String> expected = plain.cluster( k,
+            KMethod.Seeding.KMEANS_PLUS_PLUS, k );
+        ClusterSet<String> actual = accelerated.cluster( k,
+            KMethod.Seeding.KMEANS_PLUS_PLUS, k );
+
+        assertEquals( expected.keySet(), actual.keySet() );
+        assertEquals( membership( expected ), membership( actual ) );
+
+        long pruned = 0;
+        for ( long p : accelerated.getPrunedCounts() ) {
+          pruned += p;
+        }
+        assertTrue( "k=" + k + ": nothing pruned", pruned > 0 );
+      }
+    }
+  }
+
+  /**
+   * Test that mini-batch k-means over a stream gives the same centroids for
+   * the same seed, counts every vector, and comes close to k-means over the
+   * whole data set in one pass.
+   * @throws IOException
+   * @throws IncomparableFeatureVectorException
+   */
+  @SuppressWarnings( "unchecked" )
+  @Test
+  public void testMiniBatch() throws IOException,
+    IncomparableFeatureVectorException {
+    File dataFile = new File( "src/main/resources/vowel.arff" );
+    ArffReader<String> reader = new ArffReader<String>();
+    TestRelation<String> data = (TestRelation<String>) reader.read( dataFile,
+        Reader.IGNORE_LABELS );
+
+    MiniBatchKMeans<String> first = new MiniBatchKMeans<String>( 7, 42 );
+    ArffIterator<String> it = reader.iterator( dataFile, Reader.IGNORE_LABELS );
+    first.fit( it, 128 );
+    it.close();
+
+    MiniBatchKMeans<String> second = new MiniBatchKMeans<String>( 7, 42 );
+    it = reader.iterator( dataFile, Reader.IGNORE_LABELS );
+    Relation<?> batch = it.nextChunk( 128 );
+    while ( batch != null ) {
+      second.partialFit( (Relation<FeatureVector<String>>) batch );
+      batch = it.nextChunk( 128 );
+    }
+    it.close();
+
+    assertEquals( data.size(), first.getSeen() );
+    long total = 0;
+    for ( long c : first.getCounts() ) {
+      total += c;
+    }
+    assertEquals( data.size(), total );
+    assertEquals( first.getCentroids().size(), 7 );
+    assertEquals( new HashSet<Centroid<String>>( first.getCentroids() ),
+        new HashSet<Centroid<String>>( second.getCentroids() ) );
+
+    ClusterSet<String> clusters = first.cluster( data );
+    assertEquals( 7, clusters.size() );
+    double full = new KMeans<String>( data ).cluster( 7,
+        KMethod.Seeding.KMEANS_PLUS_PLUS, 42 ).calculateSSE();
+    assertTrue( clusters.calculateSSE() < 1.1 * full );
+  }
+
+  /**
+   * Test that sweeping k at the same time gives the same SSE curve and elbow
+   * as clustering each k in turn, and that a warm-started sweep covers the
+   * same values of k.
+   * @throws IOException
+   * @throws IncomparableFeatureVectorException
+   */
+  @SuppressWarnings( "unchecked" )
+  @Test
+  public void testSweepK() throws IOException,
+    IncomparableFeatureVectorException {
+    File dataFile = new File( "src/main/resources/vowel.arff" );
+    TestRelation<String> data = (TestRelation<String>)
+        new ArffReader<String>().read( dataFile, Reader.IGNORE_LABELS );
+    KMeans<String> kMeans = new KMeans<String>( data, 3 );
+
+    ElbowCurve curve = kMeans.sweepK( 2, 8, KMethod.Seeding.DENSITY, 0,
+        false );
+    assertEquals( 7, curve.getSSE().size() );
+    for ( int k = 2; k <= 8; k++ ) {
+      assertEquals( "k=" + k, kMeans.cluster( k ).calculateSSE(),
+          curve.getSSE( k ) );
+    }
+    assertEquals( curve.getBestK(), kMeans.detectK( 2, 8 ) );
+
+    ElbowCurve warm = kMeans.sweepK( 2, 8, KMethod.Seeding.KMEANS_PLUS_PLUS,
+        42, true );
+    assertEquals( curve.getSSE().keySet(), warm.getSSE().keySet() );
+    assertEquals( kMeans.cluster( 2, KMethod.Seeding.KMEANS_PLUS_PLUS, 42 )
+        .calculateSSE(), warm.getSSE( 2 ) );
+    assertTrue( warm.getSSE( 8 ) < warm.getSSE( 2 ) );
+  }
+
+  /**
+   * Map each vector to the id of its cluster's centroid.
+   * @param clusters
+   * @return
+   */
+  protected Map<FeatureVector<String>, String> membership(
+      ClusterSet<String> clusters ) {
+    Map<FeatureVector<String>, String> m =
+        new HashMap<FeatureVector<String>, String>();
+    for ( Cluster<String> c : clusters.values() ) {
+      for ( FeatureVector<String> fv : c ) {
+        m.put( fv, c.getCentroid().getId() );
+      }
+    }
+
+    return m;
+  }
+}
@@ -0,0 +1,101 @@
+package edu.tufts.cs.ml.cluster;
+
+import java.io.File;
+import java.io.IOException;
+
+import junit.framework.TestCase;
+
+import org.junit.Test;
+
+import edu.tufts.cs.ml.DenseRelation;
+import edu.tufts.cs.ml.TestRelation;
+import edu.tufts.cs.ml.exception.IncomparableFeatureVectorException;
+import edu.tufts.cs.ml.reader.ArffReader;
+import edu.tufts.cs.ml.reader.Reader;
+import edu.tufts.cs.ml.util.VectorMath;
+
+
+public class KMedoidsTest extends TestCase {
+
+  /**
+   * Test that the condensed matrix holds every pairwise distance, packed or
+   * not.
+   * @throws IOException
+   */
+  @SuppressWarnings( "unchecked" )
+  @Test
+  public void testDistanceMatrix() throws IOException {
+    TestRelation<String> data = (TestRelation<String>) new ArffReader<String>()
+        .read( new File( "src/main/resources/vowel.arff" ),
+            Reader.IGNORE_LABELS );
+    DenseRelation<?> dense = data.toDense();
+    int[] rows = { 3, 0, 17, 250, 99, 4 };
+    DistanceMatrix full = new DistanceMatrix( dense, false, 3 );
+    DistanceMatrix sample = new DistanceMatrix( dense, rows, false, 2 );
+    DistanceMatrix packed = new DistanceMatrix( dense, rows, true, 1 );
+
+    assertEquals( dense.size(), full.size() );
+    assertTrue( packed.isPacked() );
+    for ( int i = 0; i < rows.length; i++ ) {
+      for ( int j = 0; j < rows.length; j++ ) {
+        double expected = VectorMath.squaredEuclidean(
+            dense.getRow( rows[i] ), dense.getRow( rows[j] ) );
+        assertEquals( expected, sample.get( i, j ) );
+        assertEquals( expected, full.get( rows[i], rows[j] ) );
+        assertEquals( expected, packed.get( i, j ), 1e-5 );
+      }
+    }
+  }
+
+  /**
+   * Test that PAM ends where no swap of a medoid with a non-medoid lowers
+   * the total, and that CLARA and CLARANS give k clusters of every vector,
+   * the same ones for the same seed.
+   * @throws IOException
+   * @throws IncomparableFeatureVectorException
+   */
+  @SuppressWarnings( "unchecked" )
+  @Test
+  public void testMethods() throws IOException,
+    IncomparableFeatureVectorException {
+    TestRelation<String> data = (TestRelation<String>) new ArffReader<String>()
+        .read( new File( "src/main/resources/vowel.arff" ),
+            Reader.IGNORE_LABELS );
+    int k = 5;
+
+    KMedoids<String> pam = new KMedoids<String>( data, 2,
+        KMedoids.Method.PAM );
+    DistanceMatrix distances = pam.getDistances();
+    Pam engine = new Pam( distances );
+    int[] medoids = engine.build( k );
+    engine.swap( medoids, Integer.MAX_VALUE );
+    double cost = engine.cost( medoids );
+    for ( int m = 0; m < k; m++ ) {
+      for ( int x = 0; x < distances.size(); x += 7 ) {
+        int[] swapped = medoids.clone();
+        swapped[m] = x;
+        assertTrue( engine.cost( swapped ) >= cost * ( 1 - 1e-12 ) );
+      }
+    }
+    ClusterSet<String> pamClusters = pam.cluster( k );
+    assertEquals( k, pamClusters.size() );
+    assertEquals( cost, pam.cost( medoids ), 1e-6 );
+
+    for ( KMedoids.Method method : new KMedoids.Method[] {
+        KMedoids.Method.CLARA, KMedoids.Method.CLARANS } ) {
+      KMedoids<String> kMedoids = new KMedoids<String>( data, 2, method );
+      ClusterSet<String> clusters = kMedoids.cluster( k,
+          KMethod.Seeding.DENSITY, 42 );
+      assertEquals( method.name(), k, clusters.size() );
+      int total = 0;
+      for ( Cluster<String> c : clusters.values() ) {
+        total += c.size();
+      }
+      assertEquals( method.name(), data.size(), total );
+      assertEquals( method.name(), clusters.keySet(), kMedoids.cluster( k,
+          KMethod.Seeding.DENSITY, 42 ).keySet() );
+      assertTrue( method.name(), clusters.calculateSSE() <
+          1.5 * pamClusters.calculateSSE() );
+    }
+  }
+}
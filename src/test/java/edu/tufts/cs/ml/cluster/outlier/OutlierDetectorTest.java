@@ -0,0 +1,135 @@
+package edu.tufts.cs.ml.cluster.outlier;
+
+import java.io.File;
+import java.io.IOException;
+import java.util.Arrays;
+import java.util.HashMap;
+import java.util.Map;
+
+import junit.framework.TestCase;
+
+import org.junit.Test;
+
+import edu.tufts.cs.ml.FeatureVector;
+import edu.tufts.cs.ml.TestRelation;
+import edu.tufts.cs.ml.cluster.Cluster;
+import edu.tufts.cs.ml.cluster.ClusterSet;
+import edu.tufts.cs.ml.cluster.DistanceCache;
+import edu.tufts.cs.ml.cluster.KMedoids;
+import edu.tufts.cs.ml.exception.IncomparableFeatureVectorException;
+import edu.tufts.cs.ml.normalize.ZScoreNormalizer;
+import edu.tufts.cs.ml.reader.ArffReader;
+import edu.tufts.cs.ml.reader.Reader;
+import edu.tufts.cs.ml.util.Util;
+
+
+public class OutlierDetectorTest extends TestCase {
+
+  /**
+   * Test that the fuzzy detection finds the same outliers with the
+   * clusterer's distance cache as without one, and that the cache computes
+   * each distance once however many times the clusters are scored, and
+   * that changing the distances it returns doesn't change its own.
+   * @throws IOException
+   * @throws IncomparableFeatureVectorException
+   */
+  @SuppressWarnings( "unchecked" )
+  @Test
+  public void testDistanceCache() throws IOException,
+    IncomparableFeatureVectorException {
+    TestRelation<String> data = (TestRelation<String>) new ArffReader<String>()
+        .read( new File( "src/main/resources/vowel.arff" ),
+            Reader.IGNORE_LABELS );
+    new ZScoreNormalizer<String>( data ).normalize();
+    KMedoids<String> kMedoids = new KMedoids<String>( data, 2 );
+    ClusterSet<String> clusters = kMedoids.cluster( 4 );
+    DistanceCache cache = kMedoids.getDistanceCache();
+    assertSame( cache, clusters.getDistanceCache() );
+
+    ClusterSet<String> uncached = new ClusterSet<String>();
+    uncached.putAll( clusters );
+    Map<FeatureVector<?>, Double> expected =
+        new OutlierDetector<String>( null ).detectAllFuzzy( uncached, .1 );
+
+    cache.clear();
+    long misses = cache.getMisses();
+    long hits = cache.getHits();
+    Map<FeatureVector<?>, Double> actual =
+        new OutlierDetector<String>().detectAllFuzzy( clusters, .1 );
+    assertEquals( expected, actual );
+    assertFalse( actual.isEmpty() );
+    assertEquals( actual, new OutlierDetector<String>().detectAllFuzzy(
+        clusters, .1 ) );
+
+    // every distance computed once, then only hits
+    assertEquals( data.size(), cache.getMisses() - misses );
+    assertEquals( data.size(), cache.getHits() - hits );
+
+    double sse = 0.0;
+    for ( Cluster<String> c : clusters.values() ) {
+      sse += c.calculateSSE();
+    }
+    assertEquals( uncached.calculateSSE(), clusters.calculateSSE() );
+    assertEquals( sse, clusters.calculateSSE(), .01 );
+
+    Cluster<String> c = clusters.values().iterator().next();
+    double[] squared = cache.squaredDistances( c );
+    double[] expectedSquared = squared.clone();
+    Arrays.fill( squared, -1 );
+    assertTrue( Arrays.equals( expectedSquared,
+        cache.squaredDistances( c ) ) );
+  }
+
+  /**
+   * Test that the single-pass fuzzy scores are those of running detectAll
+   * at every cell of the grid, and that a finer grid takes no more passes.
+   * @throws IOException
+   * @throws IncomparableFeatureVectorException
+   */
+  @SuppressWarnings( "unchecked" )
+  @Test
+  public void testFuzzyGrid() throws IOException,
+    IncomparableFeatureVectorException {
+    TestRelation<String> data = (TestRelation<String>) new ArffReader<String>()
+        .read( new File( "src/main/resources/vowel.arff" ),
+            Reader.IGNORE_LABELS );
+    new ZScoreNormalizer<String>( data ).normalize();
+    ClusterSet<String> clusters = new KMedoids<String>( data, 2 ).cluster( 6 );
+    OutlierDetector<String> detector = new OutlierDetector<String>();
+
+    double[] tClusters = { .1, .025, .05, .075 };
+    double[] tIntras = { 2, 1.9, 1.5, 1.3, 1.1, 1.0 };
+    Map<FeatureVector<?>, Integer> counts =
+        new HashMap<FeatureVector<?>, Integer>();
+    for ( double tCluster : tClusters ) {
+      for ( double tIntra : tIntras ) {
+        for ( FeatureVector<?> fv : detector.detectAll( clusters, tCluster,
+            tIntra ) ) {
+          Integer n = counts.get( fv );
+          counts.put( fv, ( n == null ) ? 1 : n + 1 );
+        }
+      }
+    }
+
+    for ( double t : new double[] { 0, .3, .9 } ) {
+      Map<FeatureVector<?>, Double> expected =
+          new HashMap<FeatureVector<?>, Double>();
+      for ( Map.Entry<FeatureVector<?>, Integer> e : counts.entrySet() ) {
+        double conf = e.getValue() / 24.0;
+        if ( conf >= t ) {
+          expected.put( e.getKey(), Util.round( conf, 4 ) );
+        }
+      }
+      assertEquals( expected, detector.detectAllFuzzy( clusters, t,
+          tClusters, tIntras ) );
+    }
+
+    long misses = detector.getDistanceCache().getMisses() +
+        clusters.getDistanceCache().getMisses();
+    Map<FeatureVector<?>, Double> fine = detector.detectAllFuzzy( clusters,
+        .5, 1000, 1000 );
+    assertFalse( fine.isEmpty() );
+    assertEquals( misses, detector.getDistanceCache().getMisses() +
+        clusters.getDistanceCache().getMisses() );
+  }
+}
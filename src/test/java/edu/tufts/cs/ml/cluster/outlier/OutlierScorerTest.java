@@ -0,0 +1,155 @@
+package edu.tufts.cs.ml.cluster.outlier;
+
+import java.io.File;
+import java.io.IOException;
+import java.util.Arrays;
+import java.util.Map;
+
+import junit.framework.TestCase;
+
+import org.junit.Test;
+
+import edu.tufts.cs.ml.DenseRelation;
+import edu.tufts.cs.ml.DoubleFeature;
+import edu.tufts.cs.ml.FeatureVector;
+import edu.tufts.cs.ml.TestRelation;
+import edu.tufts.cs.ml.UnlabeledFeatureVector;
+import edu.tufts.cs.ml.normalize.ZScoreNormalizer;
+import edu.tufts.cs.ml.reader.ArffReader;
+import edu.tufts.cs.ml.reader.Reader;
+
+
+public class OutlierScorerTest extends TestCase {
+
+  /**
+   * Read and normalize the vowel data set.
+   * @return
+   * @throws IOException
+   */
+  @SuppressWarnings( "unchecked" )
+  protected TestRelation<String> readVowel() throws IOException {
+    TestRelation<String> data = (TestRelation<String>) new ArffReader<String>()
+        .read( new File( "src/main/resources/vowel.arff" ),
+            Reader.IGNORE_LABELS );
+    new ZScoreNormalizer<String>( data ).normalize();
+    return data;
+  }
+
+  /**
+   * Get the distances from each row to every other row, ascending.
+   * @param dense
+   * @return
+   */
+  protected double[][] bruteForce( DenseRelation<?> dense ) {
+    int n = dense.size();
+    double[][] dists = new double[n][];
+    for ( int i = 0; i < n; i++ ) {
+      dists[i] = new double[n - 1];
+      for ( int j = 0, m = 0; j < n; j++ ) {
+        if ( j != i ) {
+          dists[i][m++] = Math.sqrt( squared( dense, i, j ) );
+        }
+      }
+      Arrays.sort( dists[i] );
+    }
+    return dists;
+  }
+
+  /**
+   * Test the k-NN distance and LOF scores against computing every distance,
+   * on one thread and on several.
+   * @throws IOException
+   */
+  @Test
+  public void testBruteForce() throws IOException {
+    DenseRelation<?> dense = readVowel().toDense();
+    int n = dense.size();
+    int k = 5;
+    double[][] dists = bruteForce( dense );
+
+    double[] knn = new KnnDistanceScorer( k, 1 ).score( dense );
+    for ( int i = 0; i < n; i++ ) {
+      assertEquals( dists[i][k - 1], knn[i], 1e-9 );
+    }
+    assertTrue( Arrays.equals( knn, new KnnDistanceScorer( k, 4 ).score(
+        dense ) ) );
+
+    // LOF with exactly k neighbors
+    double[] lrd = new double[n];
+    int[][] nn = new int[n][k];
+    for ( int i = 0; i < n; i++ ) {
+      double reach = 0.0;
+      for ( int j = 0, m = 0; m < k; j++ ) {
+        if ( j == i ) {
+          continue;
+        }
+        double d = Math.sqrt( squared( dense, i, j ) );
+        if ( d <= dists[i][k - 1] ) {
+          nn[i][m++] = j;
+          reach += Math.max( dists[j][k - 1], d );
+        }
+      }
+      lrd[i] = 1.0 / ( reach / k + 1e-10 );
+    }
+    double[] lof = new LocalOutlierFactor( k, 3 ).score( dense );
+    for ( int i = 0; i < n; i++ ) {
+      double total = 0.0;
+      for ( int j : nn[i] ) {
+        total += lrd[j];
+      }
+      assertEquals( total / k / lrd[i], lof[i], 1e-6 );
+    }
+  }
+
+  /**
+   * Get the squared distance between two rows.
+   * @param dense
+   * @param i
+   * @param j
+   * @return
+   */
+  protected double squared( DenseRelation<?> dense, int i, int j ) {
+    double sum = 0.0;
+    for ( int c = 0; c < dense.numFeatures(); c++ ) {
+      double diff = dense.get( i, c ) - dense.get( j, c );
+      sum += diff * diff;
+    }
+    return sum;
+  }
+
+  /**
+   * Test that every scorer ranks an injected outlier first, and that the
+   * isolation forest doesn't depend on the parallelism.
+   * @throws IOException
+   */
+  @Test
+  public void testInjectedOutlier() throws IOException {
+    TestRelation<String> data = readVowel();
+    UnlabeledFeatureVector<String> outlier =
+        new UnlabeledFeatureVector<String>( "outlier" );
+    for ( String name : data.get( 0 ).keySet() ) {
+      outlier.put( name, new DoubleFeature( name, 8.0 ) );
+    }
+    data.add( outlier );
+
+    for ( OutlierScorer.Method m : OutlierScorer.Method.values() ) {
+      OutlierScorer scorer = OutlierScorer.create( m,
+          OutlierScorer.DEFAULT_NEIGHBORS, 1, 2 );
+      Map<FeatureVector<?>, Double> top = scorer.top( data, 3 );
+      assertEquals( 3, top.size() );
+      assertSame( m.getDescription(), outlier, top.keySet().iterator()
+          .next() );
+      assertEquals( top.keySet().iterator().next(), scorer.detect( data,
+          top.get( outlier ) ).keySet().iterator().next() );
+    }
+
+    DenseRelation<?> dense = data.toDense();
+    double[] scores = new IsolationForest( 50, 128, 7, 1 ).score( dense );
+    assertTrue( Arrays.equals( scores, new IsolationForest( 50, 128, 7, 4 )
+        .score( dense ) ) );
+    for ( double s : scores ) {
+      assertTrue( s > 0 && s < 1 );
+    }
+    assertTrue( scores[dense.size() - 1] > .6 );
+  }
+}
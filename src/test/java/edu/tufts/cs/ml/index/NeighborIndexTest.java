@@ -0,0 +1,150 @@
+package edu.tufts.cs.ml.index;
+
+import java.util.Arrays;
+import java.util.HashSet;
+import java.util.Random;
+import java.util.Set;
+
+import junit.framework.TestCase;
+
+import org.junit.Test;
+
+import edu.tufts.cs.ml.DenseRelation;
+import edu.tufts.cs.ml.DoubleFeature;
+import edu.tufts.cs.ml.LabeledFeatureVector;
+import edu.tufts.cs.ml.Metadata;
+import edu.tufts.cs.ml.TrainRelation;
+import edu.tufts.cs.ml.util.VectorMath;
+
+public class NeighborIndexTest extends TestCase {
+
+  /**
+   * Create a relation of random points, with some duplicates so that there
+   * are ties.
+   * @param size
+   * @param dims
+   * @param rnd
+   * @return
+   */
+  protected DenseRelation<LabeledFeatureVector<String>> randomRelation(
+      int size, int dims, Random rnd ) {
+    Metadata m = new Metadata();
+    for ( int j = 0; j < dims; j++ ) {
+      m.put( "f" + j, "numeric" );
+    }
+    TrainRelation<String> train = new TrainRelation<String>( "random", m );
+    for ( int i = 0; i < size; i++ ) {
+      LabeledFeatureVector<String> fv = new LabeledFeatureVector<String>(
+          "label", "x" + i );
+      for ( int j = 0; j < dims; j++ ) {
+        fv.put( "f" + j, new DoubleFeature( "f" + j,
+            (double) rnd.nextInt( 10 ) ) );
+      }
+      train.add( fv );
+    }
+
+    return train.toDense();
+  }
+
+  /**
+   * Get the sorted distances from the query to every row.
+   * @param dense
+   * @param query
+   * @return
+   */
+  protected double[] bruteForce( DenseRelation<?> dense, double[] query ) {
+    double[] dists = new double[dense.size()];
+    for ( int i = 0; i < dists.length; i++ ) {
+      dists[i] = VectorMath.euclidean( dense.getData(), dense.offset( i ),
+          query, 0, query.length );
+    }
+    Arrays.sort( dists );
+
+    return dists;
+  }
+
+  /**
+   * Check the index's answers against a brute-force scan.
+   * @param dense
+   * @param index
+   * @param rnd
+   */
+  protected void checkIndex( DenseRelation<?> dense, NeighborIndex index,
+      Random rnd ) {
+    for ( int q = 0; q < 50; q++ ) {
+      double[] query = new double[dense.numFeatures()];
+      for ( int j = 0; j < query.length; j++ ) {
+        query[j] = rnd.nextDouble() * 10;
+      }
+      double[] expected = bruteForce( dense, query );
+
+      Neighbors nearest = index.nearest( query, 15 );
+      assertEquals( 15, nearest.size() );
+      for ( int i = 0; i < nearest.size(); i++ ) {
+        assertEquals( expected[i], nearest.getDistance( i ), 1e-9 );
+        assertEquals( nearest.getDistance( i ), VectorMath.euclidean(
+            dense.getData(), dense.offset( nearest.getRow( i ) ), query, 0,
+            query.length ), 1e-9 );
+      }
+
+      double radius = expected[20];
+      Neighbors within = index.withinRadius( query, radius );
+      int count = 0;
+      while ( count < expected.length && expected[count] <= radius ) {
+        count++;
+      }
+      assertEquals( count, within.size() );
+    }
+  }
+
+  /**
+   * Test that the heap keeps the smallest distances, and their ties.
+   */
+  @Test
+  public void testNeighborHeap() {
+    double[] dists = { 5.0, 3.0, 4.0, 3.0, 1.0, 3.0, 9.0, 2.0 };
+    NeighborHeap heap = new NeighborHeap( 3, true );
+    for ( int i = 0; i < dists.length; i++ ) {
+      heap.offer( i, dists[i] );
+    }
+    heap.sort();
+
+    assertEquals( 3, heap.size() );
+    assertEquals( 4, heap.getRow( 0 ) );
+    assertEquals( 7, heap.getRow( 1 ) );
+    assertEquals( 3.0, heap.getDistance( 2 ) );
+    // two of the three rows at 3.0 didn't fit
+    assertEquals( 2, heap.numTies() );
+    Set<Integer> atThree = new HashSet<Integer>();
+    atThree.add( heap.getRow( 2 ) );
+    atThree.add( heap.getTieRow( 0 ) );
+    atThree.add( heap.getTieRow( 1 ) );
+    assertEquals( new HashSet<Integer>( Arrays.asList( 1, 3, 5 ) ), atThree );
+  }
+
+  /**
+   * Test the k-d tree against a brute-force scan.
+   */
+  @Test
+  public void testKdTree() {
+    Random rnd = new Random( 1 );
+    DenseRelation<LabeledFeatureVector<String>> dense = randomRelation( 500,
+        3, rnd );
+    NeighborIndex index = NeighborIndex.create( dense );
+    assertTrue( index instanceof KdTree );
+    checkIndex( dense, index, rnd );
+  }
+
+  /**
+   * Test the vantage-point tree against a brute-force scan.
+   */
+  @Test
+  public void testVpTree() {
+    Random rnd = new Random( 2 );
+    DenseRelation<LabeledFeatureVector<String>> dense = randomRelation( 500,
+        20, rnd );
+    NeighborIndex index = NeighborIndex.create( dense );
+    assertTrue( index instanceof VpTree );
+    checkIndex( dense, index, rnd );
+  }
+}
@@ -1,9 +1,11 @@
 package edu.tufts.cs.ml.learning.active;
 
+import java.io.ByteArrayInputStream;
 import java.io.File;
 import java.io.IOException;
 import java.util.HashMap;
 import java.util.Map;
+import java.util.Set;
 
 import junit.framework.TestCase;
 
@@ -13,7 +15,11 @@ import edu.tufts.cs.ml.FeatureVector;
 import edu.tufts.cs.ml.LabeledFeatureVector;
 import edu.tufts.cs.ml.TestRelation;
 import edu.tufts.cs.ml.TrainRelation;
+import edu.tufts.cs.ml.UnlabeledFeatureVector;
+import edu.tufts.cs.ml.classify.SvmLightClassifier;
+import edu.tufts.cs.ml.exception.IncomparableFeatureVectorException;
 import edu.tufts.cs.ml.reader.ArffReader;
+import edu.tufts.cs.ml.reader.SvmLightReader;
 
 public class ActiveLearnTest extends TestCase {
 
@@ -92,4 +98,46 @@ public class ActiveLearnTest extends TestCase {
     }
 
   }
+
+  /**
+   * Test that sampling by an SVM's certainty picks the instances closest to
+   * its boundary.
+   * @throws IOException
+   * @throws IncomparableFeatureVectorException
+   */
+  @SuppressWarnings( "unchecked" )
+  @Test
+  public void testSvmUncertainty() throws IOException,
+    IncomparableFeatureVectorException {
+    String input =
+        "a 1 1:2 2:0.5 3:1\n" +
+        "b 1 1:0.2 2:1 3:-1\n" +
+        "c 1 1:3 2:0.1\n" +
+        "d 1 1:2.5 2:0.7 3:0.5\n" +
+        "e -1 1:-1 2:1.2 3:1\n" +
+        "f -1 1:-0.3 2:0.3\n" +
+        "g -1 1:-1.5 2:0.9 3:-0.5\n" +
+        "h -1 1:-2.5 2:0.4 3:0.2";
+    SvmLightReader<Integer> reader = new SvmLightReader<Integer>();
+    TrainRelation<Integer> train = (TrainRelation<Integer>) reader.read(
+        new ByteArrayInputStream( input.getBytes( "UTF-8" ) ), false );
+    TestRelation<Integer> unlabeled = (TestRelation<Integer>) reader.read(
+        new ByteArrayInputStream( input.getBytes( "UTF-8" ) ), true );
+
+    SvmLightClassifier svm = new SvmLightClassifier( 1.0 );
+    UncertaintySampler<Integer> s = new UncertaintySampler<Integer>( train,
+        svm );
+    Set<UnlabeledFeatureVector<Integer>> next = s.getNextLearningSet( train,
+        unlabeled, 1, 2 );
+    assertEquals( 2, next.size() );
+    double highest = 0.0;
+    for ( UnlabeledFeatureVector<Integer> ufv : next ) {
+      highest = Math.max( highest, svm.getCertainty( ufv ) );
+    }
+    for ( UnlabeledFeatureVector<Integer> ufv : unlabeled ) {
+      if ( !next.contains( ufv ) ) {
+        assertTrue( svm.getCertainty( ufv ) >= highest );
+      }
+    }
+  }
 }
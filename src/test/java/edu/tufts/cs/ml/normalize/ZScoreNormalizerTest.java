@@ -4,6 +4,7 @@ import junit.framework.TestCase;
 
 import org.junit.Test;
 
+import edu.tufts.cs.ml.DenseRelation;
 import edu.tufts.cs.ml.DoubleFeature;
 import edu.tufts.cs.ml.LabeledFeatureVector;
 import edu.tufts.cs.ml.Metadata;
@@ -33,6 +34,8 @@ public class ZScoreNormalizerTest extends TestCase {
 
     System.out.println( trainingData.toString() );
 
+    DenseRelation<LabeledFeatureVector<String>> dense =
+        trainingData.toDense();
     ZScoreNormalizer<String> zNorm = new ZScoreNormalizer<String>(
         trainingData );
     double mean = zNorm.meanMap.get( testFeatureName );
@@ -45,6 +48,13 @@ public class ZScoreNormalizerTest extends TestCase {
     assertTrue( mean == truthMean );
     assertTrue( truthSampleSd == 6.48 );
 
+    // the dense rows normalize to the same values
+    ZScoreNormalizer.normalize( dense );
+    for ( int i = 0; i < trainingData.size(); i++ ) {
+      assertEquals( trainingData.get( i ).get( testFeatureName ).getValue(),
+          dense.get( i, 0 ) );
+    }
+
     System.out.println( trainingData.toString() );
   }
 }
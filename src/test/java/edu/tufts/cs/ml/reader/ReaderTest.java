@@ -2,14 +2,26 @@ package edu.tufts.cs.ml.reader;
 
 import java.io.BufferedWriter;
 import java.io.File;
+import java.io.FileInputStream;
 import java.io.FileWriter;
 import java.io.IOException;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
 
 import junit.framework.TestCase;
 
 import org.junit.Test;
 
+import edu.tufts.cs.ml.DenseRelation;
+import edu.tufts.cs.ml.DoubleFeature;
+import edu.tufts.cs.ml.FeatureVector;
+import edu.tufts.cs.ml.LabeledFeatureVector;
+import edu.tufts.cs.ml.Metadata;
 import edu.tufts.cs.ml.Relation;
+import edu.tufts.cs.ml.TestRelation;
+import edu.tufts.cs.ml.UnlabeledFeatureVector;
+import edu.tufts.cs.ml.writer.BinaryWriter;
 
 public class ReaderTest extends TestCase {
 
@@ -92,4 +104,127 @@ public class ReaderTest extends TestCase {
     String cleanOutput = output.toLowerCase().replaceAll( "\\s", "" );
     assertEquals( cleanInput, cleanOutput );
   }
+
+  /**
+   * Test that reading in chunks gives the same feature vectors as reading
+   * the whole file.
+   * @throws IOException
+   */
+  @Test
+  public void testArffIterator() throws IOException {
+    File f = new File( "src/test/resources/train.arff" );
+    ArffReader<String> reader = new ArffReader<String>();
+    Relation<?> all = reader.read( f );
+
+    ArffIterator<String> it = reader.iterator( f, !Reader.IGNORE_LABELS );
+    assertEquals( all.getClass(), it.getRelation().getClass() );
+    assertEquals( all.getMetadata(), it.getRelation().getMetadata() );
+
+    List<FeatureVector<?>> chunked = new ArrayList<FeatureVector<?>>();
+    Relation<?> chunk = it.nextChunk( 5 );
+    while ( chunk != null ) {
+      assertTrue( chunk.size() <= 5 );
+      assertEquals( all.getClass(), chunk.getClass() );
+      chunked.addAll( chunk );
+      chunk = it.nextChunk( 5 );
+    }
+    it.close();
+
+    assertEquals( all.size(), chunked.size() );
+    for ( int i = 0; i < all.size(); i++ ) {
+      assertEquals( all.get( i ).getId(), chunked.get( i ).getId() );
+      assertEquals( all.get( i ), chunked.get( i ) );
+    }
+  }
+
+  /**
+   * Test that a relation written in the binary format reads back the same,
+   * both densely (train.arff) and sparsely.
+   * @throws IOException
+   */
+  @Test
+  public void testBinaryReader() throws IOException {
+    File f = File.createTempFile( "train", BinaryWriter.EXTENSION );
+    try {
+      // dense, labeled
+      Relation<?> train = new ArffReader<String>().read( new File(
+          "src/test/resources/train.arff" ) );
+      new BinaryWriter().write( train, f );
+      assertTrue( Reader.forFile( f ) instanceof BinaryReader<?> );
+      BinaryDataset data = new BinaryReader<String>().map( f );
+      assertFalse( data.isSparse() );
+      assertTrue( data.isLabeled() );
+      assertEquals( train.size(), data.size() );
+      assertBinaryEquals( train, new BinaryReader<String>().read( f ) );
+
+      // the dense view has the same rows, without building them up front
+      DenseRelation<?> dense = new BinaryReader<String>().readDense( f,
+          false );
+      assertTrue( dense.isReleased() );
+      DenseRelation<?> expected = train.toDense();
+      assertTrue( Arrays.equals( expected.getFeatureNames(),
+          dense.getFeatureNames() ) );
+      assertTrue( Arrays.equals( expected.getData(), dense.getData() ) );
+      for ( int i = 0; i < train.size(); i++ ) {
+        assertEquals( train.get( i ), dense.getFeatureVector( i ) );
+        assertEquals( ( (LabeledFeatureVector<?>) train.get( i ) ).getLabel(),
+            ( (LabeledFeatureVector<?>) dense.getFeatureVector( i ) )
+            .getLabel() );
+      }
+
+      // sparse, unlabeled, with ranks and qids
+      Metadata m = new Metadata();
+      m.put( "1", "real" );
+      m.put( "2", "real" );
+      m.put( "3", "real" );
+      TestRelation<Integer> sparse = new TestRelation<Integer>( "sparse", m );
+      for ( int i = 0; i < 4; i++ ) {
+        UnlabeledFeatureVector<Integer> fv =
+          new UnlabeledFeatureVector<Integer>( "x" + i );
+        fv.put( "3", new DoubleFeature( "3", i + .5 ) );
+        if ( i % 2 == 0 ) {
+          fv.put( "1", new DoubleFeature( "1", -i - 1.0 ) );
+        }
+        fv.setRank( i );
+        fv.setQid( i / 2 );
+        sparse.add( fv );
+      }
+      new BinaryWriter().write( sparse, f );
+      data = new BinaryReader<Integer>().map( f );
+      assertTrue( data.isSparse() );
+      assertFalse( data.isLabeled() );
+      assertEquals( 0.0, data.get( 1, 0 ) );
+      assertEquals( 1.5, data.get( 1, 2 ) );
+      FileInputStream fis = new FileInputStream( f );
+      assertBinaryEquals( sparse, new BinaryReader<Integer>().read( fis ) );
+    } finally {
+      f.delete();
+    }
+  }
+
+  /**
+   * Assert that the relation read from the binary format is the same as the
+   * one written.
+   * @param expected
+   * @param actual
+   */
+  protected void assertBinaryEquals( Relation<?> expected,
+      Relation<?> actual ) {
+    assertEquals( expected.getClass(), actual.getClass() );
+    assertEquals( expected.getName(), actual.getName() );
+    assertEquals( expected.getMetadata(), actual.getMetadata() );
+    assertEquals( expected.size(), actual.size() );
+    for ( int i = 0; i < expected.size(); i++ ) {
+      FeatureVector<?> e = expected.get( i );
+      FeatureVector<?> a = actual.get( i );
+      assertEquals( e.getId(), a.getId() );
+      assertEquals( e, a );
+      assertEquals( e.getRank(), a.getRank() );
+      assertEquals( e.getQid(), a.getQid() );
+      if ( e instanceof LabeledFeatureVector<?> ) {
+        assertEquals( ( (LabeledFeatureVector<?>) e ).getLabel(),
+            ( (LabeledFeatureVector<?>) a ).getLabel() );
+      }
+    }
+  }
 }
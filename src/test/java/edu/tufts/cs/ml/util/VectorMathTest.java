@@ -0,0 +1,74 @@
+package edu.tufts.cs.ml.util;
+
+import junit.framework.TestCase;
+
+import org.junit.Test;
+
+public class VectorMathTest extends TestCase {
+
+  /**
+   * Test the distance kernels.
+   */
+  @Test
+  public void testDistances() {
+    double[] a = { 1.0, 2.0, 3.0 };
+    double[] b = { 4.0, -2.0, 3.0 };
+
+    assertEquals( 25.0, VectorMath.squaredEuclidean( a, b ) );
+    assertEquals( 5.0, VectorMath.euclidean( a, b ) );
+    assertEquals( 7.0, VectorMath.manhattan( a, b ) );
+
+    // offsets into a row-major block
+    double[] block = { 0.0, 1.0, 2.0, 3.0, 4.0, -2.0, 3.0 };
+    assertEquals( 5.0, VectorMath.euclidean( block, 1, block, 4, 3 ) );
+  }
+
+  /**
+   * Test the similarity kernels.
+   */
+  @Test
+  public void testSimilarities() {
+    double[] a = { 1.0, 2.0, 3.0 };
+    double[] b = { 4.0, -5.0, 6.0 };
+
+    assertEquals( 12.0, VectorMath.dot( a, b ) );
+    assertEquals( Math.sqrt( 14.0 ), VectorMath.norm( a ) );
+    assertEquals( 12.0 / Math.sqrt( 14.0 * 77.0 ),
+        VectorMath.cosine( a, b ), 1e-12 );
+    assertEquals( 0.0, VectorMath.cosine( a, new double[3] ) );
+  }
+
+  /**
+   * Test that the sparse kernels agree with the dense ones.
+   */
+  @Test
+  public void testSparseKernels() {
+    // a = { 1, 0, 2, 0, 3 }, b = { 0, 4, -2, 0, 3 }
+    int[] aIdx = { 0, 2, 4 };
+    double[] aVal = { 1.0, 2.0, 3.0 };
+    int[] bIdx = { 1, 2, 4 };
+    double[] bVal = { 4.0, -2.0, 3.0 };
+    double[] a = { 1.0, 0.0, 2.0, 0.0, 3.0 };
+    double[] b = { 0.0, 4.0, -2.0, 0.0, 3.0 };
+
+    assertEquals( VectorMath.dot( a, b ),
+        VectorMath.sparseDot( aIdx, aVal, 0, 3, bIdx, bVal, 0, 3 ) );
+    assertEquals( VectorMath.dot( a, b ),
+        VectorMath.sparseDot( aIdx, aVal, 0, 3, b, 0 ) );
+    assertEquals( VectorMath.norm( a ), VectorMath.sparseNorm( aVal, 0, 3 ) );
+    assertEquals( VectorMath.squaredEuclidean( a, b ),
+        VectorMath.sparseSquaredEuclidean( aIdx, aVal, 0, 3, bIdx, bVal, 0,
+            3 ) );
+    assertEquals( VectorMath.squaredEuclidean( a, b ),
+        VectorMath.sparseSquaredEuclidean( aIdx, aVal, 0, 3, b, 0,
+            VectorMath.dot( b, b ) ), 1e-12 );
+
+    // slices of a CSR block, and an empty row
+    int[] idx = { 0, 2, 4, 1, 2, 4 };
+    double[] val = { 1.0, 2.0, 3.0, 4.0, -2.0, 3.0 };
+    assertEquals( VectorMath.squaredEuclidean( a, b ),
+        VectorMath.sparseSquaredEuclidean( idx, val, 0, 3, idx, val, 3, 6 ) );
+    assertEquals( VectorMath.dot( b, b ),
+        VectorMath.sparseSquaredEuclidean( idx, val, 0, 0, idx, val, 3, 6 ) );
+  }
+}
@@ -6,9 +6,11 @@ import junit.framework.TestCase;
 
 import org.junit.Test;
 
+import edu.tufts.cs.ml.LabeledFeatureVector;
 import edu.tufts.cs.ml.TrainRelation;
 import edu.tufts.cs.ml.exception.IncomparableFeatureVectorException;
 import edu.tufts.cs.ml.reader.ArffReader;
+import edu.tufts.cs.ml.util.Util;
 
 
 public class KnnLOOCValidatorTest extends TestCase {
@@ -43,5 +45,42 @@ public class KnnLOOCValidatorTest extends TestCase {
     }
   }
 
+  /**
+   * Test that the neighbor table gives the same accuracies as retraining
+   * without each instance.
+   * @throws IOException
+   * @throws IncomparableFeatureVectorException
+   */
+  @SuppressWarnings( "unchecked" )
+  @Test
+  public void testNeighborTable() throws IOException,
+    IncomparableFeatureVectorException {
+    File trainFile = new File( "src/main/resources/knn-train.arff" );
+    ArffReader<String> reader = new ArffReader<String>();
+    TrainRelation<String> train = (TrainRelation<String>) reader.read(
+        trainFile );
+
+    int[] kVals = { 1, 3, 5, 7, 9, 11, 13, 15 };
+    KnnLOOCValidator<String> validator = new KnnLOOCValidator<String>(
+        train, 2 );
+
+    double[] expected = new double[kVals.length];
+    TrainRelation<String> all = (TrainRelation<String>) train.clone();
+    for ( LabeledFeatureVector<String> v : all ) {
+      train.remove( v );
+      double[] accuracies = validator.computeAccuracy( v, kVals );
+      for ( int i = 0; i < kVals.length; i++ ) {
+        expected[i] += accuracies[i];
+      }
+      train.add( v );
+    }
+    for ( int i = 0; i < kVals.length; i++ ) {
+      expected[i] = Util.round( expected[i] / train.size(), 4 );
+    }
 
+    double[] actual = validator.validate( kVals );
+    for ( int i = 0; i < kVals.length; i++ ) {
+      assertEquals( expected[i], actual[i] );
+    }
+  }
 }